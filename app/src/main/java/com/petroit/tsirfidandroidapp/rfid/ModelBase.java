@@ -3,33 +3,71 @@
 //----------------------------------------------------------------------------------------------
 
 package com.petroit.tsirfidandroidapp.rfid;
-import android.os.AsyncTask;
 import android.os.Handler;
 import android.os.Message;
 import android.util.Log;
+import com.petroit.tsirfidandroidapp.rfid.metrics.QueueDepthGauge;
+import com.petroit.tsirfidandroidapp.rfid.metrics.ScanMetrics;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
 import com.uk.tsl.rfid.asciiprotocol.AsciiCommander;
 import com.uk.tsl.rfid.asciiprotocol.BuildConfig;
 
-import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 public class ModelBase {
 
 	// Debugging
 	private static final boolean D = BuildConfig.DEBUG;
 
-	// Model busy state changed message
+	// Model busy state changed message - arg1 is 1 when busy
 	public static final int BUSY_STATE_CHANGED_NOTIFICATION = 1;
-	public static final int MESSAGE_NOTIFICATION = 2;
+	public static final int MESSAGE_NOTIFICATION = 2;  // obj is the informational text
+	public static final int TAG_NOTIFICATION = 3;  // A batch of reads is ready - see drainTagNotifications()
+	public static final int TAGS_CHANGED_NOTIFICATION = 4;
+	public static final int BARCODE_NOTIFICATION = 5;  // obj is the barcode
+	public static final int ERROR_NOTIFICATION = 6;  // obj is the error message
+	public static final int LOCATE_NOTIFICATION = 7;  // A signal strength is ready - see FindTagModel.takeFeedback()
 
 	// 
 	protected Handler mHandler;
-	protected boolean mBusy;
-	private Exception mException;
+	protected volatile boolean mBusy;
+	private volatile Exception mException;
 	protected AsciiCommander mCommander;
-	protected AsyncTask<Void, Void, Void> mTaskRunner;
-	protected double mLastTaskExecutionDuration;
+	protected volatile double mLastTaskExecutionDuration;
 
-	private Date mTaskStartTime;
+	private volatile long mTaskStartNanos;
+
+	// Tasks share one reader so by default they run one at a time, in priority order
+	private static final int sTaskThreadCount = 1;
+	private static final int sTaskQueueCapacity = 32;
+
+	// Created when the first task is performed
+	private ModelTaskEngine mTaskEngine;
+
+	// Typed events for any number of subscribers, e.g. export or metrics
+	private final ModelEvents mEvents = new ModelEvents();
+
+	// Throughput, latency and queue depths for the metrics overlay and for field comparisons
+	private final ScanMetrics mMetrics = new ScanMetrics();
+
+	// Default time between batches of tag notifications - about two frames
+	private static final long sTagBatchIntervalMs = 33;
+	private static final int sTagBatchCapacity = 4096;
+
+	// Batches the tag reads so the client is not woken for each one
+	private final NotificationBatcher<TagEvent> mTagBatcher = new NotificationBatcher<>(new NotificationBatcher.Scheduler() {
+		@Override
+		public void scheduleDelivery(long delayMs)
+		{
+			Handler handler = mHandler;
+			if( handler != null )
+			{
+				handler.sendMessageDelayed(handler.obtainMessage(TAG_NOTIFICATION), delayMs);
+			}
+		}
+	}, sTagBatchIntervalMs, sTagBatchCapacity);
 
 	/**
 	 * @return true if the model is currently performing a task
@@ -40,15 +78,16 @@ public class ModelBase {
 	 * Set the task busy state
 	 * @param isBusy true when the model is busy
 	 */
-	protected void setBusy(boolean isBusy)
+	protected synchronized void setBusy(boolean isBusy)
 	{
 		if( mBusy != isBusy  )
 		{
 			mBusy = isBusy;
+			mEvents.publishBusyChanged(isBusy);
 
 			if( mHandler != null )
 			{
-				Message msg = mHandler.obtainMessage(BUSY_STATE_CHANGED_NOTIFICATION, isBusy);
+				Message msg = mHandler.obtainMessage(BUSY_STATE_CHANGED_NOTIFICATION, isBusy ? 1 : 0, 0);
 	        	mHandler.sendMessage(msg);
 			}
 		}
@@ -56,7 +95,7 @@ public class ModelBase {
 
 
 	/**
-	 * Send a message to the client using the current Handler
+	 * Send an informational message to the client using the current Handler
 	 * 
 	 * @param message The message to send as String
 	 */
@@ -69,7 +108,93 @@ public class ModelBase {
 		}
 	}
 
-	public boolean isTaskRunning() { return mTaskRunner != null; }
+	/**
+	 * Send a barcode to the subscribers and to the client using the current Handler
+	 *
+	 * @param barcode The barcode data
+	 */
+	protected void sendBarcodeNotification(String barcode)
+	{
+		mEvents.publishBarcodeRead(barcode, System.currentTimeMillis());
+		if( mHandler != null )
+		{
+			Message msg = mHandler.obtainMessage(BARCODE_NOTIFICATION, barcode);
+			mHandler.sendMessage(msg);
+		}
+	}
+
+	/**
+	 * Send an error to the subscribers and to the client using the current Handler
+	 *
+	 * @param errorCode The reader's error code or null
+	 * @param message The description of the error
+	 */
+	protected void sendErrorNotification(String errorCode, String message)
+	{
+		mEvents.publishError(errorCode, message);
+		if( mHandler != null )
+		{
+			Message msg = mHandler.obtainMessage(ERROR_NOTIFICATION, message);
+			mHandler.sendMessage(msg);
+		}
+	}
+
+	/**
+	 * @return the typed events published by this model
+	 */
+	public ModelEvents getEvents() { return mEvents; }
+
+	/**
+	 * Queue a transponder read for the client
+	 *
+	 * Reads are delivered in batches: the client receives a TAG_NOTIFICATION at most once per
+	 * batch interval and collects the reads with drainTagNotifications(). The receiver takes
+	 * ownership of the events and should recycle them when they are no longer needed
+	 *
+	 * @param event The pooled tag event to send
+	 * @return false if the event was not queued and still belongs to the caller
+	 */
+	protected boolean sendTagNotification(TagEvent event)
+	{
+		return mHandler != null && mTagBatcher.offer(event);
+	}
+
+	/**
+	 * Collect the reads queued since the last TAG_NOTIFICATION
+	 *
+	 * @param batch receives the events
+	 * @return the number of events added to the batch
+	 */
+	public int drainTagNotifications(List<TagEvent> batch)
+	{
+		int count = mTagBatcher.drainTo(batch);
+		// The client drains on its own thread so this is the time the reads reach it
+		long now = System.nanoTime();
+		for( int i = batch.size() - count; i < batch.size(); i++ )
+		{
+			mMetrics.recordDeliveryLatency(now - batch.get(i).getReceivedNanos());
+		}
+		return count;
+	}
+
+	/**
+	 * @return the batching stage for tag notifications, for its interval and statistics
+	 */
+	public NotificationBatcher<TagEvent> getTagBatcher() { return mTagBatcher; }
+
+	/**
+	 * @return the throughput and latency metrics of this model
+	 */
+	public ScanMetrics getMetrics() { return mMetrics; }
+
+	/**
+	 * @return true if a task is running or waiting to run
+	 */
+	public boolean isTaskRunning()
+	{
+		ModelTaskEngine engine = mTaskEngine;
+		return engine != null && (engine.getRunningCount() > 0 || engine.getQueuedCount() > 0);
+	}
 	
 	public ModelBase()
 	{
@@ -77,6 +202,7 @@ public class ModelBase {
 		mHandler = null;
 		mBusy = false;
 		mLastTaskExecutionDuration = -1.00;
+		mMetrics.setDeliveryQueue(mTagBatcher);
 	}
 
 	/**
@@ -95,7 +221,13 @@ public class ModelBase {
 	/**
 	 * @param handler the handler for model notifications
 	 */
-	public void setHandler(Handler handler) { mHandler = handler; }
+	public void setHandler(Handler handler)
+	{
+		mHandler = handler;
+		// A batch scheduled on the previous handler will not be delivered
+		mTagBatcher.reset();
+		mMetrics.setHandlerQueue(handler instanceof QueueDepthGauge ? (QueueDepthGauge)handler : null);
+	}
 
 	
 	/**
@@ -115,84 +247,90 @@ public class ModelBase {
 		if( mLastTaskExecutionDuration >= 0.0 ) {
 			return mLastTaskExecutionDuration;
 		} else {
-			Date now = new Date();
-			return (now.getTime() - mTaskStartTime.getTime()) / 1000.0;
+			return (System.nanoTime() - mTaskStartNanos) / 1e9;
+		}
+	}
+
+	/**
+	 * @return the engine that runs this model's tasks
+	 */
+	public synchronized ModelTaskEngine getTaskEngine()
+	{
+		if( mTaskEngine == null ) {
+			mTaskEngine = new ModelTaskEngine(getClass().getSimpleName(), sTaskThreadCount, sTaskQueueCapacity);
+			mTaskEngine.setListener(mTaskListener);
 		}
+		return mTaskEngine;
 	}
 
 	/**
-	 * Execute the given task
+	 * Execute the given task with normal priority
+	 *
+	 * @see #performTask(Runnable, int)
+	 */
+	public ModelTask performTask(Runnable task) throws ModelException
+	{
+		return performTask(task, ModelTaskEngine.PRIORITY_NORMAL);
+	}
+
+	/**
+	 * Queue the given task
 	 * 
-	 * The busy state is notified to the client
+	 * The busy state is notified to the client, the model is busy while any task is running
 	 * 
 	 * Tasks should throw an exception to indicate (and return) error
 	 * 
-	 * @param task the Runnable task to be performed 
+	 * @param task the Runnable task to be performed
+	 * @param priority e.g. ModelTaskEngine.PRIORITY_HIGH, higher priority tasks are run first
+	 * @return the task's future, to wait for completion or to cancel it
 	 */
-	public void performTask(Runnable task) throws ModelException
+	public ModelTask performTask(Runnable task, int priority) throws ModelException
 	{
-        if( mCommander == null ) {
+		if( mCommander == null ) {
 			throw( new ModelException("There is no AsciiCommander set for this model!") );
-		} else {
-			if( mTaskRunner != null ) {
-				throw( new ModelException("Task is already running!"));
-			} else {
-				mTaskRunner = new ModelTask(this, task);
-
-				try {
-    				mTaskRunner.executeOnExecutor(AsyncTask.SERIAL_EXECUTOR, (Void[])null);
-				} catch( Exception e ) {
-					mException = e;
-				}
-			}
 		}
+		return getTaskEngine().submit(task, priority);
+	}
+
+	/**
+	 * Cancel the tasks waiting to run and interrupt the running ones
+	 *
+	 * @return the number of tasks cancelled
+	 */
+	public int cancelTasks()
+	{
+		ModelTaskEngine engine = mTaskEngine;
+		return engine == null ? 0 : engine.cancelAll(true);
 	}
 
+	// Tracks the busy state and timing of the tasks, called on the worker threads
+	private final ModelTaskEngine.Listener mTaskListener = new ModelTaskEngine.Listener() {
+		@Override
+		public void taskStarted(ModelTask task)
+		{
+			mTaskStartNanos = System.nanoTime();
+			mLastTaskExecutionDuration = -1.0;
+			mException = null;
+			setBusy(true);
+		}
+
+		@Override
+		public void taskFinished(ModelTask task)
+		{
+			Throwable failure = task.getFailure();
+			if( failure != null ) {
+				mException = failure instanceof Exception ? (Exception)failure : new ModelException(failure);
+			}
 
-    private static class ModelTask extends AsyncTask<Void, Void, Void>
-    {
-        private final Runnable rTask;
-        private final ModelBase mModel;
-
-        public ModelTask(ModelBase model, Runnable task)
-        {
-            super();
-            rTask = task;
-            mModel = model;
-        }
-
-        @Override
-        protected void onPreExecute()
-        {
-            mModel.mLastTaskExecutionDuration = -1.0;
-            mModel.mTaskStartTime = new Date();
-        }
-
-        protected Void doInBackground(Void... voids)
-        {
-            try {
-                mModel.setBusy(true);
-                mModel.mException = null;
-
-                rTask.run();
-
-            } catch (Exception e) {
-                mModel.mException = e;
-            }
-            return null;
-        }
-
-        @Override
-        protected void onPostExecute(Void result) {
-            super.onPostExecute(result);
-            mModel.mTaskRunner = null;
-            mModel.setBusy(false);
-
-            // Update the time taken
-            Date finishTime = new Date();
-            mModel.mLastTaskExecutionDuration = (finishTime.getTime() - mModel.mTaskStartTime.getTime()) / 1000.0;
-
-            if(D) Log.i(getClass().getName(), String.format("Time taken (ms): %d %.2f", finishTime.getTime() - mModel.mTaskStartTime.getTime(), mModel.mLastTaskExecutionDuration));
-        }
-    };
+			long runNanos = task.getRunNanos();
+			mLastTaskExecutionDuration = runNanos / 1e9;
+			if( mTaskEngine.getRunningCount() == 0 ) {
+				setBusy(false);
+			}
+
+			if(D) Log.i(getClass().getName(), String.format(Locale.US, "Time taken (ms): %d %.2f queued (ms): %d",
+					TimeUnit.NANOSECONDS.toMillis(runNanos), mLastTaskExecutionDuration,
+					TimeUnit.NANOSECONDS.toMillis(task.getQueueNanos())));
+		}
+	};
 }
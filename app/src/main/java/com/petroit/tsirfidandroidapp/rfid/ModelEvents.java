@@ -0,0 +1,193 @@
+package com.petroit.tsirfidandroidapp.rfid;
+
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+
+/**
+ * Typed events published by a model
+ * <p>
+ * Each kind of event has its own listener interface so a subscriber only receives the events it
+ * is interested in and the payload is passed as fields rather than as a formatted String.
+ * Listeners are called synchronously on the thread that publishes the event, for reads and
+ * barcodes that is the thread parsing the reader's responses, so they must be quick and must
+ * hand any slow work (e.g. file or network I/O, UI updates) to another thread.
+ * Listeners may be added and removed from any thread, including from within a listener.
+ */
+public final class ModelEvents
+{
+    public interface TagReadListener
+    {
+        /**
+         * @param event the read, only valid for the duration of the call - copy what is needed
+         */
+        void onTagRead(TagEvent event);
+    }
+
+    public interface BarcodeReadListener
+    {
+        /**
+         * @param barcode the barcode data
+         * @param timestamp the time the barcode was received in ms since the epoch
+         */
+        void onBarcodeRead(String barcode, long timestamp);
+    }
+
+    public interface ErrorListener
+    {
+        /**
+         * @param errorCode the reader's error code or null if the error did not come from the reader
+         * @param message the description of the error
+         */
+        void onError(String errorCode, String message);
+    }
+
+    public interface BusyChangedListener
+    {
+        void onBusyChanged(boolean busy);
+    }
+
+    public interface ScanCycleEndedListener
+    {
+        /**
+         * @param readCount the number of reads in the cycle
+         * @param durationNanos the time from the start of the response to its end
+         */
+        void onScanCycleEnded(int readCount, long durationNanos);
+    }
+
+    public interface AssociationListener
+    {
+        /**
+         * @param barcodeIndex the barcode's index in the session's barcode log
+         * @param tagOrdinal the tag's ordinal in the session's tag store
+         * @param readTime the time of the read in ms since the epoch
+         */
+        void onAssociation(int barcodeIndex, int tagOrdinal, long readTime);
+    }
+
+    private final Listeners mTagReadListeners = new Listeners();
+    private final Listeners mBarcodeReadListeners = new Listeners();
+    private final Listeners mErrorListeners = new Listeners();
+    private final Listeners mBusyChangedListeners = new Listeners();
+    private final Listeners mScanCycleEndedListeners = new Listeners();
+    private final Listeners mAssociationListeners = new Listeners();
+
+    public void addTagReadListener(TagReadListener listener) { mTagReadListeners.add(listener); }
+
+    public void removeTagReadListener(TagReadListener listener) { mTagReadListeners.remove(listener); }
+
+    /**
+     * @return true if there is at least one tag read listener, to skip work no one will see
+     */
+    public boolean hasTagReadListeners() { return mTagReadListeners.mItems.length > 0; }
+
+    public void addBarcodeReadListener(BarcodeReadListener listener) { mBarcodeReadListeners.add(listener); }
+
+    public void removeBarcodeReadListener(BarcodeReadListener listener) { mBarcodeReadListeners.remove(listener); }
+
+    public void addErrorListener(ErrorListener listener) { mErrorListeners.add(listener); }
+
+    public void removeErrorListener(ErrorListener listener) { mErrorListeners.remove(listener); }
+
+    public void addBusyChangedListener(BusyChangedListener listener) { mBusyChangedListeners.add(listener); }
+
+    public void removeBusyChangedListener(BusyChangedListener listener) { mBusyChangedListeners.remove(listener); }
+
+    public void addScanCycleEndedListener(ScanCycleEndedListener listener) { mScanCycleEndedListeners.add(listener); }
+
+    public void removeScanCycleEndedListener(ScanCycleEndedListener listener) { mScanCycleEndedListeners.remove(listener); }
+
+    public void addAssociationListener(AssociationListener listener) { mAssociationListeners.add(listener); }
+
+    public void removeAssociationListener(AssociationListener listener) { mAssociationListeners.remove(listener); }
+
+    public void publishTagRead(TagEvent event)
+    {
+        Object[] listeners = mTagReadListeners.mItems;
+        for( int i = 0; i < listeners.length; i++ ) {
+            ((TagReadListener)listeners[i]).onTagRead(event);
+        }
+    }
+
+    public void publishBarcodeRead(String barcode, long timestamp)
+    {
+        Object[] listeners = mBarcodeReadListeners.mItems;
+        for( int i = 0; i < listeners.length; i++ ) {
+            ((BarcodeReadListener)listeners[i]).onBarcodeRead(barcode, timestamp);
+        }
+    }
+
+    public void publishError(String errorCode, String message)
+    {
+        Object[] listeners = mErrorListeners.mItems;
+        for( int i = 0; i < listeners.length; i++ ) {
+            ((ErrorListener)listeners[i]).onError(errorCode, message);
+        }
+    }
+
+    public void publishBusyChanged(boolean busy)
+    {
+        Object[] listeners = mBusyChangedListeners.mItems;
+        for( int i = 0; i < listeners.length; i++ ) {
+            ((BusyChangedListener)listeners[i]).onBusyChanged(busy);
+        }
+    }
+
+    public void publishScanCycleEnded(int readCount, long durationNanos)
+    {
+        Object[] listeners = mScanCycleEndedListeners.mItems;
+        for( int i = 0; i < listeners.length; i++ ) {
+            ((ScanCycleEndedListener)listeners[i]).onScanCycleEnded(readCount, durationNanos);
+        }
+    }
+
+    public void publishAssociation(int barcodeIndex, int tagOrdinal, long readTime)
+    {
+        Object[] listeners = mAssociationListeners.mItems;
+        for( int i = 0; i < listeners.length; i++ ) {
+            ((AssociationListener)listeners[i]).onAssociation(barcodeIndex, tagOrdinal, readTime);
+        }
+    }
+
+    // Copy on write so publishing neither locks nor allocates
+    private static final class Listeners
+    {
+        private static final Object[] sNone = new Object[0];
+
+        volatile Object[] mItems = sNone;
+
+        synchronized void add(Object listener)
+        {
+            if( listener == null ) {
+                throw new IllegalArgumentException("The listener must not be null");
+            }
+            Object[] items = mItems;
+            for( Object item : items ) {
+                if( item == listener ) {
+                    return;
+                }
+            }
+            Object[] added = new Object[items.length + 1];
+            System.arraycopy(items, 0, added, 0, items.length);
+            added[items.length] = listener;
+            mItems = added;
+        }
+
+        synchronized void remove(Object listener)
+        {
+            Object[] items = mItems;
+            for( int i = 0; i < items.length; i++ ) {
+                if( items[i] == listener ) {
+                    if( items.length == 1 ) {
+                        mItems = sNone;
+                    } else {
+                        Object[] removed = new Object[items.length - 1];
+                        System.arraycopy(items, 0, removed, 0, i);
+                        System.arraycopy(items, i + 1, removed, i, items.length - i - 1);
+                        mItems = removed;
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
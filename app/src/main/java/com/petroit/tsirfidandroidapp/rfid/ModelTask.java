@@ -0,0 +1,119 @@
+package com.petroit.tsirfidandroidapp.rfid;
+
+import java.util.concurrent.FutureTask;
+
+/**
+ * A task queued on a {@link ModelTaskEngine}
+ * <p>
+ * This is the task's completion future: get() waits for the task and rethrows its exception
+ * wrapped in an ExecutionException, cancel() removes a queued task or interrupts a running one.
+ * The times at which the task was queued, started and finished are captured with
+ * System.nanoTime().
+ */
+public final class ModelTask extends FutureTask<Void> implements Comparable<ModelTask>
+{
+    private final ModelTaskEngine mEngine;
+    private final int mPriority;
+    private final long mSequence;
+    private final long mQueuedNanos;
+    private volatile long mStartedNanos;
+    private volatile long mFinishedNanos;
+    private volatile Throwable mFailure;
+
+    ModelTask(ModelTaskEngine engine, Runnable task, int priority, long sequence)
+    {
+        super(task, null);
+        mEngine = engine;
+        mPriority = priority;
+        mSequence = sequence;
+        mQueuedNanos = System.nanoTime();
+    }
+
+    public int getPriority() { return mPriority; }
+
+    /**
+     * @return the exception thrown by the task or null
+     */
+    public Throwable getFailure() { return mFailure; }
+
+    /**
+     * @return true once the task has started running (it may since have finished)
+     */
+    public boolean hasStarted() { return mStartedNanos != 0; }
+
+    /**
+     * @return the time spent waiting in the queue, up to now if the task has not started
+     */
+    public long getQueueNanos()
+    {
+        long started = mStartedNanos;
+        return (started != 0 ? started : System.nanoTime()) - mQueuedNanos;
+    }
+
+    /**
+     * @return the time spent running, up to now if the task is still running, 0 if not started
+     */
+    public long getRunNanos()
+    {
+        long started = mStartedNanos;
+        if( started == 0 ) {
+            return 0;
+        }
+        long finished = mFinishedNanos;
+        return (finished != 0 ? finished : System.nanoTime()) - started;
+    }
+
+    /**
+     * @return the time from being queued to finishing, up to now if not finished
+     */
+    public long getLatencyNanos()
+    {
+        long finished = mFinishedNanos;
+        return (finished != 0 ? finished : System.nanoTime()) - mQueuedNanos;
+    }
+
+    @Override
+    public void run()
+    {
+        if( isDone() ) {
+            // Cancelled while queued
+            return;
+        }
+        mStartedNanos = System.nanoTime();
+        mEngine.taskStarted(this);
+        try {
+            super.run();
+        } finally {
+            mFinishedNanos = System.nanoTime();
+            mEngine.taskFinished(this);
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if( cancelled && !hasStarted() ) {
+            // Do not leave it taking up space in the queue
+            mEngine.removeQueued(this);
+        }
+        return cancelled;
+    }
+
+    @Override
+    protected void setException(Throwable t)
+    {
+        mFailure = t;
+        super.setException(t);
+    }
+
+    @Override
+    public int compareTo(ModelTask other)
+    {
+        // Higher priority first then first come first served
+        if( mPriority != other.mPriority ) {
+            return mPriority > other.mPriority ? -1 : 1;
+        }
+        return Long.compare(mSequence, other.mSequence);
+    }
+}
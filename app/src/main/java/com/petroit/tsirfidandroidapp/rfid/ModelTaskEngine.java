@@ -0,0 +1,200 @@
+package com.petroit.tsirfidandroidapp.rfid;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs model tasks on a dedicated pool of worker threads
+ * <p>
+ * Tasks wait in a bounded priority queue, higher priority tasks run first and tasks of the same
+ * priority run in the order they were submitted. Each submission returns a {@link ModelTask}
+ * that can be waited on or cancelled and that records the task's queue and run times. Idle
+ * workers exit after a while so an unused engine holds no threads.
+ */
+public final class ModelTaskEngine
+{
+    public static final int PRIORITY_LOW = -10;
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_HIGH = 10;
+
+    /**
+     * Told when each task starts and finishes, on the worker thread running the task
+     */
+    public interface Listener
+    {
+        void taskStarted(ModelTask task);
+
+        void taskFinished(ModelTask task);
+    }
+
+    private static final long sIdleWorkerTimeoutSeconds = 30;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final int mQueueCapacity;
+    private volatile Listener mListener;
+
+    private long mNextSequence;
+    // The tasks that have started but not finished
+    private final Set<ModelTask> mRunningTasks = Collections.newSetFromMap(new ConcurrentHashMap<ModelTask, Boolean>());
+
+    // Statistics
+    private volatile long mCompletedCount;
+    private volatile long mFailedCount;
+    private volatile long mTotalRunNanos;
+    private volatile long mMaximumLatencyNanos;
+
+    /**
+     * @param name the prefix for the worker thread names
+     * @param threadCount the number of tasks that may run at the same time
+     * @param queueCapacity the maximum number of tasks waiting to run
+     */
+    public ModelTaskEngine(final String name, int threadCount, int queueCapacity)
+    {
+        if( threadCount < 1 || queueCapacity < 1 ) {
+            throw new IllegalArgumentException("The thread count and queue capacity must be positive");
+        }
+        mQueueCapacity = queueCapacity;
+        ThreadFactory factory = new ThreadFactory() {
+            private final AtomicInteger mThreadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, name + "-" + mThreadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        mExecutor = new ThreadPoolExecutor(threadCount, threadCount,
+                sIdleWorkerTimeoutSeconds, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(Math.min(queueCapacity, 64)), factory);
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public void setListener(Listener listener) { mListener = listener; }
+
+    /**
+     * Queue a task
+     *
+     * @param task the work to perform, it should throw an exception to indicate an error
+     * @param priority e.g. PRIORITY_NORMAL, higher values run first
+     * @return the task's completion future
+     * @throws ModelException if the queue is full or the engine has been shut down
+     */
+    public synchronized ModelTask submit(Runnable task, int priority) throws ModelException
+    {
+        if( mExecutor.isShutdown() ) {
+            throw new ModelException("The task engine has been shut down!");
+        }
+        if( mExecutor.getQueue().size() >= mQueueCapacity ) {
+            throw new ModelException("Too many tasks are waiting to run!");
+        }
+        ModelTask modelTask = new ModelTask(this, task, priority, mNextSequence++);
+        mExecutor.execute(modelTask);
+        return modelTask;
+    }
+
+    /**
+     * Cancel the queued tasks and optionally interrupt the running ones
+     *
+     * @param interruptRunning true to also interrupt the tasks that have started
+     * @return the number of tasks cancelled
+     */
+    public int cancelAll(boolean interruptRunning)
+    {
+        ArrayList<Runnable> queued = new ArrayList<>();
+        mExecutor.getQueue().drainTo(queued);
+        int count = 0;
+        for( Runnable runnable : queued ) {
+            if( ((ModelTask)runnable).cancel(false) ) {
+                count++;
+            }
+        }
+        if( interruptRunning ) {
+            // Those still in the queue have already been cancelled so this only affects running tasks
+            for( ModelTask running : mRunningTasks.toArray(new ModelTask[0]) ) {
+                if( running.cancel(true) ) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stop accepting tasks, queued tasks are still run
+     */
+    public void shutdown()
+    {
+        mExecutor.shutdown();
+    }
+
+    /**
+     * @return the number of tasks waiting to run
+     */
+    public int getQueuedCount() { return mExecutor.getQueue().size(); }
+
+    /**
+     * @return the number of tasks currently running
+     */
+    public int getRunningCount() { return mRunningTasks.size(); }
+
+    public long getCompletedCount() { return mCompletedCount; }
+
+    /**
+     * @return the number of tasks that finished by throwing an exception
+     */
+    public long getFailedCount() { return mFailedCount; }
+
+    /**
+     * @return the mean run time of the completed tasks or 0
+     */
+    public long getAverageRunNanos()
+    {
+        long completed = mCompletedCount;
+        return completed == 0 ? 0 : mTotalRunNanos / completed;
+    }
+
+    /**
+     * @return the longest time from queueing to finishing of any completed task
+     */
+    public long getMaximumLatencyNanos() { return mMaximumLatencyNanos; }
+
+    void removeQueued(ModelTask task)
+    {
+        mExecutor.remove(task);
+    }
+
+    void taskStarted(ModelTask task)
+    {
+        mRunningTasks.add(task);
+        Listener listener = mListener;
+        if( listener != null ) {
+            listener.taskStarted(task);
+        }
+    }
+
+    void taskFinished(ModelTask task)
+    {
+        synchronized( this ) {
+            mCompletedCount++;
+            if( task.getFailure() != null ) {
+                mFailedCount++;
+            }
+            mTotalRunNanos += task.getRunNanos();
+            mMaximumLatencyNanos = Math.max(mMaximumLatencyNanos, task.getLatencyNanos());
+        }
+        mRunningTasks.remove(task);
+        Listener listener = mListener;
+        if( listener != null ) {
+            listener.taskFinished(task);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.petroit.tsirfidandroidapp.rfid;
+
+import com.petroit.tsirfidandroidapp.rfid.metrics.QueueDepthGauge;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects notifications on the producing thread and hands them to the consumer in batches
+ * <p>
+ * The first item offered after an idle period is scheduled for immediate delivery, items that
+ * arrive while a delivery is pending join that batch (they are counted as coalesced). Deliveries
+ * are never closer together than the configured interval, so a burst of reads results in at most
+ * one consumer wake up per interval. When the pending batch reaches its capacity further items
+ * are refused (counted as dropped) and the producer remains responsible for them.
+ *
+ * @param <T> the type of item being delivered
+ */
+public final class NotificationBatcher<T> implements QueueDepthGauge
+{
+    /**
+     * Arranges for the consumer to call {@link #drainTo(List)}
+     */
+    public interface Scheduler
+    {
+        /**
+         * @param delayMs the time to wait before delivering the batch
+         */
+        void scheduleDelivery(long delayMs);
+    }
+
+    private final Scheduler mScheduler;
+    private final ArrayList<T> mPending;
+    private final int mCapacity;
+    private long mIntervalMs;
+
+    private boolean mDeliveryScheduled;
+    private long mLastDeliveryMs;
+
+    // Statistics
+    private long mOfferedCount;
+    private long mDeliveredCount;
+    private long mCoalescedCount;
+    private long mDroppedCount;
+    private long mBatchCount;
+    private int mLargestBatch;
+
+    /**
+     * @param scheduler used to request a delivery
+     * @param intervalMs the minimum time between deliveries
+     * @param capacity the maximum number of items waiting for delivery
+     */
+    public NotificationBatcher(Scheduler scheduler, long intervalMs, int capacity)
+    {
+        mScheduler = scheduler;
+        mIntervalMs = intervalMs;
+        mCapacity = capacity;
+        mPending = new ArrayList<>(Math.min(capacity, 256));
+        mLastDeliveryMs = Long.MIN_VALUE / 2;
+    }
+
+    /**
+     * @return the minimum time between deliveries in ms
+     */
+    public synchronized long getInterval() { return mIntervalMs; }
+
+    /**
+     * @param intervalMs the minimum time between deliveries, e.g. 16 for once per frame
+     */
+    public synchronized void setInterval(long intervalMs) { mIntervalMs = intervalMs; }
+
+    /**
+     * Queue an item for delivery
+     *
+     * @param item the item to deliver
+     * @return false if the item was dropped because the pending batch is full
+     */
+    public synchronized boolean offer(T item)
+    {
+        mOfferedCount++;
+        if( mPending.size() >= mCapacity ) {
+            mDroppedCount++;
+            return false;
+        }
+        mPending.add(item);
+
+        if( mDeliveryScheduled ) {
+            mCoalescedCount++;
+        } else {
+            mDeliveryScheduled = true;
+            long delay = Math.max(0, mLastDeliveryMs + mIntervalMs - now());
+            mScheduler.scheduleDelivery(delay);
+        }
+        return true;
+    }
+
+    /**
+     * Move the pending items to the consumer's list, call this when the scheduled delivery runs
+     *
+     * @param batch receives the pending items
+     * @return the number of items delivered
+     */
+    public synchronized int drainTo(List<T> batch)
+    {
+        int count = mPending.size();
+        batch.addAll(mPending);
+        mPending.clear();
+
+        mDeliveryScheduled = false;
+        mLastDeliveryMs = now();
+        if( count > 0 ) {
+            mBatchCount++;
+            mDeliveredCount += count;
+            mLargestBatch = Math.max(mLargestBatch, count);
+        }
+        return count;
+    }
+
+    /**
+     * Discard the pending items, e.g. when the consumer has gone away
+     *
+     * @return the number of items discarded
+     */
+    public synchronized int reset()
+    {
+        int count = mPending.size();
+        mPending.clear();
+        mDeliveryScheduled = false;
+        return count;
+    }
+
+    public synchronized long getOfferedCount() { return mOfferedCount; }
+
+    public synchronized long getDeliveredCount() { return mDeliveredCount; }
+
+    /**
+     * @return the number of items that joined an already scheduled batch
+     */
+    public synchronized long getCoalescedCount() { return mCoalescedCount; }
+
+    /**
+     * @return the number of items refused because the pending batch was full
+     */
+    public synchronized long getDroppedCount() { return mDroppedCount; }
+
+    public synchronized long getBatchCount() { return mBatchCount; }
+
+    public synchronized int getLargestBatch() { return mLargestBatch; }
+
+    /**
+     * @return the number of items waiting for delivery
+     */
+    public synchronized int getPendingCount() { return mPending.size(); }
+
+    @Override
+    public int getQueueDepth() { return getPendingCount(); }
+
+    /**
+     * @return the largest batch, the pending items only grow until they are delivered
+     */
+    @Override
+    public int getMaximumQueueDepth() { return getLargestBatch(); }
+
+    private static long now()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
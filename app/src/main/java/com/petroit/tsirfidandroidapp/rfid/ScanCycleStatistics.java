@@ -0,0 +1,84 @@
+package com.petroit.tsirfidandroidapp.rfid;
+
+/**
+ * Timing of the inventory cycles of a continuous scan
+ * <p>
+ * A cycle is one inventory response, from its first line to its last. The gap is the time from
+ * the end of one response to the start of the next, when the radio is not reporting tags, so it
+ * shows how much of the scan is lost to the round trip between the app and the reader.
+ */
+public final class ScanCycleStatistics
+{
+    private long mCycleCount;
+    private long mReadCount;
+    private long mTotalCycleNanos;
+    private long mGapCount;
+    private long mTotalGapNanos;
+    private long mMaximumGapNanos;
+    private long mLastGapNanos;
+
+    /**
+     * @param readCount the number of reads in the cycle
+     * @param durationNanos the time from the start of the response to its end
+     */
+    public synchronized void recordCycle(int readCount, long durationNanos)
+    {
+        mCycleCount++;
+        mReadCount += readCount;
+        mTotalCycleNanos += durationNanos;
+    }
+
+    /**
+     * @param gapNanos the time between the end of a response and the start of the next
+     */
+    public synchronized void recordGap(long gapNanos)
+    {
+        mGapCount++;
+        mTotalGapNanos += gapNanos;
+        mMaximumGapNanos = Math.max(mMaximumGapNanos, gapNanos);
+        mLastGapNanos = gapNanos;
+    }
+
+    public synchronized void reset()
+    {
+        mCycleCount = 0;
+        mReadCount = 0;
+        mTotalCycleNanos = 0;
+        mGapCount = 0;
+        mTotalGapNanos = 0;
+        mMaximumGapNanos = 0;
+        mLastGapNanos = 0;
+    }
+
+    public synchronized long getCycleCount() { return mCycleCount; }
+
+    public synchronized long getReadCount() { return mReadCount; }
+
+    public synchronized long getAverageCycleNanos() { return mCycleCount == 0 ? 0 : mTotalCycleNanos / mCycleCount; }
+
+    public synchronized long getGapCount() { return mGapCount; }
+
+    public synchronized long getAverageGapNanos() { return mGapCount == 0 ? 0 : mTotalGapNanos / mGapCount; }
+
+    public synchronized long getMaximumGapNanos() { return mMaximumGapNanos; }
+
+    public synchronized long getLastGapNanos() { return mLastGapNanos; }
+
+    /**
+     * @return the fraction of the scan spent in a cycle rather than a gap, 1 when there were no gaps
+     */
+    public synchronized double getDutyCycle()
+    {
+        long total = mTotalCycleNanos + mTotalGapNanos;
+        return total == 0 ? 1.0 : (double)mTotalCycleNanos / total;
+    }
+
+    /**
+     * @return the reads per second over the cycles and the gaps between them
+     */
+    public synchronized double getReadsPerSecond()
+    {
+        long total = mTotalCycleNanos + mTotalGapNanos;
+        return total == 0 ? 0.0 : mReadCount * 1e9 / total;
+    }
+}
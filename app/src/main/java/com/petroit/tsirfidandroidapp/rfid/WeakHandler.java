@@ -8,7 +8,10 @@ package com.petroit.tsirfidandroidapp.rfid;
 import android.os.Handler;
 import android.os.Message;
 
+import com.petroit.tsirfidandroidapp.rfid.metrics.QueueDepthGauge;
+
 import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
  
  
 /**
@@ -38,12 +41,18 @@ import java.lang.ref.WeakReference;
  * 
  * Based on code taken from here
  * http://pastebin.com/vCLY57Ug#
+ * <p>
+ * The handler also counts the messages sent to it that have not been dispatched yet, as the
+ * depth of its queue. Messages removed before they are dispatched are still counted.
  * 
  */
-public abstract class WeakHandler<T> extends Handler {
+public abstract class WeakHandler<T> extends Handler implements QueueDepthGauge {
  
   private final WeakReference<T> weakRef;
 
+  private final AtomicInteger queueDepth = new AtomicInteger();
+  private final AtomicInteger maximumQueueDepth = new AtomicInteger();
+
   /**
    * Construct a Handler that  has a weak reference to the object t of type T
    * 
@@ -54,6 +63,36 @@ public abstract class WeakHandler<T> extends Handler {
     weakRef = new WeakReference<T>(t);
   }
  
+  @Override
+  public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+    // Counted first as the message may be dispatched before this returns
+    int depth = queueDepth.incrementAndGet();
+    int maximum;
+    while (depth > (maximum = maximumQueueDepth.get()) && !maximumQueueDepth.compareAndSet(maximum, depth)) {
+    }
+    boolean queued = super.sendMessageAtTime(msg, uptimeMillis);
+    if (!queued) {
+      queueDepth.decrementAndGet();
+    }
+    return queued;
+  }
+
+  @Override
+  public void dispatchMessage(Message msg) {
+    queueDepth.decrementAndGet();
+    super.dispatchMessage(msg);
+  }
+
+  @Override
+  public int getQueueDepth() {
+    return Math.max(0, queueDepth.get());
+  }
+
+  @Override
+  public int getMaximumQueueDepth() {
+    return maximumQueueDepth.get();
+  }
+
   /**
    * If the reference is valid, it invokes {@link #handleMessage(Message, T)}.
    */
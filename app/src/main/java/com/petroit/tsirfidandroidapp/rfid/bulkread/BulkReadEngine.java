@@ -0,0 +1,419 @@
+package com.petroit.tsirfidandroidapp.rfid.bulkread;
+
+import com.petroit.tsirfidandroidapp.rfid.tags.EpcIndex;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagStore;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Reads a memory bank from every tag in a {@link TagStore} a batch at a time
+ * <p>
+ * The EPCs are sorted so tags that share a prefix sit next to each other, a batch is a run of
+ * them and the reader is asked to read every tag whose EPC starts with the run's common prefix,
+ * in bits. A run is only ended where the next EPC leaves the prefix so the mask does not
+ * select the targets that follow it, a batch of one selects the whole EPC. A tag that does
+ * not answer is tried again in a later batch after a delay that doubles with each attempt and
+ * is given up on after the last one. Any target that answers is taken, whichever batch it was
+ * asked for in.
+ * <p>
+ * The reader is never called with the lock held, it may report tags on another thread.
+ */
+public final class BulkReadEngine
+{
+    /**
+     * The reader operation, returns once the reader has answered or given up
+     */
+    public interface Station
+    {
+        /**
+         * Read the memory of every tag whose EPC starts with the mask
+         *
+         * @param mask the leading EPC bits of the tags to read, the bits after the mask are zero
+         * @param maskBits the number of mask bits
+         * @param sink told of each tag read, possibly on another thread
+         * @return false if the reader reported an error
+         */
+        boolean read(byte[] mask, int maskBits, Sink sink);
+    }
+
+    /**
+     * Receives the tags read by the station
+     */
+    public interface Sink
+    {
+        /**
+         * @param epc the buffer holding the EPC
+         * @param epcLength the number of EPC bytes
+         * @param data the memory read
+         */
+        void onData(byte[] epc, int epcLength, byte[] data);
+    }
+
+    /**
+     * Told of each target read, on the thread the station reported it
+     */
+    public interface Listener
+    {
+        /**
+         * @param ordinal the tag's ordinal in the store
+         * @param generation the store generation the ordinal belongs to
+         * @param data the memory read
+         */
+        void onRead(int ordinal, int generation, byte[] data);
+    }
+
+    private static final byte PENDING = 0;
+    private static final byte READ = 1;
+    private static final byte MISSING = 2;
+
+    private final Station mStation;
+    private final int mMaxBatch;
+    private final int mMinMaskBits;
+    private final int mMaxAttempts;
+    private final long mBackoffMs;
+    private final long mMaxBackoffMs;
+    private Listener mListener;
+
+    // The targets, addressed by their ordinal in the index
+    private EpcIndex mTargets = new EpcIndex(1, 1);
+    private int[] mStoreOrdinals = new int[0];
+    private byte[] mStates = new byte[0];
+    private int[] mAttempts = new int[0];
+    private long[] mEligibleAt = new long[0];
+    private int mStoreGeneration;
+
+    // Every target sorted by EPC, those read or given up on are skipped
+    private int[] mOrder = new int[0];
+    private int mCursor;
+
+    private final int[] mBatch;
+    private int mBatchSize;
+    private final byte[] mMask = new byte[TagEvent.MAX_EPC_BYTES];
+    private int mMaskBits;
+    private final byte[] mScratch = new byte[TagEvent.MAX_EPC_BYTES];
+
+    private int mReadCount;
+    private int mMissingCount;
+    private long mRetryCount;
+    private long mBatchCount;
+    private long mStrayCount;
+    private long mStartMs;
+    private long mFinishMs;
+
+    private final Sink mSink = new Sink() {
+        @Override
+        public void onData(byte[] epc, int epcLength, byte[] data) {
+            accept(epc, epcLength, data);
+        }
+    };
+
+    /**
+     * @param station the reader operation
+     * @param maxBatch the most targets asked for in one read
+     * @param minMaskBits the shortest common prefix, in bits, a batch of more than one may select by
+     * @param maxAttempts the times a target is asked for before it is given up on
+     * @param backoffMs the wait before a target is asked for again, doubled for each attempt
+     * @param maxBackoffMs the longest wait
+     */
+    public BulkReadEngine(Station station, int maxBatch, int minMaskBits, int maxAttempts, long backoffMs, long maxBackoffMs)
+    {
+        if( maxBatch < 1 || minMaskBits < 1 || maxAttempts < 1 || backoffMs < 0 || maxBackoffMs < backoffMs ) {
+            throw new IllegalArgumentException("Invalid batch or retry limits");
+        }
+        mStation = station;
+        mMaxBatch = maxBatch;
+        mMinMaskBits = minMaskBits;
+        mMaxAttempts = maxAttempts;
+        mBackoffMs = backoffMs;
+        mMaxBackoffMs = maxBackoffMs;
+        mBatch = new int[maxBatch];
+    }
+
+    public synchronized void setListener(Listener listener) { mListener = listener; }
+
+    /**
+     * Make every tag in the store a target, replacing any previous targets
+     *
+     * @param store the tags to read
+     * @param nowMs the time now in ms, for the throughput
+     * @return the number of targets
+     */
+    public synchronized int load(TagStore store, long nowMs)
+    {
+        byte[] epc = mScratch;
+        int count;
+        EpcIndex targets;
+        int[] storeOrdinals;
+        synchronized( store ) {
+            count = store.size();
+            mStoreGeneration = store.getGeneration();
+            targets = new EpcIndex(Math.max(count, 1), Math.max(count, 1));
+            storeOrdinals = new int[count];
+            for( int ordinal = 0; ordinal < count; ordinal++ ) {
+                storeOrdinals[targets.add(epc, store.getEpc(ordinal, epc), 0)] = ordinal;
+            }
+        }
+        mTargets = targets;
+        mStoreOrdinals = storeOrdinals;
+        mStates = new byte[count];
+        mAttempts = new int[count];
+        mEligibleAt = new long[count];
+
+        // Sorted once, batches are then runs of neighbours
+        final EpcIndex index = targets;
+        Integer[] sorted = new Integer[count];
+        for( int i = 0; i < count; i++ ) {
+            sorted[i] = i;
+        }
+        final byte[] a = new byte[TagEvent.MAX_EPC_BYTES];
+        final byte[] b = new byte[TagEvent.MAX_EPC_BYTES];
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer x, Integer y) {
+                return compareEpcs(a, index.getEpc(x, a), b, index.getEpc(y, b));
+            }
+        });
+        mOrder = new int[count];
+        for( int i = 0; i < count; i++ ) {
+            mOrder[i] = sorted[i];
+        }
+        mCursor = 0;
+
+        mReadCount = 0;
+        mMissingCount = 0;
+        mRetryCount = 0;
+        mBatchCount = 0;
+        mStrayCount = 0;
+        mStartMs = nowMs;
+        mFinishMs = count == 0 ? nowMs : -1;
+        return count;
+    }
+
+    /**
+     * Read the next batch of targets that are due
+     *
+     * @param nowMs the time now in ms
+     * @return the number of targets asked for, 0 if none are due
+     */
+    public int runBatch(long nowMs)
+    {
+        int asked;
+        synchronized( this ) {
+            if( !selectBatch(nowMs) ) {
+                return 0;
+            }
+            mBatchCount++;
+            asked = mBatchSize;
+        }
+        boolean answered = mStation.read(mMask, mMaskBits, mSink);
+        synchronized( this ) {
+            finishBatch(answered, nowMs);
+        }
+        return asked;
+    }
+
+    /**
+     * @param nowMs the time now in ms
+     * @return the ms until a target is due, 0 if one is due now or -1 if every target has been read or given up on
+     */
+    public synchronized long getDelay(long nowMs)
+    {
+        long earliest = Long.MAX_VALUE;
+        for( int target = 0; target < mStates.length; target++ ) {
+            if( mStates[target] == PENDING ) {
+                earliest = Math.min(earliest, mEligibleAt[target]);
+            }
+        }
+        return earliest == Long.MAX_VALUE ? -1 : Math.max(0, earliest - nowMs);
+    }
+
+    public synchronized boolean isFinished() { return mReadCount + mMissingCount == mStates.length; }
+
+    public synchronized int getTargetCount() { return mStates.length; }
+
+    public synchronized int getReadCount() { return mReadCount; }
+
+    /**
+     * @return the number of targets given up on
+     */
+    public synchronized int getMissingCount() { return mMissingCount; }
+
+    /**
+     * @return the number of times a target was put back to be asked for again
+     */
+    public synchronized long getRetryCount() { return mRetryCount; }
+
+    public synchronized long getBatchCount() { return mBatchCount; }
+
+    /**
+     * @return the number of tags that answered but were not targets
+     */
+    public synchronized long getStrayCount() { return mStrayCount; }
+
+    /**
+     * @param nowMs the time now in ms
+     * @return the targets read per second since the load, up to when the last was done with
+     */
+    public synchronized double getTagsPerSecond(long nowMs)
+    {
+        long elapsedMs = (mFinishMs >= 0 ? mFinishMs : nowMs) - mStartMs;
+        return elapsedMs > 0 ? mReadCount * 1000.0 / elapsedMs : 0;
+    }
+
+    /**
+     * Append the progress e.g. "Read 120/500  missing 3  retries 12  85 tags/s"
+     */
+    public synchronized void appendTo(StringBuilder sb, long nowMs)
+    {
+        sb.append("Read ").append(mReadCount).append('/').append(mStates.length);
+        sb.append("  missing ").append(mMissingCount);
+        sb.append("  retries ").append(mRetryCount);
+        sb.append("  ").append(Math.round(getTagsPerSecond(nowMs))).append(" tags/s");
+    }
+
+    // The first due target from the cursor on and the neighbours that share a prefix with it.
+    // Along the sorted order the prefix shared with the first target only gets shorter, the run
+    // may end before a target that shares less of it than the run does
+    private boolean selectBatch(long nowMs)
+    {
+        int size = mOrder.length;
+        for( int pass = 0; pass < 2 && (mCursor >= size || !isDue(mOrder[mCursor], nowMs)); pass++ ) {
+            while( mCursor < size && !isDue(mOrder[mCursor], nowMs) ) {
+                mCursor++;
+            }
+            if( mCursor >= size ) {
+                mCursor = 0;
+            }
+        }
+        if( mCursor >= size || !isDue(mOrder[mCursor], nowMs) ) {
+            return false;
+        }
+
+        int first = mOrder[mCursor];
+        int firstBits = mTargets.getEpc(first, mMask) * 8;
+        int runLength = 1;
+        int runBits = firstBits;
+        int common = firstBits;
+        int length = 1;
+        for( ; mCursor + length < size && length <= mMaxBatch; length++ ) {
+            int next = commonBits(mMask, firstBits, mScratch, mTargets.getEpc(mOrder[mCursor + length], mScratch) * 8);
+            if( next < common && common >= mMinMaskBits ) {
+                runLength = length;
+                runBits = common;
+            }
+            common = next;
+            if( common < mMinMaskBits ) {
+                break;
+            }
+        }
+        if( mCursor + length == size && length <= mMaxBatch && common >= mMinMaskBits ) {
+            // The run reaches the last target
+            runLength = length;
+            runBits = common;
+        }
+
+        // Targets in the run that are read or not yet due are covered by the mask anyway
+        mBatchSize = 0;
+        for( int i = mCursor; i < mCursor + runLength; i++ ) {
+            if( isDue(mOrder[i], nowMs) ) {
+                mBatch[mBatchSize++] = mOrder[i];
+            }
+        }
+        mCursor += runLength;
+        mMaskBits = runBits;
+        clearBitsFrom(mMask, runBits);
+        return true;
+    }
+
+    private void finishBatch(boolean answered, long nowMs)
+    {
+        for( int i = 0; i < mBatchSize; i++ ) {
+            int target = mBatch[i];
+            if( mStates[target] != PENDING ) {
+                continue;
+            }
+            // Not answering and a reader error are treated alike
+            if( ++mAttempts[target] >= mMaxAttempts ) {
+                mStates[target] = MISSING;
+                mMissingCount++;
+            } else {
+                long backoff = mBackoffMs << Math.min(mAttempts[target] - 1, 30);
+                mEligibleAt[target] = nowMs + Math.min(backoff, mMaxBackoffMs);
+                mRetryCount++;
+            }
+        }
+        mBatchSize = 0;
+        if( mFinishMs < 0 && isFinished() ) {
+            mFinishMs = nowMs;
+        }
+    }
+
+    private void accept(byte[] epc, int epcLength, byte[] data)
+    {
+        Listener listener;
+        int ordinal;
+        int generation;
+        synchronized( this ) {
+            int target = mTargets.find(epc, epcLength);
+            if( target < 0 ) {
+                mStrayCount++;
+                return;
+            }
+            if( data == null || mStates[target] != PENDING ) {
+                return;
+            }
+            mStates[target] = READ;
+            mReadCount++;
+            listener = mListener;
+            ordinal = mStoreOrdinals[target];
+            generation = mStoreGeneration;
+        }
+        if( listener != null ) {
+            listener.onRead(ordinal, generation, data);
+        }
+    }
+
+    private boolean isDue(int target, long nowMs)
+    {
+        return mStates[target] == PENDING && mEligibleAt[target] <= nowMs;
+    }
+
+    private static int commonBits(byte[] a, int aBits, byte[] b, int bBits)
+    {
+        int bytes = Math.min(aBits, bBits) / 8;
+        for( int i = 0; i < bytes; i++ ) {
+            int difference = (a[i] ^ b[i]) & 0xff;
+            if( difference != 0 ) {
+                return i * 8 + Integer.numberOfLeadingZeros(difference) - 24;
+            }
+        }
+        return bytes * 8;
+    }
+
+    private static void clearBitsFrom(byte[] data, int bit)
+    {
+        int index = bit / 8;
+        if( bit % 8 != 0 ) {
+            data[index] &= (byte)(0xff00 >>> (bit % 8));
+            index++;
+        }
+        for( ; index < data.length; index++ ) {
+            data[index] = 0;
+        }
+    }
+
+    // Unsigned byte order, a prefix sorts before the longer EPC
+    private static int compareEpcs(byte[] a, int aLength, byte[] b, int bLength)
+    {
+        int length = Math.min(aLength, bLength);
+        for( int i = 0; i < length; i++ ) {
+            int difference = (a[i] & 0xff) - (b[i] & 0xff);
+            if( difference != 0 ) {
+                return difference;
+            }
+        }
+        return aLength - bLength;
+    }
+}
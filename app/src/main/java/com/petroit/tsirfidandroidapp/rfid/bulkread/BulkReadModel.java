@@ -0,0 +1,183 @@
+package com.petroit.tsirfidandroidapp.rfid.bulkread;
+
+import com.petroit.tsirfidandroidapp.rfid.ModelBase;
+import com.petroit.tsirfidandroidapp.rfid.ModelException;
+import com.petroit.tsirfidandroidapp.rfid.ModelTaskEngine;
+import com.petroit.tsirfidandroidapp.rfid.tags.HexCodec;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagStore;
+import com.uk.tsl.rfid.asciiprotocol.commands.ReadTransponderCommand;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.Databank;
+import com.uk.tsl.rfid.asciiprotocol.responders.ITransponderReceivedDelegate;
+import com.uk.tsl.rfid.asciiprotocol.responders.TransponderData;
+
+/**
+ * Reads the TID or user memory of every tag already in a {@link TagStore} and adds it to the
+ * tag's record
+ * <p>
+ * The tags are read in batches by a {@link BulkReadEngine}, each batch is one
+ * ReadTransponderCommand selecting the batch's common EPC prefix and is a separate task so other
+ * tasks are not held up. The progress is reported to the client as messages and the store's
+ * changes with TAGS_CHANGED_NOTIFICATION, each at most every half second.
+ */
+public class BulkReadModel extends ModelBase
+{
+    // A batch is read in one inventory round, larger batches take several
+    private final static int sMaxBatch = 32;
+    // Shorter prefixes select too many tags that are not asked for
+    private final static int sMinMaskBits = 32;
+    private final static int sMaxAttempts = 4;
+    private final static long sBackoffMs = 250;
+    private final static long sMaxBackoffMs = 2000;
+    private final static long sProgressIntervalMs = 500;
+
+    private final BulkReadEngine mEngine;
+    private final ReadTransponderCommand mReadCommand = ReadTransponderCommand.synchronousCommand();
+    private volatile boolean mRunning;
+    private TagStore mStore;
+    private boolean mTid;
+    private long mLastProgressMs;
+    private final StringBuilder mProgress = new StringBuilder(64);
+
+    // The sink of the batch being read and the EPC of the tag being reported
+    private BulkReadEngine.Sink mSink;
+    private final byte[] mEpc = new byte[TagEvent.MAX_EPC_BYTES];
+    private final StringBuilder mSelectData = new StringBuilder(2 * TagEvent.MAX_EPC_BYTES);
+
+    public BulkReadModel()
+    {
+        mEngine = new BulkReadEngine(new BulkReadEngine.Station() {
+            @Override
+            public boolean read(byte[] mask, int maskBits, BulkReadEngine.Sink sink) {
+                mSelectData.setLength(0);
+                HexCodec.append(mSelectData, mask, 0, (maskBits + 7) / 8);
+                mReadCommand.setSelectLength(maskBits);
+                mReadCommand.setSelectData(mSelectData.toString());
+                mSink = sink;
+                getCommander().executeCommand(mReadCommand);
+                mSink = null;
+                return mReadCommand.isSuccessful();
+            }
+        }, sMaxBatch, sMinMaskBits, sMaxAttempts, sBackoffMs, sMaxBackoffMs);
+
+        mEngine.setListener(new BulkReadEngine.Listener() {
+            @Override
+            public void onRead(int ordinal, int generation, byte[] data) {
+                mStore.setBankData(ordinal, generation, mTid, data);
+            }
+        });
+
+        mReadCommand.setSelectBank(Databank.ELECTRONIC_PRODUCT_CODE);
+        mReadCommand.setSelectOffset(TagEvent.EPC_OFFSET_BITS);
+        mReadCommand.setTransponderReceivedDelegate(new ITransponderReceivedDelegate() {
+            @Override
+            public void transponderReceived(TransponderData transponder, boolean moreAvailable) {
+                BulkReadEngine.Sink sink = mSink;
+                String epc = transponder.getEpc();
+                int length = epc == null ? -1 : HexCodec.parse(epc, mEpc);
+                if( sink != null && length >= 0 ) {
+                    sink.onData(mEpc, length, transponder.getReadData());
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the engine, for the progress
+     */
+    public BulkReadEngine getEngine() { return mEngine; }
+
+    public boolean isRunning() { return mRunning; }
+
+    /**
+     * Read a bank from every tag in the store
+     *
+     * @param store the tags to read and where the memory is added
+     * @param bank TRANSPONDER_IDENTIFIER or USER
+     * @param offset the first word to read
+     * @param length the number of words to read
+     * @param accessPassword the access password as 8 hex digits or null for none
+     */
+    public void start(TagStore store, Databank bank, int offset, int length, String accessPassword)
+    {
+        if( bank != Databank.TRANSPONDER_IDENTIFIER && bank != Databank.USER ) {
+            throw new IllegalArgumentException("Only the TID and user banks are read");
+        }
+        if( mRunning || !getCommander().isConnected() ) {
+            return;
+        }
+        mStore = store;
+        mTid = bank == Databank.TRANSPONDER_IDENTIFIER;
+        mReadCommand.setBank(bank);
+        mReadCommand.setOffset(offset);
+        mReadCommand.setLength(length);
+        mReadCommand.setAccessPassword(accessPassword);
+
+        long now = System.currentTimeMillis();
+        mEngine.load(store, now);
+        mLastProgressMs = now;
+        mRunning = true;
+        readNext();
+    }
+
+    public void stop()
+    {
+        mRunning = false;
+    }
+
+    private void readNext()
+    {
+        try {
+            performTask(mReadTask, ModelTaskEngine.PRIORITY_LOW);
+        } catch (ModelException e) {
+            mRunning = false;
+            sendErrorNotification(null, e.getMessage());
+        }
+    }
+
+    private final Runnable mReadTask = new Runnable() {
+        @Override
+        public void run() {
+            if( !mRunning || !getCommander().isConnected() ) {
+                finish();
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if( mEngine.runBatch(now) == 0 ) {
+                long delay = mEngine.getDelay(now);
+                if( delay < 0 ) {
+                    finish();
+                    return;
+                }
+                try {
+                    // Every target left is waiting to be tried again
+                    Thread.sleep(Math.min(delay, sMaxBackoffMs));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    finish();
+                    return;
+                }
+            } else if( now - mLastProgressMs >= sProgressIntervalMs ) {
+                mLastProgressMs = now;
+                sendProgress(now);
+            }
+            readNext();
+        }
+    };
+
+    private void finish()
+    {
+        mRunning = false;
+        sendProgress(System.currentTimeMillis());
+    }
+
+    private void sendProgress(long nowMs)
+    {
+        mProgress.setLength(0);
+        mEngine.appendTo(mProgress, nowMs);
+        if( mHandler != null ) {
+            mHandler.sendMessage(mHandler.obtainMessage(TAGS_CHANGED_NOTIFICATION));
+        }
+        sendMessageNotification(mProgress.toString());
+    }
+}
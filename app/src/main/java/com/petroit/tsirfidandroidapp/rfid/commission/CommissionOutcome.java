@@ -0,0 +1,28 @@
+package com.petroit.tsirfidandroidapp.rfid.commission;
+
+/**
+ * What became of one attempt to commission the tag nearest the reader
+ */
+public enum CommissionOutcome
+{
+    // Written, read back and locked if locking was asked for
+    COMMISSIONED,
+    // No tag answered
+    NO_TAG,
+    // The nearest tag is the one just commissioned, it has not been taken away yet
+    ALREADY_COMMISSIONED,
+    // No job, or every serial of the job has been used
+    NO_SERIAL,
+    WRITE_FAILED,
+    // The EPC read back was not the one written
+    VERIFY_FAILED,
+    LOCK_FAILED;
+
+    /**
+     * @return true if a serial was used, whether or not the tag ended up with it
+     */
+    public boolean usedSerial()
+    {
+        return this == COMMISSIONED || this == WRITE_FAILED || this == VERIFY_FAILED || this == LOCK_FAILED;
+    }
+}
@@ -0,0 +1,60 @@
+package com.petroit.tsirfidandroidapp.rfid.commission;
+
+import com.petroit.tsirfidandroidapp.rfid.gs1.Sgtin96Encoder;
+
+/**
+ * The product being commissioned and how its EPCs are made
+ * <p>
+ * Instances are immutable.
+ */
+public final class CommissioningJob
+{
+    private final String mGtin;
+    private final int mCompanyPrefixDigits;
+    private final int mFilter;
+    private final long mFirstSerial;
+    private final String mLockPayload;
+
+    /**
+     * @param gtin a GTIN-8, 12, 13 or 14 including its check digit, e.g. scanned from the product
+     * @param companyPrefixDigits the length of the GS1 company prefix, 6 to 12
+     * @param filter the SGTIN filter value, e.g. 1 for a point of sale item
+     * @param firstSerial the serial of the first tag
+     * @param lockPayload the LockCommand payload applied after the write, or null not to lock
+     * @throws IllegalArgumentException if the GTIN, prefix length, filter or serial is not valid
+     */
+    public CommissioningJob(String gtin, int companyPrefixDigits, int filter, long firstSerial, String lockPayload)
+    {
+        // Fail now rather than on the first tag
+        Sgtin96Encoder.encode(gtin, companyPrefixDigits, filter, firstSerial, new byte[Sgtin96Encoder.EPC_BYTES]);
+        mGtin = gtin;
+        mCompanyPrefixDigits = companyPrefixDigits;
+        mFilter = filter;
+        mFirstSerial = firstSerial;
+        mLockPayload = lockPayload;
+    }
+
+    public String getGtin() { return mGtin; }
+
+    public int getCompanyPrefixDigits() { return mCompanyPrefixDigits; }
+
+    public int getFilter() { return mFilter; }
+
+    public long getFirstSerial() { return mFirstSerial; }
+
+    /**
+     * @return the LockCommand payload or null not to lock
+     */
+    public String getLockPayload() { return mLockPayload; }
+
+    /**
+     * Encode the EPC with the given serial
+     *
+     * @param serial the serial, from the first serial to {@link Sgtin96Encoder#MAXIMUM_SERIAL}
+     * @param dest receives the 12 bytes of the EPC
+     */
+    public void encode(long serial, byte[] dest)
+    {
+        Sgtin96Encoder.encode(mGtin, mCompanyPrefixDigits, mFilter, serial, dest);
+    }
+}
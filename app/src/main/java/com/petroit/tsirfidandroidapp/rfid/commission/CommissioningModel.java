@@ -0,0 +1,308 @@
+package com.petroit.tsirfidandroidapp.rfid.commission;
+
+import com.petroit.tsirfidandroidapp.rfid.ModelBase;
+import com.petroit.tsirfidandroidapp.rfid.ModelException;
+import com.petroit.tsirfidandroidapp.rfid.ModelTaskEngine;
+import com.petroit.tsirfidandroidapp.rfid.gs1.Sgtin96Encoder;
+import com.petroit.tsirfidandroidapp.rfid.tags.HexCodec;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.uk.tsl.rfid.asciiprotocol.commands.BarcodeCommand;
+import com.uk.tsl.rfid.asciiprotocol.commands.LockCommand;
+import com.uk.tsl.rfid.asciiprotocol.commands.ReadTransponderCommand;
+import com.uk.tsl.rfid.asciiprotocol.commands.WriteTransponderCommand;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.Databank;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.ImpinjBlockWriteMode;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.QAlgorithm;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.TriState;
+import com.uk.tsl.rfid.asciiprotocol.responders.IBarcodeReceivedDelegate;
+import com.uk.tsl.rfid.asciiprotocol.responders.ITransponderReceivedDelegate;
+import com.uk.tsl.rfid.asciiprotocol.responders.TransponderData;
+
+import java.util.Locale;
+
+/**
+ * A commissioning station: scanned GTINs are sent to the client as barcodes and each tag put in
+ * front of the reader is given the next SGTIN-96 of the job
+ * <p>
+ * Tags are commissioned one after another on the model's task thread by a
+ * {@link CommissioningPipeline}, each attempt is a separate task so other tasks are not held up.
+ * The reader commands are synchronous and reused. Writes use the Impinj block write where the
+ * tag supports it and word writes otherwise. Every attempt is reported to the client as a
+ * message.
+ */
+public class CommissioningModel extends ModelBase
+{
+    private final static int sPcWordOffset = 1;
+    private final static int sEpcWordOffset = 2;
+    // Each step is tried this many times before the tag is set aside
+    private final static int sMaxTries = 3;
+    private final static int sRateCapacity = 1024;
+    // The wait before looking again when there is no new tag in front of the reader
+    private final static long sIdlePollMs = 100;
+
+    private final CommissioningPipeline mPipeline;
+    private final BarcodeCommand mBarcodeResponder;
+    private boolean mEnabled;
+    private volatile boolean mRunning;
+    private String mAccessPassword;
+
+    public CommissioningModel()
+    {
+        mPipeline = new CommissioningPipeline(new ReaderStation(), sMaxTries, sRateCapacity);
+        mPipeline.setListener(new CommissioningPipeline.Listener() {
+            @Override
+            public void onAttempt(CommissionOutcome outcome, long serial, String epc) {
+                if( outcome != CommissionOutcome.NO_TAG && outcome != CommissionOutcome.ALREADY_COMMISSIONED ) {
+                    sendMessageNotification(serial < 0 ? outcome.toString() : String.format(Locale.US, "%s %d %s", outcome, serial, epc));
+                }
+            }
+        });
+
+        // The GTIN of the product is scanned from its barcode
+        mBarcodeResponder = new BarcodeCommand();
+        mBarcodeResponder.setCaptureNonLibraryResponses(true);
+        mBarcodeResponder.setUseEscapeCharacter(TriState.YES);
+        mBarcodeResponder.setBarcodeReceivedDelegate(new IBarcodeReceivedDelegate() {
+            @Override
+            public void barcodeReceived(String barcode) {
+                sendBarcodeNotification(barcode);
+            }
+        });
+    }
+
+    public boolean enabled() { return mEnabled; }
+
+    public void setEnabled(boolean state)
+    {
+        if( state != mEnabled ) {
+            mEnabled = state;
+            if( mEnabled ) {
+                getCommander().addResponder(mBarcodeResponder);
+            } else {
+                stop();
+                getCommander().removeResponder(mBarcodeResponder);
+            }
+        }
+    }
+
+    /**
+     * @return the pipeline, for the job and the statistics
+     */
+    public CommissioningPipeline getPipeline() { return mPipeline; }
+
+    /**
+     * @param password the access password used to lock, as 8 hex digits, or null for none
+     */
+    public void setAccessPassword(String password) { mAccessPassword = password; }
+
+    public boolean isRunning() { return mRunning; }
+
+    /**
+     * Commission each tag put in front of the reader until stopped
+     */
+    public void start()
+    {
+        if( !mRunning && getCommander().isConnected() ) {
+            mRunning = true;
+            commissionNext();
+        }
+    }
+
+    public void stop()
+    {
+        mRunning = false;
+    }
+
+    private void commissionNext()
+    {
+        try {
+            performTask(mCommissionTask, ModelTaskEngine.PRIORITY_LOW);
+        } catch (ModelException e) {
+            mRunning = false;
+            sendErrorNotification(null, e.getMessage());
+        }
+    }
+
+    private final Runnable mCommissionTask = new Runnable() {
+        @Override
+        public void run() {
+            if( !mRunning || !getCommander().isConnected() ) {
+                mRunning = false;
+                return;
+            }
+            CommissionOutcome outcome = mPipeline.commissionNext(System.currentTimeMillis());
+            if( outcome == CommissionOutcome.NO_SERIAL ) {
+                mRunning = false;
+                return;
+            }
+            // A tag whose lock failed is tried again, but not in a tight loop
+            if( outcome == CommissionOutcome.NO_TAG || outcome == CommissionOutcome.ALREADY_COMMISSIONED
+                    || outcome == CommissionOutcome.LOCK_FAILED ) {
+                try {
+                    Thread.sleep(sIdlePollMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    mRunning = false;
+                    return;
+                }
+            }
+            if( mRunning ) {
+                commissionNext();
+            }
+        }
+    };
+
+    /**
+     * @param data the data of a read of the PC word
+     * @return the PC word, with the UMI, XI, T and AFI bits as well as the length, or -1 if not read
+     */
+    static int pcOf(byte[] data)
+    {
+        if( data == null || data.length < 2 ) {
+            return -1;
+        }
+        return (data[0] & 0xff) << 8 | (data[1] & 0xff);
+    }
+
+    // The pipeline's reader operations as synchronous commands, called on the task thread
+    private final class ReaderStation implements CommissioningPipeline.Station
+    {
+        private final ReadTransponderCommand mNearestCommand = ReadTransponderCommand.synchronousCommand();
+        private final WriteTransponderCommand mWriteCommand = WriteTransponderCommand.synchronousCommand();
+        private final ReadTransponderCommand mVerifyCommand = ReadTransponderCommand.synchronousCommand();
+        private final LockCommand mLockCommand = LockCommand.synchronousCommand();
+        private final StringBuilder mSelectData = new StringBuilder(124);
+        // The EPC alone, or after the PC word when the EPC length changes
+        private final byte[] mEpcData = new byte[Sgtin96Encoder.EPC_BYTES];
+        private final byte[] mPcEpcData = new byte[2 + Sgtin96Encoder.EPC_BYTES];
+
+        // The first transponder of the last response
+        private TransponderData mTransponder;
+
+        private final ITransponderReceivedDelegate mTransponderDelegate = new ITransponderReceivedDelegate() {
+            @Override
+            public void transponderReceived(TransponderData transponder, boolean moreAvailable) {
+                if( mTransponder == null ) {
+                    mTransponder = transponder;
+                }
+            }
+        };
+
+        ReaderStation()
+        {
+            // Only the strongest tag reports its EPC, and its PC word as the data read
+            mNearestCommand.setFilterStrongest(TriState.YES);
+            mNearestCommand.setBank(Databank.ELECTRONIC_PRODUCT_CODE);
+            mNearestCommand.setOffset(sPcWordOffset);
+            mNearestCommand.setLength(1);
+            mNearestCommand.setTransponderReceivedDelegate(mTransponderDelegate);
+
+            mWriteCommand.setBank(Databank.ELECTRONIC_PRODUCT_CODE);
+            mWriteCommand.setImpinjBlockWriteMode(ImpinjBlockWriteMode.AUTO);
+            mWriteCommand.setTransponderReceivedDelegate(mTransponderDelegate);
+
+            mVerifyCommand.setBank(Databank.ELECTRONIC_PRODUCT_CODE);
+            mVerifyCommand.setOffset(sEpcWordOffset);
+            mVerifyCommand.setLength(Sgtin96Encoder.EPC_BYTES / 2);
+            mVerifyCommand.setTransponderReceivedDelegate(mTransponderDelegate);
+
+            mLockCommand.setTransponderReceivedDelegate(mTransponderDelegate);
+
+            // The selected tag is the only one to answer so it does so in the first slot
+            mWriteCommand.setQAlgorithm(QAlgorithm.FIXED);
+            mWriteCommand.setQValue(0);
+            mVerifyCommand.setQAlgorithm(QAlgorithm.FIXED);
+            mVerifyCommand.setQValue(0);
+            mLockCommand.setQAlgorithm(QAlgorithm.FIXED);
+            mLockCommand.setQValue(0);
+        }
+
+        @Override
+        public int readNearest(byte[] epc)
+        {
+            mTransponder = null;
+            getCommander().executeCommand(mNearestCommand);
+            TransponderData transponder = mTransponder;
+            if( !mNearestCommand.isSuccessful() || transponder == null || transponder.getEpc() == null ) {
+                return -1;
+            }
+            if( HexCodec.parse(transponder.getEpc(), epc) < 0 ) {
+                return -1;
+            }
+            return pcOf(transponder.getReadData());
+        }
+
+        @Override
+        public boolean write(byte[] currentEpc, int currentLength, int pc, byte[] epc, int length)
+        {
+            byte[] data;
+            if( pc >= 0 ) {
+                data = mPcEpcData;
+                data[0] = (byte)(pc >>> 8);
+                data[1] = (byte)pc;
+                System.arraycopy(epc, 0, data, 2, length);
+            } else {
+                data = mEpcData;
+                System.arraycopy(epc, 0, data, 0, length);
+            }
+            int words = data.length / 2;
+
+            select(currentEpc, currentLength);
+            mWriteCommand.setSelectBank(Databank.ELECTRONIC_PRODUCT_CODE);
+            mWriteCommand.setSelectOffset(TagEvent.EPC_OFFSET_BITS);
+            mWriteCommand.setSelectLength(currentLength * 8);
+            mWriteCommand.setSelectData(mSelectData.toString());
+            mWriteCommand.setOffset(pc >= 0 ? sPcWordOffset : sEpcWordOffset);
+            mWriteCommand.setLength(words);
+            mWriteCommand.setData(data);
+
+            mTransponder = null;
+            getCommander().executeCommand(mWriteCommand);
+            TransponderData transponder = mTransponder;
+            return mWriteCommand.isSuccessful() && transponder != null && transponder.getWordsWritten() == words;
+        }
+
+        @Override
+        public boolean readBack(byte[] epc, int length, byte[] dest)
+        {
+            select(epc, length);
+            mVerifyCommand.setSelectBank(Databank.ELECTRONIC_PRODUCT_CODE);
+            mVerifyCommand.setSelectOffset(TagEvent.EPC_OFFSET_BITS);
+            mVerifyCommand.setSelectLength(length * 8);
+            mVerifyCommand.setSelectData(mSelectData.toString());
+
+            mTransponder = null;
+            getCommander().executeCommand(mVerifyCommand);
+            TransponderData transponder = mTransponder;
+            byte[] data = transponder == null ? null : transponder.getReadData();
+            if( !mVerifyCommand.isSuccessful() || data == null || data.length < dest.length ) {
+                return false;
+            }
+            System.arraycopy(data, 0, dest, 0, dest.length);
+            return true;
+        }
+
+        @Override
+        public boolean lock(byte[] epc, int length, String payload)
+        {
+            select(epc, length);
+            mLockCommand.setSelectBank(Databank.ELECTRONIC_PRODUCT_CODE);
+            mLockCommand.setSelectOffset(TagEvent.EPC_OFFSET_BITS);
+            mLockCommand.setSelectLength(length * 8);
+            mLockCommand.setSelectData(mSelectData.toString());
+            mLockCommand.setLockPayload(payload);
+            mLockCommand.setAccessPassword(mAccessPassword);
+
+            mTransponder = null;
+            getCommander().executeCommand(mLockCommand);
+            TransponderData transponder = mTransponder;
+            return mLockCommand.isSuccessful() && transponder != null && transponder.didLock();
+        }
+
+        private void select(byte[] epc, int length)
+        {
+            mSelectData.setLength(0);
+            HexCodec.append(mSelectData, epc, 0, length);
+        }
+    }
+}
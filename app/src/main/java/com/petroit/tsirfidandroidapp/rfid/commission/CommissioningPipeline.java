@@ -0,0 +1,347 @@
+package com.petroit.tsirfidandroidapp.rfid.commission;
+
+import com.petroit.tsirfidandroidapp.rfid.gs1.Sgtin96Encoder;
+import com.petroit.tsirfidandroidapp.rfid.tags.HexCodec;
+
+import java.util.Arrays;
+
+/**
+ * Commissions tags one at a time: the tag nearest the reader is given the next SGTIN-96 of the
+ * job, read back to verify it and optionally locked
+ * <p>
+ * Each step is tried a fixed number of times and a tag that still fails is counted and left for
+ * the operator to set aside, the next call moves on to whichever tag is then nearest. Before a
+ * write is tried again the tag is read afresh since a failed write may have changed some words. A serial
+ * is used once a write has been attempted, even if it failed, since the tag may hold part of it,
+ * so no two tags are ever given the same EPC. The tag just commissioned is recognised if it is
+ * still nearest and is not written again. A tag is only commissioned once it is locked, a tag
+ * whose lock failed keeps its serial and only the lock is tried again while it is nearest.
+ * <p>
+ * The reader is reached through a {@link Station} whose calls block until the reader has
+ * answered. Commissioning is done on one thread, the statistics may be read from any thread so
+ * access is synchronized.
+ */
+public final class CommissioningPipeline
+{
+    // The length field of the PC word, in words of EPC
+    private static final int sPcLengthShift = 11;
+    private static final int sPcLengthMask = 0x1f << sPcLengthShift;
+    private static final int sEpcWords = Sgtin96Encoder.EPC_BYTES / 2;
+
+    /**
+     * The reader operations, each returns once the reader has answered or given up
+     */
+    public interface Station
+    {
+        /**
+         * Read the tag with the strongest signal
+         *
+         * @param epc receives the EPC, at least 62 bytes
+         * @return the tag's PC word, its length field gives the EPC length, or -1 if no tag answered
+         */
+        int readNearest(byte[] epc);
+
+        /**
+         * Write an EPC to the tag selected by its current EPC
+         *
+         * @param currentEpc the tag's EPC
+         * @param currentLength the number of bytes of the current EPC
+         * @param pc the PC word to write before the EPC, or -1 to leave it unchanged
+         * @param epc the new EPC
+         * @param length the number of bytes of the new EPC
+         * @return true if every word was written
+         */
+        boolean write(byte[] currentEpc, int currentLength, int pc, byte[] epc, int length);
+
+        /**
+         * Read back the EPC of the tag selected by the EPC written
+         *
+         * @param epc the EPC written
+         * @param length the number of bytes of the EPC
+         * @param dest receives the EPC read
+         * @return true if the tag answered
+         */
+        boolean readBack(byte[] epc, int length, byte[] dest);
+
+        /**
+         * Lock the tag selected by its EPC
+         *
+         * @param payload the LockCommand payload
+         * @return true if the tag reported it was locked
+         */
+        boolean lock(byte[] epc, int length, String payload);
+    }
+
+    /**
+     * Told the outcome of each attempt, on the commissioning thread
+     */
+    public interface Listener
+    {
+        /**
+         * @param outcome what became of the attempt
+         * @param serial the serial used or -1 if none was
+         * @param epc the EPC written, as hex, or null if none was
+         */
+        void onAttempt(CommissionOutcome outcome, long serial, String epc);
+    }
+
+    private final Station mStation;
+    private final int mMaxTries;
+    private Listener mListener;
+
+    private CommissioningJob mJob;
+    private long mNextSerial;
+
+    private final byte[] mCurrentEpc = new byte[62];
+    private final byte[] mNewEpc = new byte[Sgtin96Encoder.EPC_BYTES];
+    private final byte[] mReadBack = new byte[Sgtin96Encoder.EPC_BYTES];
+    private final byte[] mLastCommissioned = new byte[Sgtin96Encoder.EPC_BYTES];
+    private boolean mHasLastCommissioned;
+    // The tag written and verified whose lock failed, it is locked again while it stays nearest
+    private final byte[] mAwaitingLock = new byte[Sgtin96Encoder.EPC_BYTES];
+    private boolean mHasAwaitingLock;
+    private long mAwaitingLockSerial;
+    private final StringBuilder mEpcText = new StringBuilder(Sgtin96Encoder.EPC_BYTES * 2);
+
+    // Counted by outcome
+    private final long[] mCounts = new long[CommissionOutcome.values().length];
+    private long mRetryCount;
+
+    // The completion times of the recent commissioned tags, for the rate
+    private final long[] mCompletionTimes;
+    private int mCompletionHead;
+    private int mCompletionCount;
+    private static final long sRateWindowMs = 60 * 1000;
+
+    /**
+     * @param station the reader operations
+     * @param maxTries the times each step is tried before the tag is given up on
+     * @param rateCapacity the most tags counted in the tags per minute window
+     */
+    public CommissioningPipeline(Station station, int maxTries, int rateCapacity)
+    {
+        if( maxTries < 1 || rateCapacity < 1 ) {
+            throw new IllegalArgumentException("The tries and the rate capacity must be positive");
+        }
+        mStation = station;
+        mMaxTries = maxTries;
+        mCompletionTimes = new long[rateCapacity];
+    }
+
+    public synchronized void setListener(Listener listener) { mListener = listener; }
+
+    /**
+     * Start a job, the serials continue from its first serial
+     */
+    public synchronized void setJob(CommissioningJob job)
+    {
+        mJob = job;
+        mNextSerial = job == null ? 0 : job.getFirstSerial();
+        mHasLastCommissioned = false;
+        mHasAwaitingLock = false;
+    }
+
+    public synchronized CommissioningJob getJob() { return mJob; }
+
+    /**
+     * @return the serial the next tag will be given
+     */
+    public synchronized long getNextSerial() { return mNextSerial; }
+
+    /**
+     * Commission the tag nearest the reader
+     *
+     * @param nowMs the time now in ms, for the rate
+     * @return what became of the attempt
+     */
+    public CommissionOutcome commissionNext(long nowMs)
+    {
+        CommissioningJob job;
+        long serial;
+        synchronized( this ) {
+            job = mJob;
+            serial = mNextSerial;
+        }
+        if( job == null || serial > Sgtin96Encoder.MAXIMUM_SERIAL ) {
+            return finish(CommissionOutcome.NO_SERIAL, -1, nowMs);
+        }
+
+        int pc = -1;
+        for( int i = 0; i < mMaxTries && pc < 0; i++ ) {
+            pc = mStation.readNearest(mCurrentEpc);
+            countRetry(i);
+        }
+        if( pc < 0 ) {
+            return finish(CommissionOutcome.NO_TAG, -1, nowMs);
+        }
+        int currentLength = ((pc & sPcLengthMask) >>> sPcLengthShift) * 2;
+        if( mHasLastCommissioned && currentLength == mLastCommissioned.length
+                && equals(mCurrentEpc, mLastCommissioned, currentLength) ) {
+            return finish(CommissionOutcome.ALREADY_COMMISSIONED, -1, nowMs);
+        }
+        if( mHasAwaitingLock && currentLength == mAwaitingLock.length
+                && equals(mCurrentEpc, mAwaitingLock, currentLength) ) {
+            // Already has its serial, only the lock is left
+            System.arraycopy(mAwaitingLock, 0, mNewEpc, 0, mNewEpc.length);
+            return lock(job, mAwaitingLockSerial, nowMs);
+        }
+
+        // The serial is used from here on
+        synchronized( this ) {
+            if( mJob == job ) {
+                mNextSerial = serial + 1;
+            }
+        }
+        job.encode(serial, mNewEpc);
+        // Only a tag of another EPC length needs its PC changed
+        int newPc = currentLength == Sgtin96Encoder.EPC_BYTES ? -1 : (pc & ~sPcLengthMask) | (sEpcWords << sPcLengthShift);
+
+        boolean written = mStation.write(mCurrentEpc, currentLength, newPc, mNewEpc, mNewEpc.length);
+        for( int i = 1; i < mMaxTries && !written; i++ ) {
+            countRetry(i);
+            // The tag may now hold part of the new EPC, or all of it if only the reply was lost
+            pc = mStation.readNearest(mCurrentEpc);
+            if( pc < 0 ) {
+                continue;
+            }
+            currentLength = ((pc & sPcLengthMask) >>> sPcLengthShift) * 2;
+            if( currentLength == mNewEpc.length && equals(mCurrentEpc, mNewEpc, currentLength) ) {
+                written = true;
+            } else {
+                newPc = currentLength == Sgtin96Encoder.EPC_BYTES ? -1 : (pc & ~sPcLengthMask) | (sEpcWords << sPcLengthShift);
+                written = mStation.write(mCurrentEpc, currentLength, newPc, mNewEpc, mNewEpc.length);
+            }
+        }
+        if( !written ) {
+            return finish(CommissionOutcome.WRITE_FAILED, serial, nowMs);
+        }
+
+        boolean verified = false;
+        for( int i = 0; i < mMaxTries && !verified; i++ ) {
+            verified = mStation.readBack(mNewEpc, mNewEpc.length, mReadBack) && Arrays.equals(mNewEpc, mReadBack);
+            countRetry(i);
+        }
+        if( !verified ) {
+            return finish(CommissionOutcome.VERIFY_FAILED, serial, nowMs);
+        }
+        return lock(job, serial, nowMs);
+    }
+
+    // Lock the tag holding mNewEpc if the job asks for it, it only counts as commissioned once locked
+    private CommissionOutcome lock(CommissioningJob job, long serial, long nowMs)
+    {
+        String payload = job.getLockPayload();
+        if( payload != null ) {
+            boolean locked = false;
+            for( int i = 0; i < mMaxTries && !locked; i++ ) {
+                locked = mStation.lock(mNewEpc, mNewEpc.length, payload);
+                countRetry(i);
+            }
+            if( !locked ) {
+                System.arraycopy(mNewEpc, 0, mAwaitingLock, 0, mNewEpc.length);
+                mAwaitingLockSerial = serial;
+                mHasAwaitingLock = true;
+                return finish(CommissionOutcome.LOCK_FAILED, serial, nowMs);
+            }
+        }
+        mHasAwaitingLock = false;
+        System.arraycopy(mNewEpc, 0, mLastCommissioned, 0, mNewEpc.length);
+        mHasLastCommissioned = true;
+        return finish(CommissionOutcome.COMMISSIONED, serial, nowMs);
+    }
+
+    /**
+     * @return the number of attempts with the given outcome
+     */
+    public synchronized long getCount(CommissionOutcome outcome) { return mCounts[outcome.ordinal()]; }
+
+    /**
+     * @return the number of steps that were tried again
+     */
+    public synchronized long getRetryCount() { return mRetryCount; }
+
+    /**
+     * @param nowMs the time now in ms
+     * @return the tags commissioned in the last minute
+     */
+    public synchronized int getTagsPerMinute(long nowMs)
+    {
+        expire(nowMs);
+        return mCompletionCount;
+    }
+
+    public synchronized void resetStatistics()
+    {
+        Arrays.fill(mCounts, 0);
+        mRetryCount = 0;
+        mCompletionHead = 0;
+        mCompletionCount = 0;
+    }
+
+    /**
+     * Append the totals e.g. "Next 1234  42/min  done 1000  failed 3  retries 12"
+     */
+    public synchronized void appendTo(StringBuilder sb, long nowMs)
+    {
+        long failed = mCounts[CommissionOutcome.WRITE_FAILED.ordinal()] + mCounts[CommissionOutcome.VERIFY_FAILED.ordinal()]
+                + mCounts[CommissionOutcome.LOCK_FAILED.ordinal()];
+        sb.append("Next ").append(mNextSerial);
+        sb.append("  ").append(getTagsPerMinute(nowMs)).append("/min");
+        sb.append("  done ").append(mCounts[CommissionOutcome.COMMISSIONED.ordinal()]);
+        sb.append("  failed ").append(failed);
+        sb.append("  retries ").append(mRetryCount);
+    }
+
+    private synchronized void countRetry(int tryIndex)
+    {
+        if( tryIndex > 0 ) {
+            mRetryCount++;
+        }
+    }
+
+    private CommissionOutcome finish(CommissionOutcome outcome, long serial, long nowMs)
+    {
+        Listener listener;
+        synchronized( this ) {
+            mCounts[outcome.ordinal()]++;
+            if( outcome == CommissionOutcome.COMMISSIONED ) {
+                expire(nowMs);
+                if( mCompletionCount == mCompletionTimes.length ) {
+                    mCompletionHead = (mCompletionHead + 1) % mCompletionTimes.length;
+                    mCompletionCount--;
+                }
+                mCompletionTimes[(mCompletionHead + mCompletionCount) % mCompletionTimes.length] = nowMs;
+                mCompletionCount++;
+            }
+            listener = mListener;
+        }
+        if( listener != null ) {
+            String epc = null;
+            if( serial >= 0 ) {
+                mEpcText.setLength(0);
+                HexCodec.append(mEpcText, mNewEpc, 0, mNewEpc.length);
+                epc = mEpcText.toString();
+            }
+            listener.onAttempt(outcome, serial, epc);
+        }
+        return outcome;
+    }
+
+    private void expire(long nowMs)
+    {
+        while( mCompletionCount > 0 && mCompletionTimes[mCompletionHead] <= nowMs - sRateWindowMs ) {
+            mCompletionHead = (mCompletionHead + 1) % mCompletionTimes.length;
+            mCompletionCount--;
+        }
+    }
+
+    private static boolean equals(byte[] a, byte[] b, int length)
+    {
+        for( int i = 0; i < length; i++ ) {
+            if( a[i] != b[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
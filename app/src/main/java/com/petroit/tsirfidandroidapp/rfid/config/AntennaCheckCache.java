@@ -0,0 +1,69 @@
+package com.petroit.tsirfidandroidapp.rfid.config;
+
+/**
+ * Remembers a successful antenna check for a while so each scan does not wait on another
+ * round trip to the reader
+ * <p>
+ * Failed checks are not remembered, the next scan checks again. Call {@link #invalidate()} when
+ * the reader is reset or reconnected.
+ */
+public final class AntennaCheckCache
+{
+    private final long mValidityMs;
+
+    private boolean mPresent;
+    private long mCheckedMs;
+
+    // Statistics
+    private long mCheckCount;
+    private long mHitCount;
+
+    /**
+     * @param validityMs how long a successful check is trusted for
+     */
+    public AntennaCheckCache(long validityMs)
+    {
+        mValidityMs = validityMs;
+    }
+
+    /**
+     * @param nowMs the current time
+     * @return true if the antenna is known to be present, otherwise the caller should check
+     */
+    public synchronized boolean isKnownPresent(long nowMs)
+    {
+        if( mPresent && nowMs - mCheckedMs < mValidityMs ) {
+            mHitCount++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record the result of a check
+     *
+     * @param present true if the reader reported the antenna
+     * @param nowMs the time of the check
+     */
+    public synchronized void record(boolean present, long nowMs)
+    {
+        mCheckCount++;
+        mPresent = present;
+        mCheckedMs = nowMs;
+    }
+
+    public synchronized void invalidate()
+    {
+        mPresent = false;
+    }
+
+    /**
+     * @return the number of checks made of the reader
+     */
+    public synchronized long getCheckCount() { return mCheckCount; }
+
+    /**
+     * @return the number of checks avoided
+     */
+    public synchronized long getHitCount() { return mHitCount; }
+}
@@ -0,0 +1,219 @@
+package com.petroit.tsirfidandroidapp.rfid.config;
+
+/**
+ * Sends the inventory configuration to the reader only when it has changed
+ * <p>
+ * Each request records the configuration wanted. A request that matches what the reader was
+ * last sent, with nothing pending, costs nothing. Otherwise a flush is scheduled once the
+ * requests have been quiet for the debounce interval, so dragging a slider or stepping through
+ * a spinner sends a single command with the final values. A flush that finds the configuration
+ * back where it started sends nothing.
+ * <p>
+ * Commands that carry the full configuration anyway, e.g. each inventory of a scan, should be
+ * reported with {@link #markApplied(ReaderConfiguration)} so a pending flush can be dropped.
+ * After the reader loses its settings, e.g. a factory reset or reconnection, call
+ * {@link #invalidate()} so the next request is always sent.
+ */
+public final class ConfigurationManager
+{
+    /**
+     * Sends a configuration to the reader
+     */
+    public interface Sender
+    {
+        /**
+         * @return false if the configuration could not be sent, e.g. when disconnected
+         */
+        boolean send(ReaderConfiguration configuration);
+    }
+
+    /**
+     * Arranges for {@link #flush(long)} to be called
+     */
+    public interface Scheduler
+    {
+        /**
+         * @param delayMs the time to wait before flushing
+         */
+        void scheduleFlush(long delayMs);
+    }
+
+    private final Sender mSender;
+    private final Scheduler mScheduler;
+    private long mDebounceMs;
+
+    private ReaderConfiguration mApplied;
+    private ReaderConfiguration mPending;
+    private boolean mFlushScheduled;
+    private long mLastRequestMs;
+
+    // Statistics
+    private long mRequestCount;
+    private long mSentCount;
+    private long mUnchangedCount;
+    private long mCoalescedCount;
+
+    /**
+     * @param sender sends the configurations
+     * @param scheduler used to request a flush
+     * @param debounceMs the time without requests before the configuration is sent
+     */
+    public ConfigurationManager(Sender sender, Scheduler scheduler, long debounceMs)
+    {
+        mSender = sender;
+        mScheduler = scheduler;
+        mDebounceMs = debounceMs;
+    }
+
+    public synchronized long getDebounceInterval() { return mDebounceMs; }
+
+    public synchronized void setDebounceInterval(long debounceMs) { mDebounceMs = debounceMs; }
+
+    /**
+     * Ask for the reader to hold the given configuration
+     *
+     * @param configuration the configuration wanted
+     * @param nowMs the current time
+     * @return true if a send is pending, false if the reader already holds the configuration
+     */
+    public synchronized boolean request(ReaderConfiguration configuration, long nowMs)
+    {
+        mRequestCount++;
+        if( !mFlushScheduled && configuration.equals(mApplied) ) {
+            mUnchangedCount++;
+            return false;
+        }
+        if( mFlushScheduled ) {
+            // The pending configuration is superseded
+            mCoalescedCount++;
+        }
+        mPending = configuration;
+        mLastRequestMs = nowMs;
+        if( !mFlushScheduled ) {
+            mFlushScheduled = true;
+            mScheduler.scheduleFlush(mDebounceMs);
+        }
+        return true;
+    }
+
+    /**
+     * Send the pending configuration if the requests have been quiet for long enough, otherwise
+     * schedule another flush
+     *
+     * @param nowMs the current time
+     * @return true if a configuration was sent
+     */
+    public boolean flush(long nowMs)
+    {
+        ReaderConfiguration configuration;
+        synchronized( this ) {
+            if( !mFlushScheduled ) {
+                return false;
+            }
+            long remainingMs = mLastRequestMs + mDebounceMs - nowMs;
+            if( remainingMs > 0 ) {
+                mScheduler.scheduleFlush(remainingMs);
+                return false;
+            }
+            configuration = takePending();
+            if( configuration == null ) {
+                return false;
+            }
+        }
+        return send(configuration);
+    }
+
+    /**
+     * Send the pending configuration, or the given one, straight away if the reader does not
+     * already hold it, e.g. before a scan the reader repeats itself
+     *
+     * @param configuration the configuration wanted
+     * @return true if a configuration was sent
+     */
+    public boolean applyNow(ReaderConfiguration configuration)
+    {
+        synchronized( this ) {
+            mRequestCount++;
+            mPending = configuration;
+            configuration = takePending();
+            if( configuration == null ) {
+                return false;
+            }
+        }
+        return send(configuration);
+    }
+
+    /**
+     * Record that the reader has been sent a configuration by some other command, a pending
+     * flush of the same configuration is dropped
+     */
+    public synchronized void markApplied(ReaderConfiguration configuration)
+    {
+        mApplied = configuration;
+    }
+
+    /**
+     * Forget what the reader holds so the next request is sent
+     */
+    public synchronized void invalidate()
+    {
+        mApplied = null;
+    }
+
+    /**
+     * @return the configuration the reader was last sent or null if unknown
+     */
+    public synchronized ReaderConfiguration getApplied() { return mApplied; }
+
+    /**
+     * @return true while a change is waiting to be sent
+     */
+    public synchronized boolean isFlushScheduled() { return mFlushScheduled; }
+
+    public synchronized long getRequestCount() { return mRequestCount; }
+
+    public synchronized long getSentCount() { return mSentCount; }
+
+    /**
+     * @return the requests and flushes that found the reader already held the configuration
+     */
+    public synchronized long getUnchangedCount() { return mUnchangedCount; }
+
+    /**
+     * @return the requests that replaced a pending configuration before it was sent
+     */
+    public synchronized long getCoalescedCount() { return mCoalescedCount; }
+
+    /**
+     * Append the request and send counts e.g. "config 2 sent / 9 requests"
+     */
+    public synchronized void appendTo(StringBuilder sb)
+    {
+        sb.append("config ").append(mSentCount).append(" sent / ").append(mRequestCount).append(" requests");
+    }
+
+    // Take the pending configuration if it differs from the applied one
+    private ReaderConfiguration takePending()
+    {
+        mFlushScheduled = false;
+        ReaderConfiguration configuration = mPending;
+        mPending = null;
+        if( configuration == null || configuration.equals(mApplied) ) {
+            mUnchangedCount++;
+            return null;
+        }
+        return configuration;
+    }
+
+    private boolean send(ReaderConfiguration configuration)
+    {
+        if( !mSender.send(configuration) ) {
+            return false;
+        }
+        synchronized( this ) {
+            mApplied = configuration;
+            mSentCount++;
+        }
+        return true;
+    }
+}
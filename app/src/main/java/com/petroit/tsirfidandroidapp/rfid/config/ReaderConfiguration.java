@@ -0,0 +1,112 @@
+package com.petroit.tsirfidandroidapp.rfid.config;
+
+import com.petroit.tsirfidandroidapp.rfid.tuning.RfSettings;
+import com.uk.tsl.rfid.asciiprotocol.commands.InventoryCommand;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.Databank;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.TriState;
+import com.uk.tsl.rfid.asciiprotocol.parameters.IDatabankParameters;
+
+/**
+ * The inventory parameters the reader holds between commands, as last applied or as wanted
+ * <p>
+ * Instances are immutable so the {@link ConfigurationManager} can compare what the reader was
+ * sent with what the app now wants.
+ */
+public final class ReaderConfiguration
+{
+    private final RfSettings mRfSettings;
+    private final boolean mFastId;
+    // The memory read with each EPC, a null bank for none
+    private final Databank mReadBank;
+    private final int mReadOffset;
+    private final int mReadLength;
+
+    public ReaderConfiguration(RfSettings rfSettings, boolean fastId)
+    {
+        this(rfSettings, fastId, null, 0, 0);
+    }
+
+    /**
+     * @param readBank the bank read with each EPC or null for none
+     * @param readOffset the first word read
+     * @param readLength the number of words read
+     */
+    public ReaderConfiguration(RfSettings rfSettings, boolean fastId, Databank readBank, int readOffset, int readLength)
+    {
+        mRfSettings = rfSettings;
+        mFastId = fastId;
+        boolean reads = readBank != null && readBank != Databank.NOT_SPECIFIED && readLength > 0;
+        mReadBank = reads ? readBank : null;
+        mReadOffset = reads ? readOffset : 0;
+        mReadLength = reads ? readLength : 0;
+    }
+
+    /**
+     * @return the configuration given by the command's parameters
+     */
+    public static ReaderConfiguration of(InventoryCommand command)
+    {
+        RfSettings rfSettings = new RfSettings(command.getQAlgorithm(), command.getQValue(),
+                command.getQuerySession(), command.getQueryTarget(), command.getOutputPower());
+        if( command instanceof IDatabankParameters ) {
+            IDatabankParameters databank = (IDatabankParameters)command;
+            return new ReaderConfiguration(rfSettings, command.getUsefastId() == TriState.YES,
+                    databank.getBank(), databank.getOffset(), databank.getLength());
+        }
+        return new ReaderConfiguration(rfSettings, command.getUsefastId() == TriState.YES);
+    }
+
+    public RfSettings getRfSettings() { return mRfSettings; }
+
+    public boolean isFastId() { return mFastId; }
+
+    /**
+     * @return the bank read with each EPC or null for none
+     */
+    public Databank getReadBank() { return mReadBank; }
+
+    public int getReadOffset() { return mReadOffset; }
+
+    public int getReadLength() { return mReadLength; }
+
+    /**
+     * Append the configuration e.g. "Q dynamic  S1  A  29 dBm  FastId  read usr 4 words @0"
+     */
+    public void appendTo(StringBuilder sb)
+    {
+        mRfSettings.appendTo(sb);
+        if( mFastId ) {
+            sb.append("  FastId");
+        }
+        if( mReadBank != null ) {
+            sb.append("  read ").append(mReadBank.getArgument()).append(' ').append(mReadLength);
+            sb.append(" words @").append(mReadOffset);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if( this == o ) return true;
+        if( !(o instanceof ReaderConfiguration) ) return false;
+        ReaderConfiguration other = (ReaderConfiguration)o;
+        return mFastId == other.mFastId && mRfSettings.equals(other.mRfSettings) && mReadBank == other.mReadBank
+                && mReadOffset == other.mReadOffset && mReadLength == other.mReadLength;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hash = 31 * mRfSettings.hashCode() + (mFastId ? 1 : 0);
+        hash = 31 * hash + (mReadBank == null ? 0 : mReadBank.hashCode());
+        return 31 * (31 * hash + mReadOffset) + mReadLength;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(64);
+        appendTo(sb);
+        return sb.toString();
+    }
+}
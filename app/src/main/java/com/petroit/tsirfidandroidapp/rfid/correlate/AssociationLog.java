@@ -0,0 +1,109 @@
+package com.petroit.tsirfidandroidapp.rfid.correlate;
+
+import java.util.Arrays;
+
+/**
+ * The barcode to tag pairs found during a session, in the order found
+ * <p>
+ * When the log reaches its maximum size further pairs are counted but not kept.
+ */
+public final class AssociationLog implements BarcodeTagJoin.Listener
+{
+    private final int mMaxSize;
+    private int[] mBarcodeIndexes;
+    private int[] mTagOrdinals;
+    private long[] mReadTimes;
+    private int mSize;
+    private long mDroppedCount;
+
+    // Incremented by clear() so a reader can tell the log was emptied under it
+    private int mGeneration;
+
+    /**
+     * @param expectedSize the number of pairs to size the log for initially
+     * @param maxSize the upper limit on the number of pairs held
+     */
+    public AssociationLog(int expectedSize, int maxSize)
+    {
+        mMaxSize = maxSize;
+        int capacity = Math.max(1, Math.min(expectedSize, maxSize));
+        mBarcodeIndexes = new int[capacity];
+        mTagOrdinals = new int[capacity];
+        mReadTimes = new long[capacity];
+    }
+
+    /**
+     * @param barcodeIndex the barcode's index in the session's barcode log
+     * @param tagOrdinal the tag's ordinal in the session's tag store
+     * @param readTime the time of the read in ms since the epoch
+     */
+    @Override
+    public synchronized void onAssociation(int barcodeIndex, int tagOrdinal, long readTime)
+    {
+        if( mSize >= mMaxSize ) {
+            mDroppedCount++;
+            return;
+        }
+        if( mSize == mTagOrdinals.length ) {
+            int capacity = (int)Math.min(mMaxSize, mTagOrdinals.length * 2L);
+            mBarcodeIndexes = Arrays.copyOf(mBarcodeIndexes, capacity);
+            mTagOrdinals = Arrays.copyOf(mTagOrdinals, capacity);
+            mReadTimes = Arrays.copyOf(mReadTimes, capacity);
+        }
+        mBarcodeIndexes[mSize] = barcodeIndex;
+        mTagOrdinals[mSize] = tagOrdinal;
+        mReadTimes[mSize] = readTime;
+        mSize++;
+    }
+
+    public synchronized int size() { return mSize; }
+
+    /**
+     * @return the number of pairs not kept because the log was full
+     */
+    public synchronized long getDroppedCount() { return mDroppedCount; }
+
+    public synchronized int getBarcodeIndex(int index) { return mBarcodeIndexes[index]; }
+
+    public synchronized int getTagOrdinal(int index) { return mTagOrdinals[index]; }
+
+    public synchronized long getReadTime(int index) { return mReadTimes[index]; }
+
+    public synchronized void clear()
+    {
+        mSize = 0;
+        mDroppedCount = 0;
+        mGeneration++;
+    }
+
+    /**
+     * @return a number that changes each time the log is cleared
+     */
+    public synchronized int getGeneration() { return mGeneration; }
+
+    /**
+     * Copy a run of pairs in one go
+     *
+     * @param fromIndex the index of the first pair to copy
+     * @param barcodeIndexes receives the barcode indexes
+     * @param tagOrdinals receives the tag ordinals, at least as long as barcodeIndexes
+     * @param readTimes receives the read times, at least as long as barcodeIndexes
+     * @param generation the generation the caller started with, see {@link #getGeneration()}
+     * @return the number copied, 0 at the end of the log or -1 if the log has been cleared since
+     * the caller started
+     */
+    public synchronized int copyTo(int fromIndex, int[] barcodeIndexes, int[] tagOrdinals, long[] readTimes, int generation)
+    {
+        if( generation != mGeneration ) {
+            return -1;
+        }
+        int count = Math.max(0, Math.min(barcodeIndexes.length, mSize - fromIndex));
+        if( count == 0 ) {
+            return 0;
+        }
+        System.arraycopy(mBarcodeIndexes, fromIndex, barcodeIndexes, 0, count);
+        System.arraycopy(mTagOrdinals, fromIndex, tagOrdinals, 0, count);
+        System.arraycopy(mReadTimes, fromIndex, readTimes, 0, count);
+        return count;
+    }
+}
@@ -0,0 +1,222 @@
+package com.petroit.tsirfidandroidapp.rfid.correlate;
+
+import java.util.Arrays;
+
+/**
+ * Pairs each barcode scan with the tags read in a time window around it, e.g. the cartons and
+ * their contents at receiving
+ * <p>
+ * A barcode at time t opens a window from t - before to t + after. Reads still held from
+ * before the scan are joined when the barcode arrives and later reads as they arrive, each tag
+ * once per barcode. Windows may overlap, so a read can be joined to more than one barcode.
+ * <p>
+ * Reads and scans must be given in time order, which is the order they arrive from one reader.
+ * The recent reads are held in a ring ordered by time and the open windows in a queue ordered
+ * by their end. Both are expired incrementally as time advances and have fixed capacities, so
+ * the join runs in constant memory for any length of session. When a capacity is reached the
+ * oldest read or window goes first and the tags over a window's limit are not joined, each
+ * counted. Tags and barcodes are identified by their ordinals in the session's stores.
+ */
+public final class BarcodeTagJoin
+{
+    /**
+     * Receives the pairs as they are found, on the thread giving the read or scan
+     */
+    public interface Listener
+    {
+        /**
+         * @param barcodeIndex the barcode's index in the session's barcode log
+         * @param tagOrdinal the tag's ordinal in the session's tag store
+         * @param readTime the time of the read, on the clock used for the join
+         */
+        void onAssociation(int barcodeIndex, int tagOrdinal, long readTime);
+    }
+
+    private static final int EMPTY = -1;
+
+    private final Listener mListener;
+    private final long mBeforeMs;
+    private final long mAfterMs;
+
+    // The recent reads, oldest first
+    private final long[] mReadTimes;
+    private final int[] mReadOrdinals;
+    private int mReadHead;
+    private int mReadCount;
+
+    // The open windows, oldest first, each with a set of the tags joined to it
+    private final int[] mWindowBarcodes;
+    private final long[] mWindowEnds;
+    private final int[][] mWindowTags;
+    private final int[] mWindowTagCounts;
+    private final int mMaxTagsPerWindow;
+    private int mWindowHead;
+    private int mWindowCount;
+
+    // Statistics
+    private long mAssociationCount;
+    private long mEvictedReadCount;
+    private long mEvictedWindowCount;
+    private long mOverflowCount;
+
+    /**
+     * @param listener receives the pairs
+     * @param beforeMs how long before a scan a read may be
+     * @param afterMs how long after a scan a read may be
+     * @param readCapacity the most reads held for scans yet to come
+     * @param maxOpenWindows the most windows open at once
+     * @param maxTagsPerWindow the most tags joined to one barcode
+     */
+    public BarcodeTagJoin(Listener listener, long beforeMs, long afterMs, int readCapacity, int maxOpenWindows, int maxTagsPerWindow)
+    {
+        if( beforeMs < 0 || afterMs < 0 || readCapacity < 1 || maxOpenWindows < 1 || maxTagsPerWindow < 1 ) {
+            throw new IllegalArgumentException("The windows must not be negative and the capacities must be positive");
+        }
+        mListener = listener;
+        mBeforeMs = beforeMs;
+        mAfterMs = afterMs;
+        mReadTimes = new long[readCapacity];
+        mReadOrdinals = new int[readCapacity];
+        mWindowBarcodes = new int[maxOpenWindows];
+        mWindowEnds = new long[maxOpenWindows];
+        mMaxTagsPerWindow = maxTagsPerWindow;
+        // Open addressing sets kept at most half full
+        int setSize = Integer.highestOneBit(maxTagsPerWindow) << 2;
+        mWindowTags = new int[maxOpenWindows][setSize];
+        mWindowTagCounts = new int[maxOpenWindows];
+    }
+
+    /**
+     * Give the join a tag read
+     *
+     * @param tagOrdinal the tag's ordinal in the session's tag store
+     * @param time the time of the read, on the same clock as the scans
+     */
+    public synchronized void onTagRead(int tagOrdinal, long time)
+    {
+        expire(time);
+        if( mBeforeMs > 0 ) {
+            if( mReadCount == mReadTimes.length ) {
+                mReadHead = (mReadHead + 1) % mReadTimes.length;
+                mReadCount--;
+                mEvictedReadCount++;
+            }
+            int tail = (mReadHead + mReadCount) % mReadTimes.length;
+            mReadTimes[tail] = time;
+            mReadOrdinals[tail] = tagOrdinal;
+            mReadCount++;
+        }
+        // Every open window has started by now
+        for( int i = 0; i < mWindowCount; i++ ) {
+            associate((mWindowHead + i) % mWindowEnds.length, tagOrdinal, time);
+        }
+    }
+
+    /**
+     * Give the join a barcode scan, the reads held from the window before it are joined
+     *
+     * @param barcodeIndex the barcode's index in the session's barcode log
+     * @param time the time of the scan, on the same clock as the reads
+     */
+    public synchronized void onBarcode(int barcodeIndex, long time)
+    {
+        expire(time);
+        if( mWindowCount == mWindowEnds.length ) {
+            // Close the oldest window early
+            mWindowHead = (mWindowHead + 1) % mWindowEnds.length;
+            mWindowCount--;
+            mEvictedWindowCount++;
+        }
+        int window = (mWindowHead + mWindowCount) % mWindowEnds.length;
+        mWindowBarcodes[window] = barcodeIndex;
+        mWindowEnds[window] = time + mAfterMs;
+        Arrays.fill(mWindowTags[window], EMPTY);
+        mWindowTagCounts[window] = 0;
+        mWindowCount++;
+
+        for( int i = 0; i < mReadCount; i++ ) {
+            int read = (mReadHead + i) % mReadTimes.length;
+            associate(window, mReadOrdinals[read], mReadTimes[read]);
+        }
+    }
+
+    /**
+     * Forget the held reads and close the open windows
+     */
+    public synchronized void clear()
+    {
+        mReadHead = 0;
+        mReadCount = 0;
+        mWindowHead = 0;
+        mWindowCount = 0;
+        mAssociationCount = 0;
+        mEvictedReadCount = 0;
+        mEvictedWindowCount = 0;
+        mOverflowCount = 0;
+    }
+
+    /**
+     * @return the number of reads held for scans yet to come
+     */
+    public synchronized int getHeldReadCount() { return mReadCount; }
+
+    /**
+     * @return the number of windows open
+     */
+    public synchronized int getOpenWindowCount() { return mWindowCount; }
+
+    /**
+     * @return the number of pairs found
+     */
+    public synchronized long getAssociationCount() { return mAssociationCount; }
+
+    /**
+     * @return the reads dropped from a full ring before their time was up
+     */
+    public synchronized long getEvictedReadCount() { return mEvictedReadCount; }
+
+    /**
+     * @return the windows closed early for a newer one
+     */
+    public synchronized long getEvictedWindowCount() { return mEvictedWindowCount; }
+
+    /**
+     * @return the tags not joined because their window already had the maximum
+     */
+    public synchronized long getOverflowCount() { return mOverflowCount; }
+
+    // Drop the reads too old for any new window and close the windows that have ended
+    private void expire(long now)
+    {
+        long oldest = now - mBeforeMs;
+        while( mReadCount > 0 && mReadTimes[mReadHead] < oldest ) {
+            mReadHead = (mReadHead + 1) % mReadTimes.length;
+            mReadCount--;
+        }
+        while( mWindowCount > 0 && mWindowEnds[mWindowHead] < now ) {
+            mWindowHead = (mWindowHead + 1) % mWindowEnds.length;
+            mWindowCount--;
+        }
+    }
+
+    private void associate(int window, int tagOrdinal, long time)
+    {
+        int[] tags = mWindowTags[window];
+        int mask = tags.length - 1;
+        int slot = (tagOrdinal * 0x9E3779B9) >>> 1 & mask;
+        while( tags[slot] != EMPTY ) {
+            if( tags[slot] == tagOrdinal ) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if( mWindowTagCounts[window] == mMaxTagsPerWindow ) {
+            mOverflowCount++;
+            return;
+        }
+        tags[slot] = tagOrdinal;
+        mWindowTagCounts[window]++;
+        mAssociationCount++;
+        mListener.onAssociation(mWindowBarcodes[window], tagOrdinal, time);
+    }
+}
@@ -0,0 +1,28 @@
+package com.petroit.tsirfidandroidapp.rfid.export;
+
+/**
+ * The file formats a session can be exported in
+ */
+public enum ExportFormat
+{
+    // One header row then one row per tag or barcode, the record column says which
+    CSV("csv", "text/csv"),
+    // One JSON object per line, the record field says which
+    NDJSON("ndjson", "application/x-ndjson");
+
+    private final String mExtension;
+    private final String mMimeType;
+
+    ExportFormat(String extension, String mimeType)
+    {
+        mExtension = extension;
+        mMimeType = mimeType;
+    }
+
+    /**
+     * @return the file name extension without the dot
+     */
+    public String getExtension() { return mExtension; }
+
+    public String getMimeType() { return mMimeType; }
+}
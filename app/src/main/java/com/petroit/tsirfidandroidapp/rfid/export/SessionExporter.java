@@ -0,0 +1,429 @@
+package com.petroit.tsirfidandroidapp.rfid.export;
+
+import com.petroit.tsirfidandroidapp.rfid.correlate.AssociationLog;
+import com.petroit.tsirfidandroidapp.rfid.gs1.Gs1Epc;
+import com.petroit.tsirfidandroidapp.rfid.tags.BarcodeLog;
+import com.petroit.tsirfidandroidapp.rfid.tags.HexCodec;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagStore;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagSummary;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ConcurrentModificationException;
+
+/**
+ * Streams the aggregated tags, the barcodes and the tags read around each barcode of a session
+ * to CSV or NDJSON
+ * <p>
+ * The tags are copied from the {@link TagStore} a chunk at a time into reused summaries, each row
+ * is built in a reused buffer and written through to the Writer, so memory use does not grow
+ * with the number of tags and the store is only locked for one chunk at a time - reads keep
+ * being recorded while a large session is exported. Tags and barcodes recorded after the export
+ * started may or may not be included. Timestamps are written as ISO 8601 UTC, every record is
+ * timed by the phone's clock as the read or scan arrived so the rows line up. The GS1 fields
+ * are written for the tags the store decoded. Each barcode to tag pair is an association record
+ * holding the tag's ordinal and EPC, the barcode and the time of the read.
+ * <p>
+ * An exporter is not thread safe, use one per export.
+ */
+public final class SessionExporter
+{
+    // Tags copied from the store per lock
+    private static final int sChunkSize = 256;
+
+    private static final String sCsvHeader =
+            "record,ordinal,epc,tid,gs1_uri,gs1_key,gs1_company_prefix,gs1_reference,gs1_serial,reads,rssi_last,rssi_min,rssi_mean,rssi_max,first_seen,last_seen,barcode\n";
+
+    private final ExportFormat mFormat;
+    private final TagSummary[] mSummaries = new TagSummary[sChunkSize];
+    private final String[] mBarcodes = new String[sChunkSize];
+    private final long[] mBarcodeTimestamps = new long[sChunkSize];
+    private final int[] mAssociationBarcodes = new int[sChunkSize];
+    private final int[] mAssociationTags = new int[sChunkSize];
+    private final long[] mAssociationTimes = new long[sChunkSize];
+    private final byte[] mEpc = new byte[TagEvent.MAX_EPC_BYTES];
+    private final StringBuilder mRow = new StringBuilder(256);
+    private char[] mChars = new char[256];
+
+    private int mTagCount;
+    private int mBarcodeCount;
+    private int mAssociationCount;
+
+    public SessionExporter(ExportFormat format)
+    {
+        mFormat = format;
+        for( int i = 0; i < sChunkSize; i++ ) {
+            mSummaries[i] = new TagSummary();
+        }
+    }
+
+    /**
+     * Write the session, the writer is flushed but not closed
+     *
+     * @param tags the aggregated tags
+     * @param barcodes the barcodes scanned or null
+     * @param out receives the export, it should be buffered
+     * @throws IOException if writing failed
+     * @throws ConcurrentModificationException if the tags or barcodes were cleared during the export
+     */
+    public void export(TagStore tags, BarcodeLog barcodes, Writer out) throws IOException
+    {
+        export(tags, barcodes, null, out);
+    }
+
+    /**
+     * Write the session, the writer is flushed but not closed
+     *
+     * @param tags the aggregated tags
+     * @param barcodes the barcodes scanned or null
+     * @param associations the pairs of the barcodes and tags or null, only written with the barcodes
+     * @param out receives the export, it should be buffered
+     * @throws IOException if writing failed
+     * @throws ConcurrentModificationException if the session was cleared during the export
+     */
+    public void export(TagStore tags, BarcodeLog barcodes, AssociationLog associations, Writer out) throws IOException
+    {
+        mTagCount = 0;
+        mBarcodeCount = 0;
+        mAssociationCount = 0;
+        if( mFormat == ExportFormat.CSV ) {
+            out.write(sCsvHeader);
+        }
+
+        int generation = tags.getGeneration();
+        int copied;
+        while( (copied = tags.copyTo(mTagCount, mSummaries, generation)) != 0 ) {
+            if( copied < 0 ) {
+                throw new ConcurrentModificationException("The tags were cleared during the export");
+            }
+            for( int i = 0; i < copied; i++ ) {
+                mRow.setLength(0);
+                if( mFormat == ExportFormat.CSV ) {
+                    appendCsv(mSummaries[i]);
+                } else {
+                    appendJson(mSummaries[i]);
+                }
+                write(out);
+            }
+            mTagCount += copied;
+        }
+
+        if( barcodes != null ) {
+            generation = barcodes.getGeneration();
+            while( (copied = barcodes.copyTo(mBarcodeCount, mBarcodes, mBarcodeTimestamps, generation)) != 0 ) {
+                if( copied < 0 ) {
+                    throw new ConcurrentModificationException("The barcodes were cleared during the export");
+                }
+                for( int i = 0; i < copied; i++ ) {
+                    mRow.setLength(0);
+                    if( mFormat == ExportFormat.CSV ) {
+                        appendCsv(mBarcodeCount + i, mBarcodes[i], mBarcodeTimestamps[i]);
+                    } else {
+                        appendJson(mBarcodeCount + i, mBarcodes[i], mBarcodeTimestamps[i]);
+                    }
+                    mBarcodes[i] = null;
+                    write(out);
+                }
+                mBarcodeCount += copied;
+            }
+            if( associations != null ) {
+                exportAssociations(tags, barcodes, associations, out);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * @return the number of tags written by the last export
+     */
+    public int getTagCount() { return mTagCount; }
+
+    /**
+     * @return the number of barcodes written by the last export
+     */
+    public int getBarcodeCount() { return mBarcodeCount; }
+
+    /**
+     * @return the number of barcode to tag pairs written by the last export
+     */
+    public int getAssociationCount() { return mAssociationCount; }
+
+    // The tag and barcode of each pair are looked up as it is written
+    private void exportAssociations(TagStore tags, BarcodeLog barcodes, AssociationLog associations, Writer out) throws IOException
+    {
+        int tagGeneration = tags.getGeneration();
+        int barcodeGeneration = barcodes.getGeneration();
+        int generation = associations.getGeneration();
+        int copied;
+        while( (copied = associations.copyTo(mAssociationCount, mAssociationBarcodes, mAssociationTags, mAssociationTimes, generation)) != 0 ) {
+            if( copied < 0 || tags.getGeneration() != tagGeneration || barcodes.getGeneration() != barcodeGeneration ) {
+                throw new ConcurrentModificationException("The associations were cleared during the export");
+            }
+            for( int i = 0; i < copied; i++ ) {
+                String barcode = barcodes.getData(mAssociationBarcodes[i]);
+                if( barcode == null ) {
+                    throw new ConcurrentModificationException("The barcodes were cleared during the export");
+                }
+                int epcLength = tags.getEpc(mAssociationTags[i], mEpc);
+                mRow.setLength(0);
+                if( mFormat == ExportFormat.CSV ) {
+                    appendCsv(mAssociationTags[i], epcLength, barcode, mAssociationTimes[i]);
+                } else {
+                    appendJson(mAssociationTags[i], epcLength, mAssociationBarcodes[i], barcode, mAssociationTimes[i]);
+                }
+                write(out);
+            }
+            mAssociationCount += copied;
+        }
+    }
+
+    private void write(Writer out) throws IOException
+    {
+        int length = mRow.length();
+        if( mChars.length < length ) {
+            mChars = new char[Math.max(length, mChars.length * 2)];
+        }
+        mRow.getChars(0, length, mChars, 0);
+        out.write(mChars, 0, length);
+    }
+
+    private void appendCsv(TagSummary tag)
+    {
+        StringBuilder sb = mRow;
+        sb.append("tag,").append(tag.getOrdinal()).append(',').append(tag.getEpc()).append(',');
+        appendTid(sb, tag.getTid());
+        sb.append(',');
+        Gs1Epc gs1 = tag.getGs1();
+        if( gs1 != null ) {
+            sb.append(gs1.getUri()).append(',').append(gs1.getKey()).append(',');
+            sb.append(gs1.getCompanyPrefix()).append(',').append(gs1.getReference()).append(',');
+            if( gs1.getSerial() != null ) {
+                sb.append(gs1.getSerial());
+            }
+        } else {
+            sb.append(",,,,");
+        }
+        sb.append(',').append(tag.getReadCount()).append(',');
+        appendRssi(sb, tag.getLastRssi());
+        sb.append(',');
+        appendRssi(sb, tag.getRssiMin());
+        sb.append(',');
+        appendMean(sb, tag.getRssiAverage());
+        sb.append(',');
+        appendRssi(sb, tag.getRssiMax());
+        sb.append(',');
+        appendTimestamp(sb, tag.getFirstSeen());
+        sb.append(',');
+        appendTimestamp(sb, tag.getLastSeen());
+        sb.append(",\n");
+    }
+
+    private void appendCsv(int index, String barcode, long timestamp)
+    {
+        StringBuilder sb = mRow;
+        sb.append("barcode,").append(index).append(",,,,,,,,,,,,,");
+        appendTimestamp(sb, timestamp);
+        sb.append(',');
+        appendTimestamp(sb, timestamp);
+        sb.append(',');
+        appendCsvField(sb, barcode);
+        sb.append('\n');
+    }
+
+    private void appendCsv(int tagOrdinal, int epcLength, String barcode, long readTime)
+    {
+        StringBuilder sb = mRow;
+        sb.append("association,").append(tagOrdinal).append(',');
+        HexCodec.append(sb, mEpc, 0, epcLength);
+        sb.append(",,,,,,,,,,,,");
+        appendTimestamp(sb, readTime);
+        sb.append(',');
+        appendTimestamp(sb, readTime);
+        sb.append(',');
+        appendCsvField(sb, barcode);
+        sb.append('\n');
+    }
+
+    private void appendJson(TagSummary tag)
+    {
+        StringBuilder sb = mRow;
+        sb.append("{\"record\":\"tag\",\"ordinal\":").append(tag.getOrdinal());
+        sb.append(",\"epc\":\"").append(tag.getEpc()).append('"');
+        if( tag.getTid() != null ) {
+            sb.append(",\"tid\":\"");
+            appendTid(sb, tag.getTid());
+            sb.append('"');
+        }
+        Gs1Epc gs1 = tag.getGs1();
+        if( gs1 != null ) {
+            sb.append(",\"gs1\":{\"uri\":\"").append(gs1.getUri());
+            sb.append("\",\"key\":\"").append(gs1.getKey());
+            sb.append("\",\"company_prefix\":\"").append(gs1.getCompanyPrefix());
+            sb.append("\",\"reference\":\"").append(gs1.getReference()).append('"');
+            if( gs1.getSerial() != null ) {
+                sb.append(",\"serial\":\"").append(gs1.getSerial()).append('"');
+            }
+            sb.append(",\"filter\":").append(gs1.getFilter()).append('}');
+        }
+        sb.append(",\"reads\":").append(tag.getReadCount());
+        if( tag.getLastRssi() != TagEvent.NOT_PRESENT ) {
+            sb.append(",\"rssi_last\":").append(tag.getLastRssi());
+        }
+        if( tag.getRssiMin() != TagEvent.NOT_PRESENT ) {
+            sb.append(",\"rssi_min\":").append(tag.getRssiMin());
+            sb.append(",\"rssi_mean\":");
+            appendMean(sb, tag.getRssiAverage());
+            sb.append(",\"rssi_max\":").append(tag.getRssiMax());
+        }
+        sb.append(",\"first_seen\":\"");
+        appendTimestamp(sb, tag.getFirstSeen());
+        sb.append("\",\"last_seen\":\"");
+        appendTimestamp(sb, tag.getLastSeen());
+        sb.append("\"}\n");
+    }
+
+    private void appendJson(int index, String barcode, long timestamp)
+    {
+        StringBuilder sb = mRow;
+        sb.append("{\"record\":\"barcode\",\"ordinal\":").append(index);
+        sb.append(",\"barcode\":");
+        appendJsonString(sb, barcode);
+        sb.append(",\"seen\":\"");
+        appendTimestamp(sb, timestamp);
+        sb.append("\"}\n");
+    }
+
+    private void appendJson(int tagOrdinal, int epcLength, int barcodeIndex, String barcode, long readTime)
+    {
+        StringBuilder sb = mRow;
+        sb.append("{\"record\":\"association\",\"ordinal\":").append(tagOrdinal);
+        sb.append(",\"epc\":\"");
+        HexCodec.append(sb, mEpc, 0, epcLength);
+        sb.append("\",\"barcode_ordinal\":").append(barcodeIndex);
+        sb.append(",\"barcode\":");
+        appendJsonString(sb, barcode);
+        sb.append(",\"seen\":\"");
+        appendTimestamp(sb, readTime);
+        sb.append("\"}\n");
+    }
+
+    private static void appendTid(StringBuilder sb, byte[] tid)
+    {
+        if( tid != null ) {
+            HexCodec.append(sb, tid, 0, tid.length);
+        }
+    }
+
+    private static void appendRssi(StringBuilder sb, int rssi)
+    {
+        if( rssi != TagEvent.NOT_PRESENT ) {
+            sb.append(rssi);
+        }
+    }
+
+    // One decimal place is plenty for an RSSI in dBm
+    private static void appendMean(StringBuilder sb, double mean)
+    {
+        if( Double.isNaN(mean) ) {
+            return;
+        }
+        long tenths = Math.round(mean * 10);
+        if( tenths < 0 ) {
+            sb.append('-');
+            tenths = -tenths;
+        }
+        sb.append(tenths / 10).append('.').append(tenths % 10);
+    }
+
+    // Quote the field if it contains a separator, quote or line break
+    static void appendCsvField(StringBuilder sb, String value)
+    {
+        boolean quote = false;
+        for( int i = 0; i < value.length() && !quote; i++ ) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if( !quote ) {
+            sb.append(value);
+            return;
+        }
+        sb.append('"');
+        for( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt(i);
+            if( c == '"' ) {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    static void appendJsonString(StringBuilder sb, String value)
+    {
+        sb.append('"');
+        for( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt(i);
+            switch( c ) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if( c < 0x20 ) {
+                        sb.append("\\u00");
+                        HexCodec.append(sb, (byte)c);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Append the time as ISO 8601 UTC with milliseconds, e.g. 2024-01-31T23:59:59.999Z
+     */
+    static void appendTimestamp(StringBuilder sb, long epochMs)
+    {
+        long days = epochMs / 86_400_000L;
+        int msOfDay = (int)(epochMs % 86_400_000L);
+        if( msOfDay < 0 ) {
+            msOfDay += 86_400_000;
+            days--;
+        }
+
+        // Days to the civil date, H. Hinnant's civil_from_days
+        long z = days + 719_468;
+        long era = (z >= 0 ? z : z - 146_096) / 146_097;
+        long dayOfEra = z - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int)(dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int)(mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        sb.append(year).append('-');
+        appendDigits(sb, month, 2);
+        sb.append('-');
+        appendDigits(sb, day, 2);
+        sb.append('T');
+        appendDigits(sb, msOfDay / 3_600_000, 2);
+        sb.append(':');
+        appendDigits(sb, msOfDay / 60_000 % 60, 2);
+        sb.append(':');
+        appendDigits(sb, msOfDay / 1000 % 60, 2);
+        sb.append('.');
+        appendDigits(sb, msOfDay % 1000, 3);
+        sb.append('Z');
+    }
+
+    private static void appendDigits(StringBuilder sb, int value, int width)
+    {
+        for( int divisor = width == 3 ? 100 : 10; divisor > 0; divisor /= 10 ) {
+            sb.append((char)('0' + value / divisor % 10));
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.petroit.tsirfidandroidapp.rfid.gs1;
+
+import java.util.Arrays;
+
+/**
+ * A bounded least recently used cache of decoded GS1 EPCs
+ * <p>
+ * An inventory reads the same tags over and over so the results of {@link Gs1Decoder} are kept
+ * keyed on the 96 EPC bits, packed into a long and an int, in open hash chains over fixed arrays
+ * with an intrusive recency list, like the {@link com.petroit.tsirfidandroidapp.rfid.tags.TagStore}
+ * index. A hit neither allocates nor decodes. EPCs that are 96 bits with a GS1 header but invalid
+ * fields are cached as misses too, EPCs that are not GS1 at all are rejected without a lookup.
+ * When full the least recently used entry is reused.
+ * <p>
+ * The cache is thread safe, lookups are short and synchronized.
+ */
+public final class Gs1DecodeCache
+{
+    private static final int NONE = -1;
+
+    private final int mCapacity;
+    private final int mMask;
+    private final int[] mBuckets;
+    private final int[] mChain;
+    private final long[] mKeyHigh;
+    private final int[] mKeyLow;
+    private final Gs1Epc[] mValues;
+    // The recency list, most recent at the head
+    private final int[] mPrevious;
+    private final int[] mNext;
+
+    private int mSize;
+    private int mHead = NONE;
+    private int mTail = NONE;
+
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+
+    /**
+     * @param capacity the number of EPCs kept
+     */
+    public Gs1DecodeCache(int capacity)
+    {
+        if( capacity < 1 ) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+        mCapacity = capacity;
+        int buckets = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        mMask = buckets - 1;
+        mBuckets = new int[buckets];
+        Arrays.fill(mBuckets, NONE);
+        mChain = new int[capacity];
+        mKeyHigh = new long[capacity];
+        mKeyLow = new int[capacity];
+        mValues = new Gs1Epc[capacity];
+        mPrevious = new int[capacity];
+        mNext = new int[capacity];
+    }
+
+    /**
+     * @param epc the EPC bytes
+     * @param length the number of bytes of the EPC
+     * @return the GS1 fields or null if the EPC is not a valid GS1 EPC
+     */
+    public Gs1Epc decode(byte[] epc, int length)
+    {
+        if( !Gs1Decoder.isGs1(epc, length) ) {
+            return null;
+        }
+        long high = packLong(epc, 0);
+        int low = ((epc[8] & 0xff) << 24) | ((epc[9] & 0xff) << 16) | ((epc[10] & 0xff) << 8) | (epc[11] & 0xff);
+
+        synchronized( this ) {
+            int bucket = hash(high, low) & mMask;
+            for( int entry = mBuckets[bucket]; entry != NONE; entry = mChain[entry] ) {
+                if( mKeyHigh[entry] == high && mKeyLow[entry] == low ) {
+                    mHits++;
+                    moveToHead(entry);
+                    return mValues[entry];
+                }
+            }
+            mMisses++;
+        }
+
+        // Decode outside the lock, two threads missing the same EPC both decode but only one is kept
+        Gs1Epc decoded = Gs1Decoder.decode(epc, length);
+
+        synchronized( this ) {
+            int bucket = hash(high, low) & mMask;
+            for( int entry = mBuckets[bucket]; entry != NONE; entry = mChain[entry] ) {
+                if( mKeyHigh[entry] == high && mKeyLow[entry] == low ) {
+                    moveToHead(entry);
+                    return mValues[entry];
+                }
+            }
+            int entry;
+            if( mSize < mCapacity ) {
+                entry = mSize++;
+            } else {
+                entry = mTail;
+                unlink(entry);
+                removeFromBucket(entry);
+                mEvictions++;
+            }
+            mKeyHigh[entry] = high;
+            mKeyLow[entry] = low;
+            mValues[entry] = decoded;
+            mChain[entry] = mBuckets[bucket];
+            mBuckets[bucket] = entry;
+            linkAtHead(entry);
+            return decoded;
+        }
+    }
+
+    public synchronized void clear()
+    {
+        Arrays.fill(mBuckets, NONE);
+        Arrays.fill(mValues, null);
+        mSize = 0;
+        mHead = NONE;
+        mTail = NONE;
+        mHits = 0;
+        mMisses = 0;
+        mEvictions = 0;
+    }
+
+    public int getCapacity() { return mCapacity; }
+
+    public synchronized int size() { return mSize; }
+
+    public synchronized long getHitCount() { return mHits; }
+
+    public synchronized long getMissCount() { return mMisses; }
+
+    public synchronized long getEvictionCount() { return mEvictions; }
+
+    private void moveToHead(int entry)
+    {
+        if( entry != mHead ) {
+            unlink(entry);
+            linkAtHead(entry);
+        }
+    }
+
+    private void linkAtHead(int entry)
+    {
+        mPrevious[entry] = NONE;
+        mNext[entry] = mHead;
+        if( mHead != NONE ) {
+            mPrevious[mHead] = entry;
+        }
+        mHead = entry;
+        if( mTail == NONE ) {
+            mTail = entry;
+        }
+    }
+
+    private void unlink(int entry)
+    {
+        int previous = mPrevious[entry];
+        int next = mNext[entry];
+        if( previous != NONE ) {
+            mNext[previous] = next;
+        } else {
+            mHead = next;
+        }
+        if( next != NONE ) {
+            mPrevious[next] = previous;
+        } else {
+            mTail = previous;
+        }
+    }
+
+    private void removeFromBucket(int entry)
+    {
+        int bucket = hash(mKeyHigh[entry], mKeyLow[entry]) & mMask;
+        if( mBuckets[bucket] == entry ) {
+            mBuckets[bucket] = mChain[entry];
+            return;
+        }
+        for( int e = mBuckets[bucket]; e != NONE; e = mChain[e] ) {
+            if( mChain[e] == entry ) {
+                mChain[e] = mChain[entry];
+                return;
+            }
+        }
+    }
+
+    private static long packLong(byte[] epc, int offset)
+    {
+        long value = 0;
+        for( int i = offset; i < offset + 8; i++ ) {
+            value = (value << 8) | (epc[i] & 0xff);
+        }
+        return value;
+    }
+
+    // The serial is in the low bits so mix them into the bucket index
+    private static int hash(long high, int low)
+    {
+        long h = (high * 0x9E3779B97F4A7C15L) ^ (low * 0xC2B2AE3D27D4EB4FL);
+        h ^= h >>> 29;
+        return (int)(h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,151 @@
+package com.petroit.tsirfidandroidapp.rfid.gs1;
+
+/**
+ * Decodes 96 bit SGTIN, SSCC, GRAI and GIAI EPCs to their GS1 fields, see the GS1 EPC Tag Data
+ * Standard
+ * <p>
+ * All four schemes are an 8 bit header, a 3 bit filter and a 3 bit partition value that says how
+ * the next bits are split between the company prefix and the reference. Decoding allocates the
+ * result and its strings so put a {@link Gs1DecodeCache} in front of it where the same tags are
+ * read repeatedly.
+ */
+public final class Gs1Decoder
+{
+    // The bits in the EPCs decoded
+    private static final int sEpcBits = 96;
+
+    // Indexed by partition value: company prefix bits, company prefix digits, reference bits, reference digits
+    // The SGTIN partitions are shared with the encoder
+    static final int[][] sSgtinPartitions = {
+            { 40, 12, 4, 1 }, { 37, 11, 7, 2 }, { 34, 10, 10, 3 }, { 30, 9, 14, 4 },
+            { 27, 8, 17, 5 }, { 24, 7, 20, 6 }, { 20, 6, 24, 7 } };
+    private static final int[][] sSsccPartitions = {
+            { 40, 12, 18, 5 }, { 37, 11, 21, 6 }, { 34, 10, 24, 7 }, { 30, 9, 28, 8 },
+            { 27, 8, 31, 9 }, { 24, 7, 34, 10 }, { 20, 6, 38, 11 } };
+    private static final int[][] sGraiPartitions = {
+            { 40, 12, 4, 0 }, { 37, 11, 7, 1 }, { 34, 10, 10, 2 }, { 30, 9, 14, 3 },
+            { 27, 8, 17, 4 }, { 24, 7, 20, 5 }, { 20, 6, 24, 6 } };
+    private static final int[][] sGiaiPartitions = {
+            { 40, 12, 42, 13 }, { 37, 11, 45, 14 }, { 34, 10, 48, 15 }, { 30, 9, 51, 16 },
+            { 27, 8, 55, 17 }, { 24, 7, 58, 18 }, { 20, 6, 61, 19 } };
+
+    private static final long[] sPowersOfTen = new long[19];
+
+    static {
+        sPowersOfTen[0] = 1;
+        for( int i = 1; i < sPowersOfTen.length; i++ ) {
+            sPowersOfTen[i] = sPowersOfTen[i - 1] * 10;
+        }
+    }
+
+    private Gs1Decoder() {}
+
+    /**
+     * @return true if the EPC is 96 bits with the header of a scheme that is decoded, the fields
+     * may still be invalid
+     */
+    public static boolean isGs1(byte[] epc, int length)
+    {
+        return epc != null && length == sEpcBits / 8 && Gs1Scheme.forHeader(epc[0] & 0xff) != null;
+    }
+
+    /**
+     * @param epc the EPC bytes
+     * @param length the number of bytes of the EPC
+     * @return the GS1 fields or null if the EPC is not one of the schemes or its fields are not valid
+     */
+    public static Gs1Epc decode(byte[] epc, int length)
+    {
+        if( !isGs1(epc, length) ) {
+            return null;
+        }
+        Gs1Scheme scheme = Gs1Scheme.forHeader(epc[0] & 0xff);
+        int filter = (int)bits(epc, 8, 3);
+        int partition = (int)bits(epc, 11, 3);
+        if( partition > 6 ) {
+            return null;
+        }
+
+        int[] fields;
+        switch( scheme ) {
+            case SGTIN_96: fields = sSgtinPartitions[partition]; break;
+            case SSCC_96: fields = sSsccPartitions[partition]; break;
+            case GRAI_96: fields = sGraiPartitions[partition]; break;
+            default: fields = sGiaiPartitions[partition]; break;
+        }
+        long companyPrefix = bits(epc, 14, fields[0]);
+        long reference = bits(epc, 14 + fields[0], fields[2]);
+        int serialOffset = 14 + fields[0] + fields[2];
+        if( companyPrefix >= sPowersOfTen[fields[1]] ) {
+            return null;
+        }
+        // A 61 bit GIAI reference always fits in its 19 digits
+        if( fields[3] < sPowersOfTen.length && reference >= sPowersOfTen[fields[3]] ) {
+            return null;
+        }
+
+        String prefixDigits = digits(companyPrefix, fields[1]);
+        String referenceDigits = scheme == Gs1Scheme.GIAI_96 ? Long.toString(reference) : digits(reference, fields[3]);
+        switch( scheme ) {
+            case SGTIN_96: {
+                // The indicator digit leads the item reference but the GTIN
+                String gtin = referenceDigits.charAt(0) + prefixDigits + referenceDigits.substring(1);
+                String serial = Long.toString(bits(epc, serialOffset, sEpcBits - serialOffset));
+                return new Gs1Epc(scheme, filter, prefixDigits, referenceDigits, serial, withCheckDigit(gtin));
+            }
+            case SSCC_96: {
+                // 24 unallocated bits that must be zero
+                if( bits(epc, serialOffset, sEpcBits - serialOffset) != 0 ) {
+                    return null;
+                }
+                String sscc = referenceDigits.charAt(0) + prefixDigits + referenceDigits.substring(1);
+                return new Gs1Epc(scheme, filter, prefixDigits, referenceDigits, null, withCheckDigit(sscc));
+            }
+            case GRAI_96: {
+                String serial = Long.toString(bits(epc, serialOffset, sEpcBits - serialOffset));
+                String grai = "0" + withCheckDigit(prefixDigits + referenceDigits);
+                return new Gs1Epc(scheme, filter, prefixDigits, referenceDigits, serial, grai);
+            }
+            default:
+                return new Gs1Epc(scheme, filter, prefixDigits, referenceDigits, null, prefixDigits + referenceDigits);
+        }
+    }
+
+    // Up to 63 bits from the given bit offset, most significant first
+    private static long bits(byte[] epc, int offset, int count)
+    {
+        long value = 0;
+        for( int bit = offset; bit < offset + count; bit++ ) {
+            value = (value << 1) | ((epc[bit >>> 3] >>> (7 - (bit & 7))) & 1);
+        }
+        return value;
+    }
+
+    private static String digits(long value, int width)
+    {
+        if( width == 0 ) {
+            return "";
+        }
+        String text = Long.toString(value);
+        if( text.length() == width ) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(width);
+        for( int i = text.length(); i < width; i++ ) {
+            sb.append('0');
+        }
+        return sb.append(text).toString();
+    }
+
+    /**
+     * Append the GS1 mod 10 check digit, the rightmost digit is weighted 3
+     */
+    static String withCheckDigit(String digits)
+    {
+        int sum = 0;
+        for( int i = digits.length() - 1, weight = 3; i >= 0; i--, weight = 4 - weight ) {
+            sum += (digits.charAt(i) - '0') * weight;
+        }
+        return digits + (char)('0' + (10 - sum % 10) % 10);
+    }
+}
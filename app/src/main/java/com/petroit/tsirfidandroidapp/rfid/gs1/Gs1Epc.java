@@ -0,0 +1,73 @@
+package com.petroit.tsirfidandroidapp.rfid.gs1;
+
+/**
+ * The GS1 fields of a decoded EPC
+ * <p>
+ * Instances are immutable and shared by the {@link Gs1DecodeCache}. The numeric fields are
+ * held as decimal strings with the leading zeros that are significant to GS1, e.g. a 7 digit
+ * company prefix of 0614141.
+ */
+public final class Gs1Epc
+{
+    private final Gs1Scheme mScheme;
+    private final int mFilter;
+    private final String mCompanyPrefix;
+    private final String mReference;
+    private final String mSerial;
+    private final String mKey;
+    private final String mUri;
+
+    Gs1Epc(Gs1Scheme scheme, int filter, String companyPrefix, String reference, String serial, String key)
+    {
+        mScheme = scheme;
+        mFilter = filter;
+        mCompanyPrefix = companyPrefix;
+        mReference = reference;
+        mSerial = serial;
+        mKey = key;
+
+        StringBuilder uri = new StringBuilder(48);
+        uri.append("urn:epc:id:").append(scheme.getUriName()).append(':').append(companyPrefix);
+        if( reference != null ) {
+            uri.append('.').append(reference);
+        }
+        if( serial != null ) {
+            uri.append('.').append(serial);
+        }
+        mUri = uri.toString();
+    }
+
+    public Gs1Scheme getScheme() { return mScheme; }
+
+    /**
+     * @return the filter value, e.g. 1 for a point of sale item
+     */
+    public int getFilter() { return mFilter; }
+
+    public String getCompanyPrefix() { return mCompanyPrefix; }
+
+    /**
+     * @return the item reference (with its indicator digit) of an SGTIN, the serial reference (with
+     * its extension digit) of an SSCC, the asset type of a GRAI or the asset reference of a GIAI
+     */
+    public String getReference() { return mReference; }
+
+    /**
+     * @return the serial of an SGTIN or GRAI, null for the other schemes
+     */
+    public String getSerial() { return mSerial; }
+
+    /**
+     * @return the GS1 key with its check digit where it has one: the GTIN-14 of an SGTIN, the
+     * SSCC-18, the GRAI without its serial or the GIAI
+     */
+    public String getKey() { return mKey; }
+
+    /**
+     * @return the pure identity URI e.g. urn:epc:id:sgtin:0614141.812345.6789
+     */
+    public String getUri() { return mUri; }
+
+    @Override
+    public String toString() { return mUri; }
+}
@@ -0,0 +1,49 @@
+package com.petroit.tsirfidandroidapp.rfid.gs1;
+
+/**
+ * The 96 bit GS1 EPC schemes that are decoded, see the GS1 EPC Tag Data Standard
+ */
+public enum Gs1Scheme
+{
+    // Serialised Global Trade Item Number - a trade item
+    SGTIN_96(0x30, "sgtin"),
+    // Serial Shipping Container Code - a logistic unit
+    SSCC_96(0x31, "sscc"),
+    // Global Returnable Asset Identifier - e.g. a pallet or crate
+    GRAI_96(0x33, "grai"),
+    // Global Individual Asset Identifier - a fixed asset
+    GIAI_96(0x34, "giai");
+
+    private final int mHeader;
+    private final String mUriName;
+
+    Gs1Scheme(int header, String uriName)
+    {
+        mHeader = header;
+        mUriName = uriName;
+    }
+
+    /**
+     * @return the 8 bit EPC header that identifies the scheme
+     */
+    public int getHeader() { return mHeader; }
+
+    /**
+     * @return the scheme name used in the pure identity URI
+     */
+    public String getUriName() { return mUriName; }
+
+    /**
+     * @return the scheme with the given header or null
+     */
+    public static Gs1Scheme forHeader(int header)
+    {
+        switch( header ) {
+            case 0x30: return SGTIN_96;
+            case 0x31: return SSCC_96;
+            case 0x33: return GRAI_96;
+            case 0x34: return GIAI_96;
+            default: return null;
+        }
+    }
+}
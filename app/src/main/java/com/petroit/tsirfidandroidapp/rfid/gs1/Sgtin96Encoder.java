@@ -0,0 +1,120 @@
+package com.petroit.tsirfidandroidapp.rfid.gs1;
+
+/**
+ * Encodes a GTIN and serial number as a 96 bit SGTIN EPC, see the GS1 EPC Tag Data Standard
+ * <p>
+ * The GTIN does not say how long its company prefix is so it is given with it, the partition
+ * value follows from it. The indicator digit is moved to the front of the item reference and the
+ * check digit is dropped, as {@link Gs1Decoder} expects. Encoding does not allocate.
+ */
+public final class Sgtin96Encoder
+{
+    public static final int EPC_BYTES = 12;
+
+    // The serial field is what is left of the 96 bits after the header, filter, partition and GTIN
+    public static final long MAXIMUM_SERIAL = (1L << 38) - 1;
+
+    private static final int sGtinDigits = 14;
+
+    private Sgtin96Encoder() {}
+
+    /**
+     * @param gtin a GTIN-8, 12, 13 or 14 including its check digit
+     * @return true if the GTIN is all digits with a valid check digit
+     */
+    public static boolean isValidGtin(String gtin)
+    {
+        if( gtin == null ) {
+            return false;
+        }
+        int length = gtin.length();
+        if( length != 8 && length != 12 && length != 13 && length != 14 ) {
+            return false;
+        }
+        for( int i = 0; i < length; i++ ) {
+            if( gtin.charAt(i) < '0' || gtin.charAt(i) > '9' ) {
+                return false;
+            }
+        }
+        return Gs1Decoder.withCheckDigit(gtin.substring(0, length - 1)).equals(gtin);
+    }
+
+    /**
+     * Encode an SGTIN-96
+     *
+     * @param gtin a GTIN-8, 12, 13 or 14 including its check digit
+     * @param companyPrefixDigits the length of the GS1 company prefix, 6 to 12
+     * @param filter the filter value, e.g. 1 for a point of sale item
+     * @param serial the serial number, 0 to {@link #MAXIMUM_SERIAL}
+     * @param dest receives the 12 bytes of the EPC
+     * @throws IllegalArgumentException if a value is out of range or the GTIN is not valid
+     */
+    public static void encode(String gtin, int companyPrefixDigits, int filter, long serial, byte[] dest)
+    {
+        if( !isValidGtin(gtin) ) {
+            throw new IllegalArgumentException("Not a valid GTIN: " + gtin);
+        }
+        if( companyPrefixDigits < 6 || companyPrefixDigits > 12 ) {
+            throw new IllegalArgumentException("The company prefix must be 6 to 12 digits");
+        }
+        if( filter < 0 || filter > 7 ) {
+            throw new IllegalArgumentException("The filter must be 0 to 7");
+        }
+        if( serial < 0 || serial > MAXIMUM_SERIAL ) {
+            throw new IllegalArgumentException("The serial must be 0 to " + MAXIMUM_SERIAL);
+        }
+
+        // Leading zeros pad the shorter GTINs to 14 digits
+        int padding = sGtinDigits - gtin.length();
+        long indicator = digit(gtin, 0, padding);
+        long companyPrefix = digits(gtin, 1, companyPrefixDigits, padding);
+        long itemReference = digits(gtin, 1 + companyPrefixDigits, sGtinDigits - 2 - companyPrefixDigits, padding);
+        int partition = 12 - companyPrefixDigits;
+        int[] fields = Gs1Decoder.sSgtinPartitions[partition];
+        long reference = indicator * pow10(fields[3] - 1) + itemReference;
+
+        for( int i = 0; i < EPC_BYTES; i++ ) {
+            dest[i] = 0;
+        }
+        putBits(dest, 0, 8, Gs1Scheme.SGTIN_96.getHeader());
+        putBits(dest, 8, 3, filter);
+        putBits(dest, 11, 3, partition);
+        putBits(dest, 14, fields[0], companyPrefix);
+        putBits(dest, 14 + fields[0], fields[2], reference);
+        putBits(dest, 14 + fields[0] + fields[2], 38, serial);
+    }
+
+    private static long digit(String gtin, int index, int padding)
+    {
+        return index < padding ? 0 : gtin.charAt(index - padding) - '0';
+    }
+
+    private static long digits(String gtin, int from, int count, int padding)
+    {
+        long value = 0;
+        for( int i = from; i < from + count; i++ ) {
+            value = value * 10 + digit(gtin, i, padding);
+        }
+        return value;
+    }
+
+    private static long pow10(int exponent)
+    {
+        long value = 1;
+        for( int i = 0; i < exponent; i++ ) {
+            value *= 10;
+        }
+        return value;
+    }
+
+    // Up to 63 bits at the given bit offset, most significant first, into zeroed bytes
+    private static void putBits(byte[] dest, int offset, int count, long value)
+    {
+        for( int i = 0; i < count; i++ ) {
+            if( ((value >>> (count - 1 - i)) & 1) != 0 ) {
+                int bit = offset + i;
+                dest[bit >>> 3] |= (byte)(0x80 >>> (bit & 7));
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.petroit.tsirfidandroidapp.rfid.inventory;
+
+import com.uk.tsl.rfid.asciiprotocol.commands.InventoryCommand;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.Databank;
+import com.uk.tsl.rfid.asciiprotocol.parameters.DatabankParameters;
+import com.uk.tsl.rfid.asciiprotocol.parameters.IDatabankParameters;
+
+/**
+ * An inventory that also reads a block of memory from each tag in the same round
+ * <p>
+ * The library's InventoryCommand has no databank parameters, this adds them to the command line
+ * the way the memory commands do. The words read come back in each transponder's read data, as
+ * they do for a ReadTransponderCommand, so no second command is needed per tag. With the bank
+ * NOT_SPECIFIED, the default, the command line is that of a plain inventory.
+ */
+public class DatabankInventoryCommand extends InventoryCommand implements IDatabankParameters
+{
+    private Databank mBank;
+    private int mOffset;
+    private int mLength;
+
+    public DatabankInventoryCommand()
+    {
+        DatabankParameters.setDefaultParametersFor(this);
+    }
+
+    @Override
+    public Databank getBank() { return mBank; }
+
+    @Override
+    public void setBank(Databank bank) { mBank = bank; }
+
+    /**
+     * @return the first word to read or -1 for the reader's default
+     */
+    @Override
+    public int getOffset() { return mOffset; }
+
+    @Override
+    public void setOffset(int offset) { mOffset = offset; }
+
+    /**
+     * @return the number of words to read or -1 for the reader's default
+     */
+    @Override
+    public int getLength() { return mLength; }
+
+    @Override
+    public void setLength(int length) { mLength = length; }
+
+    // The data parameter is only used by writes, an inventory has nothing to send
+    @Override
+    public byte[] getData() { return null; }
+
+    @Override
+    public void setData(byte[] data)
+    {
+        if( data != null ) {
+            throw new UnsupportedOperationException("An inventory does not write data");
+        }
+    }
+
+    /**
+     * @return true when the inventory reads memory as well as the EPC
+     */
+    public boolean readsDatabank()
+    {
+        return mBank != null && mBank != Databank.NOT_SPECIFIED && mLength > 0;
+    }
+
+    @Override
+    protected void buildCommandLine(StringBuilder sb)
+    {
+        super.buildCommandLine(sb);
+        DatabankParameters.appendToCommandLine(this, sb);
+    }
+}
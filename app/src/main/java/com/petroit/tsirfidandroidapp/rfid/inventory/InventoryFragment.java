@@ -1,10 +1,14 @@
 package com.petroit.tsirfidandroidapp.rfid.inventory;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.os.Message;
 import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
@@ -12,26 +16,49 @@ import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.ListView;
+import android.widget.ProgressBar;
 import android.widget.SeekBar;
 import android.widget.Spinner;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 
 import com.petroit.tsirfidandroidapp.R;
 import com.petroit.tsirfidandroidapp.databinding.FragmentInventoryBinding;
 import com.petroit.tsirfidandroidapp.rfid.ModelBase;
 import com.petroit.tsirfidandroidapp.rfid.WeakHandler;
+import com.petroit.tsirfidandroidapp.rfid.bulkread.BulkReadModel;
+import com.petroit.tsirfidandroidapp.rfid.commission.CommissioningJob;
+import com.petroit.tsirfidandroidapp.rfid.commission.CommissioningModel;
+import com.petroit.tsirfidandroidapp.rfid.export.ExportFormat;
+import com.petroit.tsirfidandroidapp.rfid.gs1.Sgtin96Encoder;
+import com.petroit.tsirfidandroidapp.rfid.locate.FindTagModel;
+import com.petroit.tsirfidandroidapp.rfid.locate.ProximityTonePlayer;
+import com.petroit.tsirfidandroidapp.rfid.metrics.AndroidRuntimeCounters;
+import com.petroit.tsirfidandroidapp.rfid.metrics.MetricsSnapshot;
+import com.petroit.tsirfidandroidapp.rfid.reconcile.Reconciliation;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tuning.TuningDecision;
 import com.uk.tsl.rfid.asciiprotocol.AsciiCommander;
 import com.uk.tsl.rfid.asciiprotocol.BuildConfig;
 import com.uk.tsl.rfid.asciiprotocol.DeviceProperties;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.Databank;
 import com.uk.tsl.rfid.asciiprotocol.enumerations.QuerySession;
 import com.uk.tsl.rfid.asciiprotocol.enumerations.TriState;
 import com.uk.tsl.rfid.asciiprotocol.parameters.AntennaParameters;
 import com.uk.tsl.utils.Observable;
 
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Locale;
+
 public class InventoryFragment extends Fragment
 {
     // Debugging
@@ -42,8 +69,17 @@ public class InventoryFragment extends Fragment
 
 
     // The list of results from actions
-    private ArrayAdapter<String> mResultsArrayAdapter;
-    private ListView mResultsListView;
+    private TagResultsAdapter mResultsAdapter;
+    private RecyclerView mResultsRecyclerView;
+    // Reused to collect each batch of reads from the model
+    private final ArrayList<TagEvent> mTagBatch = new ArrayList<>();
+    // The number of recent reads shown when not showing one row per tag
+    private static final int sRecentReadsCapacity = 2000;
+    // Every read of the stocktake is journaled here so it survives the app being closed or killed
+    private static final String sJournalFileName = "stocktake.journal";
+    // The EPCs expected by a cycle count, copied to the app's external files directory
+    private static final String sExpectedFileName = "expected.csv";
+    private final StringBuilder mReconciliationText = new StringBuilder(96);
     private ArrayAdapter<String> mBarcodeResultsArrayAdapter;
     private ListView mBarcodeResultsListView;
 
@@ -57,6 +93,38 @@ public class InventoryFragment extends Fragment
     // Error report
     private TextView mResultTextView;
 
+    // The metrics overlay, refreshed while it is shown
+    private TextView mMetricsTextView;
+    private boolean mShowMetrics;
+    private MetricsSnapshot mLastMetricsSnapshot;
+    private final StringBuilder mMetricsText = new StringBuilder(512);
+    private static final long sMetricsRefreshIntervalMs = 1000;
+
+    // Locating a tag - long press a row to start, Stop to end
+    private FindTagModel mFindTagModel;
+    private final ProximityTonePlayer mTonePlayer = new ProximityTonePlayer();
+    private ProgressBar mLocateMeter;
+    private final StringBuilder mLocateText = new StringBuilder(160);
+    // Brings the meter down when the tag is no longer heard and refreshes the latencies
+    private static final long sLocateRefreshIntervalMs = 250;
+    private static final int sLocateVolume = 80;
+
+    // Commissioning tags - scan the product barcode then present the tags one at a time
+    private CommissioningModel mCommissioningModel;
+    private boolean mCommissioning;
+    private final StringBuilder mCommissionText = new StringBuilder(128);
+    // The serials carry on from where the last session left off for each GTIN
+    private static final String sCommissionPreferences = "commissioning";
+    private static final String sNextSerialKeyPrefix = "next_serial_";
+    private static final int sCommissionCompanyPrefixDigits = 7;
+    private static final int sCommissionFilter = 1;
+
+    // Reading the TID or user memory of the tags already seen
+    private BulkReadModel mBulkReadModel;
+    private boolean mBulkReading;
+    private static final int sTidWords = 6;
+    private static final int sUserMemoryWords = 4;
+
     // Custom adapter for the session values to display the description rather than the toString() value
     public class SessionArrayAdapter extends ArrayAdapter<QuerySession> {
         private final QuerySession[] mValues;
@@ -109,15 +177,16 @@ public class InventoryFragment extends Fragment
 
         binding = FragmentInventoryBinding.inflate(inflater, container, false);
 
-        mResultsArrayAdapter = new ArrayAdapter<String>(this.getContext(), R.layout.result_item);
         mBarcodeResultsArrayAdapter = new ArrayAdapter<String>(this.getContext(),R.layout.result_item);
 
         mResultTextView = binding.resultTextView;
+        mMetricsTextView = binding.metricsTextView;
+        mLocateMeter = binding.locateProgressBar;
+        setHasOptionsMenu(true);
 
-        // Find and set up the results ListView
-        mResultsListView =binding.resultListView;
-        mResultsListView.setAdapter(mResultsArrayAdapter);
-        mResultsListView.setFastScrollEnabled(true);
+        // Find and set up the results RecyclerView - the adapter is added once the model exists
+        mResultsRecyclerView = binding.resultRecyclerView;
+        mResultsRecyclerView.setLayoutManager(new LinearLayoutManager(this.getContext()));
 
         mBarcodeResultsListView = binding.barcodeListView;
         mBarcodeResultsListView.setAdapter(mBarcodeResultsArrayAdapter);
@@ -162,6 +231,33 @@ public class InventoryFragment extends Fragment
         // The handler for model messages
         GenericHandler mGenericModelHandler = new GenericHandler(this);
         mModel.setHandler(mGenericModelHandler);
+        mModel.getMetrics().setRuntimeCounters(new AndroidRuntimeCounters());
+
+        // Recent reads are held in a ring buffer, evicted reads go back to the model's pool
+        mResultsAdapter = new TagResultsAdapter(sRecentReadsCapacity, mModel.getTagEventPool(), mModel.getGs1Cache());
+        mResultsRecyclerView.setAdapter(mResultsAdapter);
+        mResultsAdapter.setOnTagLongClickListener(new TagResultsAdapter.OnTagLongClickListener() {
+            @Override
+            public void onTagLongClick(String epc) {
+                startLocating(epc);
+            }
+        });
+
+        // Locating shares the commander and the handler
+        mFindTagModel = new FindTagModel();
+        mFindTagModel.setCommander(getCommander());
+        mFindTagModel.setHandler(mGenericModelHandler);
+
+        // So does commissioning
+        mCommissioningModel = new CommissioningModel();
+        mCommissioningModel.setCommander(getCommander());
+        mCommissioningModel.setHandler(mGenericModelHandler);
+        mBulkReadModel = new BulkReadModel();
+        mBulkReadModel.setCommander(getCommander());
+        mBulkReadModel.setHandler(mGenericModelHandler);
+
+        // Recover the stocktake in progress and journal the new reads
+        mModel.restoreJournal(new File(requireContext().getFilesDir(), sJournalFileName));
 
 
         return binding.getRoot();
@@ -177,6 +273,11 @@ public class InventoryFragment extends Fragment
     public void onDestroyView()
     {
         super.onDestroyView();
+        try {
+            mModel.closeJournal();
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write the journal", e);
+        }
         binding = null;
     }
 
@@ -189,7 +290,14 @@ public class InventoryFragment extends Fragment
     public synchronized void onPause() {
         super.onPause();
 
+        stopLocating();
+        mBulkReadModel.stop();
         mModel.setEnabled(false);
+        if( mCommissioning ) {
+            mCommissioningModel.setEnabled(false);
+            saveNextSerial();
+        }
+        mMetricsTextView.removeCallbacks(mMetricsUpdater);
 
         // Stop observing events from the AsciiCommander
         getCommander().stateChangedEvent().removeObserver(mConnectionStateObserver);
@@ -199,15 +307,315 @@ public class InventoryFragment extends Fragment
     public synchronized void onResume() {
         super.onResume();
 
-        mModel.setEnabled(true);
+        if( mCommissioning ) {
+            mCommissioningModel.setEnabled(true);
+        } else {
+            mModel.setEnabled(true);
+        }
 
         // Observe events from the AsciiCommander
         getCommander().stateChangedEvent().addObserver(mConnectionStateObserver);
 
+        if( mShowMetrics ) {
+            mMetricsUpdater.run();
+        }
         UpdateUI();
     }
 
 
+    //----------------------------------------------------------------------------------------------
+    // Options menu - metrics overlay and export
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public void onCreateOptionsMenu(@NonNull Menu menu, @NonNull MenuInflater inflater)
+    {
+        inflater.inflate(R.menu.inventory_metrics, menu);
+        inflater.inflate(R.menu.inventory_export, menu);
+        inflater.inflate(R.menu.inventory_reconcile, menu);
+        inflater.inflate(R.menu.inventory_tuning, menu);
+        inflater.inflate(R.menu.inventory_commission, menu);
+        inflater.inflate(R.menu.inventory_bulk_read, menu);
+        menu.findItem(R.id.show_metrics_menu_item).setChecked(mShowMetrics);
+        menu.findItem(R.id.commission_menu_item).setChecked(mCommissioning);
+        menu.findItem(R.id.auto_tune_menu_item).setChecked(mModel.isAutoTuneEnabled());
+        menu.findItem(R.id.inventory_read_menu_item).setChecked(mModel.isInventoryReadEnabled());
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item)
+    {
+        if( item.getItemId() == R.id.show_metrics_menu_item )
+        {
+            mShowMetrics = !item.isChecked();
+            item.setChecked(mShowMetrics);
+            mMetricsTextView.removeCallbacks(mMetricsUpdater);
+            if( mShowMetrics ) {
+                mLastMetricsSnapshot = null;
+                mMetricsUpdater.run();
+            }
+            mMetricsTextView.setVisibility(mShowMetrics ? View.VISIBLE : View.GONE);
+            return true;
+        }
+        else if( item.getItemId() == R.id.export_csv_menu_item )
+        {
+            exportSession(ExportFormat.CSV);
+            return true;
+        }
+        else if( item.getItemId() == R.id.export_ndjson_menu_item )
+        {
+            exportSession(ExportFormat.NDJSON);
+            return true;
+        }
+        else if( item.getItemId() == R.id.auto_tune_menu_item )
+        {
+            boolean enabled = !item.isChecked();
+            item.setChecked(enabled);
+            mModel.setAutoTuneEnabled(enabled);
+            return true;
+        }
+        else if( item.getItemId() == R.id.load_expected_menu_item )
+        {
+            File directory = requireContext().getExternalFilesDir(null);
+            if( directory == null ) {
+                directory = requireContext().getFilesDir();
+            }
+            mModel.loadExpectedInventory(new File(directory, sExpectedFileName));
+            return true;
+        }
+        else if( item.getItemId() == R.id.read_tids_menu_item )
+        {
+            startBulkRead(Databank.TRANSPONDER_IDENTIFIER, sTidWords);
+            return true;
+        }
+        else if( item.getItemId() == R.id.read_user_memory_menu_item )
+        {
+            startBulkRead(Databank.USER, sUserMemoryWords);
+            return true;
+        }
+        else if( item.getItemId() == R.id.inventory_read_menu_item )
+        {
+            boolean enabled = !item.isChecked();
+            item.setChecked(enabled);
+            // The words come back with each EPC so there is no second pass over the tags
+            mModel.setInventoryRead(enabled ? Databank.USER : null, 0, sUserMemoryWords);
+            mModel.updateConfiguration();
+            return true;
+        }
+        else if( item.getItemId() == R.id.commission_menu_item )
+        {
+            boolean enabled = !item.isChecked();
+            item.setChecked(enabled);
+            setCommissioning(enabled);
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    // The export is written in the background, the model reports the file name when it is done
+    private void exportSession(ExportFormat format)
+    {
+        File directory = requireContext().getExternalFilesDir(null);
+        if( directory == null ) {
+            directory = requireContext().getFilesDir();
+        }
+        String name = "session-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()) + "." + format.getExtension();
+        mModel.exportSession(new File(directory, name), format);
+    }
+
+    //----------------------------------------------------------------------------------------------
+    // Locating a tag
+    //----------------------------------------------------------------------------------------------
+
+    // The inventory stops listening while the reader is finding the tag
+    private void startLocating(String epc)
+    {
+        if( !getCommander().isConnected() || mCommissioning || mBulkReading ) {
+            return;
+        }
+        mModel.setEnabled(false);
+        mFindTagModel.setEnabled(true);
+        mFindTagModel.startLocating(epc);
+        mTonePlayer.start(sLocateVolume);
+
+        mLocateMeter.setProgress(0);
+        mLocateMeter.setVisibility(View.VISIBLE);
+        mStartButton.setEnabled(false);
+        mStopButton.setEnabled(true);
+        mLocateUpdater.run();
+    }
+
+    private void stopLocating()
+    {
+        if( !mFindTagModel.enabled() ) {
+            return;
+        }
+        mLocateMeter.removeCallbacks(mLocateUpdater);
+        mTonePlayer.stop();
+        mFindTagModel.setEnabled(false);
+        mModel.setEnabled(true);
+
+        mLocateMeter.setVisibility(View.GONE);
+        mResultTextView.setText("");
+        mStartButton.setEnabled(true);
+        mStopButton.setEnabled(false);
+    }
+
+    private void showLocateLevel(int level)
+    {
+        mLocateMeter.setProgress(level);
+        mTonePlayer.setLevel(level);
+    }
+
+    private final Runnable mLocateUpdater = new Runnable() {
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            showLocateLevel(mFindTagModel.getLocator().getLevel(now));
+            mLocateText.setLength(0);
+            mLocateText.append("Locating ").append(mFindTagModel.getTargetEpc()).append('\n');
+            mFindTagModel.getLocator().appendTo(mLocateText, now);
+            mResultTextView.setText(mLocateText);
+            mLocateMeter.postDelayed(this, sLocateRefreshIntervalMs);
+        }
+    };
+
+    //----------------------------------------------------------------------------------------------
+    // Commissioning tags
+    //----------------------------------------------------------------------------------------------
+
+    // The inventory stops listening while tags are commissioned
+    private void setCommissioning(boolean enabled)
+    {
+        if( enabled == mCommissioning || mBulkReading ) {
+            return;
+        }
+        mCommissioning = enabled;
+        if( enabled ) {
+            stopLocating();
+            mModel.scanStop();
+            mModel.setEnabled(false);
+            mCommissioningModel.setEnabled(true);
+            mResultTextView.setText(R.string.commission_scan_gtin_text);
+        } else {
+            mCommissioningModel.setEnabled(false);
+            saveNextSerial();
+            mCommissioningModel.getPipeline().setJob(null);
+            mModel.setEnabled(true);
+            mResultTextView.setText("");
+        }
+        mStartButton.setEnabled(true);
+        mStopButton.setEnabled(false);
+    }
+
+    // A scanned GTIN starts a new job, tags are commissioned as soon as they are presented
+    private void startCommissioning(String gtin)
+    {
+        if( !Sgtin96Encoder.isValidGtin(gtin) ) {
+            mResultTextView.setText(getString(R.string.commission_invalid_gtin_text, gtin));
+            return;
+        }
+        saveNextSerial();
+        long serial = getCommissionPreferences().getLong(sNextSerialKeyPrefix + gtin, 0);
+        mCommissioningModel.getPipeline().setJob(new CommissioningJob(gtin, sCommissionCompanyPrefixDigits, sCommissionFilter, serial, null));
+        mCommissioningModel.start();
+        mStartButton.setEnabled(false);
+        mStopButton.setEnabled(true);
+        showCommissioning();
+    }
+
+    private void showCommissioning()
+    {
+        CommissioningJob job = mCommissioningModel.getPipeline().getJob();
+        if( job == null ) {
+            return;
+        }
+        mCommissionText.setLength(0);
+        mCommissionText.append("GTIN ").append(job.getGtin()).append('\n');
+        mCommissioningModel.getPipeline().appendTo(mCommissionText, System.currentTimeMillis());
+        mResultTextView.setText(mCommissionText);
+    }
+
+    // Saved after every attempt so a serial is never given out twice
+    private void saveNextSerial()
+    {
+        CommissioningJob job = mCommissioningModel.getPipeline().getJob();
+        if( job != null ) {
+            getCommissionPreferences().edit()
+                    .putLong(sNextSerialKeyPrefix + job.getGtin(), mCommissioningModel.getPipeline().getNextSerial())
+                    .apply();
+        }
+    }
+
+    private SharedPreferences getCommissionPreferences()
+    {
+        return requireContext().getSharedPreferences(sCommissionPreferences, Context.MODE_PRIVATE);
+    }
+
+    //----------------------------------------------------------------------------------------------
+    // Reading the memory of the tags seen
+    //----------------------------------------------------------------------------------------------
+
+    // The inventory stops while the tags it found are read, the rows fill in as they are
+    private void startBulkRead(Databank bank, int words)
+    {
+        if( !getCommander().isConnected() || mCommissioning || mBulkReading || mModel.getTagStore().size() == 0 ) {
+            return;
+        }
+        stopLocating();
+        mModel.scanStop();
+        mModel.setEnabled(false);
+        mBulkReading = true;
+        mBulkReadModel.start(mModel.getTagStore(), bank, 0, words, null);
+        mStartButton.setEnabled(false);
+        mStopButton.setEnabled(true);
+    }
+
+    // Called on each progress message, the last comes once the model has stopped
+    private void checkBulkReadFinished()
+    {
+        if( mBulkReading && !mBulkReadModel.isRunning() ) {
+            mBulkReading = false;
+            mModel.setEnabled(true);
+            mStartButton.setEnabled(true);
+            mStopButton.setEnabled(false);
+        }
+    }
+
+    // Replaces the result text with the cycle count totals when expected tags are loaded
+    private void showReconciliation()
+    {
+        Reconciliation reconciliation = mModel.getReconciliation();
+        if( reconciliation != null ) {
+            mReconciliationText.setLength(0);
+            reconciliation.appendTo(mReconciliationText);
+            mResultTextView.setText(mReconciliationText);
+        }
+    }
+
+    // Shows the rates since the previous refresh and the distributions since the last clear
+    private final Runnable mMetricsUpdater = new Runnable() {
+        @Override
+        public void run() {
+            MetricsSnapshot snapshot = mModel.getMetrics().snapshot();
+            mMetricsText.setLength(0);
+            snapshot.appendTo(mMetricsText, mLastMetricsSnapshot);
+            mMetricsText.append('\n');
+            if( !mModel.getTagStore().appendPrefilterTo(mMetricsText) ) {
+                mMetricsText.setLength(mMetricsText.length() - 1);
+            }
+            TuningDecision decision = mModel.isAutoTuneEnabled() ? mModel.getTuner().getLastDecision() : null;
+            if( decision != null ) {
+                mMetricsText.append('\n');
+                decision.appendTo(mMetricsText);
+            }
+            mMetricsTextView.setText(mMetricsText);
+            mLastMetricsSnapshot = snapshot;
+            mMetricsTextView.postDelayed(this, sMetricsRefreshIntervalMs);
+        }
+    };
+
+
     //----------------------------------------------------------------------------------------------
     // Model notifications
     //----------------------------------------------------------------------------------------------
@@ -229,20 +637,54 @@ public class InventoryFragment extends Fragment
                         break;
 
                     case ModelBase.MESSAGE_NOTIFICATION:
-                        // Examine the message for prefix
-                        String message = (String)msg.obj;
-                        if( message.startsWith("ER:")) {
-                            t.mResultTextView.setText( message.substring(3));
-                            t.mResultTextView.setBackgroundColor(0xD0FFFFFF);
+                        t.mResultTextView.setText((String)msg.obj);
+                        if( t.mCommissioning ) {
+                            t.saveNextSerial();
+                            t.showCommissioning();
+                        }
+                        t.checkBulkReadFinished();
+                        t.UpdateUI();
+                        break;
+
+                    case ModelBase.ERROR_NOTIFICATION:
+                        t.mResultTextView.setText((String)msg.obj);
+                        t.mResultTextView.setBackgroundColor(0xD0FFFFFF);
+                        t.UpdateUI();
+                        break;
+
+                    case ModelBase.BARCODE_NOTIFICATION:
+                        if( t.mCommissioning ) {
+                            t.startCommissioning((String)msg.obj);
+                            break;
                         }
-                        else if( message.startsWith("BC:")) {
-                            t.mBarcodeResultsListView.setVisibility(View.VISIBLE);
-                            t.mBarcodeResultsArrayAdapter.add(message);
-                            t.scrollBarcodeListViewToBottom();
-                        } else {
-                            t.mResultsArrayAdapter.add(message);
+                        t.mBarcodeResultsListView.setVisibility(View.VISIBLE);
+                        t.mBarcodeResultsArrayAdapter.add("BC: " + msg.obj);
+                        t.scrollBarcodeListViewToBottom();
+                        t.UpdateUI();
+                        break;
+
+                    case ModelBase.TAG_NOTIFICATION:
+                        // Add the whole batch with a single change notification
+                        if( t.mModel.drainTagNotifications(t.mTagBatch) > 0 ) {
+                            t.mResultsAdapter.addReads(t.mTagBatch);
+                            t.mTagBatch.clear();
                             t.scrollResultsListViewToBottom();
                         }
+                        t.showReconciliation();
+                        t.UpdateUI();
+                        break;
+
+                    case ModelBase.LOCATE_NOTIFICATION:
+                        // Straight to the meter and the clicks, the text follows on the next refresh
+                        t.showLocateLevel(t.mFindTagModel.takeFeedback());
+                        break;
+
+                    case ModelBase.TAGS_CHANGED_NOTIFICATION:
+                        // Only the rows of the tags that changed are rebound
+                        int previousCount = t.mResultsAdapter.getTags().size();
+                        t.mModel.drainTagChanges(t.mResultsAdapter.getTags(), t.mResultsAdapter.getChangedTags());
+                        t.mResultsAdapter.tagsChanged(previousCount);
+                        t.showReconciliation();
                         t.UpdateUI();
                         break;
 
@@ -266,13 +708,10 @@ public class InventoryFragment extends Fragment
 
 
     private void scrollResultsListViewToBottom() {
-        mResultsListView.post(new Runnable() {
-            @Override
-            public void run() {
-                // Select the last row so it will scroll into view...
-                mResultsListView.setSelection(mResultsArrayAdapter.getCount() - 1);
-            }
-        });
+        // Bring the last row into view
+        if( mResultsAdapter.getItemCount() > 0 ) {
+            mResultsRecyclerView.scrollToPosition(mResultsAdapter.getItemCount() - 1);
+        }
     }
 
     private void scrollBarcodeListViewToBottom() {
@@ -379,6 +818,15 @@ public class InventoryFragment extends Fragment
     private View.OnClickListener mScanButtonListener = new View.OnClickListener() {
         public void onClick(View v) {
             try {
+                if( mCommissioning ) {
+                    // Carry on with the job scanned last
+                    if( mCommissioningModel.getPipeline().getJob() != null ) {
+                        mCommissioningModel.start();
+                        mStartButton.setEnabled(false);
+                        mStopButton.setEnabled(true);
+                    }
+                    return;
+                }
                 mResultTextView.setText("");
                 // Start the continuous inventory
                 mModel.scanStart();
@@ -399,6 +847,22 @@ public class InventoryFragment extends Fragment
     private View.OnClickListener mScanStopButtonListener = new View.OnClickListener() {
         public void onClick(View v) {
             try {
+                if( mFindTagModel.enabled() ) {
+                    stopLocating();
+                    return;
+                }
+                if( mBulkReading ) {
+                    // The model reports how far it got once the batch in progress is done
+                    mBulkReadModel.stop();
+                    return;
+                }
+                if( mCommissioning ) {
+                    mCommissioningModel.stop();
+                    saveNextSerial();
+                    mStartButton.setEnabled(true);
+                    mStopButton.setEnabled(false);
+                    return;
+                }
                 mResultTextView.setText("");
                 // Stop the continuous inventory
                 mModel.scanStop();
@@ -419,7 +883,7 @@ public class InventoryFragment extends Fragment
         public void onClick(View v) {
             try {
                 // Clear the list
-                mResultsArrayAdapter.clear();
+                mResultsAdapter.clear();
                 mResultTextView.setText("");
                 mResultTextView.setBackgroundColor(0x00FFFFFF);
                 mBarcodeResultsArrayAdapter.clear();
@@ -466,6 +930,8 @@ public class InventoryFragment extends Fragment
                 CheckBox uniquesCheckBox = (CheckBox)v;
 
                 mModel.setUniquesOnly(uniquesCheckBox.isChecked());
+                // Show one row per tag or one row per read
+                mResultsAdapter.setShowTags(uniquesCheckBox.isChecked());
 
                 UpdateUI();
 
@@ -4,24 +4,75 @@
 
 package com.petroit.tsirfidandroidapp.rfid.inventory;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.petroit.tsirfidandroidapp.rfid.ModelBase;
+import com.petroit.tsirfidandroidapp.rfid.ModelEvents;
+import com.petroit.tsirfidandroidapp.rfid.ModelException;
+import com.petroit.tsirfidandroidapp.rfid.ModelTaskEngine;
+import com.petroit.tsirfidandroidapp.rfid.ScanCycleStatistics;
+import com.petroit.tsirfidandroidapp.rfid.config.AntennaCheckCache;
+import com.petroit.tsirfidandroidapp.rfid.config.ConfigurationManager;
+import com.petroit.tsirfidandroidapp.rfid.config.ReaderConfiguration;
+import com.petroit.tsirfidandroidapp.rfid.correlate.AssociationLog;
+import com.petroit.tsirfidandroidapp.rfid.correlate.BarcodeTagJoin;
+import com.petroit.tsirfidandroidapp.rfid.export.ExportFormat;
+import com.petroit.tsirfidandroidapp.rfid.export.SessionExporter;
+import com.petroit.tsirfidandroidapp.rfid.gs1.Gs1DecodeCache;
+import com.petroit.tsirfidandroidapp.rfid.journal.TagJournal;
+import com.petroit.tsirfidandroidapp.rfid.reconcile.ExpectedInventory;
+import com.petroit.tsirfidandroidapp.rfid.reconcile.Reconciliation;
+import com.petroit.tsirfidandroidapp.rfid.tags.BarcodeLog;
+import com.petroit.tsirfidandroidapp.rfid.tags.EpcBloomFilter;
+import com.petroit.tsirfidandroidapp.rfid.tags.IntList;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEventPool;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEventRing;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEventWorker;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagStore;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagSummary;
+import com.petroit.tsirfidandroidapp.rfid.tuning.InventoryTuner;
+import com.petroit.tsirfidandroidapp.rfid.tuning.RfSettings;
+import com.petroit.tsirfidandroidapp.rfid.tuning.TuningDecision;
 import com.uk.tsl.rfid.asciiprotocol.commands.AbortCommand;
 import com.uk.tsl.rfid.asciiprotocol.commands.AlertCommand;
 import com.uk.tsl.rfid.asciiprotocol.commands.BarcodeCommand;
 import com.uk.tsl.rfid.asciiprotocol.commands.FactoryDefaultsCommand;
 import com.uk.tsl.rfid.asciiprotocol.commands.InventoryCommand;
+import com.uk.tsl.rfid.asciiprotocol.commands.SwitchActionCommand;
+import com.uk.tsl.rfid.asciiprotocol.commands.SwitchPressCommand;
+import com.uk.tsl.rfid.asciiprotocol.commands.SwitchSinglePressCommand;
 import com.uk.tsl.rfid.asciiprotocol.enumerations.AlertDuration;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.Databank;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.SwitchAction;
 import com.uk.tsl.rfid.asciiprotocol.enumerations.TriState;
+import com.uk.tsl.rfid.asciiprotocol.parameters.AntennaParameters;
 import com.uk.tsl.rfid.asciiprotocol.responders.IBarcodeReceivedDelegate;
 import com.uk.tsl.rfid.asciiprotocol.responders.ICommandResponseLifecycleDelegate;
 import com.uk.tsl.rfid.asciiprotocol.responders.ITransponderReceivedDelegate;
 import com.uk.tsl.rfid.asciiprotocol.responders.TransponderData;
-import com.uk.tsl.utils.HexEncoding;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class InventoryModel extends ModelBase
 {
@@ -31,9 +82,62 @@ public class InventoryModel extends ModelBase
     private boolean mEnabled;
     private boolean mContinuousScanEnabled;
     private boolean mUniquesOnly;
-    private int mTagsSeen = 0;
+    // Counted on the responder thread, added to by a journal recovery task and reset by clearUniques()
+    private final AtomicInteger mTagsSeen = new AtomicInteger();
+    private int mCycleReadCount;
+    private int mCycleNewCount;
+    private long mCycleStartNanos;
+    private long mLastResponseEndedNanos;
+    // True while the reader rather than the app starts each inventory of a continuous scan
+    private volatile boolean mReaderRepeating;
     private long alertLastIssueTime = System.nanoTime();
     private final static long sAlertRepeatDelayMs = 400 * 1000 * 1000;
+    private final static int sTagEventPoolSize = 1024;
+    // A few seconds of reads, and the longest a read waits for a blocking consumer
+    private final static int sTagRingCapacity = 4096;
+    private final static long sTagRingBlockTimeoutNanos = 2 * 1000 * 1000;
+    private final static int sExpectedUniqueTags = 4096;
+    private final static int sMaximumUniqueTags = 1 << 21;
+    private final static int sMaximumBarcodes = 1 << 20;
+    // The recent reads list decodes every read so keep at least a field of view of tags
+    private final static int sGs1CacheSize = 8192;
+    private final static double sPrefilterFalsePositiveRate = 0.01;
+    // Rounds observed by the tuner between decisions and the decisions kept for review
+    private final static int sTunerWindowRounds = 8;
+    private final static int sTunerDecisionCapacity = 256;
+    // Configuration changes are sent once they have been quiet this long
+    private final static long sConfigurationDebounceMs = 250;
+    // A successful antenna check is trusted this long
+    private final static long sAntennaCheckValidityMs = 60 * 1000;
+    // A barcode is paired with the tags read this long before and after it
+    private final static long sAssociationBeforeMs = 1000;
+    private final static long sAssociationAfterMs = 5000;
+    // Reads held for the window before a scan, the barcodes being paired at once and their tags
+    private final static int sAssociationReadCapacity = 8192;
+    private final static int sAssociationOpenWindows = 16;
+    private final static int sAssociationTagsPerWindow = 4096;
+    private final static int sMaximumAssociations = 1 << 21;
+    // Large enough that the file is written in big chunks
+    private final static int sExportBufferSize = 64 * 1024;
+
+	/**
+	 * How a continuous scan keeps the reader inventorying
+	 */
+	public enum ContinuousScanMode
+	{
+		// The app issues the next inventory when each response has ended, leaving a round trip between rounds
+		APP_REISSUE,
+		// The reader repeats the inventory itself, as if its trigger were held, until aborted
+		READER_REPEAT
+	}
+
+	private ContinuousScanMode mContinuousScanMode = ContinuousScanMode.APP_REISSUE;
+
+	// The reader repeats as soon as the previous inventory has finished
+	private final static int sReaderRepeatDelayMs = SwitchActionCommand.minimumRepeatDelay();
+
+	// Timing of the inventory cycles while scanning continuously
+	private final ScanCycleStatistics mScanCycleStatistics = new ScanCycleStatistics();
 
 	public boolean enabled() { return mEnabled; }
 
@@ -45,6 +149,7 @@ public class InventoryModel extends ModelBase
 		// Update the commander for state changes
 		if(oldState != state) {
 			if( mEnabled ) {
+				startConsumers();
 				// Listen for transponders
 				getCommander().addResponder(mInventoryResponder);
 				// Listen for barcodes
@@ -58,45 +163,327 @@ public class InventoryModel extends ModelBase
 				getCommander().removeResponder(mInventoryResponder);
 				// Stop listening for barcodes
 				getCommander().removeResponder(mBarcodeResponder);
+				stopConsumers();
 			}
 			
 		}
 	}
 
+	/**
+	 * @return true when reads are shown as one aggregated row per tag rather than one row per read
+	 */
 	public boolean uniquesOnly() { return mUniquesOnly; }
 
 	public void setUniquesOnly(boolean value)
     {
         mUniquesOnly = value;
+        if( mUniquesOnly )
+        {
+            // Bring the client up to date with the tags already seen
+            notifyTagsChanged();
+        }
     }
 
 	// The command to use as a responder to capture incoming inventory responses
 	private InventoryCommand mInventoryResponder;
-	// The command used to issue commands
-	private InventoryCommand mInventoryCommand;
+	// The command used to issue commands, it can also read memory with each EPC
+	private DatabankInventoryCommand mInventoryCommand;
 
 	// The command to use as a responder to capture incoming barcode responses
 	private BarcodeCommand mBarcodeResponder;
 
-	// A 'Dictionary' lookup for the unique transponders seen
-	private HashMap<String, TransponderData> mUniqueTransponders = new HashMap<>();
+	// The aggregated reads of each unique transponder seen
+	private final TagStore mTagStore = new TagStore(sExpectedUniqueTags, sMaximumUniqueTags);
+
+	/**
+	 * @return the aggregated reads of each unique transponder seen
+	 */
+	public TagStore getTagStore() { return mTagStore; }
+
+	// The population given by the client, 0 to size the prefilter from the expected inventory
+	private volatile int mExpectedPopulation;
+
+	/**
+	 * Size a Bloom filter in front of the tag index for a large stocktake, new tags it rules out
+	 * are added without searching the index
+	 *
+	 * @param population the number of tags expected, 0 to size it from the expected inventory if
+	 * one is loaded otherwise to use the index alone
+	 */
+	public void setExpectedPopulation(int population)
+	{
+		mExpectedPopulation = population;
+		updatePrefilter();
+	}
+
+	// Size the prefilter for the population given, or for the expected inventory when none is
+	private void updatePrefilter()
+	{
+		int population = mExpectedPopulation;
+		Reconciliation reconciliation = mReconciliation;
+		if( population <= 0 && reconciliation != null )
+		{
+			// Allow for some unexpected tags too
+			int expected = reconciliation.getExpectedCount();
+			population = expected + expected / 4;
+		}
+		mTagStore.setPrefilter(population > 0 ? new EpcBloomFilter(population, sPrefilterFalsePositiveRate) : null);
+	}
+
+	// Adjusts the inventory parameters between the rounds of a continuous scan
+	private final InventoryTuner mTuner = new InventoryTuner(sTunerWindowRounds,
+			AntennaParameters.MinimumCarrierPower, AntennaParameters.MaximumCarrierPower, sTunerDecisionCapacity);
+	private volatile boolean mAutoTuneEnabled;
+
+	/**
+	 * @return the tuner and its decisions
+	 */
+	public InventoryTuner getTuner() { return mTuner; }
+
+	public boolean isAutoTuneEnabled() { return mAutoTuneEnabled; }
+
+	/**
+	 * Let the tuner adjust Q, session, target and power between the rounds of a continuous scan
+	 * <p>
+	 * The tuner only acts when the app issues each inventory, the reader holds the parameters
+	 * while it repeats the inventory itself.
+	 */
+	public void setAutoTuneEnabled(boolean enabled)
+	{
+		if( enabled && !mAutoTuneEnabled )
+		{
+			mTuner.reset();
+		}
+		mAutoTuneEnabled = enabled;
+	}
+
+	// Sends the inventory parameters to the reader when they change, flushed on the main thread
+	private final Runnable mFlushConfiguration = new Runnable() {
+		@Override
+		public void run() {
+			mConfigurationManager.flush(SystemClock.uptimeMillis());
+		}
+	};
+	private final ConfigurationManager mConfigurationManager = new ConfigurationManager(new ConfigurationManager.Sender() {
+		@Override
+		public boolean send(ReaderConfiguration configuration) {
+			return sendConfiguration();
+		}
+	}, new ConfigurationManager.Scheduler() {
+		// Created on the first flush, so the model can be built where there is no main looper
+		private Handler mConfigurationHandler;
+
+		@Override
+		public synchronized void scheduleFlush(long delayMs) {
+			if( mConfigurationHandler == null ) {
+				mConfigurationHandler = new Handler(Looper.getMainLooper());
+			}
+			mConfigurationHandler.postDelayed(mFlushConfiguration, delayMs);
+		}
+	}, sConfigurationDebounceMs);
+
+	// Saves a round trip to the reader before each scan
+	private final AntennaCheckCache mAntennaCheckCache = new AntennaCheckCache(sAntennaCheckValidityMs);
+
+	/**
+	 * @return the record of the configurations sent to the reader
+	 */
+	public ConfigurationManager getConfigurationManager() { return mConfigurationManager; }
+
+	/**
+	 * @return the remembered antenna check and how many checks it has saved
+	 */
+	public AntennaCheckCache getAntennaCheckCache() { return mAntennaCheckCache; }
+
+	// Decodes the GS1 EPCs for the aggregated tags and the recent reads
+	private final Gs1DecodeCache mGs1Cache = new Gs1DecodeCache(sGs1CacheSize);
+
+	/**
+	 * @return the cache of decoded GS1 EPCs, shared by the tag store and the views of the reads
+	 */
+	public Gs1DecodeCache getGs1Cache() { return mGs1Cache; }
+
+	// The barcodes scanned
+	private final BarcodeLog mBarcodeLog = new BarcodeLog(256, sMaximumBarcodes);
+
+	/**
+	 * @return the barcodes scanned since the last clear
+	 */
+	public BarcodeLog getBarcodeLog() { return mBarcodeLog; }
+
+	// The tags read around each barcode
+	// The join runs on the phone's monotonic clock, taken as each read and scan arrives. The
+	// reader's own clock is never set and has whole second resolution, so it cannot be compared
+	// with the scans
+	private final AssociationLog mAssociationLog = new AssociationLog(1024, sMaximumAssociations);
+	private final BarcodeTagJoin mBarcodeTagJoin = new BarcodeTagJoin(new BarcodeTagJoin.Listener() {
+		@Override
+		public void onAssociation(int barcodeIndex, int tagOrdinal, long monotonicMs) {
+			long readTime = System.currentTimeMillis() - (TimeUnit.NANOSECONDS.toMillis(System.nanoTime()) - monotonicMs);
+			mAssociationLog.onAssociation(barcodeIndex, tagOrdinal, readTime);
+			TagJournal journal = mJournal;
+			if( journal != null )
+			{
+				int length = mTagStore.getEpc(tagOrdinal, mAssociationEpc);
+				journal.appendAssociation(barcodeIndex, mAssociationEpc, length, readTime);
+			}
+			getEvents().publishAssociation(barcodeIndex, tagOrdinal, readTime);
+		}
+	}, sAssociationBeforeMs, sAssociationAfterMs, sAssociationReadCapacity, sAssociationOpenWindows, sAssociationTagsPerWindow);
+	// The EPC of each pair journaled, only used by the analysis worker
+	private final byte[] mAssociationEpc = new byte[TagEvent.MAX_EPC_BYTES];
+
+	/**
+	 * @return the barcode to tag pairs found since the last clear
+	 */
+	public AssociationLog getAssociationLog() { return mAssociationLog; }
+
+	/**
+	 * @return the join pairing barcodes with the tags read around them, for its statistics
+	 */
+	public BarcodeTagJoin getBarcodeTagJoin() { return mBarcodeTagJoin; }
+
+	// The aggregated view is refreshed at most this often
+	private long mTagRefreshIntervalMs = 250;
+	private final AtomicBoolean mTagsChangedPending = new AtomicBoolean(false);
+
+	public long getTagRefreshInterval() { return mTagRefreshIntervalMs; }
+
+	public void setTagRefreshInterval(long intervalMs) { mTagRefreshIntervalMs = intervalMs; }
+
+	// Reusable events for passing reads to the client
+	private final TagEventPool mTagEventPool = new TagEventPool(sTagEventPoolSize);
+
+	/**
+	 * @return the pool that tag events sent to the client should be recycled into
+	 */
+	public TagEventPool getTagEventPool() { return mTagEventPool; }
+
+	// Every read for consumers on their own threads, so the responder thread only parses and
+	// aggregates the reads
+	private final TagEventRing mTagRing = new TagEventRing(sTagRingCapacity, sTagRingBlockTimeoutNanos);
+	// The read being parsed, copied into the ring
+	private final TagEvent mReadEvent = mTagEventPool.obtain();
+	// Counts the reads and the reads against the expected inventory, and pairs them with barcodes
+	private final TagEventWorker mAnalysisWorker;
+	// Passes the reads to the client, which only shows the latest so can lose some
+	private final TagEventWorker mDisplayWorker;
+	// The scans waiting to be joined, in time order, so they are given to the join in turn with the reads
+	private final ConcurrentLinkedQueue<PendingBarcode> mPendingBarcodes = new ConcurrentLinkedQueue<>();
+
+	private static final class PendingBarcode
+	{
+		final int mIndex;
+		final long mMonotonicMs;
+
+		PendingBarcode(int index, long monotonicMs)
+		{
+			mIndex = index;
+			mMonotonicMs = monotonicMs;
+		}
+	}
+
+	/**
+	 * @return the ring every read is published to, add a consumer to drain it on another thread
+	 */
+	public TagEventRing getTagRing() { return mTagRing; }
 
 	// The inventory command configuration
 	public InventoryCommand getCommand() { return mInventoryCommand; }
 
+	/**
+	 * @return the responder for inventory responses, e.g. to add to a SimulatedReader
+	 */
+	public InventoryCommand getInventoryResponder() { return mInventoryResponder; }
+
+	/**
+	 * Read a block of memory from each tag in the same round as its EPC
+	 *
+	 * The words arrive with each read and replace the tag's data in the store, so sensor values
+	 * stay current. Call updateConfiguration() to send the change
+	 *
+	 * @param bank USER or RESERVED, or null to stop reading
+	 * @param offset the first word to read
+	 * @param length the number of words to read
+	 */
+	public void setInventoryRead(Databank bank, int offset, int length)
+	{
+		if( bank == null ) {
+			mInventoryCommand.setBank(Databank.NOT_SPECIFIED);
+			mInventoryCommand.setOffset(-1);
+			mInventoryCommand.setLength(-1);
+			return;
+		}
+		if( bank != Databank.USER && bank != Databank.RESERVED ) {
+			throw new IllegalArgumentException("Only the user and reserved banks are read in an inventory");
+		}
+		if( offset < 0 || length <= 0 ) {
+			throw new IllegalArgumentException("The offset and length must give at least one word");
+		}
+		mInventoryCommand.setBank(bank);
+		mInventoryCommand.setOffset(offset);
+		mInventoryCommand.setLength(length);
+	}
+
+	/**
+	 * @return true when each inventory also reads memory
+	 */
+	public boolean isInventoryReadEnabled() { return mInventoryCommand.readsDatabank(); }
+
+	/**
+	 * @return the responder for barcode responses, e.g. to add to a SimulatedReader
+	 */
+	public BarcodeCommand getBarcodeResponder() { return mBarcodeResponder; }
+
 	// Used to indicate tags seen in continuous inventory mode
 	private AlertCommand mAlertCommand;
 
+	// Used for the READER_REPEAT continuous scan mode
+	private SwitchActionCommand mRepeatInventoryActionCommand;
+	private SwitchActionCommand mDefaultSwitchActionCommand;
+	private SwitchPressCommand mHoldSwitchCommand;
+
+	public ContinuousScanMode getContinuousScanMode() { return mContinuousScanMode; }
+
+	/**
+	 * @param mode how the next continuous scan keeps the reader inventorying
+	 */
+	public void setContinuousScanMode(ContinuousScanMode mode) { mContinuousScanMode = mode; }
+
+	/**
+	 * @return the cycle and gap timing of the continuous scans since the last clear
+	 */
+	public ScanCycleStatistics getScanCycleStatistics() { return mScanCycleStatistics; }
+
 	public InventoryModel()
 	{
         mContinuousScanEnabled = false;
         mUniquesOnly = false;
 
+        mTagStore.setGs1Decoder(mGs1Cache);
+        mTuner.setDecisionListener(new InventoryTuner.DecisionListener() {
+            @Override
+            public void onDecision(TuningDecision decision) {
+                Log.i(InventoryModel.class.getName(), decision.toString());
+            }
+        });
+
         mAlertCommand = new AlertCommand();
         mAlertCommand.setDuration(AlertDuration.SHORT);
 
+        // The switch single press performs an inventory, repeating while the switch is held
+        mRepeatInventoryActionCommand = new SwitchActionCommand();
+        mRepeatInventoryActionCommand.setSinglePressAction(SwitchAction.INVENTORY);
+        mRepeatInventoryActionCommand.setSinglePressRepeatDelay(sReaderRepeatDelayMs);
+        // Hold the switch until the inventory is aborted
+        mHoldSwitchCommand = new SwitchSinglePressCommand();
+        mHoldSwitchCommand.setDuration(0);
+        // Return the switch to its usual actions
+        mDefaultSwitchActionCommand = new SwitchActionCommand();
+        mDefaultSwitchActionCommand.setResetParameters(TriState.YES);
+
 		// This is the command that will be used to perform configuration changes and inventories
-		mInventoryCommand = new InventoryCommand();
+		mInventoryCommand = new DatabankInventoryCommand();
         mInventoryCommand.setResetParameters(TriState.YES);
 		// Configure the type of inventory
 		mInventoryCommand.setIncludeTransponderRssi(TriState.YES);
@@ -119,25 +506,25 @@ public class InventoryModel extends ModelBase
 			@Override
 			public void transponderReceived(TransponderData transponder, boolean moreAvailable) {
 
-				if( transponder.getEpc() != null && !(mUniquesOnly && mUniqueTransponders.containsKey(transponder.getEpc())))
+				// Pass the primitive fields on - the text is only built when displayed
+				TagEvent event = mReadEvent;
+				if( event.set(transponder, mTagsSeen.get()) )
                 {
                     mAnyTagSeen = true;
+                    mTagsSeen.incrementAndGet();
+                    mCycleReadCount++;
 
-                    String tidMessage = transponder.getTidData() == null ? "" : HexEncoding.bytesToString(transponder.getTidData());
-                    String infoMsg = String.format(Locale.US, "\nRSSI: %d  PC: %04X  CRC: %04X", transponder.getRssi(), transponder.getPc(), transponder.getCrc());
-                    sendMessageNotification("EPC: " + transponder.getEpc() + infoMsg + "\nTID: " + tidMessage + "\n# " + mTagsSeen);
-                    mTagsSeen++;
-
-                    // Remember this transponder as it has not been seen before
-                    if(mUniquesOnly)
+                    // Every read updates the tag's aggregated record, the tuner needs the new tags of each round
+                    int ordinal = mTagStore.record(event);
+                    event.setRecordResult(ordinal);
+                    if( ordinal >= 0 )
                     {
-                        mUniqueTransponders.put(transponder.getEpc(), transponder);
+                        mCycleNewCount++;
                     }
+                    getEvents().publishTagRead(event);
+                    // Everything else is done by the ring's consumers
+                    mTagRing.publish(event);
                 }
-				if( !moreAvailable) {
-//					sendMessageNotification("");
-					Log.d("TagCount",String.format("Tags seen: %s", mTagsSeen));
-				}
 			}
 		});
 
@@ -145,8 +532,18 @@ public class InventoryModel extends ModelBase
 			
 			@Override
 			public void responseEnded() {
-			    // Only play sound when tags were seen
-                if(mAnyTagSeen)
+                long now = System.nanoTime();
+                getEvents().publishScanCycleEnded(mCycleReadCount, now - mCycleStartNanos);
+                getMetrics().recordRound(now - mCycleStartNanos);
+                if( mContinuousScanEnabled )
+                {
+                    mScanCycleStatistics.recordCycle(mCycleReadCount, now - mCycleStartNanos);
+                    mLastResponseEndedNanos = now;
+                }
+
+			    // Only play sound when tags were seen - there is no commander when driven by a simulated reader
+			    // and commands are not sent while the reader is repeating the inventory itself
+                if(mAnyTagSeen && getCommander() != null && !mReaderRepeating)
                 {
                     // To avoid continuously running the buzzer on 11xx series Readers
                     // Ensure no new sound until after last (short) tone has finished
@@ -159,8 +556,16 @@ public class InventoryModel extends ModelBase
                 }
                 if( mContinuousScanEnabled)
                 {
-                    // Issue another asynchronous scan
-                    getCommander().executeCommand(mInventoryCommand);
+                    if( !mReaderRepeating )
+                    {
+                        if( mAutoTuneEnabled )
+                        {
+                            tune(now);
+                        }
+                        // Issue another asynchronous scan, it carries any configuration changes
+                        getCommander().executeCommand(mInventoryCommand);
+                        mConfigurationManager.markApplied(ReaderConfiguration.of(mInventoryCommand));
+                    }
                 }
                 else
                 {
@@ -175,6 +580,15 @@ public class InventoryModel extends ModelBase
 			@Override
 			public void responseBegan() {
 				mAnyTagSeen = false;
+				mCycleReadCount = 0;
+				mCycleNewCount = 0;
+				mCycleStartNanos = System.nanoTime();
+				if( mContinuousScanEnabled && mLastResponseEndedNanos != 0 )
+				{
+					// The time the radio was not reporting while the next inventory was started
+					mScanCycleStatistics.recordGap(mCycleStartNanos - mLastResponseEndedNanos);
+					getMetrics().recordGap(mCycleStartNanos - mLastResponseEndedNanos);
+				}
 			}
 		});
 
@@ -185,9 +599,89 @@ public class InventoryModel extends ModelBase
 		mBarcodeResponder.setBarcodeReceivedDelegate(new IBarcodeReceivedDelegate() {
 			@Override
 			public void barcodeReceived(String barcode) {
-				sendMessageNotification("BC: " + barcode);
+				long monotonicMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+				long timestamp = System.currentTimeMillis();
+				int index = mBarcodeLog.record(barcode, timestamp);
+				if( index >= 0 ) {
+					TagJournal journal = mJournal;
+					if( journal != null ) {
+						journal.appendBarcode(index, barcode, timestamp);
+					}
+					// Joined by the analysis worker once it has the reads that came before
+					mPendingBarcodes.add(new PendingBarcode(index, monotonicMs));
+					mAnalysisWorker.wake();
+				}
+				sendBarcodeNotification(barcode);
+			}
+		});
+
+		mAnalysisWorker = new TagEventWorker(mTagRing, TagEventRing.Backpressure.BLOCK, new TagEventRing.EventHandler() {
+			@Override
+			public void onTagEvent(TagEvent event, long sequence) {
+				long monotonicMs = TimeUnit.NANOSECONDS.toMillis(event.getReceivedNanos());
+				joinBarcodes(monotonicMs);
+				getMetrics().recordRead(event.isNewTag());
+				reconcile(event);
+				if( event.getTagOrdinal() >= 0 )
+				{
+					mBarcodeTagJoin.onTagRead(event.getTagOrdinal(), monotonicMs);
+				}
+			}
+		}, "InventoryAnalysis");
+		mAnalysisWorker.setCaughtUpListener(new TagEventWorker.CaughtUpListener() {
+			@Override
+			public void onCaughtUp() {
+				joinBarcodes(Long.MAX_VALUE);
 			}
 		});
+
+		mDisplayWorker = new TagEventWorker(mTagRing, TagEventRing.Backpressure.DROP_OLDEST, new TagEventRing.EventHandler() {
+			@Override
+			public void onTagEvent(TagEvent event, long sequence) {
+				if( mUniquesOnly )
+				{
+					// One row per tag - the client is told about changes at a fixed rate
+					notifyTagsChanged();
+					return;
+				}
+				TagEvent copy = mTagEventPool.obtain();
+				copy.copyFrom(event);
+				if( !sendTagNotification(copy) )
+				{
+					mTagEventPool.recycle(copy);
+				}
+			}
+		}, "InventoryDisplay");
+	}
+
+	/**
+	 * Start the threads consuming the reads, done when the model is enabled
+	 */
+	public void startConsumers()
+	{
+		mAnalysisWorker.start();
+		mDisplayWorker.start();
+	}
+
+	/**
+	 * Handle the reads already parsed and stop the threads consuming them
+	 */
+	public void stopConsumers()
+	{
+		// Waited for together, this is called on the UI thread
+		TagEventWorker.stopAll(mAnalysisWorker, mDisplayWorker);
+	}
+
+	// Give the join the scans up to the given time, on the analysis worker
+	private void joinBarcodes(long untilMs)
+	{
+		PendingBarcode barcode = mPendingBarcodes.peek();
+		while( barcode != null && barcode.mMonotonicMs <= untilMs )
+		{
+			mPendingBarcodes.poll();
+			mBarcodeTagJoin.onBarcode(barcode.mIndex, barcode.mMonotonicMs);
+			barcode = mPendingBarcodes.peek();
+		}
 	}
 
 	//
@@ -200,34 +694,85 @@ public class InventoryModel extends ModelBase
             fdCommand.setResetParameters(TriState.YES);
             getCommander().executeCommand(fdCommand);
 		}
+		// The reader has lost its settings, or may be a different reader
+		mConfigurationManager.invalidate();
+		mAntennaCheckCache.invalidate();
 	}
 	
 	//
 	// Update the reader configuration from the command
-	// Call this after each change to the model's command
+	// Call this after each change to the model's command, changes in quick succession are sent together
 	//
 	public void updateConfiguration()
 	{
 		if(getCommander().isConnected()) {
+			getMetrics().setLabel(describeConfiguration());
+			// While the app reissues the inventory the next one carries the changes
+			if( !mContinuousScanEnabled || mReaderRepeating ) {
+				mConfigurationManager.request(ReaderConfiguration.of(mInventoryCommand), SystemClock.uptimeMillis());
+			}
+		}
+	}
+
+	//
+	// Send the command's parameters without performing an inventory
+	//
+	private boolean sendConfiguration()
+	{
+		// A flush left over from before an app reissued scan must not stop its next inventory
+		if(getCommander().isConnected() && (!mContinuousScanEnabled || mReaderRepeating)) {
             try
             {
                 mInventoryCommand.setTakeNoAction(TriState.YES);
                 getCommander().executeCommand(mInventoryCommand);
+                return true;
             }
             catch (Exception e)
             {
-                sendMessageNotification(String.format(Locale.US,
+                sendErrorNotification(null, String.format(Locale.US,
                         "Exception: %s",
                         e.getMessage()
                         ));
                 e.printStackTrace();
             }
-            finally
-            {
-            }
         }
+        return false;
 	}
 
+    //
+    // Describe the reader and settings being measured, e.g. to compare sessions and power levels
+    //
+    private String describeConfiguration()
+    {
+        return String.format(Locale.US, "%s  %s  %d dBm%s%s%s%s",
+                getCommander().getConnectedDeviceName(),
+                mInventoryCommand.getQuerySession().getDescription(),
+                mInventoryCommand.getOutputPower(),
+                mInventoryCommand.getUsefastId() == TriState.YES ? "  FastId" : "",
+                mInventoryCommand.readsDatabank() ? "  read " + mInventoryCommand.getBank().getArgument() : "",
+                mContinuousScanMode == ContinuousScanMode.READER_REPEAT ? "  reader repeat" : "",
+                mAutoTuneEnabled ? "  auto-tuned" : "");
+    }
+
+    //
+    // Give the tuner the round just ended and apply its settings to the next
+    //
+    private void tune(long now)
+    {
+        RfSettings current = new RfSettings(mInventoryCommand.getQAlgorithm(), mInventoryCommand.getQValue(),
+                mInventoryCommand.getQuerySession(), mInventoryCommand.getQueryTarget(), mInventoryCommand.getOutputPower());
+        RfSettings next = mTuner.onRound(mCycleReadCount, mCycleNewCount, now - mCycleStartNanos, current);
+        if( next != current )
+        {
+            mInventoryCommand.setQAlgorithm(next.getQAlgorithm());
+            mInventoryCommand.setQValue(next.getQValue());
+            mInventoryCommand.setQuerySession(next.getSession());
+            mInventoryCommand.setQueryTarget(next.getTarget());
+            mInventoryCommand.setOutputPower(next.getOutputPower());
+            getMetrics().setLabel(describeConfiguration());
+        }
+    }
+
     //
     // Perform an inventory scan with the current command parameters
     //
@@ -237,6 +782,7 @@ public class InventoryModel extends ModelBase
         if(getCommander().isConnected()) {
             mInventoryCommand.setTakeNoAction(TriState.NO);
             getCommander().executeCommand(mInventoryCommand);
+            mConfigurationManager.markApplied(ReaderConfiguration.of(mInventoryCommand));
         }
     }
 
@@ -248,9 +794,23 @@ public class InventoryModel extends ModelBase
     {
         testForAntenna();
         if(getCommander().isConnected()) {
+            mLastResponseEndedNanos = 0;
             mContinuousScanEnabled = true;
-            mInventoryCommand.setTakeNoAction(TriState.NO);
-            getCommander().executeCommand(mInventoryCommand);
+            mReaderRepeating = mContinuousScanMode == ContinuousScanMode.READER_REPEAT;
+            getMetrics().setLabel(describeConfiguration());
+            if( mReaderRepeating )
+            {
+                // The reader repeats with the parameters it holds so send any change still pending
+                mConfigurationManager.applyNow(ReaderConfiguration.of(mInventoryCommand));
+                getCommander().executeCommand(mRepeatInventoryActionCommand);
+                getCommander().executeCommand(mHoldSwitchCommand);
+            }
+            else
+            {
+                mInventoryCommand.setTakeNoAction(TriState.NO);
+                getCommander().executeCommand(mInventoryCommand);
+                mConfigurationManager.markApplied(ReaderConfiguration.of(mInventoryCommand));
+            }
         }
     }
 
@@ -260,36 +820,351 @@ public class InventoryModel extends ModelBase
     //
     public void scanStop()
     {
+        boolean wasReaderRepeating = mReaderRepeating;
+        mReaderRepeating = false;
         mContinuousScanEnabled = false;
+        mLastResponseEndedNanos = 0;
         mInventoryCommand.setTakeNoAction(TriState.YES);
 
         if(getCommander().isConnected()) {
-            // Cancel any running inventory
+            // Cancel any running inventory - this also releases the held switch
             getCommander().executeCommand(new AbortCommand());
+            if( wasReaderRepeating )
+            {
+                getCommander().executeCommand(mDefaultSwitchActionCommand);
+            }
         }
     }
 
 
     //
-	// Test for the presence of the antenna
+	// Test for the presence of the antenna, unless it was found recently
 	//
 	public void testForAntenna()
 	{
 		if(getCommander().isConnected()) {
+			long now = SystemClock.uptimeMillis();
+			if( mAntennaCheckCache.isKnownPresent(now) ) {
+				return;
+			}
 			InventoryCommand testCommand = InventoryCommand.synchronousCommand();
 			testCommand.setTakeNoAction(TriState.YES);
 			getCommander().executeCommand(testCommand);
+			mAntennaCheckCache.record(testCommand.isSuccessful(), now);
 			if( !testCommand.isSuccessful() ) {
-				sendMessageNotification("ER:Error! Code: " + testCommand.getErrorCode() + " " + testCommand.getMessages().toString());
+				sendErrorNotification(testCommand.getErrorCode(), "Error! Code: " + testCommand.getErrorCode() + " " + testCommand.getMessages().toString());
+			}
+		}
+	}
+
+	//
+	// Journal the reads of the stocktake
+	//
+
+	// The durable log of the reads, barcodes and pairs, null when they are not journaled
+	private volatile TagJournal mJournal;
+	// Appends the reads to the journal, it never loses a read unless the journal stalls
+	private TagEventWorker mJournalWorker;
+
+	/**
+	 * @return the journal of the current stocktake or null
+	 */
+	public synchronized TagJournal getJournal() { return mJournal; }
+
+	// A barcode to tag pair read back from the journal, added once every read has been replayed
+	private static final class RestoredAssociation
+	{
+		final int mBarcodeIndex;
+		final byte[] mEpc;
+		final long mReadTime;
+
+		RestoredAssociation(int barcodeIndex, byte[] epc, long readTime)
+		{
+			mBarcodeIndex = barcodeIndex;
+			mEpc = epc;
+			mReadTime = readTime;
+		}
+	}
+
+	/**
+	 * Journal every read, barcode and pair to the given file, first restoring the stocktake it holds
+	 *
+	 * @param file the journal file, created if it does not exist
+	 * @return the number of reads recovered
+	 * @throws IOException if the journal could not be read or opened
+	 */
+	public synchronized int openJournal(File file) throws IOException
+	{
+		closeJournal();
+		final int[] recovered = new int[1];
+		// The barcodes' indexes in the journal mapped to their indexes in the log
+		final Map<Integer, Integer> barcodeIndexes = new HashMap<>();
+		final List<RestoredAssociation> associations = new ArrayList<>();
+		TagJournal journal = TagJournal.open(file, new TagJournal.ReplayListener() {
+			@Override
+			public void onTagRead(TagEvent event) {
+				event.setRecordResult(mTagStore.record(event));
+				reconcile(event);
+				recovered[0]++;
+			}
+
+			@Override
+			public void onBarcode(int index, String barcode, long timestamp) {
+				// An index given out again after an earlier restore means the later barcode from here on
+				barcodeIndexes.put(index, mBarcodeLog.record(barcode, timestamp));
+			}
+
+			@Override
+			public void onAssociation(int barcodeIndex, byte[] epc, int epcLength, long readTime) {
+				// Added after the replay, a pair can be journaled before the read of its tag
+				Integer index = barcodeIndexes.get(barcodeIndex);
+				if( index != null && index >= 0 )
+				{
+					associations.add(new RestoredAssociation(index, Arrays.copyOf(epc, epcLength), readTime));
+				}
+			}
+		});
+		for( RestoredAssociation association : associations )
+		{
+			int ordinal = mTagStore.find(association.mEpc, association.mEpc.length);
+			if( ordinal >= 0 )
+			{
+				mAssociationLog.onAssociation(association.mBarcodeIndex, ordinal, association.mReadTime);
+			}
+		}
+		mTagsSeen.addAndGet(recovered[0]);
+		mJournal = journal;
+		mJournalWorker = new TagEventWorker(mTagRing, TagEventRing.Backpressure.BLOCK, new TagEventRing.EventHandler() {
+			@Override
+			public void onTagEvent(TagEvent event, long sequence) {
+				journal.append(event);
+			}
+		}, "InventoryJournal");
+		mJournalWorker.start();
+		if( recovered[0] > 0 )
+		{
+			notifyTagsChanged();
+		}
+		return recovered[0];
+	}
+
+	/**
+	 * Open the journal as a task, the outcome is sent to the client as a message or error
+	 *
+	 * @param file the journal file, created if it does not exist
+	 */
+	public void restoreJournal(final File file)
+	{
+		try {
+			performTask(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						int recovered = openJournal(file);
+						if( recovered > 0 )
+						{
+							sendMessageNotification(String.format(Locale.US, "Recovered %d reads", recovered));
+						}
+					} catch (IOException e) {
+						sendErrorNotification(null, "Unable to open the journal: " + e.getMessage());
+					}
+				}
+			}, ModelTaskEngine.PRIORITY_HIGH);
+		} catch (ModelException e) {
+			sendErrorNotification(null, e.getMessage());
+		}
+	}
+
+	/**
+	 * Write the outstanding reads and stop journaling
+	 *
+	 * @throws IOException if the outstanding reads could not be written
+	 */
+	public synchronized void closeJournal() throws IOException
+	{
+		if( mJournal != null )
+		{
+			// Append the reads already published first
+			mJournalWorker.stop();
+			mJournalWorker = null;
+			TagJournal journal = mJournal;
+			mJournal = null;
+			journal.close();
+		}
+	}
+
+	//
+	// Reconcile against an expected inventory
+	//
+
+	// The cycle count in progress or null
+	private volatile Reconciliation mReconciliation;
+
+	/**
+	 * @return the counts against the expected inventory or null if none has been loaded
+	 */
+	public Reconciliation getReconciliation() { return mReconciliation; }
+
+	/**
+	 * Count the reads against the given inventory, including the tags already seen
+	 *
+	 * @param expected the EPCs expected or null to stop reconciling
+	 */
+	public void setExpectedInventory(ExpectedInventory expected)
+	{
+		if( expected == null )
+		{
+			mReconciliation = null;
+			if( mExpectedPopulation <= 0 )
+			{
+				updatePrefilter();
 			}
+			return;
+		}
+
+		// Reads recorded while the earlier tags are replayed are counted once either way
+		Reconciliation reconciliation = new Reconciliation(expected);
+		mReconciliation = reconciliation;
+		if( mExpectedPopulation <= 0 )
+		{
+			updatePrefilter();
+		}
+		byte[] epc = new byte[TagEvent.MAX_EPC_BYTES];
+		int count = mTagStore.size();
+		for( int ordinal = 0; ordinal < count; ordinal++ )
+		{
+			int length = mTagStore.getEpc(ordinal, epc);
+			reconciliation.recordRead(epc, length, ordinal);
+		}
+	}
+
+	/**
+	 * Load an expected inventory as a task, the outcome is sent to the client as a message or error
+	 *
+	 * @param file the manifest, one hex EPC per line
+	 */
+	public void loadExpectedInventory(final File file)
+	{
+		try {
+			performTask(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						ExpectedInventory expected = ExpectedInventory.load(file);
+						setExpectedInventory(expected);
+						sendMessageNotification(String.format(Locale.US, "Expecting %d tags, %d lines rejected",
+								expected.size(), expected.getRejectedLineCount()));
+					} catch (IOException e) {
+						sendErrorNotification(null, "Unable to load the expected tags: " + e.getMessage());
+					}
+				}
+			}, ModelTaskEngine.PRIORITY_LOW);
+		} catch (ModelException e) {
+			sendErrorNotification(null, e.getMessage());
+		}
+	}
+
+	// Count a read against the expected inventory, once the store has recorded it
+	private void reconcile(TagEvent event)
+	{
+		Reconciliation reconciliation = mReconciliation;
+		if( reconciliation != null )
+		{
+			reconciliation.recordRead(event.getEpcBuffer(), event.getEpcLength(), event.getTagOrdinal());
+		}
+	}
+
+	//
+	// Export the session
+	//
+
+	/**
+	 * Write the tags, barcodes and their pairs seen since the last clear
+	 *
+	 * @param out receives the export, it is flushed but not closed
+	 * @param format the file format
+	 * @return the number of tags written
+	 * @throws IOException if writing failed
+	 */
+	public int exportSession(Writer out, ExportFormat format) throws IOException
+	{
+		SessionExporter exporter = new SessionExporter(format);
+		exporter.export(mTagStore, mBarcodeLog, mAssociationLog, out);
+		return exporter.getTagCount();
+	}
+
+	/**
+	 * Export the session to a file as a task, the outcome is sent to the client as a message or error
+	 *
+	 * @param file the file to write, replaced if it exists
+	 * @param format the file format
+	 */
+	public void exportSession(final File file, final ExportFormat format)
+	{
+		try {
+			performTask(new Runnable() {
+				@Override
+				public void run() {
+					try( Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8")), sExportBufferSize) ) {
+						int count = exportSession(out, format);
+						sendMessageNotification(String.format(Locale.US, "Exported %d tags to %s", count, file.getPath()));
+					} catch (IOException | RuntimeException e) {
+						sendErrorNotification(null, "Export failed: " + e.getMessage());
+					}
+				}
+			}, ModelTaskEngine.PRIORITY_LOW);
+		} catch (ModelException e) {
+			sendErrorNotification(null, e.getMessage());
 		}
 	}
 
+	// Ask the client to refresh the aggregated tags unless a refresh is already pending
+	private void notifyTagsChanged()
+	{
+		if( mHandler != null && mTagsChangedPending.compareAndSet(false, true) )
+		{
+			Message msg = mHandler.obtainMessage(TAGS_CHANGED_NOTIFICATION);
+			mHandler.sendMessageDelayed(msg, mTagRefreshIntervalMs);
+		}
+	}
+
+	/**
+	 * Update the client's copy of the aggregated tags, call this on TAGS_CHANGED_NOTIFICATION
+	 *
+	 * @param rows the summaries, indexed by tag ordinal, to bring up to date
+	 * @param changed receives the ordinals of the updated rows, may be null
+	 * @return the number of rows updated
+	 */
+	public int drainTagChanges(List<TagSummary> rows, IntList changed)
+	{
+		mTagsChangedPending.set(false);
+		return mTagStore.drainChanges(rows, changed);
+	}
+
 	// Reset the unique transponder list
 	public void clearUniques()
     {
-        mTagsSeen = 0;
-        mUniqueTransponders.clear();
+        mTagsSeen.set(0);
+        mTagStore.clear();
+        mBarcodeLog.clear();
+        mPendingBarcodes.clear();
+        mBarcodeTagJoin.clear();
+        mAssociationLog.clear();
+        Reconciliation reconciliation = mReconciliation;
+        if( reconciliation != null )
+        {
+            // The expected tags stay loaded for the next count
+            reconciliation.reset();
+        }
+        TagJournal journal = getJournal();
+        if( journal != null )
+        {
+            // A new stocktake
+            journal.clear();
+        }
+        mScanCycleStatistics.reset();
+        getMetrics().reset();
+        mTuner.reset();
     }
 
 }
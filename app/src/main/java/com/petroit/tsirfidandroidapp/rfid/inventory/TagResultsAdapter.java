@@ -0,0 +1,295 @@
+package com.petroit.tsirfidandroidapp.rfid.inventory;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.petroit.tsirfidandroidapp.R;
+import com.petroit.tsirfidandroidapp.rfid.gs1.Gs1DecodeCache;
+import com.petroit.tsirfidandroidapp.rfid.gs1.Gs1Epc;
+import com.petroit.tsirfidandroidapp.rfid.tags.IntList;
+import com.petroit.tsirfidandroidapp.rfid.tags.RingBuffer;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEventPool;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagSummary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows either the most recent reads, held in a fixed capacity ring buffer, or one row per tag
+ * from the aggregated summaries
+ * <p>
+ * Only the rows that change are rebound: new reads are range inserts (and range removals for
+ * evicted reads) and updated tags are item changes with a payload, which only rebinds the
+ * row's statistics.
+ * Recent reads of GS1 EPCs show the pure identity URI, decoded through the shared cache.
+ */
+public class TagResultsAdapter extends RecyclerView.Adapter<TagResultsAdapter.TagViewHolder>
+{
+    // Payload for a change to an aggregated tag's statistics
+    static final Object PAYLOAD_STATISTICS = new Object();
+
+    interface OnTagLongClickListener
+    {
+        /**
+         * @param epc the EPC of the row's tag as hex
+         */
+        void onTagLongClick(String epc);
+    }
+
+    private final RingBuffer<TagEvent> mReads;
+    private final ArrayList<TagSummary> mTags = new ArrayList<>();
+    private final IntList mChangedTags = new IntList(256);
+    private final TagEventPool mPool;
+    private final Gs1DecodeCache mGs1Cache;
+    private boolean mShowTags;
+    private OnTagLongClickListener mOnTagLongClickListener;
+    private final StringBuilder mEpcText = new StringBuilder(TagEvent.MAX_EPC_BYTES * 2);
+
+    static class TagViewHolder extends RecyclerView.ViewHolder
+    {
+        private final TextView mIdentityView;
+        private final TextView mStatisticsView;
+        private final StringBuilder mRowText = new StringBuilder(160);
+        // The tag identity shown, a bulk read can add to it after the row is bound
+        private String mBoundEpc;
+        private byte[] mBoundTid;
+        private byte[] mBoundData;
+        private Gs1Epc mBoundGs1;
+
+        TagViewHolder(View itemView)
+        {
+            super(itemView);
+            mIdentityView = itemView.findViewById(R.id.tagIdentityTextView);
+            mStatisticsView = itemView.findViewById(R.id.tagStatisticsTextView);
+        }
+
+        void bind(TagEvent read, Gs1DecodeCache gs1Cache)
+        {
+            mRowText.setLength(0);
+            read.appendTo(mRowText);
+            Gs1Epc gs1 = gs1Cache == null ? null : gs1Cache.decode(read.getEpcBuffer(), read.getEpcLength());
+            if( gs1 != null ) {
+                mRowText.append("\nGS1: ").append(gs1.getUri());
+            }
+            mIdentityView.setText(mRowText);
+            mStatisticsView.setVisibility(View.GONE);
+            mBoundEpc = null;
+        }
+
+        void bind(TagSummary tag)
+        {
+            mRowText.setLength(0);
+            tag.appendIdentityTo(mRowText);
+            mIdentityView.setText(mRowText);
+            mBoundEpc = tag.getEpc();
+            mBoundTid = tag.getTid();
+            mBoundData = tag.getData();
+            mBoundGs1 = tag.getGs1();
+            bindStatistics(tag);
+            mStatisticsView.setVisibility(View.VISIBLE);
+        }
+
+        boolean showsIdentityOf(TagSummary tag)
+        {
+            // The store hands out the same EPC string and arrays until they change
+            return mBoundEpc == tag.getEpc() && mBoundTid == tag.getTid() && mBoundData == tag.getData() && mBoundGs1 == tag.getGs1();
+        }
+
+        void bindStatistics(TagSummary tag)
+        {
+            mRowText.setLength(0);
+            tag.appendStatisticsTo(mRowText);
+            mStatisticsView.setText(mRowText);
+        }
+    }
+
+    /**
+     * @param capacity the number of recent reads to keep
+     * @param pool the pool evicted reads are returned to
+     * @param gs1Cache decodes the GS1 EPCs of the reads or null not to show them
+     */
+    TagResultsAdapter(int capacity, TagEventPool pool, Gs1DecodeCache gs1Cache)
+    {
+        mReads = new RingBuffer<>(capacity);
+        mPool = pool;
+        mGs1Cache = gs1Cache;
+        setHasStableIds(true);
+    }
+
+    /**
+     * @return the per-tag summaries, indexed by tag ordinal, for the model to update
+     */
+    List<TagSummary> getTags() { return mTags; }
+
+    /**
+     * @return receives the ordinals of the tags changed by the model
+     */
+    IntList getChangedTags() { return mChangedTags; }
+
+    boolean isShowingTags() { return mShowTags; }
+
+    /**
+     * @param listener told the EPC of a row that is long pressed, or null
+     */
+    void setOnTagLongClickListener(OnTagLongClickListener listener) { mOnTagLongClickListener = listener; }
+
+    /**
+     * @param showTags true to show one row per tag, false to show the recent reads
+     */
+    void setShowTags(boolean showTags)
+    {
+        if( showTags != mShowTags ) {
+            mShowTags = showTags;
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Add a batch of reads, evicting the oldest reads when full
+     */
+    void addReads(List<TagEvent> batch)
+    {
+        int previousCount = mReads.size();
+        int evicted = 0;
+        for( int i = 0; i < batch.size(); i++ ) {
+            TagEvent old = mReads.add(batch.get(i));
+            if( old != null ) {
+                mPool.recycle(old);
+                evicted++;
+            }
+        }
+        if( !mShowTags ) {
+            // Very large batches also evict some of their own reads which were never shown
+            int removed = Math.min(evicted, previousCount);
+            int inserted = mReads.size() - (previousCount - removed);
+            if( removed > 0 ) {
+                notifyItemRangeRemoved(0, removed);
+            }
+            notifyItemRangeInserted(mReads.size() - inserted, inserted);
+        }
+    }
+
+    /**
+     * Notify the rows changed after the model has updated getTags() and getChangedTags()
+     *
+     * @param previousCount the number of tags before the update
+     */
+    void tagsChanged(int previousCount)
+    {
+        if( mShowTags ) {
+            int count = mTags.size();
+            if( count < previousCount ) {
+                // The tags were cleared
+                notifyDataSetChanged();
+            } else {
+                for( int i = 0; i < mChangedTags.size(); i++ ) {
+                    int ordinal = mChangedTags.get(i);
+                    if( ordinal < previousCount ) {
+                        notifyItemChanged(ordinal, PAYLOAD_STATISTICS);
+                    }
+                }
+                if( count > previousCount ) {
+                    notifyItemRangeInserted(previousCount, count - previousCount);
+                }
+            }
+        }
+        mChangedTags.clear();
+    }
+
+    /**
+     * Remove all rows, returning the reads to the pool
+     */
+    void clear()
+    {
+        for( int i = 0; i < mReads.size(); i++ ) {
+            mPool.recycle(mReads.get(i));
+        }
+        mReads.clear();
+        mTags.clear();
+        mChangedTags.clear();
+        notifyDataSetChanged();
+    }
+
+    @Override
+    @NonNull
+    public TagViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType)
+    {
+        LayoutInflater inflater = LayoutInflater.from(parent.getContext());
+        View rowView = inflater.inflate(R.layout.tag_result_item, parent, false);
+        final TagViewHolder holder = new TagViewHolder(rowView);
+        rowView.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                int position = holder.getAdapterPosition();
+                if( mOnTagLongClickListener == null || position == RecyclerView.NO_POSITION ) {
+                    return false;
+                }
+                mOnTagLongClickListener.onTagLongClick(getEpc(position));
+                return true;
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull TagViewHolder holder, int position, @NonNull List<Object> payloads)
+    {
+        if( mShowTags && !payloads.isEmpty() && isStatisticsOnly(payloads) ) {
+            TagSummary tag = mTags.get(position);
+            if( holder.showsIdentityOf(tag) ) {
+                holder.bindStatistics(tag);
+                return;
+            }
+        }
+        onBindViewHolder(holder, position);
+    }
+
+    private static boolean isStatisticsOnly(List<Object> payloads)
+    {
+        for( int i = 0; i < payloads.size(); i++ ) {
+            if( payloads.get(i) != PAYLOAD_STATISTICS ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull TagViewHolder holder, int position)
+    {
+        if( mShowTags ) {
+            holder.bind(mTags.get(position));
+        } else {
+            holder.bind(mReads.get(position), mGs1Cache);
+        }
+    }
+
+    private String getEpc(int position)
+    {
+        if( mShowTags ) {
+            return mTags.get(position).getEpc();
+        }
+        mEpcText.setLength(0);
+        mReads.get(position).appendEpc(mEpcText);
+        return mEpcText.toString();
+    }
+
+    @Override
+    public long getItemId(int position)
+    {
+        // Tags are identified by ordinal, reads by the order they were added
+        return mShowTags ? position : mReads.getAddedCount() - mReads.size() + position;
+    }
+
+    @Override
+    public int getItemCount()
+    {
+        return mShowTags ? mTags.size() : mReads.size();
+    }
+}
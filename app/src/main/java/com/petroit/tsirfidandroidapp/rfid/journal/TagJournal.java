@@ -0,0 +1,654 @@
+package com.petroit.tsirfidandroidapp.rfid.journal;
+
+import com.petroit.tsirfidandroidapp.rfid.ModelEvents;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEventPool;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEventWorker;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A durable, append-only log of the tag reads, barcodes and barcode to tag pairs of a stocktake
+ * <p>
+ * Reads are appended from one thread, e.g. a {@link TagEventWorker} draining the reads or a
+ * {@link ModelEvents.TagReadListener}, barcodes and pairs may be appended from others. Appending
+ * only encodes the record into an in-memory batch,
+ * it never waits for the disk: a writer thread swaps the batch for an empty one and writes and
+ * syncs it in one go (group commit), at most once per commit interval unless the batch is half
+ * full or a flush is requested. If the disk falls so far behind that the batch is full, records
+ * are refused and counted as dropped rather than blocking the reader.
+ * <p>
+ * Each record carries its length and a CRC32 so a record torn by a crash is detected. Opening a
+ * journal replays the intact records, to recover the stocktake that was in progress, and cuts
+ * the file back to the last intact record before appending.
+ * <p>
+ * File format: the header {@link #sMagic}, then for each record a 16 bit payload length, the
+ * payload and the CRC32 of the payload. The payload of a read is its type, the timestamp (ms),
+ * sequence, RSSI, PC and CRC, then the length prefixed EPC and TID. The payload of a barcode is
+ * its type, index in the session, timestamp and length prefixed UTF-8 text. The payload of a
+ * pair is its type, the barcode's index, the time of the read and the length prefixed EPC -
+ * tag ordinals are not kept as they are given out again when the reads are replayed.
+ */
+public final class TagJournal
+{
+    /**
+     * Receives the barcodes and barcode to tag pairs of a journal as well as its reads
+     */
+    public interface ReplayListener extends ModelEvents.TagReadListener
+    {
+        /**
+         * @param index the barcode's index in the session it was scanned in
+         * @param barcode the barcode
+         * @param timestamp the time of the scan in ms since the epoch
+         */
+        void onBarcode(int index, String barcode, long timestamp);
+
+        /**
+         * @param barcodeIndex the index given with the barcode
+         * @param epc the buffer holding the tag's EPC, only valid during the call
+         * @param epcLength the number of EPC bytes
+         * @param readTime the time of the read in ms since the epoch
+         */
+        void onAssociation(int barcodeIndex, byte[] epc, int epcLength, long readTime);
+    }
+
+    // "TSJ" and the format version, version 1 only held reads
+    private static final int sMagic = 0x54534A02;
+    private static final int sMagicVersion1 = 0x54534A01;
+    private static final int sHeaderLength = 4;
+
+    private static final byte sTagReadRecord = 1;
+    private static final byte sBarcodeRecord = 2;
+    private static final byte sAssociationRecord = 3;
+    // Type, timestamp, sequence, RSSI, PC, CRC and the two lengths
+    private static final int sFixedPayloadLength = 1 + 8 + 4 * 4 + 2;
+    private static final int sMaximumTidLength = 255;
+    // Type, index, timestamp and the length
+    private static final int sBarcodePayloadLength = 1 + 4 + 8 + 2;
+    private static final int sMaximumBarcodeLength = 4096;
+    // Type, barcode index, read time and the EPC length
+    private static final int sAssociationPayloadLength = 1 + 4 + 8 + 1;
+    private static final int sMaximumRecordLength = 2 + sFixedPayloadLength + TagEvent.MAX_EPC_BYTES + sMaximumTidLength + 4;
+    private static final int sMaximumPayloadLength = Math.max(sFixedPayloadLength + TagEvent.MAX_EPC_BYTES + sMaximumTidLength,
+            sBarcodePayloadLength + sMaximumBarcodeLength);
+
+    private static final long sDefaultCommitIntervalMs = 100;
+    private static final int sDefaultBufferCapacity = 256 * 1024;
+
+    private final File mFile;
+    private final RandomAccessFile mRandomAccessFile;
+    private final FileChannel mChannel;
+    private final long mCommitIntervalNanos;
+    private final int mRecoveredCount;
+
+    private final Object mLock = new Object();
+    private final CRC32 mCrc = new CRC32();
+    // Appended to under the lock, written by the writer thread after the swap
+    private ByteBuffer mFront;
+    private ByteBuffer mBack;
+
+    private boolean mClosed;
+    private boolean mFlushRequested;
+    private boolean mTruncatePending;
+    private IOException mFailure;
+    private final Thread mWriter;
+
+    // Statistics, guarded by the lock
+    private long mAppendedCount;
+    private long mCommittedCount;
+    private long mDroppedCount;
+    private long mCommitCount;
+    private long mBytesWritten;
+    private long mLastCommitNanos;
+
+    /**
+     * Open a journal with the default commit interval and capacity
+     *
+     * @see #open(File, ModelEvents.TagReadListener, long, int)
+     */
+    public static TagJournal open(File file, ModelEvents.TagReadListener replayListener) throws IOException
+    {
+        return open(file, replayListener, sDefaultCommitIntervalMs, sDefaultBufferCapacity);
+    }
+
+    /**
+     * Open a journal, creating it if necessary, and replay the records it already holds
+     *
+     * @param file the journal file
+     * @param replayListener receives the intact reads already in the journal or null, a
+     *                       {@link ReplayListener} also receives the barcodes and pairs
+     * @param commitIntervalMs the longest time a read waits before it is written and synced
+     * @param bufferCapacity the bytes buffered while a batch is written, each read takes 40 to 100
+     * @return the journal ready for appending
+     * @throws IOException if the file cannot be read or written, or is not a journal
+     */
+    public static TagJournal open(File file, ModelEvents.TagReadListener replayListener, long commitIntervalMs, int bufferCapacity) throws IOException
+    {
+        if( bufferCapacity < sMaximumRecordLength ) {
+            throw new IllegalArgumentException("The buffer must hold at least one read");
+        }
+        int[] count = new int[1];
+        long validLength = file.length() == 0 ? 0 : replay(file, replayListener, count);
+        return new TagJournal(file, validLength, count[0], commitIntervalMs, bufferCapacity);
+    }
+
+    /**
+     * Read the intact records of a journal without opening it for appending
+     *
+     * @param file the journal file
+     * @param listener receives the reads, a {@link ReplayListener} also receives the barcodes and pairs
+     * @return the number of reads replayed
+     * @throws IOException if the file cannot be read or is not a journal
+     */
+    public static int replay(File file, ModelEvents.TagReadListener listener) throws IOException
+    {
+        int[] count = new int[1];
+        replay(file, listener, count);
+        return count[0];
+    }
+
+    // Returns the length of the intact part of the journal
+    private static long replay(File file, ModelEvents.TagReadListener listener, int[] count) throws IOException
+    {
+        TagEvent event = new TagEventPool(1).obtain();
+        byte[] payload = new byte[sMaximumPayloadLength];
+        byte[] epc = new byte[TagEvent.MAX_EPC_BYTES];
+        CRC32 crc = new CRC32();
+
+        try( InputStream input = new BufferedInputStream(new FileInputStream(file), 64 * 1024) ) {
+            DataInputStream data = new DataInputStream(input);
+            try {
+                int magic = data.readInt();
+                if( magic != sMagic && magic != sMagicVersion1 ) {
+                    throw new IOException("Not a tag journal: " + file);
+                }
+            } catch( EOFException e ) {
+                // Crashed while writing the header
+                return 0;
+            }
+
+            long validLength = sHeaderLength;
+            while( true ) {
+                int length;
+                try {
+                    length = data.readUnsignedShort();
+                    if( length < 1 || length > payload.length ) {
+                        break;
+                    }
+                    data.readFully(payload, 0, length);
+                    int expectedCrc = data.readInt();
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                    if( (int)crc.getValue() != expectedCrc ) {
+                        break;
+                    }
+                } catch( EOFException e ) {
+                    // A record torn by a crash
+                    break;
+                }
+
+                ByteBuffer record = ByteBuffer.wrap(payload, 0, length);
+                switch( record.get() ) {
+                    case sTagReadRecord:
+                        if( decode(record, event, epc) ) {
+                            count[0]++;
+                            if( listener != null ) {
+                                listener.onTagRead(event);
+                            }
+                        }
+                        break;
+                    case sBarcodeRecord:
+                        if( listener instanceof ReplayListener ) {
+                            replayBarcode(record, (ReplayListener)listener);
+                        }
+                        break;
+                    case sAssociationRecord:
+                        if( listener instanceof ReplayListener ) {
+                            replayAssociation(record, (ReplayListener)listener, epc);
+                        }
+                        break;
+                    default:
+                        // A record from a later version
+                        break;
+                }
+                validLength += 2 + length + 4;
+            }
+            return validLength;
+        }
+    }
+
+    // Each decoder is given the payload after the type
+    private static boolean decode(ByteBuffer payload, TagEvent event, byte[] epc)
+    {
+        if( payload.remaining() < sFixedPayloadLength - 1 ) {
+            return false;
+        }
+        long timestamp = payload.getLong();
+        int sequence = payload.getInt();
+        int rssi = payload.getInt();
+        int pc = payload.getInt();
+        int crc = payload.getInt();
+        int epcLength = payload.get() & 0xFF;
+        if( epcLength > epc.length || payload.remaining() < epcLength + 1 ) {
+            return false;
+        }
+        payload.get(epc, 0, epcLength);
+        int tidLength = payload.get() & 0xFF;
+        if( payload.remaining() < tidLength ) {
+            return false;
+        }
+        byte[] tid = null;
+        if( tidLength > 0 ) {
+            tid = new byte[tidLength];
+            payload.get(tid);
+        }
+        event.set(epc, epcLength, rssi, pc, crc, timestamp, sequence);
+        event.setTid(tid);
+        return true;
+    }
+
+    private static void replayBarcode(ByteBuffer payload, ReplayListener listener)
+    {
+        if( payload.remaining() < sBarcodePayloadLength - 1 ) {
+            return;
+        }
+        int index = payload.getInt();
+        long timestamp = payload.getLong();
+        int length = payload.getShort() & 0xFFFF;
+        if( payload.remaining() < length ) {
+            return;
+        }
+        String barcode = new String(payload.array(), payload.position(), length, StandardCharsets.UTF_8);
+        listener.onBarcode(index, barcode, timestamp);
+    }
+
+    private static void replayAssociation(ByteBuffer payload, ReplayListener listener, byte[] epc)
+    {
+        if( payload.remaining() < sAssociationPayloadLength - 1 ) {
+            return;
+        }
+        int barcodeIndex = payload.getInt();
+        long readTime = payload.getLong();
+        int epcLength = payload.get() & 0xFF;
+        if( epcLength > epc.length || payload.remaining() < epcLength ) {
+            return;
+        }
+        payload.get(epc, 0, epcLength);
+        listener.onAssociation(barcodeIndex, epc, epcLength, readTime);
+    }
+
+    private TagJournal(File file, long validLength, int recoveredCount, long commitIntervalMs, int bufferCapacity) throws IOException
+    {
+        mFile = file;
+        mRecoveredCount = recoveredCount;
+        mCommitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(commitIntervalMs);
+        mFront = ByteBuffer.allocate(bufferCapacity);
+        mBack = ByteBuffer.allocate(bufferCapacity);
+
+        mRandomAccessFile = new RandomAccessFile(file, "rw");
+        mChannel = mRandomAccessFile.getChannel();
+        try {
+            if( validLength < sHeaderLength ) {
+                writeHeader();
+            } else {
+                // Discard any torn record so new records follow the last intact one
+                mChannel.truncate(validLength);
+                // A version 1 journal's reads are read the same way, only the header changes
+                ByteBuffer header = ByteBuffer.allocate(sHeaderLength);
+                header.putInt(sMagic);
+                header.flip();
+                mChannel.write(header, 0);
+                mChannel.position(validLength);
+            }
+        } catch( IOException e ) {
+            mRandomAccessFile.close();
+            throw e;
+        }
+
+        mWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, "TagJournal");
+        mWriter.setDaemon(true);
+        mWriter.start();
+    }
+
+    private void writeHeader() throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(sHeaderLength);
+        header.putInt(sMagic);
+        header.flip();
+        mChannel.truncate(0);
+        mChannel.position(0);
+        while( header.hasRemaining() ) {
+            mChannel.write(header);
+        }
+        mChannel.force(true);
+    }
+
+    /**
+     * @return the journal file
+     */
+    public File getFile() { return mFile; }
+
+    /**
+     * @return the number of reads recovered when the journal was opened
+     */
+    public int getRecoveredCount() { return mRecoveredCount; }
+
+    /**
+     * Queue a read to be written, does not wait for the disk
+     *
+     * @param event the read, its fields are copied
+     * @return false if the read was dropped because the journal is closed, failed or full
+     */
+    public boolean append(TagEvent event)
+    {
+        byte[] tid = event.getTid();
+        int tidLength = tid == null || tid.length > sMaximumTidLength ? 0 : tid.length;
+        int payloadLength = sFixedPayloadLength + event.getEpcLength() + tidLength;
+
+        synchronized( mLock ) {
+            if( !hasRoom(payloadLength) ) {
+                mDroppedCount++;
+                return false;
+            }
+            ByteBuffer buffer = mFront;
+            buffer.putShort((short)payloadLength);
+            int payloadStart = buffer.position();
+            buffer.put(sTagReadRecord);
+            buffer.putLong(event.getTimestamp());
+            buffer.putInt(event.getSequence());
+            buffer.putInt(event.getRssi());
+            buffer.putInt(event.getPc());
+            buffer.putInt(event.getCrc());
+            buffer.put((byte)event.getEpcLength());
+            buffer.put(event.getEpcBuffer(), 0, event.getEpcLength());
+            buffer.put((byte)tidLength);
+            if( tidLength > 0 ) {
+                buffer.put(tid, 0, tidLength);
+            }
+            endRecord(buffer, payloadStart, payloadLength);
+        }
+        return true;
+    }
+
+    /**
+     * Queue a barcode to be written, does not wait for the disk
+     *
+     * @param index the barcode's index in the session, given back when replayed
+     * @param barcode the barcode
+     * @param timestamp the time of the scan in ms since the epoch
+     * @return false if the barcode was dropped because the journal is closed, failed or full or
+     *         the barcode is longer than 4096 bytes
+     */
+    public boolean appendBarcode(int index, String barcode, long timestamp)
+    {
+        byte[] text = barcode.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = sBarcodePayloadLength + text.length;
+
+        synchronized( mLock ) {
+            if( text.length > sMaximumBarcodeLength || !hasRoom(payloadLength) ) {
+                mDroppedCount++;
+                return false;
+            }
+            ByteBuffer buffer = mFront;
+            buffer.putShort((short)payloadLength);
+            int payloadStart = buffer.position();
+            buffer.put(sBarcodeRecord);
+            buffer.putInt(index);
+            buffer.putLong(timestamp);
+            buffer.putShort((short)text.length);
+            buffer.put(text);
+            endRecord(buffer, payloadStart, payloadLength);
+        }
+        return true;
+    }
+
+    /**
+     * Queue a barcode to tag pair to be written, does not wait for the disk
+     *
+     * @param barcodeIndex the index the barcode was appended with
+     * @param epc the buffer holding the tag's EPC, it is copied
+     * @param epcLength the number of EPC bytes
+     * @param readTime the time of the read in ms since the epoch
+     * @return false if the pair was dropped because the journal is closed, failed or full
+     */
+    public boolean appendAssociation(int barcodeIndex, byte[] epc, int epcLength, long readTime)
+    {
+        int payloadLength = sAssociationPayloadLength + epcLength;
+
+        synchronized( mLock ) {
+            if( !hasRoom(payloadLength) ) {
+                mDroppedCount++;
+                return false;
+            }
+            ByteBuffer buffer = mFront;
+            buffer.putShort((short)payloadLength);
+            int payloadStart = buffer.position();
+            buffer.put(sAssociationRecord);
+            buffer.putInt(barcodeIndex);
+            buffer.putLong(readTime);
+            buffer.put((byte)epcLength);
+            buffer.put(epc, 0, epcLength);
+            endRecord(buffer, payloadStart, payloadLength);
+        }
+        return true;
+    }
+
+    // Under the lock
+    private boolean hasRoom(int payloadLength)
+    {
+        return !mClosed && mFailure == null && mFront.remaining() >= 2 + payloadLength + 4;
+    }
+
+    // Under the lock, add the CRC of the record just put in the buffer
+    private void endRecord(ByteBuffer buffer, int payloadStart, int payloadLength)
+    {
+        mCrc.reset();
+        mCrc.update(buffer.array(), payloadStart, payloadLength);
+        buffer.putInt((int)mCrc.getValue());
+        mAppendedCount++;
+
+        if( buffer.position() >= buffer.capacity() / 2 ) {
+            // Do not wait for the commit interval
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * @return a listener that appends every read published by a model
+     */
+    public ModelEvents.TagReadListener asTagReadListener()
+    {
+        return new ModelEvents.TagReadListener() {
+            @Override
+            public void onTagRead(TagEvent event) {
+                append(event);
+            }
+        };
+    }
+
+    /**
+     * Wait until the records appended so far are written and synced
+     *
+     * @throws IOException if writing failed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws IOException, InterruptedException
+    {
+        synchronized( mLock ) {
+            long target = mAppendedCount;
+            mFlushRequested = true;
+            mLock.notifyAll();
+            while( mCommittedCount < target && mFailure == null && mWriter.isAlive() ) {
+                mLock.wait(100);
+            }
+            if( mFailure != null ) {
+                throw mFailure;
+            }
+        }
+    }
+
+    /**
+     * Discard every record, e.g. to start a new stocktake
+     */
+    public void clear()
+    {
+        synchronized( mLock ) {
+            mFront.clear();
+            mTruncatePending = true;
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Write the remaining records and close the file
+     *
+     * @throws IOException if writing or closing failed
+     */
+    public void close() throws IOException
+    {
+        synchronized( mLock ) {
+            if( mClosed ) {
+                return;
+            }
+            mClosed = true;
+            mLock.notifyAll();
+        }
+        try {
+            mWriter.join();
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        mRandomAccessFile.close();
+        synchronized( mLock ) {
+            if( mFailure != null ) {
+                throw mFailure;
+            }
+        }
+    }
+
+    /**
+     * @return the error that stopped the writer or null
+     */
+    public IOException getFailure()
+    {
+        synchronized( mLock ) { return mFailure; }
+    }
+
+    public long getAppendedCount()
+    {
+        synchronized( mLock ) { return mAppendedCount; }
+    }
+
+    /**
+     * @return the number of records refused because the journal was full, closed or had failed
+     */
+    public long getDroppedCount()
+    {
+        synchronized( mLock ) { return mDroppedCount; }
+    }
+
+    /**
+     * @return the number of batches written and synced
+     */
+    public long getCommitCount()
+    {
+        synchronized( mLock ) { return mCommitCount; }
+    }
+
+    public long getBytesWritten()
+    {
+        synchronized( mLock ) { return mBytesWritten; }
+    }
+
+    private void runWriter()
+    {
+        while( true ) {
+            ByteBuffer batch;
+            boolean truncate;
+            boolean closing;
+            long target;
+            synchronized( mLock ) {
+                try {
+                    while( !mClosed && !mTruncatePending && mFront.position() == 0 ) {
+                        mFlushRequested = false;
+                        mLock.wait();
+                    }
+                    // Gather the reads that arrive within the commit interval into one write
+                    long remaining;
+                    while( !mClosed && !mFlushRequested && mFront.position() < mFront.capacity() / 2
+                            && (remaining = mLastCommitNanos + mCommitIntervalNanos - System.nanoTime()) > 0 ) {
+                        TimeUnit.NANOSECONDS.timedWait(mLock, remaining);
+                    }
+                } catch( InterruptedException e ) {
+                    mClosed = true;
+                }
+                batch = mFront;
+                mFront = mBack;
+                mBack = batch;
+                truncate = mTruncatePending;
+                mTruncatePending = false;
+                mFlushRequested = false;
+                closing = mClosed;
+                target = mAppendedCount;
+            }
+
+            try {
+                if( truncate ) {
+                    mChannel.truncate(sHeaderLength);
+                    mChannel.position(sHeaderLength);
+                }
+                batch.flip();
+                int bytes = batch.remaining();
+                while( batch.hasRemaining() ) {
+                    mChannel.write(batch);
+                }
+                if( bytes > 0 || truncate ) {
+                    mChannel.force(false);
+                }
+                batch.clear();
+
+                synchronized( mLock ) {
+                    mCommittedCount = target;
+                    mBytesWritten += bytes;
+                    if( bytes > 0 ) {
+                        mCommitCount++;
+                    }
+                    mLastCommitNanos = System.nanoTime();
+                    mLock.notifyAll();
+                }
+            } catch( IOException e ) {
+                synchronized( mLock ) {
+                    mFailure = e;
+                    mLock.notifyAll();
+                }
+                return;
+            }
+
+            if( closing ) {
+                synchronized( mLock ) {
+                    // Anything appended while the last batch was written
+                    if( mFront.position() == 0 && !mTruncatePending ) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
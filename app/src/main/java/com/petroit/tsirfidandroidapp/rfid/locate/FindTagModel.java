@@ -0,0 +1,147 @@
+package com.petroit.tsirfidandroidapp.rfid.locate;
+
+import android.os.Message;
+
+import com.petroit.tsirfidandroidapp.rfid.ModelBase;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.uk.tsl.rfid.asciiprotocol.commands.FindTagCommand;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.Databank;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.StartStop;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.TriState;
+import com.uk.tsl.rfid.asciiprotocol.responders.ISignalStrengthReceivedDelegate;
+import com.uk.tsl.rfid.asciiprotocol.responders.SignalStrengthResponder;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Locates a single tag by its signal strength
+ * <p>
+ * The reader's find tag mode is started for the target EPC and the signal strength percentages it
+ * reports are smoothed by a {@link TagLocator}. The client is sent a LOCATE_NOTIFICATION as soon
+ * as a sample arrives, bypassing the batching of tag notifications, and while it is pending
+ * further samples only update the level it will collect with {@link #takeFeedback()}. So the
+ * client is never more than one notification behind however fast the samples arrive.
+ */
+public class FindTagModel extends ModelBase
+{
+    // Samples within about 8% of the true strength, which may change by about 20% in a second
+    private final static double sProcessNoisePerSecond = 400;
+    private final static double sMeasurementNoise = 64;
+    // The tag is taken as out of range after this long without a sample
+    private final static long sSignalTimeoutMs = 750;
+
+    private final TagLocator mLocator = new TagLocator(sProcessNoisePerSecond, sMeasurementNoise, sSignalTimeoutMs);
+    private final FindTagCommand mFindTagCommand;
+    private final SignalStrengthResponder mSignalStrengthResponder;
+
+    private boolean mEnabled;
+    private volatile boolean mLocating;
+    private String mTargetEpc;
+
+    // The arrival of the oldest sample the client has not yet collected
+    private final AtomicBoolean mFeedbackPending = new AtomicBoolean(false);
+    private volatile long mPendingSampleNanos;
+
+    public FindTagModel()
+    {
+        mFindTagCommand = new FindTagCommand();
+        mFindTagCommand.setSelectBank(Databank.ELECTRONIC_PRODUCT_CODE);
+        mFindTagCommand.setSelectOffset(TagEvent.EPC_OFFSET_BITS);
+        mFindTagCommand.setMatchExact(TriState.YES);
+        // The client gives the feedback so it can follow the smoothed level
+        mFindTagCommand.setUseAlert(TriState.NO);
+
+        mSignalStrengthResponder = new SignalStrengthResponder();
+        mSignalStrengthResponder.setPercentageSignalStrengthReceivedDelegate(new ISignalStrengthReceivedDelegate() {
+            @Override
+            public void signalStrengthReceived(Integer level) {
+                if( level != null && mLocating ) {
+                    long now = System.nanoTime();
+                    mLocator.onSignalStrength(level, now);
+                    sendLocateNotification(now);
+                }
+            }
+        });
+    }
+
+    public boolean enabled() { return mEnabled; }
+
+    public void setEnabled(boolean state)
+    {
+        if( state != mEnabled ) {
+            mEnabled = state;
+            if( mEnabled ) {
+                getCommander().addResponder(mSignalStrengthResponder);
+            } else {
+                stopLocating();
+                getCommander().removeResponder(mSignalStrengthResponder);
+            }
+        }
+    }
+
+    /**
+     * @return the EPC of the tag being located, or last located, or null
+     */
+    public String getTargetEpc() { return mTargetEpc; }
+
+    public boolean isLocating() { return mLocating; }
+
+    /**
+     * @return the smoothed level and the feedback latencies
+     */
+    public TagLocator getLocator() { return mLocator; }
+
+    /**
+     * Start the reader's find tag mode for a tag
+     *
+     * @param epc the EPC as hex
+     */
+    public void startLocating(String epc)
+    {
+        if( getCommander().isConnected() ) {
+            mTargetEpc = epc;
+            mLocator.reset();
+            mFindTagCommand.setSelectData(epc);
+            mFindTagCommand.setSelectLength(epc.length() * 4);
+            mFindTagCommand.setTriggerOverride(StartStop.START);
+            mLocating = true;
+            getCommander().executeCommand(mFindTagCommand);
+        }
+    }
+
+    public void stopLocating()
+    {
+        if( mLocating ) {
+            mLocating = false;
+            if( getCommander().isConnected() ) {
+                mFindTagCommand.setTriggerOverride(StartStop.STOP);
+                getCommander().executeCommand(mFindTagCommand);
+            }
+        }
+    }
+
+    /**
+     * Collect the level for a LOCATE_NOTIFICATION, the time since the first sample it covers is
+     * recorded as the feedback latency
+     *
+     * @return the smoothed level from 0 to 100
+     */
+    public int takeFeedback()
+    {
+        long sampleNanos = mPendingSampleNanos;
+        mFeedbackPending.set(false);
+        long now = System.nanoTime();
+        mLocator.recordFeedbackLatency(now - sampleNanos);
+        return mLocator.getLevel(now);
+    }
+
+    // Only the first sample since the client last collected the level sends a notification
+    private void sendLocateNotification(long sampleNanos)
+    {
+        if( mHandler != null && mFeedbackPending.compareAndSet(false, true) ) {
+            mPendingSampleNanos = sampleNanos;
+            Message msg = mHandler.obtainMessage(LOCATE_NOTIFICATION);
+            mHandler.sendMessage(msg);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.petroit.tsirfidandroidapp.rfid.locate;
+
+import android.media.AudioManager;
+import android.media.ToneGenerator;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Clicks faster as the located tag gets closer, like a Geiger counter
+ * <p>
+ * The interval between clicks follows {@link TagLocator#clickIntervalMs(int)}. When the level
+ * rises the next click is brought forward at once rather than waiting out the slower interval,
+ * so moving towards the tag is heard within one fast interval. Level 0 is silent. The clicks
+ * are played on the main thread, call the methods from it.
+ */
+public final class ProximityTonePlayer
+{
+    private static final int sClickDurationMs = 15;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private ToneGenerator mToneGenerator;
+    private int mLevel;
+    private long mLastClickMs;
+    private long mNextClickMs;
+
+    private final Runnable mClick = new Runnable() {
+        @Override
+        public void run() {
+            mNextClickMs = 0;
+            if( mToneGenerator == null || mLevel == 0 ) {
+                return;
+            }
+            mToneGenerator.startTone(ToneGenerator.TONE_PROP_BEEP, sClickDurationMs);
+            mLastClickMs = SystemClock.uptimeMillis();
+            schedule(mLastClickMs + TagLocator.clickIntervalMs(mLevel));
+        }
+    };
+
+    /**
+     * @param volume the volume from 0 to 100
+     */
+    public void start(int volume)
+    {
+        if( mToneGenerator == null ) {
+            mToneGenerator = new ToneGenerator(AudioManager.STREAM_MUSIC, volume);
+        }
+    }
+
+    /**
+     * Stop clicking and release the tone generator
+     */
+    public void stop()
+    {
+        mHandler.removeCallbacks(mClick);
+        mNextClickMs = 0;
+        mLevel = 0;
+        if( mToneGenerator != null ) {
+            mToneGenerator.release();
+            mToneGenerator = null;
+        }
+    }
+
+    /**
+     * @param level the level from 0 to 100
+     */
+    public void setLevel(int level)
+    {
+        mLevel = level;
+        if( mToneGenerator == null || level == 0 ) {
+            return;
+        }
+        long due = mLastClickMs + TagLocator.clickIntervalMs(level);
+        if( mNextClickMs == 0 || due < mNextClickMs ) {
+            schedule(Math.max(due, SystemClock.uptimeMillis()));
+        }
+    }
+
+    private void schedule(long uptimeMs)
+    {
+        mHandler.removeCallbacks(mClick);
+        mNextClickMs = uptimeMs;
+        mHandler.postDelayed(mClick, Math.max(0, uptimeMs - SystemClock.uptimeMillis()));
+    }
+}
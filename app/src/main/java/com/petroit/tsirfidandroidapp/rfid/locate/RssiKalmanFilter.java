@@ -0,0 +1,85 @@
+package com.petroit.tsirfidandroidapp.rfid.locate;
+
+/**
+ * Smooths a stream of signal strengths with a one dimensional Kalman filter
+ * <p>
+ * The signal is modelled as a random walk: its uncertainty grows with the time since the last
+ * sample by the process noise and each sample is weighted against the estimate by the
+ * measurement noise. Unlike a moving average the estimate follows a sustained change within a
+ * few samples, while single outliers from multipath fading are damped, and after a gap in the
+ * reads the next sample is trusted more. The filter holds no history so each update is a few
+ * arithmetic operations.
+ * <p>
+ * A filter is not thread safe.
+ */
+public final class RssiKalmanFilter
+{
+    private final double mProcessNoisePerSecond;
+    private final double mMeasurementNoise;
+
+    private double mEstimate;
+    private double mVariance;
+    private long mLastNanos;
+    private boolean mInitialised;
+
+    /**
+     * @param processNoisePerSecond how far the true signal may wander per second, as a variance
+     * @param measurementNoise the variance of one sample about the true signal
+     */
+    public RssiKalmanFilter(double processNoisePerSecond, double measurementNoise)
+    {
+        if( processNoisePerSecond <= 0 || measurementNoise <= 0 ) {
+            throw new IllegalArgumentException("The noise variances must be positive");
+        }
+        mProcessNoisePerSecond = processNoisePerSecond;
+        mMeasurementNoise = measurementNoise;
+    }
+
+    /**
+     * Add a sample
+     *
+     * @param measurement the signal strength
+     * @param nowNanos the System.nanoTime() of the sample
+     * @return the new estimate
+     */
+    public double update(double measurement, long nowNanos)
+    {
+        if( !mInitialised ) {
+            mEstimate = measurement;
+            mVariance = mMeasurementNoise;
+            mLastNanos = nowNanos;
+            mInitialised = true;
+            return mEstimate;
+        }
+        double elapsedSeconds = Math.max(0, nowNanos - mLastNanos) / 1e9;
+        mLastNanos = nowNanos;
+
+        mVariance += mProcessNoisePerSecond * elapsedSeconds;
+        double gain = mVariance / (mVariance + mMeasurementNoise);
+        mEstimate += gain * (measurement - mEstimate);
+        mVariance *= 1 - gain;
+        return mEstimate;
+    }
+
+    /**
+     * Forget the samples, the next sample is taken as the estimate
+     */
+    public void reset()
+    {
+        mInitialised = false;
+        mEstimate = 0;
+        mVariance = 0;
+    }
+
+    /**
+     * @return the current estimate, 0 before the first sample
+     */
+    public double getEstimate() { return mEstimate; }
+
+    /**
+     * @return the variance of the current estimate
+     */
+    public double getVariance() { return mVariance; }
+
+    public boolean isInitialised() { return mInitialised; }
+}
@@ -0,0 +1,150 @@
+package com.petroit.tsirfidandroidapp.rfid.locate;
+
+import com.petroit.tsirfidandroidapp.rfid.metrics.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns the signal strengths of the tag being located into the level shown on the meter and the
+ * rate of the proximity clicks, and measures how long the feedback takes
+ * <p>
+ * The signal strength percentages from the reader are smoothed by a {@link RssiKalmanFilter}.
+ * The level falls back to 0 when the tag has not been heard for the signal timeout. Like a
+ * Geiger counter the clicks speed up as the level rises, the interval falls exponentially from
+ * {@link #MAXIMUM_CLICK_INTERVAL_MS} at level 0 to {@link #MINIMUM_CLICK_INTERVAL_MS} at 100 so
+ * each step in level is heard as the same change in pace.
+ * <p>
+ * The feedback latency is the time from a sample arriving from the reader to the feedback for
+ * it being shown, the client reports it through {@link #recordFeedbackLatency(long)}.
+ */
+public final class TagLocator
+{
+    public static final long MINIMUM_CLICK_INTERVAL_MS = 40;
+    public static final long MAXIMUM_CLICK_INTERVAL_MS = 1000;
+
+    // The latency the feedback is expected to stay within
+    public static final long FEEDBACK_TARGET_MS = 50;
+
+    private static final double sClickIntervalRatio = (double)MINIMUM_CLICK_INTERVAL_MS / MAXIMUM_CLICK_INTERVAL_MS;
+
+    private final RssiKalmanFilter mFilter;
+    private final long mSignalTimeoutNanos;
+    private final LatencyHistogram mFeedbackLatency = new LatencyHistogram(TimeUnit.SECONDS.toNanos(10), 7);
+
+    private long mLastSampleNanos;
+    private int mLastSample;
+    private long mSampleCount;
+    private long mLateCount;
+
+    /**
+     * @param processNoisePerSecond see {@link RssiKalmanFilter}, in percent squared per second
+     * @param measurementNoise see {@link RssiKalmanFilter}, in percent squared
+     * @param signalTimeoutMs how long without a sample before the tag is taken as out of range
+     */
+    public TagLocator(double processNoisePerSecond, double measurementNoise, long signalTimeoutMs)
+    {
+        mFilter = new RssiKalmanFilter(processNoisePerSecond, measurementNoise);
+        mSignalTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(signalTimeoutMs);
+    }
+
+    /**
+     * Add a signal strength from the reader
+     *
+     * @param percent the strength as a percentage of the reader's range
+     * @param nowNanos the System.nanoTime() the sample arrived
+     * @return the smoothed level from 0 to 100
+     */
+    public synchronized int onSignalStrength(int percent, long nowNanos)
+    {
+        int sample = Math.max(0, Math.min(100, percent));
+        if( mSampleCount > 0 && nowNanos - mLastSampleNanos > mSignalTimeoutNanos ) {
+            // The tag was out of range, start again from this sample
+            mFilter.reset();
+        }
+        mLastSample = sample;
+        mLastSampleNanos = nowNanos;
+        mSampleCount++;
+        return round(mFilter.update(sample, nowNanos));
+    }
+
+    /**
+     * @param nowNanos the System.nanoTime() now
+     * @return the smoothed level from 0 to 100, 0 if the tag has not been heard recently
+     */
+    public synchronized int getLevel(long nowNanos)
+    {
+        if( mSampleCount == 0 || nowNanos - mLastSampleNanos > mSignalTimeoutNanos ) {
+            return 0;
+        }
+        return round(mFilter.getEstimate());
+    }
+
+    /**
+     * @return the last unsmoothed sample
+     */
+    public synchronized int getLastSample() { return mLastSample; }
+
+    public synchronized long getSampleCount() { return mSampleCount; }
+
+    /**
+     * @param level the level from 0 to 100
+     * @return the time between proximity clicks
+     */
+    public static long clickIntervalMs(int level)
+    {
+        double fraction = Math.max(0, Math.min(100, level)) / 100.0;
+        return Math.round(MAXIMUM_CLICK_INTERVAL_MS * Math.pow(sClickIntervalRatio, fraction));
+    }
+
+    /**
+     * @param latencyNanos the time from a sample arriving to its feedback being shown
+     */
+    public synchronized void recordFeedbackLatency(long latencyNanos)
+    {
+        mFeedbackLatency.record(latencyNanos);
+        if( latencyNanos > TimeUnit.MILLISECONDS.toNanos(FEEDBACK_TARGET_MS) ) {
+            mLateCount++;
+        }
+    }
+
+    /**
+     * @return the feedback latencies since the last reset
+     */
+    public LatencyHistogram getFeedbackLatency() { return mFeedbackLatency; }
+
+    /**
+     * @return the number of feedbacks shown later than the target
+     */
+    public synchronized long getLateCount() { return mLateCount; }
+
+    /**
+     * Forget the samples and latencies, e.g. when a new tag is located
+     */
+    public synchronized void reset()
+    {
+        mFilter.reset();
+        mFeedbackLatency.reset();
+        mLastSample = 0;
+        mLastSampleNanos = 0;
+        mSampleCount = 0;
+        mLateCount = 0;
+    }
+
+    /**
+     * Append the level and latencies e.g. "Signal 72% (raw 75)  latency p50 8 ms  p99 21 ms  max 30 ms  late 0"
+     */
+    public synchronized void appendTo(StringBuilder sb, long nowNanos)
+    {
+        LatencyHistogram.Percentiles latency = mFeedbackLatency.getPercentiles();
+        sb.append("Signal ").append(getLevel(nowNanos)).append("% (raw ").append(mLastSample).append(')');
+        sb.append("  latency p50 ").append(TimeUnit.NANOSECONDS.toMillis(latency.getP50()));
+        sb.append(" ms  p99 ").append(TimeUnit.NANOSECONDS.toMillis(latency.getP99()));
+        sb.append(" ms  max ").append(TimeUnit.NANOSECONDS.toMillis(latency.getMaximum()));
+        sb.append(" ms  late ").append(mLateCount);
+    }
+
+    private static int round(double level)
+    {
+        return (int)Math.max(0, Math.min(100, Math.round(level)));
+    }
+}
@@ -0,0 +1,38 @@
+package com.petroit.tsirfidandroidapp.rfid.metrics;
+
+import android.os.Build;
+import android.os.Debug;
+
+/**
+ * The ART runtime statistics, available from Android 6.0
+ */
+public final class AndroidRuntimeCounters implements RuntimeCounters
+{
+    @Override
+    public long getGcCount() { return stat("art.gc.gc-count"); }
+
+    @Override
+    public long getGcTimeMs() { return stat("art.gc.gc-time"); }
+
+    @Override
+    public long getBlockingGcCount() { return stat("art.gc.blocking-gc-count"); }
+
+    @Override
+    public long getBytesAllocated() { return stat("art.gc.bytes-allocated"); }
+
+    private static long stat(String name)
+    {
+        if( Build.VERSION.SDK_INT < Build.VERSION_CODES.M ) {
+            return -1;
+        }
+        String value = Debug.getRuntimeStat(name);
+        if( value == null ) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch( NumberFormatException e ) {
+            return -1;
+        }
+    }
+}
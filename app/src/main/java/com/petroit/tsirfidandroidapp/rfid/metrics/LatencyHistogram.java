@@ -0,0 +1,191 @@
+package com.petroit.tsirfidandroidapp.rfid.metrics;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of non-negative values with a fixed relative precision, for latency percentiles
+ * <p>
+ * Values are counted in buckets laid out like HdrHistogram: values below the sub-bucket count
+ * are exact and each power of two above that is split into the same number of linear
+ * sub-buckets, so every recorded value is held to within 2^-precisionBits of its true value
+ * whatever its magnitude. The counts are allocated once, recording does not allocate and takes
+ * constant time. Values above the highest trackable value are counted at the highest value.
+ */
+public final class LatencyHistogram
+{
+    private final int mSubBucketHalfCountMagnitude;
+    private final int mSubBucketHalfCount;
+    private final long mHighestTrackableValue;
+    private final long[] mCounts;
+
+    private long mTotalCount;
+    private long mTotalValue;
+    private long mMinimum = Long.MAX_VALUE;
+    private long mMaximum;
+    private long mClampedCount;
+
+    /**
+     * @param highestTrackableValue the largest value recorded exactly, e.g. 60s in ns
+     * @param precisionBits the number of significant bits kept, 7 gives better than 1% precision
+     */
+    public LatencyHistogram(long highestTrackableValue, int precisionBits)
+    {
+        if( precisionBits < 1 || precisionBits > 16 ) {
+            throw new IllegalArgumentException("The precision must be between 1 and 16 bits");
+        }
+        if( highestTrackableValue < 1 ) {
+            throw new IllegalArgumentException("The highest trackable value must be positive");
+        }
+        mSubBucketHalfCountMagnitude = precisionBits;
+        mSubBucketHalfCount = 1 << precisionBits;
+        mHighestTrackableValue = highestTrackableValue;
+        mCounts = new long[indexOf(highestTrackableValue) + 1];
+    }
+
+    /**
+     * Count a value, negative values are counted as 0
+     */
+    public synchronized void record(long value)
+    {
+        if( value < 0 ) {
+            value = 0;
+        } else if( value > mHighestTrackableValue ) {
+            value = mHighestTrackableValue;
+            mClampedCount++;
+        }
+        mCounts[indexOf(value)]++;
+        mTotalCount++;
+        mTotalValue += value;
+        if( value < mMinimum ) mMinimum = value;
+        if( value > mMaximum ) mMaximum = value;
+    }
+
+    public synchronized void reset()
+    {
+        Arrays.fill(mCounts, 0);
+        mTotalCount = 0;
+        mTotalValue = 0;
+        mMinimum = Long.MAX_VALUE;
+        mMaximum = 0;
+        mClampedCount = 0;
+    }
+
+    public synchronized long getCount() { return mTotalCount; }
+
+    /**
+     * @return the number of values that were above the highest trackable value
+     */
+    public synchronized long getClampedCount() { return mClampedCount; }
+
+    /**
+     * @return the smallest value recorded, 0 when empty
+     */
+    public synchronized long getMinimum() { return mTotalCount == 0 ? 0 : mMinimum; }
+
+    public synchronized long getMaximum() { return mMaximum; }
+
+    public synchronized long getMean() { return mTotalCount == 0 ? 0 : mTotalValue / mTotalCount; }
+
+    /**
+     * @param percentile e.g. 99.9
+     * @return the value that the given percentage of the recorded values are at or below, to the
+     * histogram's precision, 0 when empty
+     */
+    public synchronized long getValueAtPercentile(double percentile)
+    {
+        if( mTotalCount == 0 ) {
+            return 0;
+        }
+        double fraction = Math.min(Math.max(percentile, 0.0), 100.0) / 100.0;
+        long target = Math.max(1, (long)Math.ceil(fraction * mTotalCount));
+        long seen = 0;
+        for( int i = 0; i < mCounts.length; i++ ) {
+            seen += mCounts[i];
+            if( seen >= target ) {
+                // The largest value in the bucket, but never more than was recorded
+                return Math.min(highestValueAt(i), mMaximum);
+            }
+        }
+        return mMaximum;
+    }
+
+    /**
+     * Take the values recorded so far as a summary
+     */
+    public synchronized Percentiles getPercentiles()
+    {
+        return new Percentiles(mTotalCount, getMinimum(), getMean(), getValueAtPercentile(50.0),
+                getValueAtPercentile(90.0), getValueAtPercentile(99.0), getValueAtPercentile(99.9), mMaximum);
+    }
+
+    private int indexOf(long value)
+    {
+        if( value < (mSubBucketHalfCount << 1) ) {
+            return (int)value;
+        }
+        // The power of two above the exact range, then the linear sub-bucket within it
+        int bucket = 63 - Long.numberOfLeadingZeros(value) - mSubBucketHalfCountMagnitude;
+        return bucket * mSubBucketHalfCount + (int)(value >>> bucket);
+    }
+
+    private long lowestValueAt(int index)
+    {
+        if( index < (mSubBucketHalfCount << 1) ) {
+            return index;
+        }
+        int bucket = index / mSubBucketHalfCount - 1;
+        return (long)(index - bucket * mSubBucketHalfCount) << bucket;
+    }
+
+    private long highestValueAt(int index)
+    {
+        if( index < (mSubBucketHalfCount << 1) ) {
+            return index;
+        }
+        int bucket = index / mSubBucketHalfCount - 1;
+        return lowestValueAt(index) + (1L << bucket) - 1;
+    }
+
+    /**
+     * The distribution of a histogram's values at one moment
+     */
+    public static final class Percentiles
+    {
+        private final long mCount;
+        private final long mMinimum;
+        private final long mMean;
+        private final long mP50;
+        private final long mP90;
+        private final long mP99;
+        private final long mP999;
+        private final long mMaximum;
+
+        Percentiles(long count, long minimum, long mean, long p50, long p90, long p99, long p999, long maximum)
+        {
+            mCount = count;
+            mMinimum = minimum;
+            mMean = mean;
+            mP50 = p50;
+            mP90 = p90;
+            mP99 = p99;
+            mP999 = p999;
+            mMaximum = maximum;
+        }
+
+        public long getCount() { return mCount; }
+
+        public long getMinimum() { return mMinimum; }
+
+        public long getMean() { return mMean; }
+
+        public long getP50() { return mP50; }
+
+        public long getP90() { return mP90; }
+
+        public long getP99() { return mP99; }
+
+        public long getP999() { return mP999; }
+
+        public long getMaximum() { return mMaximum; }
+    }
+}
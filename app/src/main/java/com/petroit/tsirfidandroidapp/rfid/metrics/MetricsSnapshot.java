@@ -0,0 +1,194 @@
+package com.petroit.tsirfidandroidapp.rfid.metrics;
+
+import java.util.Locale;
+
+/**
+ * The {@link ScanMetrics} at one moment
+ * <p>
+ * Counts are totals since the metrics were last reset. The current rates are found by comparing
+ * with an earlier snapshot, e.g. the one taken a second ago. Times are in ns, a queue depth or
+ * runtime counter that is not available is -1.
+ */
+public final class MetricsSnapshot
+{
+    private final String mLabel;
+    private final long mTakenNanos;
+    private final long mElapsedNanos;
+    private final long mReadCount;
+    private final long mUniqueCount;
+    private final LatencyHistogram.Percentiles mRoundDurations;
+    private final LatencyHistogram.Percentiles mRoundGaps;
+    private final LatencyHistogram.Percentiles mDeliveryLatencies;
+
+    private int mHandlerQueueDepth = -1;
+    private int mMaximumHandlerQueueDepth = -1;
+    private int mDeliveryQueueDepth = -1;
+    private int mMaximumDeliveryQueueDepth = -1;
+    private long mGcCount = -1;
+    private long mGcTimeMs = -1;
+    private long mBlockingGcCount = -1;
+    private long mBytesAllocated = -1;
+
+    MetricsSnapshot(String label, long takenNanos, long elapsedNanos, long readCount, long uniqueCount,
+                    LatencyHistogram.Percentiles roundDurations, LatencyHistogram.Percentiles roundGaps,
+                    LatencyHistogram.Percentiles deliveryLatencies)
+    {
+        mLabel = label;
+        mTakenNanos = takenNanos;
+        mElapsedNanos = elapsedNanos;
+        mReadCount = readCount;
+        mUniqueCount = uniqueCount;
+        mRoundDurations = roundDurations;
+        mRoundGaps = roundGaps;
+        mDeliveryLatencies = deliveryLatencies;
+    }
+
+    void setHandlerQueue(int depth, int maximumDepth)
+    {
+        mHandlerQueueDepth = depth;
+        mMaximumHandlerQueueDepth = maximumDepth;
+    }
+
+    void setDeliveryQueue(int depth, int maximumDepth)
+    {
+        mDeliveryQueueDepth = depth;
+        mMaximumDeliveryQueueDepth = maximumDepth;
+    }
+
+    void setRuntimeCounters(long gcCount, long gcTimeMs, long blockingGcCount, long bytesAllocated)
+    {
+        mGcCount = gcCount;
+        mGcTimeMs = gcTimeMs;
+        mBlockingGcCount = blockingGcCount;
+        mBytesAllocated = bytesAllocated;
+    }
+
+    /**
+     * @return what was being measured, e.g. the reader, session and power
+     */
+    public String getLabel() { return mLabel; }
+
+    /**
+     * @return the System.nanoTime() when the snapshot was taken
+     */
+    public long getTakenNanos() { return mTakenNanos; }
+
+    /**
+     * @return the time since the metrics were reset
+     */
+    public long getElapsedNanos() { return mElapsedNanos; }
+
+    public long getReadCount() { return mReadCount; }
+
+    public long getUniqueCount() { return mUniqueCount; }
+
+    /**
+     * @return the average reads per second since the metrics were reset
+     */
+    public double getReadsPerSecond() { return perSecond(mReadCount, mElapsedNanos); }
+
+    /**
+     * @return the average new tags per second since the metrics were reset
+     */
+    public double getUniquesPerSecond() { return perSecond(mUniqueCount, mElapsedNanos); }
+
+    /**
+     * @param earlier a snapshot taken earlier from the same metrics
+     * @return the reads per second between the two snapshots
+     */
+    public double getReadsPerSecondSince(MetricsSnapshot earlier)
+    {
+        return perSecond(mReadCount - earlier.mReadCount, mTakenNanos - earlier.mTakenNanos);
+    }
+
+    /**
+     * @param earlier a snapshot taken earlier from the same metrics
+     * @return the new tags per second between the two snapshots
+     */
+    public double getUniquesPerSecondSince(MetricsSnapshot earlier)
+    {
+        return perSecond(mUniqueCount - earlier.mUniqueCount, mTakenNanos - earlier.mTakenNanos);
+    }
+
+    /**
+     * @return the durations of the inventory rounds
+     */
+    public LatencyHistogram.Percentiles getRoundDurations() { return mRoundDurations; }
+
+    /**
+     * @return the gaps between the rounds of continuous scans
+     */
+    public LatencyHistogram.Percentiles getRoundGaps() { return mRoundGaps; }
+
+    /**
+     * @return the delays from reads being parsed to them reaching the UI
+     */
+    public LatencyHistogram.Percentiles getDeliveryLatencies() { return mDeliveryLatencies; }
+
+    /**
+     * @return the number of messages waiting for the client's handler
+     */
+    public int getHandlerQueueDepth() { return mHandlerQueueDepth; }
+
+    public int getMaximumHandlerQueueDepth() { return mMaximumHandlerQueueDepth; }
+
+    /**
+     * @return the number of reads waiting to be delivered to the client
+     */
+    public int getDeliveryQueueDepth() { return mDeliveryQueueDepth; }
+
+    public int getMaximumDeliveryQueueDepth() { return mMaximumDeliveryQueueDepth; }
+
+    /**
+     * @return the number of garbage collections since the metrics were reset
+     */
+    public long getGcCount() { return mGcCount; }
+
+    public long getGcTimeMs() { return mGcTimeMs; }
+
+    public long getBlockingGcCount() { return mBlockingGcCount; }
+
+    public long getBytesAllocated() { return mBytesAllocated; }
+
+    /**
+     * Append the metrics as short lines for an overlay or log
+     *
+     * @param earlier the previous snapshot for the current rates or null for the averages
+     */
+    public void appendTo(StringBuilder sb, MetricsSnapshot earlier)
+    {
+        if( !mLabel.isEmpty() ) {
+            sb.append(mLabel).append('\n');
+        }
+        double reads = earlier != null ? getReadsPerSecondSince(earlier) : getReadsPerSecond();
+        double uniques = earlier != null ? getUniquesPerSecondSince(earlier) : getUniquesPerSecond();
+        sb.append(String.format(Locale.US, "reads/s %.0f  new/s %.0f  (%d/%d)\n", reads, uniques, mReadCount, mUniqueCount));
+        appendPercentiles(sb, "round", mRoundDurations);
+        appendPercentiles(sb, "gap", mRoundGaps);
+        appendPercentiles(sb, "to UI", mDeliveryLatencies);
+        sb.append(String.format(Locale.US, "queue %d (max %d)  pending %d (max %d)\n",
+                mHandlerQueueDepth, mMaximumHandlerQueueDepth, mDeliveryQueueDepth, mMaximumDeliveryQueueDepth));
+        sb.append(String.format(Locale.US, "gc %d (%d blocking) %d ms  alloc %d KB",
+                mGcCount, mBlockingGcCount, mGcTimeMs, mBytesAllocated < 0 ? -1 : mBytesAllocated / 1024));
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(256);
+        appendTo(sb, null);
+        return sb.toString();
+    }
+
+    private static void appendPercentiles(StringBuilder sb, String name, LatencyHistogram.Percentiles percentiles)
+    {
+        sb.append(String.format(Locale.US, "%s ms p50 %.1f p90 %.1f p99 %.1f max %.1f\n", name,
+                percentiles.getP50() / 1e6, percentiles.getP90() / 1e6, percentiles.getP99() / 1e6,
+                percentiles.getMaximum() / 1e6));
+    }
+
+    private static double perSecond(long count, long nanos)
+    {
+        return nanos <= 0 ? 0.0 : count * 1e9 / nanos;
+    }
+}
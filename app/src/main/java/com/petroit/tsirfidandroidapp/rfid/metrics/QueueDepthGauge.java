@@ -0,0 +1,17 @@
+package com.petroit.tsirfidandroidapp.rfid.metrics;
+
+/**
+ * A queue whose length is reported as a metric
+ */
+public interface QueueDepthGauge
+{
+    /**
+     * @return the number of items currently waiting
+     */
+    int getQueueDepth();
+
+    /**
+     * @return the largest number of items seen waiting at once
+     */
+    int getMaximumQueueDepth();
+}
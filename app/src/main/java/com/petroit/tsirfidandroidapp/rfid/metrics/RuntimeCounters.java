@@ -0,0 +1,21 @@
+package com.petroit.tsirfidandroidapp.rfid.metrics;
+
+/**
+ * The garbage collector and allocation counters of the runtime
+ * <p>
+ * All values are totals since the process started, a counter the runtime does not provide is
+ * returned as -1.
+ */
+public interface RuntimeCounters
+{
+    long getGcCount();
+
+    long getGcTimeMs();
+
+    /**
+     * @return the number of collections that paused the allocating threads
+     */
+    long getBlockingGcCount();
+
+    long getBytesAllocated();
+}
@@ -0,0 +1,157 @@
+package com.petroit.tsirfidandroidapp.rfid.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and latency of the inventory pipeline, for comparing readers, sessions and power
+ * levels in the field
+ * <p>
+ * The model records each read, each inventory round and the gaps between rounds of a
+ * continuous scan. The client records the delay from a read being parsed to it reaching the UI.
+ * {@link #snapshot()} gathers these with the queue depths and the runtime's GC counters into an
+ * immutable {@link MetricsSnapshot}, which can be shown in an overlay, logged or compared with
+ * an earlier snapshot for the current rates. Recording does not allocate.
+ */
+public final class ScanMetrics
+{
+    // Rounds of 10 minutes and latencies of a minute are far beyond anything useful
+    private static final long sHighestRoundNanos = TimeUnit.MINUTES.toNanos(10);
+    private static final long sHighestLatencyNanos = TimeUnit.MINUTES.toNanos(1);
+    // Better than 1% precision
+    private static final int sPrecisionBits = 7;
+
+    private final AtomicLong mReadCount = new AtomicLong();
+    private final AtomicLong mUniqueCount = new AtomicLong();
+    private final LatencyHistogram mRoundDurations = new LatencyHistogram(sHighestRoundNanos, sPrecisionBits);
+    private final LatencyHistogram mRoundGaps = new LatencyHistogram(sHighestRoundNanos, sPrecisionBits);
+    private final LatencyHistogram mDeliveryLatencies = new LatencyHistogram(sHighestLatencyNanos, sPrecisionBits);
+
+    private volatile long mStartNanos = System.nanoTime();
+    private volatile String mLabel = "";
+    private volatile QueueDepthGauge mHandlerQueue;
+    private volatile QueueDepthGauge mDeliveryQueue;
+    private volatile RuntimeCounters mRuntimeCounters;
+
+    // The runtime counters when the metrics were reset, so the snapshot shows the change since
+    private long mBaseGcCount;
+    private long mBaseGcTimeMs;
+    private long mBaseBlockingGcCount;
+    private long mBaseBytesAllocated;
+
+    /**
+     * Count a read
+     *
+     * @param newTag true if this is the first read of the tag
+     */
+    public void recordRead(boolean newTag)
+    {
+        mReadCount.incrementAndGet();
+        if( newTag ) {
+            mUniqueCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param durationNanos the time from the start of an inventory response to its end
+     */
+    public void recordRound(long durationNanos) { mRoundDurations.record(durationNanos); }
+
+    /**
+     * @param gapNanos the time from the end of an inventory response to the start of the next
+     */
+    public void recordGap(long gapNanos) { mRoundGaps.record(gapNanos); }
+
+    /**
+     * @param latencyNanos the time from a read being parsed to it being handed to the UI
+     */
+    public void recordDeliveryLatency(long latencyNanos) { mDeliveryLatencies.record(latencyNanos); }
+
+    /**
+     * Start a new measurement, e.g. before trying a different session or power level
+     */
+    public synchronized void reset()
+    {
+        mReadCount.set(0);
+        mUniqueCount.set(0);
+        mRoundDurations.reset();
+        mRoundGaps.reset();
+        mDeliveryLatencies.reset();
+        RuntimeCounters counters = mRuntimeCounters;
+        if( counters != null ) {
+            mBaseGcCount = counters.getGcCount();
+            mBaseGcTimeMs = counters.getGcTimeMs();
+            mBaseBlockingGcCount = counters.getBlockingGcCount();
+            mBaseBytesAllocated = counters.getBytesAllocated();
+        }
+        mStartNanos = System.nanoTime();
+    }
+
+    /**
+     * @param label describes what is being measured e.g. the reader, session and power
+     */
+    public void setLabel(String label) { mLabel = label == null ? "" : label; }
+
+    public String getLabel() { return mLabel; }
+
+    /**
+     * @param queue the messages waiting for the client's handler or null if unknown
+     */
+    public void setHandlerQueue(QueueDepthGauge queue) { mHandlerQueue = queue; }
+
+    /**
+     * @param queue the reads waiting to be delivered to the client or null if unknown
+     */
+    public void setDeliveryQueue(QueueDepthGauge queue) { mDeliveryQueue = queue; }
+
+    /**
+     * @param counters the source of the GC counters or null if there is none
+     */
+    public synchronized void setRuntimeCounters(RuntimeCounters counters)
+    {
+        mRuntimeCounters = counters;
+        mBaseGcCount = 0;
+        mBaseGcTimeMs = 0;
+        mBaseBlockingGcCount = 0;
+        mBaseBytesAllocated = 0;
+    }
+
+    public LatencyHistogram getRoundDurations() { return mRoundDurations; }
+
+    public LatencyHistogram getRoundGaps() { return mRoundGaps; }
+
+    public LatencyHistogram getDeliveryLatencies() { return mDeliveryLatencies; }
+
+    /**
+     * @return the metrics as they are now
+     */
+    public synchronized MetricsSnapshot snapshot()
+    {
+        long now = System.nanoTime();
+        MetricsSnapshot snapshot = new MetricsSnapshot(mLabel, now, now - mStartNanos,
+                mReadCount.get(), mUniqueCount.get(),
+                mRoundDurations.getPercentiles(), mRoundGaps.getPercentiles(), mDeliveryLatencies.getPercentiles());
+
+        QueueDepthGauge handlerQueue = mHandlerQueue;
+        if( handlerQueue != null ) {
+            snapshot.setHandlerQueue(handlerQueue.getQueueDepth(), handlerQueue.getMaximumQueueDepth());
+        }
+        QueueDepthGauge deliveryQueue = mDeliveryQueue;
+        if( deliveryQueue != null ) {
+            snapshot.setDeliveryQueue(deliveryQueue.getQueueDepth(), deliveryQueue.getMaximumQueueDepth());
+        }
+        RuntimeCounters counters = mRuntimeCounters;
+        if( counters != null ) {
+            snapshot.setRuntimeCounters(since(counters.getGcCount(), mBaseGcCount),
+                    since(counters.getGcTimeMs(), mBaseGcTimeMs),
+                    since(counters.getBlockingGcCount(), mBaseBlockingGcCount),
+                    since(counters.getBytesAllocated(), mBaseBytesAllocated));
+        }
+        return snapshot;
+    }
+
+    private static long since(long value, long base)
+    {
+        return value < 0 || base < 0 ? value : value - base;
+    }
+}
@@ -0,0 +1,186 @@
+package com.petroit.tsirfidandroidapp.rfid.multireader;
+
+import android.content.Context;
+
+import com.uk.tsl.rfid.asciiprotocol.device.ObservableReaderList;
+import com.uk.tsl.rfid.asciiprotocol.device.Reader;
+import com.uk.tsl.utils.Observable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Drives every reader of an ObservableReaderList at once, e.g. the readers of a portal
+ * <p>
+ * Each reader gets a {@link ReaderSession} as it is added to the list and loses it when it is
+ * removed. The reads of all the readers are merged into one {@link StripedTagStore} where each
+ * tag records the readers that saw it and each reader its own statistics. A reader added while
+ * the session is scanning starts scanning once connected.
+ */
+public final class MultiReaderSession
+{
+    private final Context mContext;
+    private final ObservableReaderList mReaderList;
+    private final StripedTagStore mStore;
+
+    private final LinkedHashMap<Reader, ReaderSession> mSessions = new LinkedHashMap<>();
+    // A reader that is removed and added again keeps its index
+    private final HashMap<Reader, ReaderStatistics> mStatistics = new HashMap<>();
+    private boolean mOpen;
+    private boolean mScanning;
+
+    private final Observable.Observer<Reader> mAddedObserver = new Observable.Observer<Reader>() {
+        @Override
+        public void update(Observable<? extends Reader> observable, Reader reader) {
+            addReader(reader);
+        }
+    };
+
+    private final Observable.Observer<Reader> mRemovedObserver = new Observable.Observer<Reader>() {
+        @Override
+        public void update(Observable<? extends Reader> observable, Reader reader) {
+            removeReader(reader);
+        }
+    };
+
+    /**
+     * @param context used to create the commanders
+     * @param readerList the readers to drive, e.g. ReaderManager.sharedInstance().getReaderList()
+     * @param store receives the reads of all the readers
+     */
+    public MultiReaderSession(Context context, ObservableReaderList readerList, StripedTagStore store)
+    {
+        mContext = context.getApplicationContext();
+        mReaderList = readerList;
+        mStore = store;
+    }
+
+    /**
+     * @return the merged reads of all the readers
+     */
+    public StripedTagStore getStore() { return mStore; }
+
+    /**
+     * Connect to the readers in the list and follow its changes
+     */
+    public void open()
+    {
+        synchronized( this ) {
+            if( mOpen ) {
+                return;
+            }
+            mOpen = true;
+        }
+        mReaderList.readerAddedEvent().addObserver(mAddedObserver);
+        mReaderList.readerRemovedEvent().addObserver(mRemovedObserver);
+        for( Reader reader : new ArrayList<>(mReaderList.list()) ) {
+            addReader(reader);
+        }
+    }
+
+    /**
+     * Stop following the list and disconnect all the readers
+     */
+    public void close()
+    {
+        List<ReaderSession> sessions;
+        synchronized( this ) {
+            if( !mOpen ) {
+                return;
+            }
+            mOpen = false;
+            mScanning = false;
+            sessions = new ArrayList<>(mSessions.values());
+            mSessions.clear();
+        }
+        mReaderList.readerAddedEvent().removeObserver(mAddedObserver);
+        mReaderList.readerRemovedEvent().removeObserver(mRemovedObserver);
+        for( ReaderSession session : sessions ) {
+            session.close();
+        }
+    }
+
+    /**
+     * @return the sessions of the readers, in the order added
+     */
+    public synchronized List<ReaderSession> getSessions()
+    {
+        return new ArrayList<>(mSessions.values());
+    }
+
+    public synchronized boolean isScanning() { return mScanning; }
+
+    /**
+     * Start a continuous scan on every reader
+     */
+    public void scanStart()
+    {
+        for( ReaderSession session : startScanning(true) ) {
+            session.scanStart();
+        }
+    }
+
+    /**
+     * Stop the scans of all the readers
+     */
+    public void scanStop()
+    {
+        for( ReaderSession session : startScanning(false) ) {
+            session.scanStop();
+        }
+    }
+
+    /**
+     * Append each reader's statistics on its own line
+     */
+    public void appendTo(StringBuilder sb)
+    {
+        sb.append(mStore.size()).append(" tags from ").append(mStore.getTotalReads()).append(" reads");
+        for( ReaderSession session : getSessions() ) {
+            sb.append('\n');
+            session.getStatistics().appendTo(sb);
+        }
+    }
+
+    private synchronized List<ReaderSession> startScanning(boolean scanning)
+    {
+        mScanning = scanning;
+        return new ArrayList<>(mSessions.values());
+    }
+
+    private void addReader(Reader reader)
+    {
+        ReaderSession session;
+        boolean scanning;
+        synchronized( this ) {
+            if( !mOpen || mSessions.containsKey(reader) ) {
+                return;
+            }
+            ReaderStatistics statistics = mStatistics.get(reader);
+            if( statistics == null ) {
+                statistics = mStore.registerReader(reader.getDisplayName());
+                mStatistics.put(reader, statistics);
+            }
+            session = new ReaderSession(mContext, reader, mStore, statistics);
+            mSessions.put(reader, session);
+            scanning = mScanning;
+        }
+        if( scanning ) {
+            session.scanStart();
+        }
+    }
+
+    private void removeReader(Reader reader)
+    {
+        ReaderSession session;
+        synchronized( this ) {
+            session = mSessions.remove(reader);
+        }
+        if( session != null ) {
+            session.close();
+        }
+    }
+}
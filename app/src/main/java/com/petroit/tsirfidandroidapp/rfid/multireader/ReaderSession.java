@@ -0,0 +1,148 @@
+package com.petroit.tsirfidandroidapp.rfid.multireader;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import com.petroit.tsirfidandroidapp.rfid.ModelEvents;
+import com.petroit.tsirfidandroidapp.rfid.ModelException;
+import com.petroit.tsirfidandroidapp.rfid.ModelTaskEngine;
+import com.petroit.tsirfidandroidapp.rfid.inventory.InventoryModel;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.uk.tsl.rfid.asciiprotocol.AsciiCommander;
+import com.uk.tsl.rfid.asciiprotocol.device.Reader;
+import com.uk.tsl.utils.Observable;
+
+/**
+ * One reader of a {@link MultiReaderSession}
+ * <p>
+ * The reader has its own AsciiCommander, whose responses are parsed on the session's own I/O
+ * thread, and its own {@link InventoryModel}. Every read the model receives is also recorded
+ * in the shared {@link StripedTagStore}, attributed to this reader. Commands that wait for the
+ * reader, e.g. starting a scan, run on the model's task thread.
+ */
+public final class ReaderSession
+{
+    private final Reader mReader;
+    private final ReaderStatistics mStatistics;
+    private final HandlerThread mThread;
+    private final AsciiCommander mCommander;
+    private final InventoryModel mModel;
+    private volatile boolean mScanning;
+
+    private final ModelEvents.TagReadListener mTagReadListener;
+
+    // Restore the configuration, and any scan, each time the reader connects
+    private final Observable.Observer<String> mConnectionStateObserver = new Observable.Observer<String>() {
+        @Override
+        public void update(Observable<? extends String> observable, String reason) {
+            if( mCommander.isConnected() ) {
+                mModel.resetDevice();
+                mModel.updateConfiguration();
+                if( mScanning ) {
+                    perform(new Runnable() {
+                        @Override
+                        public void run() {
+                            mModel.scanStart();
+                        }
+                    });
+                }
+            }
+        }
+    };
+
+    ReaderSession(Context context, Reader reader, final StripedTagStore store, ReaderStatistics statistics)
+    {
+        mReader = reader;
+        mStatistics = statistics;
+        mThread = new HandlerThread("Reader-" + statistics.getIndex());
+        mThread.start();
+        mCommander = new AsciiCommander(context, new Handler(mThread.getLooper()));
+        mCommander.stateChangedEvent().addObserver(mConnectionStateObserver);
+
+        mModel = new InventoryModel();
+        mModel.setCommander(mCommander);
+        final int readerIndex = statistics.getIndex();
+        mTagReadListener = new ModelEvents.TagReadListener() {
+            @Override
+            public void onTagRead(TagEvent event) {
+                store.record(readerIndex, event);
+            }
+        };
+        mModel.getEvents().addTagReadListener(mTagReadListener);
+        mModel.setEnabled(true);
+
+        mCommander.setReader(reader);
+        if( !reader.isConnected() && !reader.isConnecting() ) {
+            reader.connect();
+        }
+    }
+
+    public Reader getReader() { return mReader; }
+
+    /**
+     * @return the reader's contribution to the shared store
+     */
+    public ReaderStatistics getStatistics() { return mStatistics; }
+
+    public AsciiCommander getCommander() { return mCommander; }
+
+    /**
+     * @return the reader's model, for its own settings, tag store and metrics
+     */
+    public InventoryModel getModel() { return mModel; }
+
+    public boolean isScanning() { return mScanning; }
+
+    /**
+     * Start a continuous scan, now if connected otherwise when the reader connects
+     */
+    public void scanStart()
+    {
+        mScanning = true;
+        if( mCommander.isConnected() ) {
+            perform(new Runnable() {
+                @Override
+                public void run() {
+                    mModel.scanStart();
+                }
+            });
+        }
+    }
+
+    public void scanStop()
+    {
+        mScanning = false;
+        perform(new Runnable() {
+            @Override
+            public void run() {
+                mModel.scanStop();
+            }
+        });
+    }
+
+    /**
+     * Stop scanning, disconnect the reader and end the I/O thread
+     */
+    void close()
+    {
+        mScanning = false;
+        mModel.cancelTasks();
+        mModel.setEnabled(false);
+        mModel.getEvents().removeTagReadListener(mTagReadListener);
+        mCommander.stateChangedEvent().removeObserver(mConnectionStateObserver);
+        mCommander.setReader(null);
+        mReader.disconnect();
+        mThread.quitSafely();
+    }
+
+    private void perform(Runnable task)
+    {
+        try {
+            mModel.performTask(task, ModelTaskEngine.PRIORITY_HIGH);
+        } catch (ModelException e) {
+            Log.e(getClass().getName(), mStatistics.getName() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.petroit.tsirfidandroidapp.rfid.multireader;
+
+import java.util.Locale;
+
+/**
+ * The reads one reader has contributed to a {@link StripedTagStore}
+ * <p>
+ * Updated on the reader's own thread and read on any other, so access is synchronized. The
+ * lock is only contended when the statistics are displayed.
+ */
+public final class ReaderStatistics
+{
+    private final int mIndex;
+    private final String mName;
+
+    private long mReadCount;
+    private long mNewTagCount;
+    private long mTagCount;
+    private long mFirstReadNanos;
+    private long mLastReadNanos;
+
+    ReaderStatistics(int index, String name)
+    {
+        mIndex = index;
+        mName = name;
+    }
+
+    /**
+     * @return the reader's index in the store, the bit for it in the reader masks
+     */
+    public int getIndex() { return mIndex; }
+
+    public String getName() { return mName; }
+
+    /**
+     * @return the number of reads, including repeats
+     */
+    public synchronized long getReadCount() { return mReadCount; }
+
+    /**
+     * @return the number of tags this reader saw before any other reader
+     */
+    public synchronized long getNewTagCount() { return mNewTagCount; }
+
+    /**
+     * @return the number of different tags this reader has seen
+     */
+    public synchronized long getTagCount() { return mTagCount; }
+
+    /**
+     * @return the reads per second from the first read to the latest or 0
+     */
+    public synchronized double getReadsPerSecond()
+    {
+        long elapsedNanos = mLastReadNanos - mFirstReadNanos;
+        return mReadCount < 2 || elapsedNanos <= 0 ? 0.0 : (mReadCount - 1) * 1e9 / elapsedNanos;
+    }
+
+    synchronized void recordRead(boolean isNewTag, boolean isNewForReader, long nanos)
+    {
+        if( mReadCount == 0 ) {
+            mFirstReadNanos = nanos;
+        }
+        mReadCount++;
+        mLastReadNanos = nanos;
+        if( isNewTag ) {
+            mNewTagCount++;
+        }
+        if( isNewForReader ) {
+            mTagCount++;
+        }
+    }
+
+    synchronized void reset()
+    {
+        mReadCount = 0;
+        mNewTagCount = 0;
+        mTagCount = 0;
+        mFirstReadNanos = 0;
+        mLastReadNanos = 0;
+    }
+
+    /**
+     * Append the statistics e.g. "Portal 2: 1520 reads 412.5/s  96 tags (40 first)"
+     */
+    public synchronized void appendTo(StringBuilder sb)
+    {
+        sb.append(mName).append(": ").append(mReadCount).append(" reads ");
+        sb.append(String.format(Locale.US, "%.1f", getReadsPerSecond())).append("/s  ");
+        sb.append(mTagCount).append(" tags (").append(mNewTagCount).append(" first)");
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(64);
+        appendTo(sb);
+        return sb.toString();
+    }
+}
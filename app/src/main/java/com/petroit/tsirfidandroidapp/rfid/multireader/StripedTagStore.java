@@ -0,0 +1,293 @@
+package com.petroit.tsirfidandroidapp.rfid.multireader;
+
+import com.petroit.tsirfidandroidapp.rfid.tags.EpcIndex;
+import com.petroit.tsirfidandroidapp.rfid.tags.IntList;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagStore;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagSummary;
+
+import java.util.Arrays;
+
+/**
+ * Aggregates the reads of several readers into one record per EPC
+ * <p>
+ * The tags are split between stripes by a hash of the EPC. Each stripe is a {@link TagStore}
+ * with its own lock, so readers recording different tags rarely wait for each other. A tag is
+ * identified across the stripes by an id that packs its stripe and its ordinal in that stripe.
+ * <p>
+ * For each tag the store keeps a mask of the readers that have seen it, the first reader to
+ * see it and the latest. For each reader it keeps a {@link ReaderStatistics}. Readers are
+ * registered before their reads are recorded, up to {@link #MAX_READERS}.
+ * <p>
+ * {@link #clear()} empties the stripes one at a time, so reads recorded during a clear may
+ * survive it.
+ */
+public final class StripedTagStore
+{
+    public static final int MAX_READERS = 64;
+
+    private static final int NO_READER = -1;
+
+    // The attribution of the tags of one stripe, guarded by the stripe's store
+    private static final class Stripe
+    {
+        final TagStore mStore;
+        long[] mReaderMask;
+        byte[] mFirstReader;
+        byte[] mLastReader;
+
+        Stripe(int expectedSize, int maxSize)
+        {
+            mStore = new TagStore(expectedSize, maxSize);
+            int capacity = Math.min(expectedSize, maxSize);
+            mReaderMask = new long[capacity];
+            mFirstReader = new byte[capacity];
+            mLastReader = new byte[capacity];
+        }
+
+        void ensureCapacity(int ordinal)
+        {
+            if( ordinal >= mReaderMask.length ) {
+                int capacity = Math.max(ordinal + 1, mReaderMask.length * 2);
+                mReaderMask = Arrays.copyOf(mReaderMask, capacity);
+                mFirstReader = Arrays.copyOf(mFirstReader, capacity);
+                mLastReader = Arrays.copyOf(mLastReader, capacity);
+            }
+        }
+    }
+
+    private final Stripe[] mStripes;
+    private final int mStripeBits;
+    private final int mStripeMask;
+
+    // Copy on write so recording reads the readers without locking
+    private volatile ReaderStatistics[] mReaders = new ReaderStatistics[0];
+
+    /**
+     * @param stripeCount the number of stripes, rounded up to a power of two
+     * @param expectedSize the number of tags to size the store for initially
+     * @param maxSize the upper limit on the number of tags held, a stripe is full when it holds
+     * its share plus a quarter
+     */
+    public StripedTagStore(int stripeCount, int expectedSize, int maxSize)
+    {
+        if( stripeCount < 1 || stripeCount > 1 << 10 ) {
+            throw new IllegalArgumentException("There must be between 1 and 1024 stripes");
+        }
+        mStripeBits = 32 - Integer.numberOfLeadingZeros(stripeCount - 1);
+        mStripeMask = (1 << mStripeBits) - 1;
+        mStripes = new Stripe[1 << mStripeBits];
+        // Each stripe holds its share, with a margin for an uneven split
+        int stripeExpected = Math.max(16, expectedSize / mStripes.length * 5 / 4);
+        int stripeMax = Math.max(16, (int)Math.min((long)maxSize / mStripes.length * 5 / 4, Integer.MAX_VALUE >> mStripeBits));
+        for( int i = 0; i < mStripes.length; i++ ) {
+            mStripes[i] = new Stripe(stripeExpected, stripeMax);
+        }
+    }
+
+    /**
+     * Add a reader
+     *
+     * @param name the name shown with its statistics
+     * @return the statistics of the reader, its index identifies it to {@link #record}
+     * @throws IllegalStateException if MAX_READERS are registered
+     */
+    public synchronized ReaderStatistics registerReader(String name)
+    {
+        ReaderStatistics[] readers = mReaders;
+        if( readers.length == MAX_READERS ) {
+            throw new IllegalStateException("No more than " + MAX_READERS + " readers can be registered");
+        }
+        ReaderStatistics reader = new ReaderStatistics(readers.length, name);
+        ReaderStatistics[] added = Arrays.copyOf(readers, readers.length + 1);
+        added[readers.length] = reader;
+        mReaders = added;
+        return reader;
+    }
+
+    /**
+     * @return the number of readers registered
+     */
+    public int getReaderCount() { return mReaders.length; }
+
+    /**
+     * @return the statistics of the reader with the given index
+     */
+    public ReaderStatistics getReader(int readerIndex) { return mReaders[readerIndex]; }
+
+    /**
+     * Record a read, from any thread
+     *
+     * @param readerIndex the reader that made the read
+     * @param event the read to record
+     * @return the id of a newly seen tag, -(id + 1) if the tag was already present or
+     * EpcIndex.FULL if the tag is new and its stripe is full
+     */
+    public int record(int readerIndex, TagEvent event)
+    {
+        ReaderStatistics reader = mReaders[readerIndex];
+        int stripeIndex = stripeOf(event.getEpcBuffer(), event.getEpcLength());
+        Stripe stripe = mStripes[stripeIndex];
+        long readerBit = 1L << readerIndex;
+        int result;
+        boolean isNewForReader;
+        synchronized( stripe.mStore ) {
+            result = stripe.mStore.record(event);
+            if( result == EpcIndex.FULL ) {
+                return result;
+            }
+            int ordinal = result >= 0 ? result : -(result + 1);
+            stripe.ensureCapacity(ordinal);
+            if( result >= 0 ) {
+                stripe.mReaderMask[ordinal] = 0;
+                stripe.mFirstReader[ordinal] = (byte)readerIndex;
+            }
+            isNewForReader = (stripe.mReaderMask[ordinal] & readerBit) == 0;
+            stripe.mReaderMask[ordinal] |= readerBit;
+            stripe.mLastReader[ordinal] = (byte)readerIndex;
+            int id = (ordinal << mStripeBits) | stripeIndex;
+            result = result >= 0 ? id : -(id + 1);
+        }
+        reader.recordRead(result >= 0, isNewForReader, event.getReceivedNanos());
+        return result;
+    }
+
+    /**
+     * @return true if the tag with the given EPC has been recorded
+     */
+    public boolean contains(byte[] epc, int length)
+    {
+        return mStripes[stripeOf(epc, length)].mStore.contains(epc, length);
+    }
+
+    /**
+     * @return the number of unique tags
+     */
+    public int size()
+    {
+        int size = 0;
+        for( Stripe stripe : mStripes ) {
+            size += stripe.mStore.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of reads recorded, including repeats
+     */
+    public long getTotalReads()
+    {
+        long reads = 0;
+        for( Stripe stripe : mStripes ) {
+            reads += stripe.mStore.getTotalReads();
+        }
+        return reads;
+    }
+
+    /**
+     * Append the ids of all the tags, stripe by stripe
+     *
+     * @return the number of ids added
+     */
+    public int copyIds(IntList ids)
+    {
+        int count = 0;
+        for( int stripeIndex = 0; stripeIndex < mStripes.length; stripeIndex++ ) {
+            int size = mStripes[stripeIndex].mStore.size();
+            for( int ordinal = 0; ordinal < size; ordinal++ ) {
+                ids.add((ordinal << mStripeBits) | stripeIndex);
+            }
+            count += size;
+        }
+        return count;
+    }
+
+    /**
+     * Copy the tag with the given id
+     */
+    public void copyTo(int id, TagSummary summary)
+    {
+        mStripes[id & mStripeMask].mStore.copyTo(id >>> mStripeBits, summary);
+    }
+
+    /**
+     * @return the readers that have seen the tag, bit n set for the reader with index n
+     */
+    public long getReaderMask(int id)
+    {
+        Stripe stripe = mStripes[id & mStripeMask];
+        synchronized( stripe.mStore ) {
+            return stripe.mReaderMask[id >>> mStripeBits];
+        }
+    }
+
+    /**
+     * @return the index of the first reader to see the tag
+     */
+    public int getFirstReader(int id)
+    {
+        Stripe stripe = mStripes[id & mStripeMask];
+        synchronized( stripe.mStore ) {
+            int ordinal = id >>> mStripeBits;
+            return ordinal < stripe.mStore.size() ? stripe.mFirstReader[ordinal] & 0xff : NO_READER;
+        }
+    }
+
+    /**
+     * @return the index of the latest reader to see the tag
+     */
+    public int getLastReader(int id)
+    {
+        Stripe stripe = mStripes[id & mStripeMask];
+        synchronized( stripe.mStore ) {
+            int ordinal = id >>> mStripeBits;
+            return ordinal < stripe.mStore.size() ? stripe.mLastReader[ordinal] & 0xff : NO_READER;
+        }
+    }
+
+    /**
+     * Remove all tags and reset the readers' statistics, the readers stay registered
+     */
+    public void clear()
+    {
+        for( Stripe stripe : mStripes ) {
+            stripe.mStore.clear();
+        }
+        for( ReaderStatistics reader : mReaders ) {
+            reader.reset();
+        }
+    }
+
+    /**
+     * @return the approximate number of bytes held by the store
+     */
+    public long memoryFootprint()
+    {
+        long bytes = 0;
+        for( Stripe stripe : mStripes ) {
+            synchronized( stripe.mStore ) {
+                bytes += stripe.mStore.memoryFootprint() + stripe.mReaderMask.length * (8L + 1 + 1);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the number of stripes
+     */
+    public int getStripeCount() { return mStripes.length; }
+
+    // The top bits of a hash of the whole EPC, independent of the bits the stripe's index uses
+    private int stripeOf(byte[] epc, int length)
+    {
+        if( mStripeBits == 0 ) {
+            return 0;
+        }
+        long h = length;
+        for( int i = 0; i < length; i++ ) {
+            h = h * 31 + (epc[i] & 0xff);
+        }
+        h *= 0x9E3779B97F4A7C15L;
+        return (int)(h >>> (64 - mStripeBits));
+    }
+}
@@ -0,0 +1,273 @@
+package com.petroit.tsirfidandroidapp.rfid.reconcile;
+
+import com.petroit.tsirfidandroidapp.rfid.tags.HexCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * The EPCs expected by a cycle count, loaded from a manifest
+ * <p>
+ * Each EPC of up to 128 bits is packed into two longs and a length, in manifest order, and an
+ * open addressing table of indexes over them finds an EPC in constant time. That is 17 bytes per
+ * EPC plus at most 16 bytes of table, about 15MB for 500k EPCs, and nothing is allocated per EPC.
+ * <p>
+ * A manifest is text with one EPC per line as hex, optionally quoted and followed by other comma,
+ * semicolon or tab separated fields that are ignored, so a CSV export can be used directly. Lines
+ * that do not start with an EPC, such as a header, are counted as rejected. Repeated EPCs are
+ * only held once. Files are memory mapped and parsed in place, the text is never copied.
+ * <p>
+ * An inventory is immutable once loaded so it may be shared between threads.
+ */
+public final class ExpectedInventory
+{
+    // The longest EPC held, in bytes
+    public static final int MAX_EPC_BYTES = 16;
+
+    private static final int NONE = 0;
+
+    private long[] mHigh;
+    private long[] mLow;
+    private byte[] mLength;
+    private int mSize;
+
+    // Index + 1 of the EPC in each slot, NONE when empty, at most half full
+    private int[] mTable;
+    private int mMask;
+
+    private int mRejectedLines;
+    private int mDuplicates;
+
+    private ExpectedInventory(int capacity)
+    {
+        mHigh = new long[capacity];
+        mLow = new long[capacity];
+        mLength = new byte[capacity];
+    }
+
+    /**
+     * Load a manifest file, memory mapped
+     *
+     * @throws IOException if the file could not be read or is larger than 2GB
+     */
+    public static ExpectedInventory load(File file) throws IOException
+    {
+        try( RandomAccessFile raf = new RandomAccessFile(file, "r") ) {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if( size > Integer.MAX_VALUE ) {
+                throw new IOException("The manifest is too large: " + size + " bytes");
+            }
+            return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Parse a manifest from the buffer's position to its limit
+     */
+    public static ExpectedInventory parse(ByteBuffer manifest)
+    {
+        // A 96 bit EPC and a line break is 25 bytes, a good first guess at the number of lines
+        ExpectedInventory inventory = new ExpectedInventory(Math.max(16, manifest.remaining() / 25));
+        int position = manifest.position();
+        int limit = manifest.limit();
+        while( position < limit ) {
+            position = inventory.parseLine(manifest, position, limit);
+        }
+        inventory.index();
+        return inventory;
+    }
+
+    /**
+     * @return the number of unique EPCs expected
+     */
+    public int size() { return mSize; }
+
+    /**
+     * @return the number of non-blank lines that did not start with an EPC
+     */
+    public int getRejectedLineCount() { return mRejectedLines; }
+
+    /**
+     * @return the number of lines that repeated an earlier EPC
+     */
+    public int getDuplicateCount() { return mDuplicates; }
+
+    /**
+     * @param epc the buffer holding the EPC
+     * @param length the number of EPC bytes
+     * @return the index of the EPC, in manifest order, or -1 if it is not expected
+     */
+    public int indexOf(byte[] epc, int length)
+    {
+        if( length < 1 || length > MAX_EPC_BYTES ) {
+            return -1;
+        }
+        long high = pack(epc, 0, length);
+        long low = pack(epc, 8, length);
+        for( int slot = hash(high, low, length) & mMask; mTable[slot] != NONE; slot = (slot + 1) & mMask ) {
+            int index = mTable[slot] - 1;
+            if( mHigh[index] == high && mLow[index] == low && mLength[index] == length ) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copy the EPC with the given index into dest
+     *
+     * @return the number of bytes copied
+     */
+    public int getEpc(int index, byte[] dest)
+    {
+        int length = mLength[index];
+        for( int i = 0; i < length; i++ ) {
+            long word = i < 8 ? mHigh[index] : mLow[index];
+            dest[i] = (byte)(word >>> (56 - 8 * (i & 7)));
+        }
+        return length;
+    }
+
+    /**
+     * Append the EPC with the given index as hex
+     */
+    public void appendEpc(int index, StringBuilder sb)
+    {
+        int length = mLength[index];
+        for( int i = 0; i < length; i++ ) {
+            long word = i < 8 ? mHigh[index] : mLow[index];
+            HexCodec.append(sb, (byte)(word >>> (56 - 8 * (i & 7))));
+        }
+    }
+
+    /**
+     * @return the approximate number of bytes held by the inventory
+     */
+    public long memoryFootprint()
+    {
+        return (long)mHigh.length * (8 + 8 + 1) + (long)mTable.length * 4;
+    }
+
+    // Add the EPC at the start of the line, returning the position of the next line
+    private int parseLine(ByteBuffer text, int position, int limit)
+    {
+        int end = position;
+        while( end < limit && text.get(end) != '\n' ) {
+            end++;
+        }
+        int next = end + 1;
+
+        while( position < end && isSpace(text.get(position)) ) {
+            position++;
+        }
+        if( position < end && text.get(position) == '"' ) {
+            position++;
+        }
+        int start = position;
+        while( position < end && HexCodec.digit((char)text.get(position)) >= 0 ) {
+            position++;
+        }
+        int digits = position - start;
+        if( digits == 0 && (position == end || text.get(position) == '\r') ) {
+            // A blank line
+            return next;
+        }
+        boolean terminated = position == end || isSeparator(text.get(position));
+        if( !terminated || digits == 0 || (digits & 1) != 0 || digits > 2 * MAX_EPC_BYTES ) {
+            mRejectedLines++;
+            return next;
+        }
+
+        if( mSize == mHigh.length ) {
+            int capacity = mSize * 2;
+            mHigh = Arrays.copyOf(mHigh, capacity);
+            mLow = Arrays.copyOf(mLow, capacity);
+            mLength = Arrays.copyOf(mLength, capacity);
+        }
+        long high = 0;
+        long low = 0;
+        for( int i = 0; i < 2 * MAX_EPC_BYTES; i++ ) {
+            long digit = i < digits ? HexCodec.digit((char)text.get(start + i)) : 0;
+            if( i < 16 ) {
+                high = (high << 4) | digit;
+            } else {
+                low = (low << 4) | digit;
+            }
+        }
+        mHigh[mSize] = high;
+        mLow[mSize] = low;
+        mLength[mSize] = (byte)(digits / 2);
+        mSize++;
+        return next;
+    }
+
+    // Build the table, dropping repeated EPCs and keeping the first of each in manifest order
+    private void index()
+    {
+        int slots = Integer.highestOneBit(Math.max(2, mSize) * 4 - 1);
+        mTable = new int[slots];
+        mMask = slots - 1;
+        int count = mSize;
+        mSize = 0;
+        for( int i = 0; i < count; i++ ) {
+            long high = mHigh[i];
+            long low = mLow[i];
+            byte length = mLength[i];
+            int slot = hash(high, low, length) & mMask;
+            boolean repeated = false;
+            for( ; mTable[slot] != NONE; slot = (slot + 1) & mMask ) {
+                int index = mTable[slot] - 1;
+                if( mHigh[index] == high && mLow[index] == low && mLength[index] == length ) {
+                    repeated = true;
+                    break;
+                }
+            }
+            if( repeated ) {
+                mDuplicates++;
+                continue;
+            }
+            mHigh[mSize] = high;
+            mLow[mSize] = low;
+            mLength[mSize] = length;
+            mTable[slot] = ++mSize;
+        }
+        if( mSize < mHigh.length ) {
+            mHigh = Arrays.copyOf(mHigh, mSize);
+            mLow = Arrays.copyOf(mLow, mSize);
+            mLength = Arrays.copyOf(mLength, mSize);
+        }
+    }
+
+    private static boolean isSpace(byte b)
+    {
+        return b == ' ' || b == '\t';
+    }
+
+    private static boolean isSeparator(byte b)
+    {
+        return b == ',' || b == ';' || b == '\t' || b == ' ' || b == '"' || b == '\r';
+    }
+
+    // Up to eight bytes from offset, big endian and zero padded
+    private static long pack(byte[] epc, int offset, int length)
+    {
+        long value = 0;
+        for( int i = offset; i < offset + 8; i++ ) {
+            value = (value << 8) | (i < length ? epc[i] & 0xff : 0);
+        }
+        return value;
+    }
+
+    private static int hash(long high, long low, int length)
+    {
+        long h = high * 0x9E3779B97F4A7C15L + low * 0xC2B2AE3D27D4EB4FL + length;
+        h ^= h >>> 31;
+        h *= 0xBF58476D1CE4E5B9L;
+        return (int)(h ^ (h >>> 32));
+    }
+}
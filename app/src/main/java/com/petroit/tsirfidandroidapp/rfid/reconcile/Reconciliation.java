@@ -0,0 +1,143 @@
+package com.petroit.tsirfidandroidapp.rfid.reconcile;
+
+import java.util.Arrays;
+
+/**
+ * Live found, missing and unexpected counts of a cycle count against an {@link ExpectedInventory}
+ * <p>
+ * Each read costs one constant time lookup in the inventory and a bit test. Expected EPCs are
+ * marked found in a bitset addressed by their manifest index. Tags that are not expected are
+ * marked in a second bitset addressed by the caller's tag ordinal, e.g. from the
+ * {@link com.petroit.tsirfidandroidapp.rfid.tags.TagStore}, so each is only counted once however
+ * often it is read without keeping another copy of its EPC. As both are idempotent the tags
+ * already read can be replayed while new reads are still being recorded.
+ * <p>
+ * Reads are recorded on the responder thread while the counts are read on the UI thread so
+ * access is synchronized.
+ */
+public final class Reconciliation
+{
+    private final ExpectedInventory mExpected;
+    private final long[] mFound;
+    private long[] mUnexpected = new long[64];
+
+    private int mFoundCount;
+    private int mUnexpectedCount;
+
+    public Reconciliation(ExpectedInventory expected)
+    {
+        mExpected = expected;
+        mFound = new long[(expected.size() + 63) >> 6];
+    }
+
+    public ExpectedInventory getExpectedInventory() { return mExpected; }
+
+    /**
+     * Record a read
+     *
+     * @param epc the buffer holding the EPC
+     * @param length the number of EPC bytes
+     * @param tagOrdinal the caller's number for the tag, the same for every read of it, or -1 if
+     * the tag could not be given one
+     * @return true if the EPC is expected
+     */
+    public synchronized boolean recordRead(byte[] epc, int length, int tagOrdinal)
+    {
+        int index = mExpected.indexOf(epc, length);
+        if( index >= 0 ) {
+            long bit = 1L << index;
+            if( (mFound[index >> 6] & bit) == 0 ) {
+                mFound[index >> 6] |= bit;
+                mFoundCount++;
+            }
+            return true;
+        }
+        if( tagOrdinal >= 0 ) {
+            if( (tagOrdinal >> 6) >= mUnexpected.length ) {
+                mUnexpected = Arrays.copyOf(mUnexpected, Math.max((tagOrdinal >> 6) + 1, mUnexpected.length * 2));
+            }
+            long bit = 1L << tagOrdinal;
+            if( (mUnexpected[tagOrdinal >> 6] & bit) == 0 ) {
+                mUnexpected[tagOrdinal >> 6] |= bit;
+                mUnexpectedCount++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forget the reads, e.g. when the tags are cleared for a new count
+     */
+    public synchronized void reset()
+    {
+        Arrays.fill(mFound, 0);
+        Arrays.fill(mUnexpected, 0);
+        mFoundCount = 0;
+        mUnexpectedCount = 0;
+    }
+
+    public int getExpectedCount() { return mExpected.size(); }
+
+    public synchronized int getFoundCount() { return mFoundCount; }
+
+    public synchronized int getMissingCount() { return mExpected.size() - mFoundCount; }
+
+    public synchronized int getUnexpectedCount() { return mUnexpectedCount; }
+
+    /**
+     * @return true if the expected EPC with the given index has been read
+     */
+    public synchronized boolean isFound(int index)
+    {
+        return (mFound[index >> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Find the expected EPCs not yet read, e.g. to list or export them
+     *
+     * @param fromIndex the index to start searching from
+     * @return the index of the next missing EPC at or after fromIndex or -1 if there are none
+     */
+    public synchronized int nextMissing(int fromIndex)
+    {
+        int size = mExpected.size();
+        if( fromIndex < 0 || fromIndex >= size ) {
+            return -1;
+        }
+        int word = fromIndex >> 6;
+        long missing = ~mFound[word] & (-1L << fromIndex);
+        while( true ) {
+            if( missing != 0 ) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(missing);
+                return index < size ? index : -1;
+            }
+            if( ++word == mFound.length ) {
+                return -1;
+            }
+            missing = ~mFound[word];
+        }
+    }
+
+    /**
+     * @return the approximate number of bytes held, including the expected inventory
+     */
+    public synchronized long memoryFootprint()
+    {
+        return mExpected.memoryFootprint() + mFound.length * 8L + mUnexpected.length * 8L;
+    }
+
+    /**
+     * Append the counts e.g. "Found 120/500 (24.0%)  Missing 380  Unexpected 3"
+     */
+    public synchronized void appendTo(StringBuilder sb)
+    {
+        int expected = mExpected.size();
+        sb.append("Found ").append(mFoundCount).append('/').append(expected);
+        if( expected > 0 ) {
+            long tenths = Math.round(mFoundCount * 1000.0 / expected);
+            sb.append(" (").append(tenths / 10).append('.').append(tenths % 10).append("%)");
+        }
+        sb.append("  Missing ").append(expected - mFoundCount);
+        sb.append("  Unexpected ").append(mUnexpectedCount);
+    }
+}
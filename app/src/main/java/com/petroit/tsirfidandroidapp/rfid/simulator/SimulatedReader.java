@@ -0,0 +1,564 @@
+package com.petroit.tsirfidandroidapp.rfid.simulator;
+
+import com.uk.tsl.rfid.asciiprotocol.device.ConnectionState;
+import com.uk.tsl.rfid.asciiprotocol.device.ConnectionStatus;
+import com.uk.tsl.rfid.asciiprotocol.device.IAsciiTransport;
+import com.uk.tsl.rfid.asciiprotocol.device.TransportType;
+import com.uk.tsl.rfid.asciiprotocol.responders.IAsciiCommandResponder;
+import com.uk.tsl.utils.Observable;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A reader that exists only in software, for load testing without hardware
+ * <p>
+ * Command lines written to the transport are answered with the responses a TSL reader would
+ * give. An inventory (.iv) reports each tag of the {@link SimulatedTagPopulation} that is read
+ * with the EPC, RSSI, PC, CRC and date/time fields that the command asked for (as the reader
+ * does, the parameters persist until reset with -x). FastId appends the TID to the EPC. Reads
+ * are paced to the configured read rate and can come in bursts, as when tags pass a portal, and
+ * barcodes can be scanned periodically or on demand.
+ * <p>
+ * The response lines are published through {@link #linesReceivedEvent()} like any transport and
+ * are also passed straight to the responders added with {@link #addResponder}, so an
+ * InventoryCommand or BarcodeCommand responder can be driven on a plain JVM without an
+ * AsciiCommander. Responses are produced on the simulator's own thread.
+ */
+public final class SimulatedReader implements IAsciiTransport
+{
+    // Matches the reader's response when an inventory finds no transponders
+    static final String NO_TRANSPONDER_ERROR = "005";
+
+    private static final long sIdlePollMs = 50;
+    private static final int sLinesPerDelivery = 64;
+
+    private final SimulatedTagPopulation mPopulation;
+    private final Random mRandom;
+    private final ConnectionStatus mConnectionStatus = new ConnectionStatus();
+    private final Observable<ArrayList<String>> mLinesReceivedEvent = new Observable<>();
+    private final CopyOnWriteArrayList<IAsciiCommandResponder> mResponders = new CopyOnWriteArrayList<>();
+    private final LinkedBlockingQueue<PendingCommand> mCommands = new LinkedBlockingQueue<>();
+    private final LinkedBlockingQueue<String> mTriggeredBarcodes = new LinkedBlockingQueue<>();
+
+    // Configuration
+    private volatile int mReadRate;
+    private volatile double mReadProbability = 1.0;
+    private volatile long mBurstOnMs;
+    private volatile long mBurstOffMs;
+    private volatile long mBarcodeIntervalMs;
+    private volatile boolean mRepeatInventory;
+    private volatile long mLinkLatencyMs;
+    private volatile long mClockOffsetMs;
+
+    // The inventory parameters the reader currently holds
+    private boolean mIncludeRssi;
+    private boolean mIncludePc;
+    private boolean mIncludeChecksum;
+    private boolean mIncludeDateTime;
+    private boolean mFastId;
+    private boolean mSwitchInventoryAction;
+
+    // A command line on its way to the reader
+    private static final class PendingCommand
+    {
+        final String mLine;
+        final long mArrivalNanos;
+
+        PendingCommand(String line, long arrivalNanos)
+        {
+            mLine = line;
+            mArrivalNanos = arrivalNanos;
+        }
+    }
+
+    private volatile Thread mThread;
+    // When an abort reaches the reader, Long.MAX_VALUE when there is none on its way
+    private volatile long mAbortArrivalNanos = Long.MAX_VALUE;
+    // When the held switch is released, 0 when it is not held
+    private long mSwitchReleaseNanos;
+    private long mStartNanos;
+    private long mNextBarcodeNanos;
+    private long mBarcodeNumber;
+    private String mLastInventoryLine;
+    private int[] mRoundOrder;
+    private final ArrayList<String> mPending = new ArrayList<>(sLinesPerDelivery);
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+
+    // Statistics
+    private volatile long mReadCount;
+    private volatile long mRoundCount;
+    private volatile long mBarcodeCount;
+    private volatile long mResponderErrorCount;
+
+    /**
+     * @param population the tags in range
+     * @param seed the random seed for which tags are read and their signal strength
+     */
+    public SimulatedReader(SimulatedTagPopulation population, long seed)
+    {
+        mPopulation = population;
+        mRandom = new Random(seed);
+        mRoundOrder = new int[population.size()];
+        for( int i = 0; i < mRoundOrder.length; i++ ) {
+            mRoundOrder[i] = i;
+        }
+        mConnectionStatus.setValue(ConnectionState.DISCONNECTED);
+    }
+
+    /**
+     * @param readsPerSecond the rate at which tags are reported, 0 to report them as fast as possible
+     */
+    public void setReadRate(int readsPerSecond) { mReadRate = readsPerSecond; }
+
+    /**
+     * @param probability the chance of each tag being read in an inventory round, from 0 to 1
+     */
+    public void setReadProbability(double probability) { mReadProbability = probability; }
+
+    /**
+     * Report tags for onMs then none for offMs, repeatedly - 0 for offMs reports tags all the time
+     */
+    public void setBurst(long onMs, long offMs)
+    {
+        mBurstOnMs = onMs;
+        mBurstOffMs = offMs;
+    }
+
+    /**
+     * @param intervalMs the time between periodic barcode scans, 0 for none
+     */
+    public void setBarcodeInterval(long intervalMs) { mBarcodeIntervalMs = intervalMs; }
+
+    /**
+     * @param repeat true to run the last inventory again each time it ends, as a client scanning
+     * continuously would, until aborted
+     */
+    public void setRepeatInventory(boolean repeat) { mRepeatInventory = repeat; }
+
+    /**
+     * @param latencyMs the time for a command to reach the reader, e.g. a Bluetooth round trip
+     */
+    public void setLinkLatency(long latencyMs) { mLinkLatencyMs = latencyMs; }
+
+    /**
+     * @param offsetMs how far the reader's clock is from the phone's, as when it has not been set
+     */
+    public void setClockOffset(long offsetMs) { mClockOffsetMs = offsetMs; }
+
+    /**
+     * Scan a barcode as if the trigger had been pressed
+     */
+    public void triggerBarcode(String data) { mTriggeredBarcodes.add(data); }
+
+    /**
+     * Pass the responses to the responder, in the order added, until one handles the line
+     */
+    public void addResponder(IAsciiCommandResponder responder) { mResponders.add(responder); }
+
+    public void removeResponder(IAsciiCommandResponder responder) { mResponders.remove(responder); }
+
+    public long getReadCount() { return mReadCount; }
+
+    /**
+     * @return the number of inventory responses completed
+     */
+    public long getRoundCount() { return mRoundCount; }
+
+    public long getBarcodeCount() { return mBarcodeCount; }
+
+    /**
+     * @return the number of exceptions thrown by responders while handling a line
+     */
+    public long getResponderErrorCount() { return mResponderErrorCount; }
+
+    @Override
+    public TransportType type() { return TransportType.NOT_SPECIFIED; }
+
+    @Override
+    public String id() { return "SIMULATED"; }
+
+    @Override
+    public String getDisplayName() { return "Simulated Reader"; }
+
+    @Override
+    public String getDisplayInfoLine()
+    {
+        return String.format(Locale.US, "%d tags at %d reads/s", mPopulation.size(), mReadRate);
+    }
+
+    @Override
+    public synchronized boolean connect()
+    {
+        if( mThread == null ) {
+            mStartNanos = System.nanoTime();
+            mNextBarcodeNanos = mStartNanos;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    runReader();
+                }
+            }, "SimulatedReader");
+            thread.setDaemon(true);
+            mThread = thread;
+            mConnectionStatus.setValue(ConnectionState.CONNECTED);
+            thread.start();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void disconnect()
+    {
+        Thread thread = mThread;
+        if( thread != null ) {
+            mThread = null;
+            thread.interrupt();
+            try {
+                thread.join(1000);
+            } catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            mCommands.clear();
+            mConnectionStatus.setValue(ConnectionState.DISCONNECTED);
+        }
+    }
+
+    @Override
+    public ConnectionStatus connectionStatus() { return mConnectionStatus; }
+
+    @Override
+    public Observable<ArrayList<String>> linesReceivedEvent() { return mLinesReceivedEvent; }
+
+    @Override
+    public void writeLine(String line)
+    {
+        long arrival = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mLinkLatencyMs);
+        if( line.startsWith(".ab") ) {
+            // Stops the current inventory as soon as it arrives, like the reader's abort
+            mAbortArrivalNanos = Math.min(mAbortArrivalNanos, arrival);
+        }
+        mCommands.add(new PendingCommand(line, arrival));
+    }
+
+    // The simulator thread
+    private void runReader()
+    {
+        Thread self = Thread.currentThread();
+        while( mThread == self ) {
+            try {
+                long now = System.nanoTime();
+                PendingCommand next = mCommands.peek();
+                if( next != null && next.mArrivalNanos - now <= 0 ) {
+                    execute(mCommands.poll().mLine);
+                } else if( isSwitchHeld(now) ) {
+                    // The reader starts each inventory itself
+                    runInventory(".iv");
+                } else if( mRepeatInventory && mLastInventoryLine != null ) {
+                    runInventory(mLastInventoryLine);
+                } else {
+                    // Nothing to do until the next command arrives
+                    long wait = TimeUnit.MILLISECONDS.toNanos(sIdlePollMs);
+                    if( next != null ) {
+                        wait = Math.min(wait, next.mArrivalNanos - now);
+                    }
+                    LockSupport.parkNanos(wait);
+                    if( Thread.interrupted() ) {
+                        break;
+                    }
+                }
+                scanDueBarcodes();
+            } catch( InterruptedException e ) {
+                break;
+            }
+        }
+    }
+
+    private void execute(String commandLine) throws InterruptedException
+    {
+        String name = commandLine.split(" |-", 2)[0];
+        if( ".iv".equals(name) ) {
+            if( applyInventoryOptions(commandLine) ) {
+                // Take no action - only the parameters are changed
+                respondOk(commandLine);
+            } else {
+                mLastInventoryLine = commandLine;
+                runInventory(commandLine);
+            }
+        } else if( ".ab".equals(name) ) {
+            mAbortArrivalNanos = Long.MAX_VALUE;
+            mSwitchReleaseNanos = 0;
+            mRepeatInventory = false;
+            respondOk(commandLine);
+        } else if( ".sa".equals(name) ) {
+            applySwitchActionOptions(commandLine);
+            respondOk(commandLine);
+        } else if( ".ps".equals(name) ) {
+            respondOk(commandLine);
+            if( mSwitchInventoryAction ) {
+                long duration = 0;
+                for( String option : commandLine.split("-") ) {
+                    if( option.startsWith("t") ) {
+                        duration = Long.parseLong(option.substring(1).trim());
+                    }
+                }
+                // A duration of 0 holds the switch until aborted
+                mSwitchReleaseNanos = duration == 0 ? Long.MAX_VALUE : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(duration);
+            }
+        } else if( ".bc".equals(name) ) {
+            emit("CS: " + commandLine);
+            emitBarcode(nextBarcode());
+            emit("OK:");
+            deliver();
+        } else {
+            // Abort, alert, factory defaults etc. have no response data
+            respondOk(commandLine);
+        }
+    }
+
+    // Update the held parameters, returns true for take no action
+    private boolean applyInventoryOptions(String commandLine)
+    {
+        String[] options = commandLine.split("-");
+        boolean takeNoAction = false;
+        for( int i = 1; i < options.length; i++ ) {
+            String option = options[i].trim();
+            if( option.equals("x") ) {
+                mIncludeRssi = mIncludePc = mIncludeChecksum = mIncludeDateTime = mFastId = false;
+            } else if( option.equals("n") ) {
+                takeNoAction = true;
+            } else if( option.startsWith("r") ) {
+                mIncludeRssi = isOn(option, mIncludeRssi);
+            } else if( option.startsWith("e") ) {
+                mIncludePc = isOn(option, mIncludePc);
+            } else if( option.startsWith("c") ) {
+                mIncludeChecksum = isOn(option, mIncludeChecksum);
+            } else if( option.startsWith("dt") ) {
+                mIncludeDateTime = isOn(option, mIncludeDateTime);
+            } else if( option.startsWith("fi") ) {
+                mFastId = isOn(option, mFastId);
+            }
+        }
+        return takeNoAction;
+    }
+
+    // Only the single press inventory action is simulated
+    private void applySwitchActionOptions(String commandLine)
+    {
+        String[] options = commandLine.split("-");
+        for( int i = 1; i < options.length; i++ ) {
+            String option = options[i].trim();
+            if( option.equals("x") ) {
+                mSwitchInventoryAction = false;
+            } else if( option.startsWith("s") ) {
+                mSwitchInventoryAction = option.equals("sinv");
+            }
+        }
+    }
+
+    private boolean isSwitchHeld(long now)
+    {
+        if( mSwitchReleaseNanos != 0 && mSwitchReleaseNanos != Long.MAX_VALUE && now - mSwitchReleaseNanos >= 0 ) {
+            mSwitchReleaseNanos = 0;
+        }
+        return mSwitchReleaseNanos != 0;
+    }
+
+    private boolean isAborted()
+    {
+        return System.nanoTime() - mAbortArrivalNanos >= 0;
+    }
+
+    private static boolean isOn(String option, boolean current)
+    {
+        if( option.endsWith("off") ) {
+            return false;
+        }
+        return option.endsWith("on") || current;
+    }
+
+    private void runInventory(String commandLine) throws InterruptedException
+    {
+        emit("CS: " + commandLine);
+        long roundStart = System.nanoTime();
+        int reads = 0;
+        if( isInBurst(roundStart) ) {
+            if( mIncludeDateTime ) {
+                emit("DT: " + mDateFormat.format(new Date(System.currentTimeMillis() + mClockOffsetMs)));
+            }
+            shuffleRoundOrder();
+            double probability = mReadProbability;
+            int readRate = mReadRate;
+            for( int i = 0; i < mRoundOrder.length && !isAborted(); i++ ) {
+                if( probability < 1.0 && mRandom.nextDouble() >= probability ) {
+                    continue;
+                }
+                emitTag(mRoundOrder[i]);
+                reads++;
+                if( readRate > 0 ) {
+                    pace(roundStart, reads, readRate);
+                }
+            }
+        }
+        if( reads == 0 ) {
+            emit("ME: No Transponder found");
+            emit("ER: " + NO_TRANSPONDER_ERROR);
+        } else {
+            emit("OK:");
+        }
+        // Counted before the responders see the end of the response
+        mRoundCount++;
+        deliver();
+    }
+
+    private void emitTag(int tag)
+    {
+        String epc = mPopulation.getEpc(tag);
+        emit("EP: " + (mFastId ? epc + mPopulation.getTid(tag) : epc));
+        if( mIncludeRssi ) {
+            emit("RI: " + (mPopulation.getRssi(tag) + mRandom.nextInt(7) - 3));
+        }
+        if( mIncludePc ) {
+            // Length of a 96 bit EPC, no user memory or extended PC
+            emit("PC: 3000");
+        }
+        if( mIncludeChecksum ) {
+            emit(String.format(Locale.US, "CR: %04X", mRandom.nextInt(0x10000)));
+        }
+        mReadCount++;
+        if( mPending.size() >= sLinesPerDelivery ) {
+            deliver();
+        }
+    }
+
+    // Wait until the given number of reads is due at the read rate
+    private void pace(long roundStart, int reads, int readRate) throws InterruptedException
+    {
+        long due = roundStart + reads * 1000000000L / readRate;
+        long wait = due - System.nanoTime();
+        if( wait > TimeUnit.MILLISECONDS.toNanos(1) ) {
+            // Hand over what has been read before waiting, as the serial link would
+            deliver();
+            LockSupport.parkNanos(wait);
+            if( Thread.interrupted() ) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private boolean isInBurst(long now)
+    {
+        long on = mBurstOnMs;
+        long off = mBurstOffMs;
+        if( off <= 0 || on <= 0 ) {
+            return true;
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(now - mStartNanos);
+        return elapsedMs % (on + off) < on;
+    }
+
+    private void shuffleRoundOrder()
+    {
+        int[] order = mRoundOrder;
+        for( int i = order.length - 1; i > 0; i-- ) {
+            int j = mRandom.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    private void scanDueBarcodes()
+    {
+        String triggered;
+        while( (triggered = mTriggeredBarcodes.poll()) != null ) {
+            emitBarcodeResponse(triggered);
+        }
+        long interval = mBarcodeIntervalMs;
+        long now = System.nanoTime();
+        if( interval > 0 && now - mNextBarcodeNanos >= 0 ) {
+            mNextBarcodeNanos = now + TimeUnit.MILLISECONDS.toNanos(interval);
+            emitBarcodeResponse(nextBarcode());
+        }
+    }
+
+    // A barcode scanned with the trigger is reported as a response of its own
+    private void emitBarcodeResponse(String data)
+    {
+        emit("CS: .bc");
+        emitBarcode(data);
+        emit("OK:");
+        deliver();
+    }
+
+    private void emitBarcode(String data)
+    {
+        emit("BC: " + data);
+        mBarcodeCount++;
+    }
+
+    // An EAN-13 with a valid check digit
+    private String nextBarcode()
+    {
+        String digits = String.format(Locale.US, "500%09d", mBarcodeNumber++ % 1000000000L);
+        int sum = 0;
+        for( int i = 0; i < 12; i++ ) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    private void respondOk(String commandLine)
+    {
+        emit("CS: " + commandLine);
+        emit("OK:");
+        deliver();
+    }
+
+    private void emit(String line)
+    {
+        mPending.add(line);
+    }
+
+    // Publish the pending lines to the observers and the responders
+    private void deliver()
+    {
+        if( mPending.isEmpty() ) {
+            return;
+        }
+        ArrayList<String> lines = new ArrayList<>(mPending);
+        mPending.clear();
+
+        if( mLinesReceivedEvent.countObservers() > 0 ) {
+            mLinesReceivedEvent.setChanged();
+            mLinesReceivedEvent.notifyObservers(lines);
+        }
+        passToResponders(lines);
+    }
+
+    private void passToResponders(List<String> lines)
+    {
+        for( int i = 0; i < lines.size(); i++ ) {
+            String line = lines.get(i);
+            boolean moreAvailable = i < lines.size() - 1;
+            for( IAsciiCommandResponder responder : mResponders ) {
+                try {
+                    if( responder.processReceivedLine(line, moreAvailable) ) {
+                        break;
+                    }
+                } catch( Exception e ) {
+                    mResponderErrorCount++;
+                }
+            }
+        }
+    }
+}
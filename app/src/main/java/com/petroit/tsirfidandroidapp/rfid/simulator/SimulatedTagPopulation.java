@@ -0,0 +1,76 @@
+package com.petroit.tsirfidandroidapp.rfid.simulator;
+
+import java.math.BigInteger;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * The tags in range of a {@link SimulatedReader}
+ * <p>
+ * Each tag has a valid SGTIN-96 EPC (one company, a handful of item references and the tag
+ * number as the serial), a 96 bit TID and a typical signal strength. The same seed always
+ * produces the same population.
+ */
+public final class SimulatedTagPopulation
+{
+    // SGTIN-96 header, filter 1 (point of sale item) and partition 5 (7 digit company prefix)
+    private static final int sSgtin96Header = 0x30;
+    private static final int sFilter = 1;
+    private static final int sPartition = 5;
+    private static final long sCompanyPrefix = 614141L;
+    private static final int sItemReferenceCount = 16;
+
+    private final String[] mEpcs;
+    private final String[] mTids;
+    private final int[] mRssi;
+
+    /**
+     * @param size the number of tags
+     * @param seed the random seed for the TIDs and signal strengths
+     */
+    public SimulatedTagPopulation(int size, long seed)
+    {
+        if( size < 0 ) {
+            throw new IllegalArgumentException("The population size must not be negative");
+        }
+        Random random = new Random(seed);
+        mEpcs = new String[size];
+        mTids = new String[size];
+        mRssi = new int[size];
+        for( int tag = 0; tag < size; tag++ ) {
+            mEpcs[tag] = sgtin96(tag % sItemReferenceCount + 100001, tag);
+            // Impinj style TID, manufacturer and model then a unique serial
+            mTids[tag] = String.format(Locale.US, "E2801105%08X%08X", random.nextInt(), tag);
+            mRssi[tag] = -40 - random.nextInt(35);
+        }
+    }
+
+    public int size() { return mEpcs.length; }
+
+    /**
+     * @return the EPC of the tag as hex
+     */
+    public String getEpc(int tag) { return mEpcs[tag]; }
+
+    /**
+     * @return the TID of the tag as hex
+     */
+    public String getTid(int tag) { return mTids[tag]; }
+
+    /**
+     * @return the typical RSSI of the tag in dBm
+     */
+    public int getRssi(int tag) { return mRssi[tag]; }
+
+    private static String sgtin96(long itemReference, long serial)
+    {
+        BigInteger value = BigInteger.valueOf(sSgtin96Header);
+        value = value.shiftLeft(3).or(BigInteger.valueOf(sFilter));
+        value = value.shiftLeft(3).or(BigInteger.valueOf(sPartition));
+        value = value.shiftLeft(24).or(BigInteger.valueOf(sCompanyPrefix));
+        value = value.shiftLeft(20).or(BigInteger.valueOf(itemReference));
+        value = value.shiftLeft(38).or(BigInteger.valueOf(serial));
+        String hex = value.toString(16).toUpperCase(Locale.US);
+        return "000000000000000000000000".substring(hex.length()) + hex;
+    }
+}
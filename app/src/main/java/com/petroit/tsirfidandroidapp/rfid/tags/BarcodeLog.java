@@ -0,0 +1,101 @@
+package com.petroit.tsirfidandroidapp.rfid.tags;
+
+import java.util.Arrays;
+
+/**
+ * The barcodes scanned during a session, in the order scanned
+ * <p>
+ * Barcodes are recorded on the responder thread and read by the UI or an exporter so access is
+ * synchronized. When the log reaches its maximum size further scans are counted but not kept.
+ */
+public final class BarcodeLog
+{
+    private final int mMaxSize;
+    private String[] mData;
+    private long[] mTimestamps;
+    private int mSize;
+    private long mDroppedCount;
+
+    // Incremented by clear() so a reader can tell the log was emptied under it
+    private int mGeneration;
+
+    /**
+     * @param expectedSize the number of barcodes to size the log for initially
+     * @param maxSize the upper limit on the number of barcodes held
+     */
+    public BarcodeLog(int expectedSize, int maxSize)
+    {
+        mMaxSize = maxSize;
+        mData = new String[Math.max(1, Math.min(expectedSize, maxSize))];
+        mTimestamps = new long[mData.length];
+    }
+
+    /**
+     * @param data the barcode
+     * @param timestamp the time of the scan in ms since the epoch
+     * @return the index of the barcode in the log or -1 if the log is full
+     */
+    public synchronized int record(String data, long timestamp)
+    {
+        if( mSize >= mMaxSize ) {
+            mDroppedCount++;
+            return -1;
+        }
+        if( mSize == mData.length ) {
+            int capacity = (int)Math.min(mMaxSize, mData.length * 2L);
+            mData = Arrays.copyOf(mData, capacity);
+            mTimestamps = Arrays.copyOf(mTimestamps, capacity);
+        }
+        mData[mSize] = data;
+        mTimestamps[mSize] = timestamp;
+        return mSize++;
+    }
+
+    public synchronized int size() { return mSize; }
+
+    /**
+     * @return the number of scans not kept because the log was full
+     */
+    public synchronized long getDroppedCount() { return mDroppedCount; }
+
+    public synchronized String getData(int index) { return mData[index]; }
+
+    public synchronized long getTimestamp(int index) { return mTimestamps[index]; }
+
+    public synchronized void clear()
+    {
+        Arrays.fill(mData, 0, mSize, null);
+        mSize = 0;
+        mDroppedCount = 0;
+        mGeneration++;
+    }
+
+    /**
+     * @return a number that changes each time the log is cleared
+     */
+    public synchronized int getGeneration() { return mGeneration; }
+
+    /**
+     * Copy a run of barcodes in one go
+     *
+     * @param fromIndex the index of the first barcode to copy
+     * @param data receives the barcodes
+     * @param timestamps receives the scan times, at least as long as data
+     * @param generation the generation the caller started with, see {@link #getGeneration()}
+     * @return the number copied, 0 at the end of the log or -1 if the log has been cleared since
+     * the caller started
+     */
+    public synchronized int copyTo(int fromIndex, String[] data, long[] timestamps, int generation)
+    {
+        if( generation != mGeneration ) {
+            return -1;
+        }
+        int count = Math.max(0, Math.min(data.length, mSize - fromIndex));
+        if( count == 0 ) {
+            return 0;
+        }
+        System.arraycopy(mData, fromIndex, data, 0, count);
+        System.arraycopy(mTimestamps, fromIndex, timestamps, 0, count);
+        return count;
+    }
+}
@@ -0,0 +1,169 @@
+package com.petroit.tsirfidandroidapp.rfid.tags;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A Bloom filter of EPCs, used by the {@link TagStore} in front of its exact index
+ * <p>
+ * The filter is sized for an expected population and false positive rate and never has false
+ * negatives, so an EPC it has not seen is certainly a new tag and the index can insert it
+ * without comparing keys. An EPC it may have seen still has to be checked by the index since a
+ * false positive would otherwise lose a new tag from the stocktake. The k bit positions come
+ * from one 64 bit hash of the EPC by double hashing, so a test is one pass over the EPC and k
+ * bit probes with no allocation.
+ * <p>
+ * The false positive rate is reported both as estimated from the fill and as observed, i.e. the
+ * new tags the filter could not rule out. Once more tags than expected have been added the rate
+ * climbs above the target.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class EpcBloomFilter
+{
+    private final long[] mWords;
+    private final long mBitCount;
+    private final int mHashCount;
+    private final int mExpectedPopulation;
+    private final double mTargetFalsePositiveRate;
+
+    private int mAdded;
+    // New tags the filter ruled out and those it could not
+    private long mTrueNegatives;
+    private long mFalsePositives;
+
+    /**
+     * @param expectedPopulation the number of tags expected
+     * @param falsePositiveRate the target rate at the expected population e.g. 0.01
+     */
+    public EpcBloomFilter(int expectedPopulation, double falsePositiveRate)
+    {
+        if( expectedPopulation < 1 ) {
+            throw new IllegalArgumentException("The expected population must be positive");
+        }
+        if( !(falsePositiveRate > 0 && falsePositiveRate < 1) ) {
+            throw new IllegalArgumentException("The false positive rate must be between 0 and 1");
+        }
+        // m = -n ln(p) / ln(2)^2 rounded up to whole words, k = m/n ln(2)
+        double bits = -expectedPopulation * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        // At most 2^32 bits so a position is a 32 bit hash scaled by a multiply rather than a divide
+        int words = (int)Math.min(1 << 26, Math.max(1, (long)Math.ceil(bits / 64)));
+        mWords = new long[words];
+        mBitCount = 64L * words;
+        mHashCount = (int)Math.max(1, Math.min(16, Math.round((double)mBitCount / expectedPopulation * Math.log(2))));
+        mExpectedPopulation = expectedPopulation;
+        mTargetFalsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * @return false if the EPC has certainly not been added
+     */
+    public boolean mightContain(byte[] epc, int length)
+    {
+        long hash = hash(epc, length);
+        int h1 = (int)hash;
+        int h2 = (int)(hash >>> 32);
+        for( int i = 0; i < mHashCount; i++ ) {
+            long bit = (((h1 + i * h2) & 0xffffffffL) * mBitCount) >>> 32;
+            if( (mWords[(int)(bit >>> 6)] & (1L << bit)) == 0 ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void add(byte[] epc, int length)
+    {
+        long hash = hash(epc, length);
+        int h1 = (int)hash;
+        int h2 = (int)(hash >>> 32);
+        for( int i = 0; i < mHashCount; i++ ) {
+            long bit = (((h1 + i * h2) & 0xffffffffL) * mBitCount) >>> 32;
+            mWords[(int)(bit >>> 6)] |= 1L << bit;
+        }
+        mAdded++;
+    }
+
+    /**
+     * Record the outcome of a test whose EPC turned out to be new
+     *
+     * @param ruledOut true if the filter ruled the EPC out, false for a false positive
+     */
+    void recordNewTag(boolean ruledOut)
+    {
+        if( ruledOut ) {
+            mTrueNegatives++;
+        } else {
+            mFalsePositives++;
+        }
+    }
+
+    public void clear()
+    {
+        Arrays.fill(mWords, 0);
+        mAdded = 0;
+        mTrueNegatives = 0;
+        mFalsePositives = 0;
+    }
+
+    public int getExpectedPopulation() { return mExpectedPopulation; }
+
+    public int getHashCount() { return mHashCount; }
+
+    /**
+     * @return the number of EPCs added since the last clear
+     */
+    public int getAddedCount() { return mAdded; }
+
+    public long getMemoryBytes() { return mWords.length * 8L; }
+
+    /**
+     * @return the false positive rate expected at the current fill, (1 - e^(-kn/m))^k
+     */
+    public double getEstimatedFalsePositiveRate()
+    {
+        return Math.pow(1 - Math.exp(-(double)mHashCount * mAdded / mBitCount), mHashCount);
+    }
+
+    /**
+     * @return the fraction of new tags the filter could not rule out, NaN before any new tags
+     */
+    public double getObservedFalsePositiveRate()
+    {
+        long tested = mTrueNegatives + mFalsePositives;
+        return tested == 0 ? Double.NaN : (double)mFalsePositives / tested;
+    }
+
+    /**
+     * Append the size and false positive rates e.g. "bloom 117 KB k7 fp 0.95% (est 1.00%, target 1.00%)"
+     */
+    public void appendTo(StringBuilder sb)
+    {
+        sb.append(String.format(Locale.US, "bloom %d KB k%d fp %.2f%% (est %.2f%%, target %.2f%%)",
+                getMemoryBytes() / 1024, mHashCount, 100 * getObservedFalsePositiveRate(),
+                100 * getEstimatedFalsePositiveRate(), 100 * mTargetFalsePositiveRate));
+    }
+
+    // 64 bit hash of the EPC bytes, eight at a time with a final avalanche
+    private static long hash(byte[] epc, int length)
+    {
+        long h = 0x9E3779B97F4A7C15L ^ length;
+        int i = 0;
+        for( ; i + 8 <= length; i += 8 ) {
+            long word = 0;
+            for( int j = i; j < i + 8; j++ ) {
+                word = (word << 8) | (epc[j] & 0xff);
+            }
+            h = (h ^ word) * 0xC2B2AE3D27D4EB4FL;
+            h ^= h >>> 29;
+        }
+        long word = 0;
+        for( ; i < length; i++ ) {
+            word = (word << 8) | (epc[i] & 0xff);
+        }
+        h = (h ^ word) * 0xC2B2AE3D27D4EB4FL;
+        h ^= h >>> 32;
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 29);
+    }
+}
@@ -0,0 +1,387 @@
+package com.petroit.tsirfidandroidapp.rfid.tags;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing index of unique EPCs
+ * <p>
+ * EPCs of up to 128 bits (the common 96 and 128 bit encodings) are packed into two longs per slot,
+ * longer EPCs keep their remaining bytes in a shared overflow area. Each unique EPC is given a dense
+ * ordinal, in the order first seen, which is used to address the primitive per-tag statistics and
+ * any other per-tag arrays kept by the caller.
+ * <p>
+ * {@link #clear()} is O(1): slots are stamped with a generation number and clearing simply starts
+ * a new generation. The arrays are kept so a cleared index is refilled without allocation.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class EpcIndex
+{
+    // Returned by add() when the index already holds maxSize tags
+    public static final int FULL = Integer.MIN_VALUE;
+
+    // The number of EPC bytes held in the packed longs
+    private static final int PACKED_BYTES = 16;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    // Grow when the table is more than 3/4 full
+    private static final int LOAD_FACTOR_PERCENT = 75;
+
+    private final int mMaxSize;
+
+    // Slot arrays
+    private long[] mHigh;
+    private long[] mLow;
+    private int[] mSlotGeneration;
+    private int[] mSlotOrdinal;
+    private int mMask;
+    private int mGeneration;
+
+    // Ordinal arrays
+    private int[] mOrdinalSlot;
+    private byte[] mLength;
+    private int[] mOverflowOffset;
+    private int[] mReadCount;
+    private long[] mFirstSeen;
+    private long[] mLastSeen;
+    private int mSize;
+
+    // Storage for bytes beyond PACKED_BYTES
+    private byte[] mOverflow;
+    private int mOverflowSize;
+
+    /**
+     * Create an index that may hold up to 2^24 EPCs
+     */
+    public EpcIndex()
+    {
+        this(DEFAULT_CAPACITY, 1 << 24);
+    }
+
+    /**
+     * @param expectedSize the number of EPCs to size the index for initially
+     * @param maxSize the upper limit on the number of EPCs the index will hold
+     */
+    public EpcIndex(int expectedSize, int maxSize)
+    {
+        if( expectedSize < 1 || maxSize < 1 ) {
+            throw new IllegalArgumentException("Sizes must be positive");
+        }
+        mMaxSize = maxSize;
+        int ordinalCapacity = Math.min(expectedSize, maxSize);
+        allocateSlots(slotCapacityFor(ordinalCapacity));
+        allocateOrdinals(ordinalCapacity);
+        mOverflow = new byte[0];
+        mGeneration = 1;
+    }
+
+    /**
+     * @return the number of unique EPCs held
+     */
+    public int size() { return mSize; }
+
+    /**
+     * @return the upper limit on the number of EPCs held
+     */
+    public int maxSize() { return mMaxSize; }
+
+    /**
+     * Remove all EPCs in constant time
+     */
+    public void clear()
+    {
+        mSize = 0;
+        mOverflowSize = 0;
+        if( ++mGeneration == Integer.MAX_VALUE ) {
+            // Very rare - the stamps must be reset before the generation can wrap
+            Arrays.fill(mSlotGeneration, 0);
+            mGeneration = 1;
+        }
+    }
+
+    /**
+     * @param epc the buffer holding the EPC
+     * @param length the number of EPC bytes
+     * @return the ordinal of the EPC or -1 if it is not in the index
+     */
+    public int find(byte[] epc, int length)
+    {
+        long high = pack(epc, 0, length);
+        long low = pack(epc, 8, length);
+        int slot = hash(high, low, length, tailHash(epc, PACKED_BYTES, length - PACKED_BYTES)) & mMask;
+        while( mSlotGeneration[slot] == mGeneration ) {
+            int ordinal = mSlotOrdinal[slot];
+            if( mHigh[slot] == high && mLow[slot] == low && matches(ordinal, epc, length) ) {
+                return ordinal;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the EPC is in the index
+     */
+    public boolean contains(byte[] epc, int length)
+    {
+        return find(epc, length) >= 0;
+    }
+
+    /**
+     * Record a read of the given EPC, adding it when it has not been seen before
+     *
+     * @param epc the buffer holding the EPC
+     * @param length the number of EPC bytes
+     * @param timestamp the time of the read
+     * @return the ordinal of a newly added EPC, -(ordinal + 1) if the EPC was already present
+     * or FULL if it is new but the index is at its maximum size
+     */
+    public int add(byte[] epc, int length, long timestamp)
+    {
+        long high = pack(epc, 0, length);
+        long low = pack(epc, 8, length);
+        int slot = hash(high, low, length, tailHash(epc, PACKED_BYTES, length - PACKED_BYTES)) & mMask;
+        while( mSlotGeneration[slot] == mGeneration ) {
+            int ordinal = mSlotOrdinal[slot];
+            if( mHigh[slot] == high && mLow[slot] == low && matches(ordinal, epc, length) ) {
+                mReadCount[ordinal]++;
+                mLastSeen[ordinal] = timestamp;
+                return -(ordinal + 1);
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return insert(slot, high, low, epc, length, timestamp);
+    }
+
+    /**
+     * Add an EPC the caller knows is not in the index, e.g. ruled out by a Bloom filter, so the
+     * probe only looks for a free slot without comparing keys
+     *
+     * @return the ordinal of the EPC or FULL if the index is at its maximum size
+     */
+    public int addAbsent(byte[] epc, int length, long timestamp)
+    {
+        long high = pack(epc, 0, length);
+        long low = pack(epc, 8, length);
+        int slot = hash(high, low, length, tailHash(epc, PACKED_BYTES, length - PACKED_BYTES)) & mMask;
+        while( mSlotGeneration[slot] == mGeneration ) {
+            slot = (slot + 1) & mMask;
+        }
+        return insert(slot, high, low, epc, length, timestamp);
+    }
+
+    //
+    // Per-tag statistics, addressed by ordinal
+    //
+
+    public int getReadCount(int ordinal) { return mReadCount[ordinal]; }
+
+    public long getFirstSeen(int ordinal) { return mFirstSeen[ordinal]; }
+
+    public long getLastSeen(int ordinal) { return mLastSeen[ordinal]; }
+
+    /**
+     * @return the number of bytes in the EPC with the given ordinal
+     */
+    public int getEpcLength(int ordinal) { return mLength[ordinal] & 0xff; }
+
+    /**
+     * Copy the EPC with the given ordinal into dest
+     *
+     * @return the number of bytes copied
+     */
+    public int getEpc(int ordinal, byte[] dest)
+    {
+        int length = getEpcLength(ordinal);
+        int slot = mOrdinalSlot[ordinal];
+        for( int i = 0; i < Math.min(length, PACKED_BYTES); i++ ) {
+            long word = i < 8 ? mHigh[slot] : mLow[slot];
+            dest[i] = (byte)(word >>> (56 - 8 * (i & 7)));
+        }
+        if( length > PACKED_BYTES ) {
+            System.arraycopy(mOverflow, mOverflowOffset[ordinal], dest, PACKED_BYTES, length - PACKED_BYTES);
+        }
+        return length;
+    }
+
+    /**
+     * Append the EPC with the given ordinal as hex
+     */
+    public void appendEpc(int ordinal, StringBuilder sb)
+    {
+        int length = getEpcLength(ordinal);
+        int slot = mOrdinalSlot[ordinal];
+        for( int i = 0; i < Math.min(length, PACKED_BYTES); i++ ) {
+            long word = i < 8 ? mHigh[slot] : mLow[slot];
+            HexCodec.append(sb, (byte)(word >>> (56 - 8 * (i & 7))));
+        }
+        if( length > PACKED_BYTES ) {
+            HexCodec.append(sb, mOverflow, mOverflowOffset[ordinal], length - PACKED_BYTES);
+        }
+    }
+
+    /**
+     * @return the approximate number of bytes held by the index arrays
+     */
+    public long memoryFootprint()
+    {
+        long slots = (long)(mMask + 1) * (8 + 8 + 4 + 4);
+        long ordinals = (long)mOrdinalSlot.length * (4 + 1 + 4 + 4 + 8 + 8);
+        return slots + ordinals + mOverflow.length;
+    }
+
+    //
+    // Implementation
+    //
+
+    // Fill the free slot found by a probe
+    private int insert(int slot, long high, long low, byte[] epc, int length, long timestamp)
+    {
+        if( mSize >= mMaxSize ) {
+            return FULL;
+        }
+
+        int ordinal = mSize++;
+        if( ordinal == mOrdinalSlot.length ) {
+            growOrdinals();
+        }
+        mSlotGeneration[slot] = mGeneration;
+        mSlotOrdinal[slot] = ordinal;
+        mHigh[slot] = high;
+        mLow[slot] = low;
+
+        mOrdinalSlot[ordinal] = slot;
+        mLength[ordinal] = (byte)length;
+        mOverflowOffset[ordinal] = length > PACKED_BYTES ? storeOverflow(epc, length) : 0;
+        mReadCount[ordinal] = 1;
+        mFirstSeen[ordinal] = timestamp;
+        mLastSeen[ordinal] = timestamp;
+
+        if( (long)mSize * 100 > (long)(mMask + 1) * LOAD_FACTOR_PERCENT ) {
+            rehash((mMask + 1) * 2);
+        }
+        return ordinal;
+    }
+
+    private static int slotCapacityFor(int size)
+    {
+        long needed = (long)size * 100 / LOAD_FACTOR_PERCENT + 1;
+        int capacity = 16;
+        while( capacity < needed && capacity < (1 << 30) ) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocateSlots(int capacity)
+    {
+        mHigh = new long[capacity];
+        mLow = new long[capacity];
+        mSlotGeneration = new int[capacity];
+        mSlotOrdinal = new int[capacity];
+        mMask = capacity - 1;
+    }
+
+    private void allocateOrdinals(int capacity)
+    {
+        mOrdinalSlot = new int[capacity];
+        mLength = new byte[capacity];
+        mOverflowOffset = new int[capacity];
+        mReadCount = new int[capacity];
+        mFirstSeen = new long[capacity];
+        mLastSeen = new long[capacity];
+    }
+
+    private void growOrdinals()
+    {
+        int capacity = (int)Math.min((long)mOrdinalSlot.length * 2, mMaxSize);
+        mOrdinalSlot = Arrays.copyOf(mOrdinalSlot, capacity);
+        mLength = Arrays.copyOf(mLength, capacity);
+        mOverflowOffset = Arrays.copyOf(mOverflowOffset, capacity);
+        mReadCount = Arrays.copyOf(mReadCount, capacity);
+        mFirstSeen = Arrays.copyOf(mFirstSeen, capacity);
+        mLastSeen = Arrays.copyOf(mLastSeen, capacity);
+    }
+
+    private void rehash(int capacity)
+    {
+        long[] oldHigh = mHigh;
+        long[] oldLow = mLow;
+        allocateSlots(capacity);
+        for( int ordinal = 0; ordinal < mSize; ordinal++ ) {
+            int oldSlot = mOrdinalSlot[ordinal];
+            long high = oldHigh[oldSlot];
+            long low = oldLow[oldSlot];
+            int length = getEpcLength(ordinal);
+            int slot = hash(high, low, length, tailHash(mOverflow, mOverflowOffset[ordinal], length - PACKED_BYTES)) & mMask;
+            while( mSlotGeneration[slot] == mGeneration ) {
+                slot = (slot + 1) & mMask;
+            }
+            mSlotGeneration[slot] = mGeneration;
+            mSlotOrdinal[slot] = ordinal;
+            mHigh[slot] = high;
+            mLow[slot] = low;
+            mOrdinalSlot[ordinal] = slot;
+        }
+    }
+
+    private int storeOverflow(byte[] epc, int length)
+    {
+        int count = length - PACKED_BYTES;
+        if( mOverflowSize + count > mOverflow.length ) {
+            mOverflow = Arrays.copyOf(mOverflow, Math.max(mOverflow.length * 2, mOverflowSize + count + 256));
+        }
+        int offset = mOverflowSize;
+        System.arraycopy(epc, PACKED_BYTES, mOverflow, offset, count);
+        mOverflowSize += count;
+        return offset;
+    }
+
+    // Checks the parts of the key that are not held in the packed longs
+    private boolean matches(int ordinal, byte[] epc, int length)
+    {
+        if( getEpcLength(ordinal) != length ) {
+            return false;
+        }
+        if( length > PACKED_BYTES ) {
+            int offset = mOverflowOffset[ordinal];
+            for( int i = PACKED_BYTES; i < length; i++ ) {
+                if( mOverflow[offset + i - PACKED_BYTES] != epc[i] ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Pack up to 8 bytes, big endian and zero padded, starting at offset
+    private static long pack(byte[] epc, int offset, int length)
+    {
+        long value = 0;
+        int end = Math.min(offset + 8, length);
+        for( int i = offset; i < offset + 8; i++ ) {
+            value = (value << 8) | (i < end ? (epc[i] & 0xffL) : 0);
+        }
+        return value;
+    }
+
+    // Hash of the bytes held in the overflow area, zero for packed EPCs
+    private static int tailHash(byte[] data, int offset, int count)
+    {
+        int h = 0;
+        for( int i = 0; i < count; i++ ) {
+            h = 31 * h + data[offset + i];
+        }
+        return h;
+    }
+
+    private static int hash(long high, long low, int length, int tail)
+    {
+        long h = high * 0x9E3779B97F4A7C15L ^ Long.rotateLeft(low * 0xC2B2AE3D27D4EB4FL, 31) ^ ((long)tail << 8) ^ length;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int)h;
+    }
+}
@@ -0,0 +1,81 @@
+package com.petroit.tsirfidandroidapp.rfid.tags;
+
+/**
+ * Allocation free hex conversion helpers for the tag hot path
+ * <p>
+ * HexEncoding from the ASCII protocol library creates a new String or byte[] on every call,
+ * these methods work on caller supplied buffers instead
+ */
+public final class HexCodec
+{
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private HexCodec() {}
+
+    /**
+     * Parse a hex string into the given buffer
+     *
+     * @param hex the hex characters to parse, an odd trailing character is ignored
+     * @param dest the buffer to receive the bytes
+     * @return the number of bytes written or -1 if the string is not valid hex or does not fit
+     */
+    public static int parse(CharSequence hex, byte[] dest)
+    {
+        int length = hex.length() / 2;
+        if( length > dest.length ) {
+            return -1;
+        }
+        for( int i = 0; i < length; i++ ) {
+            int high = digit(hex.charAt(2 * i));
+            int low = digit(hex.charAt(2 * i + 1));
+            if( high < 0 || low < 0 ) {
+                return -1;
+            }
+            dest[i] = (byte)((high << 4) | low);
+        }
+        return length;
+    }
+
+    /**
+     * @param c the character to convert
+     * @return the value of the hex digit or -1 if c is not a hex digit
+     */
+    public static int digit(char c)
+    {
+        if( c >= '0' && c <= '9' ) return c - '0';
+        if( c >= 'A' && c <= 'F' ) return c - 'A' + 10;
+        if( c >= 'a' && c <= 'f' ) return c - 'a' + 10;
+        return -1;
+    }
+
+    /**
+     * Append the bytes as upper case hex
+     */
+    public static void append(StringBuilder sb, byte[] data, int offset, int length)
+    {
+        for( int i = offset; i < offset + length; i++ ) {
+            sb.append(DIGITS[(data[i] >> 4) & 0x0f]);
+            sb.append(DIGITS[data[i] & 0x0f]);
+        }
+    }
+
+    /**
+     * Append a single byte as two upper case hex digits
+     */
+    public static void append(StringBuilder sb, byte value)
+    {
+        sb.append(DIGITS[(value >> 4) & 0x0f]);
+        sb.append(DIGITS[value & 0x0f]);
+    }
+
+    /**
+     * Append the low 16 bits of value as four upper case hex digits (equivalent to %04X)
+     */
+    public static void appendWord(StringBuilder sb, int value)
+    {
+        sb.append(DIGITS[(value >> 12) & 0x0f]);
+        sb.append(DIGITS[(value >> 8) & 0x0f]);
+        sb.append(DIGITS[(value >> 4) & 0x0f]);
+        sb.append(DIGITS[value & 0x0f]);
+    }
+}
@@ -0,0 +1,45 @@
+package com.petroit.tsirfidandroidapp.rfid.tags;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints
+ */
+public final class IntList
+{
+    private int[] mValues;
+    private int mSize;
+
+    public IntList()
+    {
+        this(16);
+    }
+
+    public IntList(int capacity)
+    {
+        mValues = new int[Math.max(capacity, 1)];
+    }
+
+    public int size() { return mSize; }
+
+    public int get(int index)
+    {
+        if( index >= mSize ) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + mSize);
+        }
+        return mValues[index];
+    }
+
+    public void add(int value)
+    {
+        if( mSize == mValues.length ) {
+            mValues = Arrays.copyOf(mValues, mSize * 2);
+        }
+        mValues[mSize++] = value;
+    }
+
+    public void clear()
+    {
+        mSize = 0;
+    }
+}
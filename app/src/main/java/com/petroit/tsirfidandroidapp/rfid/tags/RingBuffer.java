@@ -0,0 +1,84 @@
+package com.petroit.tsirfidandroidapp.rfid.tags;
+
+/**
+ * A fixed capacity buffer that keeps the most recent items, oldest first
+ * <p>
+ * Adding to a full buffer evicts the oldest item and returns it so the caller can release it.
+ * This class is not thread safe.
+ *
+ * @param <T> the type of item held
+ */
+public final class RingBuffer<T>
+{
+    private final Object[] mItems;
+    private int mHead;
+    private int mSize;
+    private long mAddedCount;
+
+    /**
+     * @param capacity the maximum number of items held
+     */
+    public RingBuffer(int capacity)
+    {
+        if( capacity < 1 ) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        mItems = new Object[capacity];
+    }
+
+    public int capacity() { return mItems.length; }
+
+    public int size() { return mSize; }
+
+    /**
+     * @return the number of items ever added, the item at index i was the
+     * (getAddedCount() - size() + i)th added
+     */
+    public long getAddedCount() { return mAddedCount; }
+
+    /**
+     * Add an item as the newest
+     *
+     * @param item the item to add
+     * @return the evicted oldest item or null if there was space
+     */
+    @SuppressWarnings("unchecked")
+    public T add(T item)
+    {
+        mAddedCount++;
+        int tail = (mHead + mSize) % mItems.length;
+        if( mSize < mItems.length ) {
+            mItems[tail] = item;
+            mSize++;
+            return null;
+        }
+        T evicted = (T)mItems[mHead];
+        mItems[mHead] = item;
+        mHead = (mHead + 1) % mItems.length;
+        return evicted;
+    }
+
+    /**
+     * @param index the position from the oldest item
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int index)
+    {
+        if( index < 0 || index >= mSize ) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + mSize);
+        }
+        return (T)mItems[(mHead + index) % mItems.length];
+    }
+
+    /**
+     * Remove all items
+     */
+    public void clear()
+    {
+        for( int i = 0; i < mSize; i++ ) {
+            mItems[(mHead + i) % mItems.length] = null;
+        }
+        mHead = 0;
+        mSize = 0;
+    }
+}
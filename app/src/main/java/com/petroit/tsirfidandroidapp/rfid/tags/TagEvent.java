@@ -0,0 +1,277 @@
+package com.petroit.tsirfidandroidapp.rfid.tags;
+
+import com.uk.tsl.rfid.asciiprotocol.responders.TransponderData;
+
+/**
+ * A single transponder read held as primitive fields
+ * <p>
+ * Instances are recycled through a {@link TagEventPool} so the responder thread does not
+ * allocate per read. Text is only produced when {@link #appendTo(StringBuilder)} is called,
+ * typically when the row is bound to a view.
+ */
+public final class TagEvent
+{
+    // The largest EPC the air protocol allows (PC length field of 31 words)
+    public static final int MAX_EPC_BYTES = 62;
+
+    // Where the EPC starts in the EPC bank, after the CRC and PC words, to select a tag by its EPC
+    public static final int EPC_OFFSET_BITS = 0x20;
+
+    // Marker for fields that were not included in the reader response
+    public static final int NOT_PRESENT = Integer.MIN_VALUE;
+
+    // Marker for a reader time that was not included in the reader response
+    public static final long NO_READER_TIME = Long.MIN_VALUE;
+
+    private final byte[] mEpc = new byte[MAX_EPC_BYTES];
+    private int mEpcLength;
+    private String mEpcHex;
+    private byte[] mTid;
+    private byte[] mData;
+    private int mRssi;
+    private int mPc;
+    private int mCrc;
+    private long mTimestamp;
+    private long mReaderTimestamp;
+    private int mSequence;
+    private long mReceivedNanos;
+    private int mTagOrdinal;
+    private boolean mNewTag;
+
+    TagEvent()
+    {
+        reset();
+    }
+
+    /**
+     * Fill this event from the library's response, call it as the read arrives
+     * <p>
+     * The read is timed by the phone's clock, the reader's clock is not set by the app and
+     * only has a resolution of 1s.
+     *
+     * @param transponder the transponder as reported by the responder
+     * @param sequence the running count of tags seen
+     * @return false if the EPC could not be stored
+     */
+    public boolean set(TransponderData transponder, int sequence)
+    {
+        String epc = transponder.getEpc();
+        mEpcLength = epc == null ? -1 : HexCodec.parse(epc, mEpc);
+        if( mEpcLength < 0 ) {
+            mEpcLength = 0;
+            return false;
+        }
+        // Keep a reference to the library's string - no copy is made
+        mEpcHex = epc;
+        mTid = transponder.getTidData();
+        mData = transponder.getReadData();
+        mRssi = valueOf(transponder.getRssi());
+        mPc = valueOf(transponder.getPc());
+        mCrc = valueOf(transponder.getCrc());
+        mTimestamp = System.currentTimeMillis();
+        mReaderTimestamp = transponder.getTimestamp() != null ? transponder.getTimestamp().getTime() : NO_READER_TIME;
+        mSequence = sequence;
+        mReceivedNanos = System.nanoTime();
+        mTagOrdinal = -1;
+        mNewTag = false;
+        return true;
+    }
+
+    /**
+     * Fill this event from primitive values
+     *
+     * @param epc the buffer holding the EPC
+     * @param epcLength the number of EPC bytes
+     * @param rssi the RSSI in dBm or NOT_PRESENT
+     * @param pc the PC word or NOT_PRESENT
+     * @param crc the CRC word or NOT_PRESENT
+     * @param timestamp the read time in ms since the epoch
+     * @param sequence the running count of tags seen
+     */
+    public void set(byte[] epc, int epcLength, int rssi, int pc, int crc, long timestamp, int sequence)
+    {
+        System.arraycopy(epc, 0, mEpc, 0, epcLength);
+        mEpcLength = epcLength;
+        mEpcHex = null;
+        mTid = null;
+        mData = null;
+        mRssi = rssi;
+        mPc = pc;
+        mCrc = crc;
+        mTimestamp = timestamp;
+        mReaderTimestamp = NO_READER_TIME;
+        mSequence = sequence;
+        mReceivedNanos = System.nanoTime();
+        mTagOrdinal = -1;
+        mNewTag = false;
+    }
+
+    /**
+     * Make this event a copy of another, the TID and data arrays are shared rather than copied
+     */
+    public void copyFrom(TagEvent other)
+    {
+        int length = other.mEpcLength;
+        System.arraycopy(other.mEpc, 0, mEpc, 0, length);
+        mEpcLength = length;
+        mEpcHex = other.mEpcHex;
+        mTid = other.mTid;
+        mData = other.mData;
+        mRssi = other.mRssi;
+        mPc = other.mPc;
+        mCrc = other.mCrc;
+        mTimestamp = other.mTimestamp;
+        mReaderTimestamp = other.mReaderTimestamp;
+        mSequence = other.mSequence;
+        mReceivedNanos = other.mReceivedNanos;
+        mTagOrdinal = other.mTagOrdinal;
+        mNewTag = other.mNewTag;
+    }
+
+    /**
+     * @param tid the TID bytes or null, the array is kept rather than copied
+     */
+    public void setTid(byte[] tid)
+    {
+        mTid = tid;
+    }
+
+    /**
+     * @param data the memory read with the EPC or null, the array is kept rather than copied
+     */
+    public void setData(byte[] data)
+    {
+        mData = data;
+    }
+
+    /**
+     * Note where the read was aggregated, for the consumers of the read
+     *
+     * @param result the result of {@link TagStore#record(TagEvent)}
+     */
+    public void setRecordResult(int result)
+    {
+        mTagOrdinal = result == EpcIndex.FULL ? -1 : result >= 0 ? result : -(result + 1);
+        mNewTag = result >= 0;
+    }
+
+    void reset()
+    {
+        mEpcLength = 0;
+        mEpcHex = null;
+        mTid = null;
+        mData = null;
+        mRssi = NOT_PRESENT;
+        mPc = NOT_PRESENT;
+        mCrc = NOT_PRESENT;
+        mTimestamp = 0;
+        mReaderTimestamp = NO_READER_TIME;
+        mSequence = 0;
+        mReceivedNanos = 0;
+        mTagOrdinal = -1;
+        mNewTag = false;
+    }
+
+    private static int valueOf(Integer value)
+    {
+        return value == null ? NOT_PRESENT : value;
+    }
+
+    /**
+     * @return the buffer holding the EPC bytes, only the first getEpcLength() bytes are valid
+     */
+    public byte[] getEpcBuffer() { return mEpc; }
+
+    /**
+     * @return the number of valid bytes in the EPC buffer
+     */
+    public int getEpcLength() { return mEpcLength; }
+
+    /**
+     * @return the TID bytes when FastId is in use otherwise null
+     */
+    public byte[] getTid() { return mTid; }
+
+    /**
+     * @return the memory read in the same round as the EPC, see {@link com.petroit.tsirfidandroidapp.rfid.inventory.DatabankInventoryCommand}, otherwise null
+     */
+    public byte[] getData() { return mData; }
+
+    public int getRssi() { return mRssi; }
+
+    public int getPc() { return mPc; }
+
+    public int getCrc() { return mCrc; }
+
+    /**
+     * @return the time of the read in ms since the epoch by the phone's clock
+     */
+    public long getTimestamp() { return mTimestamp; }
+
+    /**
+     * @return the time the reader gave the read in ms since the epoch, or NO_READER_TIME
+     */
+    public long getReaderTimestamp() { return mReaderTimestamp; }
+
+    /**
+     * @return the running count of tags seen when this read arrived
+     */
+    public int getSequence() { return mSequence; }
+
+    /**
+     * @return the System.nanoTime() when this event was filled, to measure the delivery latency
+     */
+    public long getReceivedNanos() { return mReceivedNanos; }
+
+    /**
+     * @return the tag's ordinal in the session's store or -1 if it was not recorded
+     */
+    public int getTagOrdinal() { return mTagOrdinal; }
+
+    /**
+     * @return true if this was the first read of the tag
+     */
+    public boolean isNewTag() { return mNewTag; }
+
+    /**
+     * Append the EPC as hex
+     */
+    public void appendEpc(StringBuilder sb)
+    {
+        if( mEpcHex != null ) {
+            sb.append(mEpcHex);
+        } else {
+            HexCodec.append(sb, mEpc, 0, mEpcLength);
+        }
+    }
+
+    /**
+     * Append the full description of this read in the inventory list format
+     */
+    public void appendTo(StringBuilder sb)
+    {
+        sb.append("EPC: ");
+        appendEpc(sb);
+        sb.append("\nRSSI: ");
+        if( mRssi != NOT_PRESENT ) sb.append(mRssi);
+        sb.append("  PC: ");
+        if( mPc != NOT_PRESENT ) HexCodec.appendWord(sb, mPc);
+        sb.append("  CRC: ");
+        if( mCrc != NOT_PRESENT ) HexCodec.appendWord(sb, mCrc);
+        sb.append("\nTID: ");
+        if( mTid != null ) HexCodec.append(sb, mTid, 0, mTid.length);
+        if( mData != null ) {
+            sb.append("\nDATA: ");
+            HexCodec.append(sb, mData, 0, mData.length);
+        }
+        sb.append("\n# ").append(mSequence);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(96);
+        appendTo(sb);
+        return sb.toString();
+    }
+}
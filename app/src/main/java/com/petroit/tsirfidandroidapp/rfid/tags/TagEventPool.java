@@ -0,0 +1,53 @@
+package com.petroit.tsirfidandroidapp.rfid.tags;
+
+/**
+ * A bounded pool of reusable {@link TagEvent} instances
+ * <p>
+ * Events are obtained on the responder thread and recycled by the consumer (usually the UI thread)
+ * once they are no longer displayed, so access is synchronized.
+ */
+public final class TagEventPool
+{
+    private final TagEvent[] mFree;
+    private int mFreeCount;
+
+    /**
+     * @param capacity the maximum number of idle events retained by the pool
+     */
+    public TagEventPool(int capacity)
+    {
+        mFree = new TagEvent[capacity];
+        mFreeCount = 0;
+    }
+
+    /**
+     * @return an idle event, a new event is created only when the pool is empty
+     */
+    public synchronized TagEvent obtain()
+    {
+        if( mFreeCount > 0 ) {
+            TagEvent event = mFree[--mFreeCount];
+            mFree[mFreeCount] = null;
+            return event;
+        }
+        return new TagEvent();
+    }
+
+    /**
+     * Return an event to the pool, it must not be used by the caller afterwards
+     *
+     * @param event the event to recycle
+     */
+    public synchronized void recycle(TagEvent event)
+    {
+        if( mFreeCount < mFree.length ) {
+            event.reset();
+            mFree[mFreeCount++] = event;
+        }
+    }
+
+    /**
+     * @return the number of idle events held
+     */
+    public synchronized int size() { return mFreeCount; }
+}
@@ -0,0 +1,324 @@
+package com.petroit.tsirfidandroidapp.rfid.tags;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands reads from the responder thread to any number of consumers without locking
+ * <p>
+ * The single producer copies each read into a preallocated slot and publishes it by advancing
+ * the cursor. Each consumer keeps its own sequence and drains on its own thread, seeing the
+ * reads in order. What happens when a consumer falls a whole ring behind depends on its
+ * {@link Backpressure} policy. Only a BLOCK consumer can make the producer wait, and once a wait
+ * times out the consumer's backlog is dropped and it is not waited for again until it has caught
+ * up, so a stalled consumer costs the radio one timeout rather than one per read.
+ * <p>
+ * A consumer with nothing to drain can park in {@link Consumer#awaitReads(long)} and is woken by
+ * the next publish, so an idle consumer thread costs nothing.
+ * <p>
+ * A consumer claims each read with a compare and set of its sequence after copying the slot.
+ * A producer overtaking the consumer advances the same sequence, so a copy that may have been
+ * overwritten is discarded rather than delivered.
+ */
+public final class TagEventRing
+{
+    /**
+     * What a consumer gives up when it cannot keep up
+     */
+    public enum Backpressure
+    {
+        // The producer waits for the consumer, up to the block timeout, then drops its backlog and
+        // treats it as DROP_OLDEST until it has caught up
+        BLOCK,
+        // The producer overwrites the consumer's oldest unread reads, which are counted as dropped
+        DROP_OLDEST,
+        // Each drain delivers only the latest read, the reads passed over are counted as skipped
+        SAMPLE
+    }
+
+    /**
+     * Receives the reads drained by a consumer
+     */
+    public interface EventHandler
+    {
+        /**
+         * @param event the read, only valid for the duration of the call - copy what is needed
+         * @param sequence the read's position in the ring's stream, 0 for the first published
+         */
+        void onTagEvent(TagEvent event, long sequence);
+    }
+
+    /**
+     * One consumer's position in the ring, drained from a single thread
+     */
+    public final class Consumer
+    {
+        private final Backpressure mBackpressure;
+        // The next sequence to read, advanced by the consumer or by an overtaking producer
+        private final AtomicLong mNext;
+        private final AtomicLong mDroppedCount = new AtomicLong();
+        private final TagEvent mEvent = new TagEvent();
+        private volatile long mDeliveredCount;
+        private volatile long mSkippedCount;
+        // Set by the producer when a wait times out, cleared when the consumer has caught up
+        private volatile boolean mStalled;
+        // The draining thread while it is parked waiting for reads
+        private volatile Thread mWaiter;
+
+        Consumer(Backpressure backpressure, long next)
+        {
+            mBackpressure = backpressure;
+            mNext = new AtomicLong(next);
+        }
+
+        public Backpressure getBackpressure() { return mBackpressure; }
+
+        /**
+         * Deliver the reads published since the last drain
+         *
+         * @param handler receives the reads on the calling thread
+         * @param maxCount the most reads to deliver
+         * @return the number of reads delivered
+         */
+        public int drain(EventHandler handler, int maxCount)
+        {
+            int count = 0;
+            while( count < maxCount ) {
+                long next = mNext.get();
+                long published = mCursor.get();
+                if( next > published ) {
+                    mStalled = false;
+                    break;
+                }
+                if( mBackpressure == Backpressure.SAMPLE && published > next ) {
+                    // Go straight to the latest read
+                    if( !mNext.compareAndSet(next, published) ) {
+                        continue;
+                    }
+                    mSkippedCount += published - next;
+                    next = published;
+                }
+                mEvent.copyFrom(mSlots[(int)next & mMask]);
+                if( !mNext.compareAndSet(next, next + 1) ) {
+                    // Overtaken while copying, the copy may be torn
+                    continue;
+                }
+                mDeliveredCount++;
+                count++;
+                handler.onTagEvent(mEvent, next);
+                if( mBackpressure == Backpressure.SAMPLE ) {
+                    break;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Park the draining thread until a read is published, it is unparked or the timeout
+         *
+         * @param timeoutNanos the longest to wait
+         * @return true if there are reads to drain
+         */
+        public boolean awaitReads(long timeoutNanos)
+        {
+            if( getBacklog() == 0 ) {
+                mWaiter = Thread.currentThread();
+                // Checked again once the producer can see the waiter, so a read is not missed
+                if( getBacklog() == 0 ) {
+                    LockSupport.parkNanos(this, timeoutNanos);
+                }
+                mWaiter = null;
+            }
+            return getBacklog() > 0;
+        }
+
+        /**
+         * @return the number of reads published but not yet drained
+         */
+        public long getBacklog() { return Math.max(0, mCursor.get() + 1 - mNext.get()); }
+
+        public long getDeliveredCount() { return mDeliveredCount; }
+
+        /**
+         * @return the reads overwritten before they were drained
+         */
+        public long getDroppedCount() { return mDroppedCount.get(); }
+
+        /**
+         * @return the reads a SAMPLE consumer passed over
+         */
+        public long getSkippedCount() { return mSkippedCount; }
+
+        /**
+         * @return true if the producer has stopped waiting for this BLOCK consumer
+         */
+        public boolean isStalled() { return mStalled; }
+    }
+
+    private static final Consumer[] sNoConsumers = new Consumer[0];
+    private static final int sSpinsBeforeYield = 64;
+    private static final int sYieldsBeforePark = 16;
+    private static final long sParkNanos = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final TagEvent[] mSlots;
+    private final int mMask;
+    private final long mBlockTimeoutNanos;
+
+    // The sequence of the latest read published
+    private final AtomicLong mCursor = new AtomicLong(-1);
+    // Copy on write so publishing reads the consumers without locking
+    private volatile Consumer[] mConsumers = sNoConsumers;
+
+    // Producer state, the lowest sequence any consumer still needs when last checked
+    private long mGatingSequence;
+
+    // Statistics, written by the producer
+    private volatile long mBlockedNanos;
+    private volatile long mBlockTimeoutCount;
+
+    /**
+     * @param capacity the number of slots, rounded up to a power of two
+     * @param blockTimeoutNanos the longest the producer waits for a BLOCK consumer per read
+     */
+    public TagEventRing(int capacity, long blockTimeoutNanos)
+    {
+        if( capacity < 1 || capacity > 1 << 30 ) {
+            throw new IllegalArgumentException("The capacity must be between 1 and 2^30");
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        mSlots = new TagEvent[size];
+        for( int i = 0; i < size; i++ ) {
+            mSlots[i] = new TagEvent();
+        }
+        mMask = size - 1;
+        mBlockTimeoutNanos = blockTimeoutNanos;
+    }
+
+    public int capacity() { return mSlots.length; }
+
+    /**
+     * Add a consumer, it receives the reads published from now on
+     */
+    public synchronized Consumer addConsumer(Backpressure backpressure)
+    {
+        Consumer consumer = new Consumer(backpressure, mCursor.get() + 1);
+        Consumer[] consumers = Arrays.copyOf(mConsumers, mConsumers.length + 1);
+        consumers[consumers.length - 1] = consumer;
+        mConsumers = consumers;
+        // Skip anything published before the producer could see the consumer
+        long next = consumer.mNext.get();
+        consumer.mNext.compareAndSet(next, Math.max(next, mCursor.get() + 1));
+        return consumer;
+    }
+
+    public synchronized void removeConsumer(Consumer consumer)
+    {
+        Consumer[] consumers = mConsumers;
+        for( int i = 0; i < consumers.length; i++ ) {
+            if( consumers[i] == consumer ) {
+                Consumer[] removed = new Consumer[consumers.length - 1];
+                System.arraycopy(consumers, 0, removed, 0, i);
+                System.arraycopy(consumers, i + 1, removed, i, consumers.length - i - 1);
+                mConsumers = removed;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if there is at least one consumer, to skip publishing reads no one will see
+     */
+    public boolean hasConsumers() { return mConsumers.length > 0; }
+
+    /**
+     * Copy a read into the ring, from the single producer thread
+     *
+     * @param event the read, it is copied so remains the caller's
+     * @return the read's sequence
+     */
+    public long publish(TagEvent event)
+    {
+        long sequence = mCursor.get() + 1;
+        long wrapPoint = sequence - mSlots.length;
+        if( wrapPoint >= mGatingSequence ) {
+            mGatingSequence = claim(wrapPoint);
+        }
+        mSlots[(int)sequence & mMask].copyFrom(event);
+        // A full volatile write so a consumer about to park either sees the read or is seen here
+        mCursor.set(sequence);
+        for( Consumer consumer : mConsumers ) {
+            Thread waiter = consumer.mWaiter;
+            if( waiter != null ) {
+                LockSupport.unpark(waiter);
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * @return the number of reads published
+     */
+    public long getPublishedCount() { return mCursor.get() + 1; }
+
+    /**
+     * @return the total time the producer has waited for BLOCK consumers
+     */
+    public long getBlockedNanos() { return mBlockedNanos; }
+
+    /**
+     * @return the number of times the producer gave up waiting for a BLOCK consumer
+     */
+    public long getBlockTimeoutCount() { return mBlockTimeoutCount; }
+
+    // Make sure no consumer still needs the slot of the wrap point, returning the lowest
+    // sequence still needed
+    private long claim(long wrapPoint)
+    {
+        long lowest = Long.MAX_VALUE;
+        for( Consumer consumer : mConsumers ) {
+            long next = consumer.mNext.get();
+            // Overwritten reads are dropped up to the wrap point, or the whole backlog on a timeout
+            long target = wrapPoint + 1;
+            if( next <= wrapPoint && consumer.mBackpressure == Backpressure.BLOCK && !consumer.mStalled ) {
+                next = await(consumer, wrapPoint);
+                if( next <= wrapPoint ) {
+                    consumer.mStalled = true;
+                    target = wrapPoint + mSlots.length;
+                }
+            }
+            while( next < target ) {
+                if( consumer.mNext.compareAndSet(next, target) ) {
+                    consumer.mDroppedCount.addAndGet(target - next);
+                    next = target;
+                } else {
+                    next = consumer.mNext.get();
+                }
+            }
+            lowest = Math.min(lowest, next);
+        }
+        return lowest == Long.MAX_VALUE ? wrapPoint + 1 : lowest;
+    }
+
+    // Wait for a BLOCK consumer to move past the wrap point or for the timeout
+    private long await(Consumer consumer, long wrapPoint)
+    {
+        long start = System.nanoTime();
+        long next = consumer.mNext.get();
+        for( int attempt = 0; next <= wrapPoint; attempt++ ) {
+            if( attempt > sSpinsBeforeYield + sYieldsBeforePark ) {
+                if( System.nanoTime() - start >= mBlockTimeoutNanos ) {
+                    mBlockTimeoutCount++;
+                    break;
+                }
+                LockSupport.parkNanos(sParkNanos);
+            } else if( attempt > sSpinsBeforeYield ) {
+                Thread.yield();
+            }
+            next = consumer.mNext.get();
+        }
+        mBlockedNanos += System.nanoTime() - start;
+        return next;
+    }
+}
@@ -0,0 +1,166 @@
+package com.petroit.tsirfidandroidapp.rfid.tags;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drains one consumer of a {@link TagEventRing} on a thread of its own
+ * <p>
+ * The thread parks while there is nothing to drain and is woken by the next read published, or
+ * by {@link #wake()} for work that does not come through the ring. Stopping the worker drains
+ * the reads already published before the thread ends.
+ */
+public final class TagEventWorker
+{
+    /**
+     * Told each time the worker has drained every read published, on the worker's thread
+     */
+    public interface CaughtUpListener
+    {
+        void onCaughtUp();
+    }
+
+    private static final int sBatchSize = 256;
+    // Only a safety net, the producer unparks the worker
+    private static final long sIdleParkNanos = TimeUnit.SECONDS.toNanos(1);
+    private static final long sStopTimeoutMs = 1000;
+
+    private final TagEventRing mRing;
+    private final TagEventRing.Backpressure mBackpressure;
+    private final TagEventRing.EventHandler mHandler;
+    private final String mName;
+    private volatile CaughtUpListener mCaughtUpListener;
+
+    private volatile Thread mThread;
+    private volatile TagEventRing.Consumer mConsumer;
+
+    /**
+     * @param ring the ring to drain
+     * @param backpressure what the worker gives up when it cannot keep up
+     * @param handler receives the reads on the worker's thread
+     * @param name the thread's name
+     */
+    public TagEventWorker(TagEventRing ring, TagEventRing.Backpressure backpressure, TagEventRing.EventHandler handler, String name)
+    {
+        mRing = ring;
+        mBackpressure = backpressure;
+        mHandler = handler;
+        mName = name;
+    }
+
+    public void setCaughtUpListener(CaughtUpListener listener) { mCaughtUpListener = listener; }
+
+    /**
+     * @return the worker's position in the ring, for its statistics, or null when stopped
+     */
+    public TagEventRing.Consumer getConsumer() { return mConsumer; }
+
+    public boolean isRunning() { return mThread != null; }
+
+    /**
+     * Start draining the reads published from now on
+     */
+    public synchronized void start()
+    {
+        if( mThread == null ) {
+            final TagEventRing.Consumer consumer = mRing.addConsumer(mBackpressure);
+            mConsumer = consumer;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    drain(consumer);
+                }
+            }, mName);
+            thread.setDaemon(true);
+            mThread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Drain the reads already published then end the thread, waiting at most a second for it
+     */
+    public void stop()
+    {
+        stopAll(this);
+    }
+
+    /**
+     * Stop several workers, they all finish draining at once and are waited for together for at
+     * most a second, so the caller, e.g. the UI thread, is not held up by each in turn
+     */
+    public static void stopAll(TagEventWorker... workers)
+    {
+        Thread[] threads = new Thread[workers.length];
+        TagEventRing.Consumer[] consumers = new TagEventRing.Consumer[workers.length];
+        for( int i = 0; i < workers.length; i++ ) {
+            synchronized( workers[i] ) {
+                threads[i] = workers[i].mThread;
+                consumers[i] = workers[i].mConsumer;
+                workers[i].mThread = null;
+            }
+            if( threads[i] != null ) {
+                LockSupport.unpark(threads[i]);
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sStopTimeoutMs);
+        for( int i = 0; i < workers.length; i++ ) {
+            if( threads[i] != null ) {
+                workers[i].awaitStop(threads[i], consumers[i], deadline);
+            }
+        }
+    }
+
+    private void awaitStop(Thread thread, TagEventRing.Consumer consumer, long deadline)
+    {
+        try {
+            long remaining = deadline - System.nanoTime();
+            if( remaining > 0 ) {
+                TimeUnit.NANOSECONDS.timedJoin(thread, remaining);
+            }
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        mRing.removeConsumer(consumer);
+        synchronized( this ) {
+            // Unless the worker was started again meanwhile
+            if( mConsumer == consumer ) {
+                mConsumer = null;
+            }
+        }
+    }
+
+    /**
+     * Wake the worker to call the caught up listener, e.g. when there is other work for it
+     */
+    public void wake()
+    {
+        Thread thread = mThread;
+        if( thread != null ) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // The worker thread
+    private void drain(TagEventRing.Consumer consumer)
+    {
+        Thread self = Thread.currentThread();
+        while( mThread == self ) {
+            if( consumer.drain(mHandler, sBatchSize) == 0 ) {
+                CaughtUpListener listener = mCaughtUpListener;
+                if( listener != null ) {
+                    listener.onCaughtUp();
+                }
+                consumer.awaitReads(sIdleParkNanos);
+            }
+        }
+        while( consumer.drain(mHandler, sBatchSize) > 0 ) {
+            // Finish what was published before the stop
+        }
+        CaughtUpListener listener = mCaughtUpListener;
+        if( listener != null ) {
+            listener.onCaughtUp();
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package com.petroit.tsirfidandroidapp.rfid.tags;
+
+import com.petroit.tsirfidandroidapp.rfid.gs1.Gs1DecodeCache;
+import com.petroit.tsirfidandroidapp.rfid.gs1.Gs1Epc;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aggregates transponder reads into one record per EPC
+ * <p>
+ * Each read updates the tag's read count, RSSI minimum, maximum and mean and first/last seen
+ * times in place. The tags changed since the last call to {@link #drainChanges(List, IntList)}
+ * are tracked so a consumer can refresh at its own rate in O(changed tags) rather than O(reads).
+ * With a GS1 decoder set each new tag's EPC is decoded once, when first seen. With a prefilter
+ * set, tags the {@link EpcBloomFilter} rules out are inserted without comparing index keys.
+ * Memory read with the EPC replaces the tag's data on each read so sensor words stay current,
+ * the TID and memory read from a tag after it was first seen are added with
+ * {@link #setBankData(int, int, boolean, byte[])}.
+ * <p>
+ * Reads are recorded on the responder thread while changes are drained on the UI thread so
+ * access is synchronized.
+ */
+public final class TagStore
+{
+    private final EpcIndex mIndex;
+
+    // Per-tag RSSI statistics, addressed by ordinal
+    private int[] mLastRssi;
+    private int[] mRssiMin;
+    private int[] mRssiMax;
+    private long[] mRssiSum;
+    private int[] mRssiCount;
+    private byte[][] mTid;
+    private byte[][] mData;
+    private Gs1Epc[] mGs1;
+
+    private Gs1DecodeCache mGs1Decoder;
+    private EpcBloomFilter mPrefilter;
+
+    // Tags changed since the last drain
+    private long[] mDirty;
+    private final IntList mDirtyOrdinals = new IntList(256);
+
+    private long mTotalReads;
+
+    // Incremented by clear() so summaries of removed tags are not reused
+    private int mGeneration;
+
+    private final StringBuilder mEpcBuilder = new StringBuilder(2 * TagEvent.MAX_EPC_BYTES);
+
+    /**
+     * @param expectedSize the number of tags to size the store for initially
+     * @param maxSize the upper limit on the number of tags held
+     */
+    public TagStore(int expectedSize, int maxSize)
+    {
+        mIndex = new EpcIndex(expectedSize, maxSize);
+        allocate(Math.min(expectedSize, maxSize));
+    }
+
+    /**
+     * Record a read
+     *
+     * @param event the read to record
+     * @return the ordinal of a newly seen tag, -(ordinal + 1) if the tag was already present
+     * or EpcIndex.FULL if the tag is new and the store is full
+     */
+    public synchronized int record(TagEvent event)
+    {
+        mTotalReads++;
+        byte[] epc = event.getEpcBuffer();
+        int length = event.getEpcLength();
+        int result;
+        if( mPrefilter == null ) {
+            result = mIndex.add(epc, length, event.getTimestamp());
+        } else if( !mPrefilter.mightContain(epc, length) ) {
+            result = mIndex.addAbsent(epc, length, event.getTimestamp());
+            if( result != EpcIndex.FULL ) {
+                mPrefilter.add(epc, length);
+                mPrefilter.recordNewTag(true);
+            }
+        } else {
+            result = mIndex.add(epc, length, event.getTimestamp());
+            if( result >= 0 ) {
+                mPrefilter.add(epc, length);
+                mPrefilter.recordNewTag(false);
+            }
+        }
+        if( result == EpcIndex.FULL ) {
+            return result;
+        }
+
+        boolean isNew = result >= 0;
+        int ordinal = isNew ? result : -(result + 1);
+        if( ordinal >= mRssiMin.length ) {
+            grow(Math.max(ordinal + 1, mRssiMin.length * 2));
+        }
+
+        int rssi = event.getRssi();
+        if( isNew ) {
+            mLastRssi[ordinal] = rssi;
+            mRssiMin[ordinal] = Integer.MAX_VALUE;
+            mRssiMax[ordinal] = Integer.MIN_VALUE;
+            mRssiSum[ordinal] = 0;
+            mRssiCount[ordinal] = 0;
+            mTid[ordinal] = event.getTid();
+            mData[ordinal] = null;
+            mGs1[ordinal] = mGs1Decoder == null ? null : mGs1Decoder.decode(event.getEpcBuffer(), event.getEpcLength());
+        } else if( mTid[ordinal] == null ) {
+            mTid[ordinal] = event.getTid();
+        }
+        if( event.getData() != null ) {
+            mData[ordinal] = event.getData();
+        }
+
+        if( rssi != TagEvent.NOT_PRESENT ) {
+            mLastRssi[ordinal] = rssi;
+            if( rssi < mRssiMin[ordinal] ) mRssiMin[ordinal] = rssi;
+            if( rssi > mRssiMax[ordinal] ) mRssiMax[ordinal] = rssi;
+            mRssiSum[ordinal] += rssi;
+            mRssiCount[ordinal]++;
+        }
+
+        markDirty(ordinal);
+
+        return result;
+    }
+
+    /**
+     * @param decoder decodes the EPCs of new tags to their GS1 fields or null not to decode
+     */
+    public synchronized void setGs1Decoder(Gs1DecodeCache decoder) { mGs1Decoder = decoder; }
+
+    /**
+     * Put a Bloom filter in front of the index, it is filled with the tags already held
+     *
+     * @param prefilter the filter or null to use the index alone
+     */
+    public synchronized void setPrefilter(EpcBloomFilter prefilter)
+    {
+        mPrefilter = prefilter;
+        if( prefilter != null ) {
+            prefilter.clear();
+            byte[] epc = new byte[TagEvent.MAX_EPC_BYTES];
+            for( int ordinal = 0; ordinal < mIndex.size(); ordinal++ ) {
+                prefilter.add(epc, mIndex.getEpc(ordinal, epc));
+            }
+        }
+    }
+
+    /**
+     * @return the Bloom filter in front of the index or null
+     */
+    public synchronized EpcBloomFilter getPrefilter() { return mPrefilter; }
+
+    /**
+     * Append the prefilter's size and false positive rates
+     *
+     * @return false if there is no prefilter
+     */
+    public synchronized boolean appendPrefilterTo(StringBuilder sb)
+    {
+        if( mPrefilter == null ) {
+            return false;
+        }
+        mPrefilter.appendTo(sb);
+        return true;
+    }
+
+    /**
+     * @return true if the tag with the given EPC has been recorded
+     */
+    public synchronized boolean contains(byte[] epc, int length)
+    {
+        if( mPrefilter != null && !mPrefilter.mightContain(epc, length) ) {
+            return false;
+        }
+        return mIndex.contains(epc, length);
+    }
+
+    /**
+     * @return the ordinal of the tag with the given EPC or -1 if it has not been recorded
+     */
+    public synchronized int find(byte[] epc, int length)
+    {
+        if( mPrefilter != null && !mPrefilter.mightContain(epc, length) ) {
+            return -1;
+        }
+        return mIndex.find(epc, length);
+    }
+
+    /**
+     * Add memory read from a tag, e.g. by a bulk read of the tags already seen
+     *
+     * @param ordinal the ordinal of the tag
+     * @param generation the generation the ordinal belongs to, see {@link #getGeneration()}
+     * @param tid true for the TID bank, false for the tag's other data, e.g. user memory
+     * @param data the bytes read, the array is kept rather than copied
+     * @return false if the store has been cleared since the ordinal was found
+     */
+    public synchronized boolean setBankData(int ordinal, int generation, boolean tid, byte[] data)
+    {
+        if( generation != mGeneration || ordinal < 0 || ordinal >= mIndex.size() ) {
+            return false;
+        }
+        if( tid ) {
+            mTid[ordinal] = data;
+        } else {
+            mData[ordinal] = data;
+        }
+        markDirty(ordinal);
+        return true;
+    }
+
+    /**
+     * @return the number of unique tags
+     */
+    public synchronized int size() { return mIndex.size(); }
+
+    /**
+     * @return the number of reads recorded, including repeats
+     */
+    public synchronized long getTotalReads() { return mTotalReads; }
+
+    /**
+     * Remove all tags
+     */
+    public synchronized void clear()
+    {
+        mIndex.clear();
+        for( int i = 0; i < mDirtyOrdinals.size(); i++ ) {
+            int ordinal = mDirtyOrdinals.get(i);
+            mDirty[ordinal >> 6] &= ~(1L << ordinal);
+        }
+        mDirtyOrdinals.clear();
+        mTotalReads = 0;
+        mGeneration++;
+        if( mPrefilter != null ) {
+            mPrefilter.clear();
+        }
+    }
+
+    /**
+     * Copy the tag with the given ordinal
+     */
+    public synchronized void copyTo(int ordinal, TagSummary summary)
+    {
+        // The EPC string is only built once for each tag
+        if( summary.mEpc == null || summary.mOrdinal != ordinal || summary.mGeneration != mGeneration ) {
+            mEpcBuilder.setLength(0);
+            mIndex.appendEpc(ordinal, mEpcBuilder);
+            summary.mEpc = mEpcBuilder.toString();
+        }
+        summary.mOrdinal = ordinal;
+        summary.mGeneration = mGeneration;
+        summary.mTid = mTid[ordinal];
+        summary.mData = mData[ordinal];
+        summary.mGs1 = mGs1[ordinal];
+        summary.mReadCount = mIndex.getReadCount(ordinal);
+        summary.mFirstSeen = mIndex.getFirstSeen(ordinal);
+        summary.mLastSeen = mIndex.getLastSeen(ordinal);
+        summary.mLastRssi = mLastRssi[ordinal];
+        if( mRssiCount[ordinal] > 0 ) {
+            summary.mRssiMin = mRssiMin[ordinal];
+            summary.mRssiMax = mRssiMax[ordinal];
+            summary.mRssiAverage = (double)mRssiSum[ordinal] / mRssiCount[ordinal];
+        } else {
+            summary.mRssiMin = TagEvent.NOT_PRESENT;
+            summary.mRssiMax = TagEvent.NOT_PRESENT;
+            summary.mRssiAverage = Double.NaN;
+        }
+    }
+
+    /**
+     * Copy the EPC of the tag with the given ordinal into dest
+     *
+     * @return the number of bytes copied
+     */
+    public synchronized int getEpc(int ordinal, byte[] dest)
+    {
+        return mIndex.getEpc(ordinal, dest);
+    }
+
+    /**
+     * @return a number that changes each time the store is cleared
+     */
+    public synchronized int getGeneration() { return mGeneration; }
+
+    /**
+     * Copy a run of tags in one go, e.g. to stream the whole store a chunk at a time
+     *
+     * @param fromOrdinal the ordinal of the first tag to copy
+     * @param summaries receives the tags, as many as fit
+     * @param generation the generation the caller started with, see {@link #getGeneration()}
+     * @return the number of tags copied, 0 at the end of the store or -1 if the store has been
+     * cleared since the caller started
+     */
+    public synchronized int copyTo(int fromOrdinal, TagSummary[] summaries, int generation)
+    {
+        if( generation != mGeneration ) {
+            return -1;
+        }
+        int count = Math.max(0, Math.min(summaries.length, mIndex.size() - fromOrdinal));
+        for( int i = 0; i < count; i++ ) {
+            copyTo(fromOrdinal + i, summaries[i]);
+        }
+        return count;
+    }
+
+    /**
+     * Bring a list of summaries, indexed by ordinal, up to date with the store
+     * <p>
+     * Summaries are appended for new tags and only the tags changed since the last drain
+     * are copied. A list that does not match the store (e.g. after a clear) is rebuilt.
+     *
+     * @param rows the summaries to update
+     * @param changed receives the ordinals of the updated rows, may be null
+     * @return the number of rows updated
+     */
+    public synchronized int drainChanges(List<TagSummary> rows, IntList changed)
+    {
+        int size = mIndex.size();
+        if( rows.size() > size ) {
+            rows.clear();
+        }
+        while( rows.size() < size ) {
+            rows.add(new TagSummary());
+        }
+
+        int count = mDirtyOrdinals.size();
+        for( int i = 0; i < count; i++ ) {
+            int ordinal = mDirtyOrdinals.get(i);
+            mDirty[ordinal >> 6] &= ~(1L << ordinal);
+            copyTo(ordinal, rows.get(ordinal));
+            if( changed != null ) {
+                changed.add(ordinal);
+            }
+        }
+        mDirtyOrdinals.clear();
+        return count;
+    }
+
+    /**
+     * @return the approximate number of bytes held by the store
+     */
+    public synchronized long memoryFootprint()
+    {
+        return mIndex.memoryFootprint() + (long)mRssiMin.length * (4 + 4 + 4 + 8 + 4 + 4 + 4 + 4) + mDirty.length * 8L
+                + (mPrefilter != null ? mPrefilter.getMemoryBytes() : 0);
+    }
+
+    private void markDirty(int ordinal)
+    {
+        long bit = 1L << ordinal;
+        if( (mDirty[ordinal >> 6] & bit) == 0 ) {
+            mDirty[ordinal >> 6] |= bit;
+            mDirtyOrdinals.add(ordinal);
+        }
+    }
+
+    private void allocate(int capacity)
+    {
+        mLastRssi = new int[capacity];
+        mRssiMin = new int[capacity];
+        mRssiMax = new int[capacity];
+        mRssiSum = new long[capacity];
+        mRssiCount = new int[capacity];
+        mTid = new byte[capacity][];
+        mData = new byte[capacity][];
+        mGs1 = new Gs1Epc[capacity];
+        mDirty = new long[(capacity + 63) >> 6];
+    }
+
+    private void grow(int capacity)
+    {
+        mLastRssi = Arrays.copyOf(mLastRssi, capacity);
+        mRssiMin = Arrays.copyOf(mRssiMin, capacity);
+        mRssiMax = Arrays.copyOf(mRssiMax, capacity);
+        mRssiSum = Arrays.copyOf(mRssiSum, capacity);
+        mRssiCount = Arrays.copyOf(mRssiCount, capacity);
+        mTid = Arrays.copyOf(mTid, capacity);
+        mData = Arrays.copyOf(mData, capacity);
+        mGs1 = Arrays.copyOf(mGs1, capacity);
+        mDirty = Arrays.copyOf(mDirty, (capacity + 63) >> 6);
+    }
+}
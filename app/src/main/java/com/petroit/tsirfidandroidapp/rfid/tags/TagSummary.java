@@ -0,0 +1,122 @@
+package com.petroit.tsirfidandroidapp.rfid.tags;
+
+import com.petroit.tsirfidandroidapp.rfid.gs1.Gs1Epc;
+
+/**
+ * A copy of the aggregated state of one tag, used to hand the {@link TagStore} contents to
+ * the UI (or any other reader) without sharing the store's arrays
+ */
+public final class TagSummary
+{
+    int mOrdinal;
+    int mGeneration = -1;
+    String mEpc;
+    byte[] mTid;
+    byte[] mData;
+    Gs1Epc mGs1;
+    int mReadCount;
+    int mLastRssi;
+    int mRssiMin;
+    int mRssiMax;
+    double mRssiAverage;
+    long mFirstSeen;
+    long mLastSeen;
+
+    /**
+     * @return the position of the tag in the order first seen
+     */
+    public int getOrdinal() { return mOrdinal; }
+
+    /**
+     * @return the EPC as hex
+     */
+    public String getEpc() { return mEpc; }
+
+    /**
+     * @return the TID when FastId was in use or it has been read otherwise null
+     */
+    public byte[] getTid() { return mTid; }
+
+    /**
+     * @return the latest memory read from the tag besides the EPC and TID, e.g. user memory, otherwise null
+     */
+    public byte[] getData() { return mData; }
+
+    /**
+     * @return the GS1 fields of the EPC or null if it is not GS1 or the store was not decoding
+     */
+    public Gs1Epc getGs1() { return mGs1; }
+
+    public int getReadCount() { return mReadCount; }
+
+    /**
+     * @return the RSSI of the latest read or TagEvent.NOT_PRESENT
+     */
+    public int getLastRssi() { return mLastRssi; }
+
+    public int getRssiMin() { return mRssiMin; }
+
+    public int getRssiMax() { return mRssiMax; }
+
+    /**
+     * @return the mean RSSI of the reads that reported one or NaN
+     */
+    public double getRssiAverage() { return mRssiAverage; }
+
+    public long getFirstSeen() { return mFirstSeen; }
+
+    public long getLastSeen() { return mLastSeen; }
+
+    /**
+     * Append the description of this tag in the inventory list format
+     */
+    public void appendTo(StringBuilder sb)
+    {
+        appendIdentityTo(sb);
+        sb.append('\n');
+        appendStatisticsTo(sb);
+    }
+
+    /**
+     * Append the EPC, the memory read and the GS1 identity, which do not change with each read
+     */
+    public void appendIdentityTo(StringBuilder sb)
+    {
+        sb.append("EPC: ").append(mEpc);
+        if( mTid != null ) {
+            sb.append("\nTID: ");
+            HexCodec.append(sb, mTid, 0, mTid.length);
+        }
+        if( mData != null ) {
+            sb.append("\nDATA: ");
+            HexCodec.append(sb, mData, 0, mData.length);
+        }
+        if( mGs1 != null ) {
+            sb.append("\nGS1: ").append(mGs1.getUri());
+        }
+    }
+
+    /**
+     * Append the RSSI, the read count and how long the tag has been seen for
+     */
+    public void appendStatisticsTo(StringBuilder sb)
+    {
+        sb.append("RSSI: ");
+        if( mLastRssi != TagEvent.NOT_PRESENT ) {
+            sb.append(mLastRssi);
+            sb.append("  (").append(mRssiMin).append(" / ");
+            sb.append(Math.round(mRssiAverage)).append(" / ");
+            sb.append(mRssiMax).append(')');
+        }
+        sb.append("\nReads: ").append(mReadCount);
+        sb.append("  Seen: ").append((mLastSeen - mFirstSeen) / 1000.0).append('s');
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(96);
+        appendTo(sb);
+        return sb.toString();
+    }
+}
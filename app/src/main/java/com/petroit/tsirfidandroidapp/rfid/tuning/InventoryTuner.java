@@ -0,0 +1,310 @@
+package com.petroit.tsirfidandroidapp.rfid.tuning;
+
+import com.petroit.tsirfidandroidapp.rfid.tags.RingBuffer;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.QAlgorithm;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.QuerySession;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.QueryTarget;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Adjusts the inventory parameters between rounds to find new tags as quickly as possible
+ * <p>
+ * The reads and new tags of each round are collected into windows of a few rounds. At the end
+ * of each window at most one parameter is changed and the change is judged over the next window:
+ * it is kept unless the rate of new tags fell, in which case the previous settings are restored
+ * and the tuner holds off for a while. The reader does not report collisions so when no new tags
+ * are being found the read rate stands in: slots lost to collisions lower the reads per second.
+ * The rules, in order:
+ * <ul>
+ * <li>Q - the number of tags answering a round (the peak reads per round) is taken as the
+ * population in the field and a fixed Q set to its log2, one slot per tag. A dynamic Q is fixed
+ * once the estimate is steady over two windows and made dynamic again when it doubles or
+ * halves.</li>
+ * <li>Session - a dense field of tags that are read every round but are rarely new moves from
+ * session 0 to session 2, so tags stay quiet once read and the rest can win slots.</li>
+ * <li>Target - in a persistent session, no new tags for a few windows flips the target A/B so
+ * the tags quieted in one pass are inventoried from the other.</li>
+ * <li>Power - still no new tags after the flips (or in session 0) steps the power up, to the
+ * maximum allowed, to reach tags further away.</li>
+ * </ul>
+ * Every change, keep and revert is recorded as a {@link TuningDecision} for review.
+ * <p>
+ * Rounds are observed on the responder thread while the decisions are read on the UI thread so
+ * access is synchronized.
+ */
+public final class InventoryTuner
+{
+    /**
+     * Told of each decision as it is made
+     */
+    public interface DecisionListener
+    {
+        void onDecision(TuningDecision decision);
+    }
+
+    // A change is reverted when the rate of new tags falls below this fraction of the rate before it
+    private static final double sRevertFraction = 0.9;
+    // Windows to hold off after a revert
+    private static final int sHoldWindowsAfterRevert = 4;
+
+    private final int mWindowRounds;
+    private final RingBuffer<TuningDecision> mDecisions;
+
+    private int mMinimumPower;
+    private int mMaximumPower;
+    private int mPowerStep = 3;
+    private int mDenseReadsPerRound = 64;
+    private int mStallWindows = 2;
+    private DecisionListener mListener;
+
+    // The window being collected
+    private int mRounds;
+    private long mReads;
+    private long mNewTags;
+    private long mNanos;
+    private int mPeakReads;
+
+    private long mRoundCount;
+    private int mLastPeakReads = -1;
+    private int mWindowsWithoutNewTags;
+    private int mFlipsWithoutNewTags;
+    private int mHoldWindows;
+
+    // The change being judged, null when none
+    private RfSettings mTrialBaseline;
+    private String mTrialParameter;
+    private double mTrialBaselineRate;
+    private double mTrialBaselineReadRate;
+
+    /**
+     * @param windowRounds the rounds observed between decisions
+     * @param minimumPower the lowest output power allowed, dBm
+     * @param maximumPower the highest output power allowed, dBm
+     * @param decisionCapacity the number of recent decisions kept
+     */
+    public InventoryTuner(int windowRounds, int minimumPower, int maximumPower, int decisionCapacity)
+    {
+        if( windowRounds < 1 ) {
+            throw new IllegalArgumentException("The window must be at least one round");
+        }
+        mWindowRounds = windowRounds;
+        mMinimumPower = minimumPower;
+        mMaximumPower = maximumPower;
+        mDecisions = new RingBuffer<>(decisionCapacity);
+    }
+
+    public synchronized void setDecisionListener(DecisionListener listener) { mListener = listener; }
+
+    /**
+     * @param step the dBm added each time the power is raised
+     */
+    public synchronized void setPowerStep(int step) { mPowerStep = step; }
+
+    /**
+     * @param readsPerRound the reads per round above which a field of tags counts as dense
+     */
+    public synchronized void setDenseReadsPerRound(int readsPerRound) { mDenseReadsPerRound = readsPerRound; }
+
+    /**
+     * @param windows the windows without new tags before the target is flipped or the power raised
+     */
+    public synchronized void setStallWindows(int windows) { mStallWindows = windows; }
+
+    /**
+     * Observe a round and decide whether to change the settings for the next
+     *
+     * @param reads the reads in the round
+     * @param newTags the reads of tags not seen before
+     * @param durationNanos the time the round took
+     * @param current the settings the round used
+     * @return the settings for the next round, current itself when unchanged
+     */
+    public synchronized RfSettings onRound(int reads, int newTags, long durationNanos, RfSettings current)
+    {
+        mRoundCount++;
+        mRounds++;
+        mReads += reads;
+        mNewTags += newTags;
+        mNanos += durationNanos;
+        mPeakReads = Math.max(mPeakReads, reads);
+        if( mRounds < mWindowRounds ) {
+            return current;
+        }
+
+        double seconds = Math.max(mNanos, 1) / 1e9;
+        double rate = mNewTags / seconds;
+        double readRate = mReads / seconds;
+        double readsPerRound = (double)mReads / mRounds;
+        double newFraction = mReads == 0 ? 0 : (double)mNewTags / mReads;
+        int peakReads = mPeakReads;
+        boolean anyNew = mNewTags > 0;
+        mRounds = 0;
+        mReads = 0;
+        mNewTags = 0;
+        mNanos = 0;
+        mPeakReads = 0;
+
+        RfSettings next = decide(current, rate, readRate, readsPerRound, newFraction, peakReads, anyNew);
+        mLastPeakReads = peakReads;
+        return next;
+    }
+
+    /**
+     * Forget the observations and any change being judged, e.g. for a new stocktake
+     */
+    public synchronized void reset()
+    {
+        mRounds = 0;
+        mReads = 0;
+        mNewTags = 0;
+        mNanos = 0;
+        mPeakReads = 0;
+        mLastPeakReads = -1;
+        mWindowsWithoutNewTags = 0;
+        mFlipsWithoutNewTags = 0;
+        mHoldWindows = 0;
+        mTrialBaseline = null;
+    }
+
+    /**
+     * @return the number of rounds observed
+     */
+    public synchronized long getRoundCount() { return mRoundCount; }
+
+    /**
+     * Copy the recent decisions, oldest first
+     */
+    public synchronized void copyDecisions(List<TuningDecision> decisions)
+    {
+        for( int i = 0; i < mDecisions.size(); i++ ) {
+            decisions.add(mDecisions.get(i));
+        }
+    }
+
+    /**
+     * @return the latest decision or null
+     */
+    public synchronized TuningDecision getLastDecision()
+    {
+        return mDecisions.size() == 0 ? null : mDecisions.get(mDecisions.size() - 1);
+    }
+
+    private RfSettings decide(RfSettings current, double rate, double readRate, double readsPerRound,
+                              double newFraction, int peakReads, boolean anyNew)
+    {
+        if( anyNew ) {
+            mWindowsWithoutNewTags = 0;
+            mFlipsWithoutNewTags = 0;
+        } else {
+            mWindowsWithoutNewTags++;
+        }
+
+        // Judge the last change first
+        if( mTrialBaseline != null ) {
+            RfSettings baseline = mTrialBaseline;
+            String parameter = mTrialParameter;
+            mTrialBaseline = null;
+            boolean worse = mTrialBaselineRate > 0
+                    ? rate < mTrialBaselineRate * sRevertFraction
+                    : rate == 0 && readRate < mTrialBaselineReadRate * sRevertFraction;
+            if( worse ) {
+                mHoldWindows = sHoldWindowsAfterRevert;
+                record(TuningDecision.Action.REVERTED, parameter, current, baseline,
+                        String.format(Locale.US, "new/s fell from %.1f, reads/s %.0f from %.0f",
+                                mTrialBaselineRate, readRate, mTrialBaselineReadRate), rate, readsPerRound);
+                return baseline;
+            }
+            record(TuningDecision.Action.KEPT, parameter, current, current,
+                    String.format(Locale.US, "new/s was %.1f", mTrialBaselineRate), rate, readsPerRound);
+        }
+        if( mHoldWindows > 0 ) {
+            mHoldWindows--;
+            return current;
+        }
+
+        // Q from the estimated population in the field
+        if( peakReads > 0 ) {
+            int estimateQ = log2Round(peakReads);
+            if( current.getQAlgorithm() == QAlgorithm.FIXED ) {
+                int q = current.getQValue();
+                int targetQ = Math.min(15, estimateQ);
+                if( mLastPeakReads > 0 && (peakReads > 2 * mLastPeakReads || 2 * peakReads < mLastPeakReads) ) {
+                    RfSettings dynamic = new RfSettings(QAlgorithm.DYNAMIC, q, current.getSession(),
+                            current.getTarget(), current.getOutputPower());
+                    return change("q", current, dynamic,
+                            String.format(Locale.US, "tags per round moved from %d to %d", mLastPeakReads, peakReads),
+                            rate, readRate, readsPerRound);
+                }
+                if( targetQ != q ) {
+                    return change("q", current, current.withQValue(targetQ),
+                            String.format(Locale.US, "%d tags answering, %d slots", peakReads, 1 << q),
+                            rate, readRate, readsPerRound);
+                }
+            } else if( mLastPeakReads > 0 && 4 * Math.abs(peakReads - mLastPeakReads) <= mLastPeakReads ) {
+                return change("q", current, current.withQValue(estimateQ),
+                        String.format(Locale.US, "steady at about %d tags answering", peakReads),
+                        rate, readRate, readsPerRound);
+            }
+        }
+
+        // A dense field that is mostly read already
+        if( current.getSession() == QuerySession.SESSION_0 && readsPerRound >= mDenseReadsPerRound && newFraction < 0.05 ) {
+            return change("session", current, current.withSession(QuerySession.SESSION_2).withTarget(QueryTarget.TARGET_A),
+                    String.format(Locale.US, "dense, %.1f%% of reads new", 100 * newFraction),
+                    rate, readRate, readsPerRound);
+        }
+
+        if( mWindowsWithoutNewTags >= mStallWindows ) {
+            String reason = String.format(Locale.US, "no new tags for %d windows", mWindowsWithoutNewTags);
+            boolean persistent = current.getSession() != QuerySession.SESSION_0;
+            if( persistent && mFlipsWithoutNewTags < 2 ) {
+                mWindowsWithoutNewTags = 0;
+                mFlipsWithoutNewTags++;
+                QueryTarget flipped = current.getTarget() == QueryTarget.TARGET_A ? QueryTarget.TARGET_B : QueryTarget.TARGET_A;
+                return change("target", current, current.withTarget(flipped), reason, rate, readRate, readsPerRound);
+            }
+            if( current.getOutputPower() < mMaximumPower ) {
+                mWindowsWithoutNewTags = 0;
+                mFlipsWithoutNewTags = 0;
+                int power = Math.max(mMinimumPower, Math.min(mMaximumPower, current.getOutputPower() + mPowerStep));
+                return change("power", current, current.withOutputPower(power), reason, rate, readRate, readsPerRound);
+            }
+        }
+        return current;
+    }
+
+    private RfSettings change(String parameter, RfSettings from, RfSettings to, String reason,
+                              double rate, double readRate, double readsPerRound)
+    {
+        mTrialBaseline = from;
+        mTrialParameter = parameter;
+        mTrialBaselineRate = rate;
+        mTrialBaselineReadRate = readRate;
+        record(TuningDecision.Action.CHANGED, parameter, from, to, reason, rate, readsPerRound);
+        return to;
+    }
+
+    private void record(TuningDecision.Action action, String parameter, RfSettings from, RfSettings to,
+                        String reason, double rate, double readsPerRound)
+    {
+        TuningDecision decision = new TuningDecision(System.currentTimeMillis(), mRoundCount, action, parameter,
+                from, to, reason, rate, readsPerRound);
+        mDecisions.add(decision);
+        if( mListener != null ) {
+            mListener.onDecision(decision);
+        }
+    }
+
+    // The nearest power of two exponent, e.g. 5 for 40 tags
+    static int log2Round(int value)
+    {
+        if( value <= 1 ) {
+            return 0;
+        }
+        int floor = 31 - Integer.numberOfLeadingZeros(value);
+        // Round up when value is above 2^floor * sqrt(2)
+        return (long)value * value > (1L << (2 * floor + 1)) ? floor + 1 : floor;
+    }
+}
@@ -0,0 +1,115 @@
+package com.petroit.tsirfidandroidapp.rfid.tuning;
+
+import com.uk.tsl.rfid.asciiprotocol.enumerations.QAlgorithm;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.QuerySession;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.QueryTarget;
+import com.uk.tsl.rfid.asciiprotocol.parameters.AntennaParameters;
+
+/**
+ * The inventory parameters the {@link InventoryTuner} adjusts
+ * <p>
+ * Instances are immutable, the with methods return a copy with one parameter changed. Values
+ * the reader defaults are given as their defaults: dynamic Q, session 0, target A and maximum
+ * power.
+ */
+public final class RfSettings
+{
+    private final QAlgorithm mQAlgorithm;
+    private final int mQValue;
+    private final QuerySession mSession;
+    private final QueryTarget mTarget;
+    private final int mOutputPower;
+
+    public RfSettings(QAlgorithm qAlgorithm, int qValue, QuerySession session, QueryTarget target, int outputPower)
+    {
+        mQAlgorithm = qAlgorithm == null || qAlgorithm == QAlgorithm.NOT_SPECIFIED ? QAlgorithm.DYNAMIC : qAlgorithm;
+        mQValue = Math.max(0, Math.min(15, qValue));
+        mSession = session == null || session == QuerySession.NOT_SPECIFIED ? QuerySession.SESSION_0 : session;
+        mTarget = target == null || target == QueryTarget.NOT_SPECIFIED ? QueryTarget.TARGET_A : target;
+        mOutputPower = outputPower == AntennaParameters.OutputPowerNotSpecified ? AntennaParameters.MaximumCarrierPower : outputPower;
+    }
+
+    public QAlgorithm getQAlgorithm() { return mQAlgorithm; }
+
+    public int getQValue() { return mQValue; }
+
+    public QuerySession getSession() { return mSession; }
+
+    public QueryTarget getTarget() { return mTarget; }
+
+    /**
+     * @return the output power in dBm
+     */
+    public int getOutputPower() { return mOutputPower; }
+
+    public RfSettings withQValue(int qValue)
+    {
+        return new RfSettings(QAlgorithm.FIXED, qValue, mSession, mTarget, mOutputPower);
+    }
+
+    public RfSettings withSession(QuerySession session)
+    {
+        return new RfSettings(mQAlgorithm, mQValue, session, mTarget, mOutputPower);
+    }
+
+    public RfSettings withTarget(QueryTarget target)
+    {
+        return new RfSettings(mQAlgorithm, mQValue, mSession, target, mOutputPower);
+    }
+
+    public RfSettings withOutputPower(int outputPower)
+    {
+        return new RfSettings(mQAlgorithm, mQValue, mSession, mTarget, outputPower);
+    }
+
+    /**
+     * Append the settings e.g. "Q fixed 5  S2  A  27 dBm"
+     */
+    public void appendTo(StringBuilder sb)
+    {
+        if( mQAlgorithm == QAlgorithm.FIXED ) {
+            sb.append("Q fixed ").append(mQValue);
+        } else {
+            sb.append("Q dynamic");
+        }
+        sb.append("  S").append(sessionNumber(mSession));
+        sb.append("  ").append(mTarget == QueryTarget.TARGET_B ? 'B' : 'A');
+        sb.append("  ").append(mOutputPower).append(" dBm");
+    }
+
+    static int sessionNumber(QuerySession session)
+    {
+        if( session == QuerySession.SESSION_1 ) return 1;
+        if( session == QuerySession.SESSION_2 ) return 2;
+        if( session == QuerySession.SESSION_3 ) return 3;
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if( this == o ) return true;
+        if( !(o instanceof RfSettings) ) return false;
+        RfSettings other = (RfSettings)o;
+        return mQAlgorithm == other.mQAlgorithm && mQValue == other.mQValue && mSession == other.mSession
+                && mTarget == other.mTarget && mOutputPower == other.mOutputPower;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = mQAlgorithm.hashCode();
+        result = 31 * result + mQValue;
+        result = 31 * result + mSession.hashCode();
+        result = 31 * result + mTarget.hashCode();
+        return 31 * result + mOutputPower;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(32);
+        appendTo(sb);
+        return sb.toString();
+    }
+}
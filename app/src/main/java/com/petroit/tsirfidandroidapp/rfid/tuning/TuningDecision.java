@@ -0,0 +1,102 @@
+package com.petroit.tsirfidandroidapp.rfid.tuning;
+
+import java.util.Locale;
+
+/**
+ * One change made, kept or reverted by the {@link InventoryTuner}, with the measurements it was
+ * based on, for reviewing how a stocktake was tuned
+ */
+public final class TuningDecision
+{
+    /**
+     * What the tuner did
+     */
+    public enum Action
+    {
+        // A parameter was changed, it is evaluated over the next window
+        CHANGED,
+        // The change improved or held the discovery rate
+        KEPT,
+        // The change lowered the discovery rate so the previous settings were restored
+        REVERTED
+    }
+
+    private final long mTimeMillis;
+    private final long mRound;
+    private final Action mAction;
+    private final String mParameter;
+    private final RfSettings mFrom;
+    private final RfSettings mTo;
+    private final String mReason;
+    private final double mNewTagsPerSecond;
+    private final double mReadsPerRound;
+
+    TuningDecision(long timeMillis, long round, Action action, String parameter, RfSettings from, RfSettings to,
+                   String reason, double newTagsPerSecond, double readsPerRound)
+    {
+        mTimeMillis = timeMillis;
+        mRound = round;
+        mAction = action;
+        mParameter = parameter;
+        mFrom = from;
+        mTo = to;
+        mReason = reason;
+        mNewTagsPerSecond = newTagsPerSecond;
+        mReadsPerRound = readsPerRound;
+    }
+
+    /**
+     * @return the wall clock time of the decision
+     */
+    public long getTimeMillis() { return mTimeMillis; }
+
+    /**
+     * @return the number of inventory rounds observed when the decision was made
+     */
+    public long getRound() { return mRound; }
+
+    public Action getAction() { return mAction; }
+
+    /**
+     * @return the parameter concerned: "q", "session", "target" or "power"
+     */
+    public String getParameter() { return mParameter; }
+
+    public RfSettings getFrom() { return mFrom; }
+
+    public RfSettings getTo() { return mTo; }
+
+    public String getReason() { return mReason; }
+
+    /**
+     * @return the rate of new tags over the window the decision was based on
+     */
+    public double getNewTagsPerSecond() { return mNewTagsPerSecond; }
+
+    public double getReadsPerRound() { return mReadsPerRound; }
+
+    /**
+     * Append e.g. "#120 changed target: Q dynamic  S2  A  29 dBm -> Q dynamic  S2  B  29 dBm, no new
+     * tags for 2 windows (new/s 0.0, reads/round 3.5)"
+     */
+    public void appendTo(StringBuilder sb)
+    {
+        sb.append('#').append(mRound).append(' ').append(mAction.name().toLowerCase(Locale.US));
+        sb.append(' ').append(mParameter).append(": ");
+        mFrom.appendTo(sb);
+        if( !mFrom.equals(mTo) ) {
+            sb.append(" -> ");
+            mTo.appendTo(sb);
+        }
+        sb.append(", ").append(mReason);
+        sb.append(String.format(Locale.US, " (new/s %.1f, reads/round %.1f)", mNewTagsPerSecond, mReadsPerRound));
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(128);
+        appendTo(sb);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package com.petroit.tsirfidandroidapp.rfid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the typed model events
+ */
+public class ModelEventsTest {
+
+    @Test
+    public void publish_reachesOnlyListenersOfThatType() {
+        ModelEvents events = new ModelEvents();
+        final ArrayList<String> received = new ArrayList<>();
+
+        events.addBarcodeReadListener(new ModelEvents.BarcodeReadListener() {
+            @Override
+            public void onBarcodeRead(String barcode, long timestamp) {
+                received.add("BC " + barcode);
+            }
+        });
+        events.addErrorListener(new ModelEvents.ErrorListener() {
+            @Override
+            public void onError(String errorCode, String message) {
+                received.add("ER " + errorCode + " " + message);
+            }
+        });
+
+        events.publishBarcodeRead("12345", 0);
+        events.publishError("005", "No antenna");
+        events.publishBusyChanged(true);
+
+        assertEquals(2, received.size());
+        assertEquals("BC 12345", received.get(0));
+        assertEquals("ER 005 No antenna", received.get(1));
+    }
+
+    @Test
+    public void removeListener_stopsDelivery() {
+        ModelEvents events = new ModelEvents();
+        final int[] cycles = new int[1];
+        ModelEvents.ScanCycleEndedListener listener = new ModelEvents.ScanCycleEndedListener() {
+            @Override
+            public void onScanCycleEnded(int readCount, long durationNanos) {
+                cycles[0] += readCount;
+            }
+        };
+
+        events.addScanCycleEndedListener(listener);
+        events.addScanCycleEndedListener(listener);
+        events.publishScanCycleEnded(5, 1000);
+        assertEquals(5, cycles[0]);
+
+        events.removeScanCycleEndedListener(listener);
+        events.publishScanCycleEnded(5, 1000);
+        assertEquals(5, cycles[0]);
+        assertFalse(events.hasTagReadListeners());
+    }
+
+    @Test
+    public void listener_canRemoveItselfWhilePublishing() {
+        final ModelEvents events = new ModelEvents();
+        final int[] calls = new int[2];
+        events.addBusyChangedListener(new ModelEvents.BusyChangedListener() {
+            @Override
+            public void onBusyChanged(boolean busy) {
+                calls[0]++;
+                events.removeBusyChangedListener(this);
+            }
+        });
+        events.addBusyChangedListener(new ModelEvents.BusyChangedListener() {
+            @Override
+            public void onBusyChanged(boolean busy) {
+                calls[1]++;
+            }
+        });
+
+        events.publishBusyChanged(true);
+        events.publishBusyChanged(false);
+        assertEquals(1, calls[0]);
+        assertEquals(2, calls[1]);
+    }
+}
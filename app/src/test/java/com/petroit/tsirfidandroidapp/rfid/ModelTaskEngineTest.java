@@ -0,0 +1,129 @@
+package com.petroit.tsirfidandroidapp.rfid;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the model task engine
+ */
+public class ModelTaskEngineTest {
+
+    private final ModelTaskEngine mEngine = new ModelTaskEngine("Test", 1, 4);
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+        mEngine.shutdown();
+    }
+
+    // Occupies the single worker until released
+    private ModelTask blockWorker() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        ModelTask task = mEngine.submit(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    mRelease.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, ModelTaskEngine.PRIORITY_NORMAL);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return task;
+    }
+
+    private Runnable record(final List<String> order, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+            }
+        };
+    }
+
+    @Test
+    public void queuedTasks_runByPriorityThenInOrder() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        blockWorker();
+        mEngine.submit(record(order, "low"), ModelTaskEngine.PRIORITY_LOW);
+        mEngine.submit(record(order, "normal1"), ModelTaskEngine.PRIORITY_NORMAL);
+        mEngine.submit(record(order, "high"), ModelTaskEngine.PRIORITY_HIGH);
+        ModelTask last = mEngine.submit(record(order, "normal2"), ModelTaskEngine.PRIORITY_NORMAL);
+        assertEquals(4, mEngine.getQueuedCount());
+
+        mRelease.countDown();
+        last.get(5, TimeUnit.SECONDS);
+        // The low priority task runs after the last normal one
+        while (order.size() < 4) {
+            Thread.sleep(1);
+        }
+        assertEquals("high", order.get(0));
+        assertEquals("normal1", order.get(1));
+        assertEquals("normal2", order.get(2));
+        assertEquals("low", order.get(3));
+    }
+
+    @Test
+    public void submit_throwsWhenQueueIsFull() throws Exception {
+        blockWorker();
+        for (int i = 0; i < 4; i++) {
+            mEngine.submit(record(new ArrayList<String>(), "x"), ModelTaskEngine.PRIORITY_NORMAL);
+        }
+        try {
+            mEngine.submit(record(new ArrayList<String>(), "x"), ModelTaskEngine.PRIORITY_NORMAL);
+            fail("Expected the queue to be full");
+        } catch (ModelException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void cancel_removesQueuedTaskAndInterruptsRunningTask() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        ModelTask running = blockWorker();
+        ModelTask queued = mEngine.submit(record(order, "queued"), ModelTaskEngine.PRIORITY_NORMAL);
+
+        assertTrue(queued.cancel(false));
+        assertEquals(0, mEngine.getQueuedCount());
+
+        assertTrue(running.cancel(true));
+        try {
+            running.get();
+            fail("Expected the task to be cancelled");
+        } catch (CancellationException e) {
+            // expected
+        }
+        assertTrue(order.isEmpty());
+    }
+
+    @Test
+    public void failure_isReportedThroughTheFuture() throws Exception {
+        ModelTask task = mEngine.submit(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("No reader");
+            }
+        }, ModelTaskEngine.PRIORITY_NORMAL);
+        try {
+            task.get(5, TimeUnit.SECONDS);
+            fail("Expected the task to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertTrue(task.getFailure() instanceof IllegalStateException);
+        assertTrue(task.getLatencyNanos() >= task.getRunNanos());
+    }
+}
@@ -0,0 +1,43 @@
+package com.petroit.tsirfidandroidapp.rfid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the scan cycle statistics
+ */
+public class ScanCycleStatisticsTest {
+
+    @Test
+    public void cyclesAndGaps_giveTheDutyCycleAndReadRate() {
+        ScanCycleStatistics statistics = new ScanCycleStatistics();
+        statistics.recordCycle(100, 300_000_000L);
+        statistics.recordGap(100_000_000L);
+        statistics.recordCycle(100, 300_000_000L);
+        statistics.recordGap(300_000_000L);
+
+        assertEquals(2, statistics.getCycleCount());
+        assertEquals(200, statistics.getReadCount());
+        assertEquals(300_000_000L, statistics.getAverageCycleNanos());
+        assertEquals(200_000_000L, statistics.getAverageGapNanos());
+        assertEquals(300_000_000L, statistics.getMaximumGapNanos());
+        assertEquals(300_000_000L, statistics.getLastGapNanos());
+        assertEquals(0.6, statistics.getDutyCycle(), 1e-9);
+        assertEquals(200.0, statistics.getReadsPerSecond(), 1e-9);
+    }
+
+    @Test
+    public void reset_clearsEverything() {
+        ScanCycleStatistics statistics = new ScanCycleStatistics();
+        statistics.recordCycle(10, 1000);
+        statistics.recordGap(1000);
+        statistics.reset();
+
+        assertEquals(0, statistics.getCycleCount());
+        assertEquals(0, statistics.getGapCount());
+        assertEquals(0, statistics.getMaximumGapNanos());
+        assertEquals(1.0, statistics.getDutyCycle(), 1e-9);
+        assertEquals(0.0, statistics.getReadsPerSecond(), 1e-9);
+    }
+}
@@ -0,0 +1,209 @@
+package com.petroit.tsirfidandroidapp.rfid.bulkread;
+
+import com.petroit.tsirfidandroidapp.rfid.tags.HexCodec;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEventPool;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagStore;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagSummary;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the bulk read engine against a scripted field of tags
+ */
+public class BulkReadEngineTest {
+
+    /**
+     * The tags in front of the reader, each answers once its silent count has run out
+     */
+    private static class Field implements BulkReadEngine.Station {
+        final List<byte[]> epcs = new ArrayList<>();
+        final List<int[]> silent = new ArrayList<>();
+        final List<String> masks = new ArrayList<>();
+
+        void add(byte[] epc, int silentReads) {
+            epcs.add(epc);
+            silent.add(new int[]{silentReads});
+        }
+
+        @Override
+        public boolean read(byte[] mask, int maskBits, BulkReadEngine.Sink sink) {
+            StringBuilder sb = new StringBuilder();
+            HexCodec.append(sb, mask, 0, (maskBits + 7) / 8);
+            masks.add(sb.append('/').append(maskBits).toString());
+            for (int i = 0; i < epcs.size(); i++) {
+                byte[] epc = epcs.get(i);
+                if (!matches(epc, mask, maskBits)) continue;
+                if (silent.get(i)[0]-- > 0) continue;
+                sink.onData(epc, epc.length, new byte[]{epc[epc.length - 2], epc[epc.length - 1]});
+            }
+            return true;
+        }
+
+        private static boolean matches(byte[] epc, byte[] mask, int maskBits) {
+            if (epc.length * 8 < maskBits) return false;
+            for (int bit = 0; bit < maskBits; bit++) {
+                int shift = 7 - (bit & 7);
+                if (((epc[bit >> 3] >> shift) & 1) != ((mask[bit >> 3] >> shift) & 1)) return false;
+            }
+            return true;
+        }
+    }
+
+    private final TagEvent mEvent = new TagEventPool(1).obtain();
+    private final TagStore mStore = new TagStore(64, 1024);
+    private final Field mField = new Field();
+    private final BulkReadEngine mEngine = new BulkReadEngine(mField, 32, 32, 3, 250, 1000);
+
+    public BulkReadEngineTest() {
+        mEngine.setListener(new BulkReadEngine.Listener() {
+            @Override
+            public void onRead(int ordinal, int generation, byte[] data) {
+                mStore.setBankData(ordinal, generation, false, data);
+            }
+        });
+    }
+
+    private static byte[] epc(int prefix, int serial) {
+        byte[] epc = new byte[12];
+        epc[0] = 0x30;
+        epc[1] = (byte) prefix;
+        epc[10] = (byte) (serial >> 8);
+        epc[11] = (byte) serial;
+        return epc;
+    }
+
+    private void seen(byte[] epc, int silentReads) {
+        mEvent.set(epc, epc.length, -50, TagEvent.NOT_PRESENT, TagEvent.NOT_PRESENT, 0, 0);
+        mStore.record(mEvent);
+        mField.add(epc, silentReads);
+    }
+
+    private byte[] data(int ordinal) {
+        TagSummary summary = new TagSummary();
+        mStore.copyTo(ordinal, summary);
+        return summary.getData();
+    }
+
+    @Test
+    public void sharedPrefixes_areReadInBatches() {
+        // Inserted out of order, the batches are runs of the sorted EPCs
+        for (int serial = 99; serial >= 0; serial--) {
+            seen(epc(1, serial), 0);
+        }
+        assertEquals(100, mEngine.load(mStore, 0));
+
+        int batches = 0;
+        while (mEngine.runBatch(0) > 0) {
+            batches++;
+        }
+        // Serials 0-31, 32-63, 64-95 then 96-99
+        assertEquals(4, batches);
+        assertTrue(mEngine.isFinished());
+        assertEquals(100, mEngine.getReadCount());
+        assertEquals(0, mEngine.getRetryCount());
+        assertEquals(Arrays.asList("300100000000000000000000/91", "300100000000000000000020/91",
+                "300100000000000000000040/91", "300100000000000000000060/94"), mField.masks);
+        for (int ordinal = 0; ordinal < 100; ordinal++) {
+            assertArrayEquals(new byte[]{0, (byte) (99 - ordinal)}, data(ordinal));
+        }
+    }
+
+    @Test
+    public void unrelatedEpcs_areSelectedOneAtATime() {
+        byte[] first = {0x11, 0x22, 0x33, 0x44, 0x55, 0x66};
+        byte[] second = {0x11, 0x22, 0x77, 0x44, 0x55, 0x66};
+        seen(second, 0);
+        seen(first, 0);
+        mEngine.load(mStore, 0);
+
+        assertEquals(1, mEngine.runBatch(0));
+        assertEquals(1, mEngine.runBatch(0));
+        assertEquals(0, mEngine.runBatch(0));
+        assertEquals(Arrays.asList("112233445566/48", "112277445566/48"), mField.masks);
+        assertEquals(-1, mEngine.getDelay(0));
+    }
+
+    @Test
+    public void droppedTag_isRetriedAfterABackoff() {
+        seen(epc(1, 1), 0);
+        seen(epc(1, 2), 2);
+        mEngine.load(mStore, 0);
+
+        assertEquals(2, mEngine.runBatch(0));
+        assertEquals(1, mEngine.getReadCount());
+        assertEquals(0, mEngine.runBatch(100));
+        assertEquals(150, mEngine.getDelay(100));
+
+        // The second wait is twice the first
+        assertEquals(1, mEngine.runBatch(250));
+        assertEquals(500, mEngine.getDelay(250));
+        assertEquals(0, mEngine.runBatch(749));
+        assertEquals(1, mEngine.runBatch(750));
+        assertTrue(mEngine.isFinished());
+        assertEquals(2, mEngine.getRetryCount());
+        assertEquals("300100000000000000000002/96", mField.masks.get(2));
+        assertArrayEquals(new byte[]{0, 2}, data(1));
+    }
+
+    @Test
+    public void absentTag_isGivenUpOn() {
+        seen(epc(1, 1), 0);
+        mField.epcs.clear();
+        mField.silent.clear();
+        mEngine.load(mStore, 0);
+
+        long now = 0;
+        while (!mEngine.isFinished()) {
+            mEngine.runBatch(now);
+            now += 1000;
+        }
+        assertEquals(3, mEngine.getBatchCount());
+        assertEquals(1, mEngine.getMissingCount());
+        assertEquals(0, mEngine.getReadCount());
+        assertNull(data(0));
+    }
+
+    @Test
+    public void tagsThatWereNotAskedFor_areCounted() {
+        seen(epc(1, 1), 0);
+        seen(epc(1, 2), 0);
+        mField.add(epc(1, 3), 0);
+        mEngine.load(mStore, 0);
+
+        mEngine.runBatch(0);
+        assertEquals(2, mEngine.getReadCount());
+        assertEquals(1, mEngine.getStrayCount());
+    }
+
+    @Test
+    public void clearedStore_isNotWritten() {
+        seen(epc(1, 1), 0);
+        mEngine.load(mStore, 0);
+        mStore.clear();
+        seen(epc(2, 1), 0);
+
+        mEngine.runBatch(0);
+        assertEquals(1, mEngine.getReadCount());
+        assertNull(data(0));
+    }
+
+    @Test
+    public void progress_isReported() {
+        for (int serial = 0; serial < 10; serial++) {
+            seen(epc(1, serial), 0);
+        }
+        mEngine.load(mStore, 1_000);
+        mEngine.runBatch(1_500);
+
+        StringBuilder sb = new StringBuilder();
+        mEngine.appendTo(sb, 99_000);
+        assertEquals("Read 10/10  missing 0  retries 0  20 tags/s", sb.toString());
+    }
+}
@@ -0,0 +1,24 @@
+package com.petroit.tsirfidandroidapp.rfid.commission;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the commissioning station's reader operations
+ */
+public class CommissioningModelTest {
+
+    @Test
+    public void pc_keepsEveryBitOfTheWordRead() {
+        // 6 words of EPC with the UMI, XI and T bits and an AFI
+        assertEquals(0x37A5, CommissioningModel.pcOf(new byte[]{ 0x37, (byte) 0xA5 }));
+        assertEquals(0xFFFF, CommissioningModel.pcOf(new byte[]{ (byte) 0xFF, (byte) 0xFF }));
+    }
+
+    @Test
+    public void pc_isMissingWithoutTheWordRead() {
+        assertEquals(-1, CommissioningModel.pcOf(null));
+        assertEquals(-1, CommissioningModel.pcOf(new byte[1]));
+    }
+}
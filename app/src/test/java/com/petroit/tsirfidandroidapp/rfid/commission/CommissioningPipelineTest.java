@@ -0,0 +1,238 @@
+package com.petroit.tsirfidandroidapp.rfid.commission;
+
+import com.petroit.tsirfidandroidapp.rfid.gs1.Sgtin96Encoder;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the commissioning pipeline against a scripted station
+ */
+public class CommissioningPipelineTest {
+
+    private static final String GTIN = "80614141123458";
+
+    /**
+     * One tag in front of the reader, each call fails while its failure count is above zero
+     */
+    private static class FakeStation implements CommissioningPipeline.Station {
+        byte[] epc = new byte[12];
+        int pc = 0x3000;
+        boolean present = true;
+        int readFailures;
+        int writeFailures;
+        boolean writeLostReply;
+        int readBackFailures;
+        int lockFailures;
+        int writes;
+        int lastWritePc;
+        final List<String> locks = new ArrayList<>();
+
+        @Override
+        public int readNearest(byte[] dest) {
+            if (!present || readFailures-- > 0) return -1;
+            System.arraycopy(epc, 0, dest, 0, epc.length);
+            return pc;
+        }
+
+        @Override
+        public boolean write(byte[] currentEpc, int currentLength, int newPc, byte[] newEpc, int length) {
+            writes++;
+            assertArrayEquals(epc, Arrays.copyOf(currentEpc, currentLength));
+            lastWritePc = newPc;
+            if (writeFailures-- > 0) return false;
+            if (newPc >= 0) pc = newPc;
+            epc = Arrays.copyOf(newEpc, length);
+            if (writeLostReply) {
+                writeLostReply = false;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean readBack(byte[] selectEpc, int length, byte[] dest) {
+            if (readBackFailures-- > 0) return false;
+            System.arraycopy(epc, 0, dest, 0, epc.length);
+            return Arrays.equals(epc, Arrays.copyOf(selectEpc, length));
+        }
+
+        @Override
+        public boolean lock(byte[] selectEpc, int length, String payload) {
+            if (lockFailures-- > 0) return false;
+            locks.add(payload);
+            return true;
+        }
+
+        void nextTag(int id) {
+            epc = new byte[12];
+            epc[0] = (byte) 0xE2;
+            epc[11] = (byte) id;
+            pc = 0x3000;
+        }
+    }
+
+    private final FakeStation mStation = new FakeStation();
+    private final CommissioningPipeline mPipeline = new CommissioningPipeline(mStation, 3, 16);
+
+    private static byte[] expected(long serial) {
+        byte[] epc = new byte[Sgtin96Encoder.EPC_BYTES];
+        Sgtin96Encoder.encode(GTIN, 7, 3, serial, epc);
+        return epc;
+    }
+
+    @Test
+    public void tag_isWrittenVerifiedAndLocked() {
+        mPipeline.setJob(new CommissioningJob(GTIN, 7, 3, 6789, "lockpayload"));
+        final String[] reported = new String[1];
+        mPipeline.setListener(new CommissioningPipeline.Listener() {
+            @Override
+            public void onAttempt(CommissionOutcome outcome, long serial, String epc) {
+                reported[0] = outcome + " " + serial + " " + epc;
+            }
+        });
+        mStation.nextTag(1);
+
+        assertEquals(CommissionOutcome.COMMISSIONED, mPipeline.commissionNext(0));
+        assertArrayEquals(expected(6789), mStation.epc);
+        assertEquals(-1, mStation.lastWritePc);
+        assertEquals(Arrays.asList("lockpayload"), mStation.locks);
+        assertEquals("COMMISSIONED 6789 3074257BF7194E4000001A85", reported[0]);
+        assertEquals(6790, mPipeline.getNextSerial());
+        assertEquals(0, mPipeline.getRetryCount());
+    }
+
+    @Test
+    public void sameTag_isNotWrittenTwice() {
+        mPipeline.setJob(new CommissioningJob(GTIN, 7, 3, 1, null));
+        mStation.nextTag(1);
+        assertEquals(CommissionOutcome.COMMISSIONED, mPipeline.commissionNext(0));
+        assertEquals(CommissionOutcome.ALREADY_COMMISSIONED, mPipeline.commissionNext(0));
+        assertEquals(1, mStation.writes);
+        assertEquals(2, mPipeline.getNextSerial());
+
+        mStation.nextTag(2);
+        assertEquals(CommissionOutcome.COMMISSIONED, mPipeline.commissionNext(0));
+        assertArrayEquals(expected(2), mStation.epc);
+    }
+
+    @Test
+    public void noTag_usesNoSerial() {
+        mPipeline.setJob(new CommissioningJob(GTIN, 7, 3, 1, null));
+        mStation.present = false;
+        assertEquals(CommissionOutcome.NO_TAG, mPipeline.commissionNext(0));
+        assertEquals(1, mPipeline.getNextSerial());
+        assertEquals(2, mPipeline.getRetryCount());
+    }
+
+    @Test
+    public void noJob_hasNoSerial() {
+        assertEquals(CommissionOutcome.NO_SERIAL, mPipeline.commissionNext(0));
+        mPipeline.setJob(new CommissioningJob(GTIN, 7, 3, Sgtin96Encoder.MAXIMUM_SERIAL, null));
+        mStation.nextTag(1);
+        assertEquals(CommissionOutcome.COMMISSIONED, mPipeline.commissionNext(0));
+        mStation.nextTag(2);
+        assertEquals(CommissionOutcome.NO_SERIAL, mPipeline.commissionNext(0));
+    }
+
+    @Test
+    public void lostWriteReply_isFoundOnTheReread() {
+        mPipeline.setJob(new CommissioningJob(GTIN, 7, 3, 1, null));
+        mStation.nextTag(1);
+        mStation.writeLostReply = true;
+        assertEquals(CommissionOutcome.COMMISSIONED, mPipeline.commissionNext(0));
+        assertEquals(1, mStation.writes);
+        assertEquals(1, mPipeline.getRetryCount());
+    }
+
+    @Test
+    public void failedWrite_skipsTheSerialAndDoesNotBlockTheNextTag() {
+        mPipeline.setJob(new CommissioningJob(GTIN, 7, 3, 1, null));
+        mStation.nextTag(1);
+        mStation.writeFailures = 3;
+        assertEquals(CommissionOutcome.WRITE_FAILED, mPipeline.commissionNext(0));
+        assertEquals(3, mStation.writes);
+
+        mStation.nextTag(2);
+        assertEquals(CommissionOutcome.COMMISSIONED, mPipeline.commissionNext(0));
+        assertArrayEquals(expected(2), mStation.epc);
+        assertEquals(1, mPipeline.getCount(CommissionOutcome.WRITE_FAILED));
+        assertEquals(1, mPipeline.getCount(CommissionOutcome.COMMISSIONED));
+    }
+
+    @Test
+    public void verifyAndLockFailures_areReported() {
+        mPipeline.setJob(new CommissioningJob(GTIN, 7, 3, 1, "lockpayload"));
+        mStation.nextTag(1);
+        mStation.readBackFailures = 3;
+        assertEquals(CommissionOutcome.VERIFY_FAILED, mPipeline.commissionNext(0));
+
+        mStation.nextTag(2);
+        mStation.readBackFailures = 2;
+        mStation.lockFailures = 3;
+        assertEquals(CommissionOutcome.LOCK_FAILED, mPipeline.commissionNext(0));
+        assertTrue(mStation.locks.isEmpty());
+        assertEquals(3, mPipeline.getNextSerial());
+    }
+
+    @Test
+    public void failedLock_isTriedAgainWithoutANewSerial() {
+        mPipeline.setJob(new CommissioningJob(GTIN, 7, 3, 1, "lockpayload"));
+        mStation.nextTag(1);
+        mStation.lockFailures = 3;
+        assertEquals(CommissionOutcome.LOCK_FAILED, mPipeline.commissionNext(0));
+        assertEquals(2, mPipeline.getNextSerial());
+
+        // Still nearest, only the lock is tried again
+        assertEquals(CommissionOutcome.COMMISSIONED, mPipeline.commissionNext(0));
+        assertEquals(1, mStation.writes);
+        assertArrayEquals(expected(1), mStation.epc);
+        assertEquals(Arrays.asList("lockpayload"), mStation.locks);
+        assertEquals(2, mPipeline.getNextSerial());
+        assertEquals(CommissionOutcome.ALREADY_COMMISSIONED, mPipeline.commissionNext(0));
+        assertEquals(1, mPipeline.getCount(CommissionOutcome.COMMISSIONED));
+    }
+
+    @Test
+    public void longerEpc_hasItsPcRewritten() {
+        mPipeline.setJob(new CommissioningJob(GTIN, 7, 3, 1, null));
+        mStation.epc = new byte[16];
+        mStation.pc = 0x4000 | 0x0400;
+        assertEquals(CommissionOutcome.COMMISSIONED, mPipeline.commissionNext(0));
+        assertEquals(0x3000 | 0x0400, mStation.lastWritePc);
+        assertEquals(0x3400, mStation.pc);
+        assertEquals(12, mStation.epc.length);
+    }
+
+    @Test
+    public void pcRewrite_keepsTheBitsOtherThanTheLength() {
+        mPipeline.setJob(new CommissioningJob(GTIN, 7, 3, 1, null));
+        mStation.epc = new byte[8];
+        mStation.pc = 0x2000 | 0x07FF;
+        assertEquals(CommissionOutcome.COMMISSIONED, mPipeline.commissionNext(0));
+        assertEquals(0x3000 | 0x07FF, mStation.lastWritePc);
+    }
+
+    @Test
+    public void tagsPerMinute_coverTheLastMinute() {
+        mPipeline.setJob(new CommissioningJob(GTIN, 7, 3, 1, null));
+        for (int i = 0; i < 20; i++) {
+            mStation.nextTag(i);
+            mPipeline.commissionNext(i * 5_000L);
+        }
+        // Completed at 0 to 95 s, the last minute holds those after 35 s
+        assertEquals(12, mPipeline.getTagsPerMinute(95_000));
+
+        StringBuilder sb = new StringBuilder();
+        mPipeline.appendTo(sb, 95_000);
+        assertEquals("Next 21  12/min  done 20  failed 0  retries 0", sb.toString());
+        assertEquals(0, mPipeline.getTagsPerMinute(1_000_000));
+    }
+}
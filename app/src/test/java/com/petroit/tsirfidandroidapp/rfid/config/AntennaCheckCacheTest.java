@@ -0,0 +1,37 @@
+package com.petroit.tsirfidandroidapp.rfid.config;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for remembering antenna checks
+ */
+public class AntennaCheckCacheTest {
+
+    private final AntennaCheckCache mCache = new AntennaCheckCache(1000);
+
+    @Test
+    public void presentAntenna_isTrustedUntilItExpires() {
+        assertFalse(mCache.isKnownPresent(0));
+        mCache.record(true, 0);
+        assertTrue(mCache.isKnownPresent(500));
+        assertTrue(mCache.isKnownPresent(999));
+        assertFalse(mCache.isKnownPresent(1000));
+        assertEquals(1, mCache.getCheckCount());
+        assertEquals(2, mCache.getHitCount());
+    }
+
+    @Test
+    public void failedCheck_isNotRemembered() {
+        mCache.record(false, 0);
+        assertFalse(mCache.isKnownPresent(1));
+    }
+
+    @Test
+    public void invalidate_forgetsTheCheck() {
+        mCache.record(true, 0);
+        mCache.invalidate();
+        assertFalse(mCache.isKnownPresent(1));
+    }
+}
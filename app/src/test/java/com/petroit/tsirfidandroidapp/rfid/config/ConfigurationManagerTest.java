@@ -0,0 +1,154 @@
+package com.petroit.tsirfidandroidapp.rfid.config;
+
+import com.petroit.tsirfidandroidapp.rfid.tuning.RfSettings;
+import com.petroit.tsirfidandroidapp.rfid.inventory.DatabankInventoryCommand;
+import com.uk.tsl.rfid.asciiprotocol.commands.InventoryCommand;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.Databank;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.QAlgorithm;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.QuerySession;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.QueryTarget;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.TriState;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the debounced configuration updates
+ */
+public class ConfigurationManagerTest {
+
+    private final List<ReaderConfiguration> mSent = new ArrayList<>();
+    private final List<Long> mScheduled = new ArrayList<>();
+    private boolean mConnected = true;
+
+    private final ConfigurationManager mManager = new ConfigurationManager(new ConfigurationManager.Sender() {
+        @Override
+        public boolean send(ReaderConfiguration configuration) {
+            if( mConnected ) {
+                mSent.add(configuration);
+            }
+            return mConnected;
+        }
+    }, new ConfigurationManager.Scheduler() {
+        @Override
+        public void scheduleFlush(long delayMs) {
+            mScheduled.add(delayMs);
+        }
+    }, 250);
+
+    private static ReaderConfiguration power(int outputPower) {
+        return new ReaderConfiguration(new RfSettings(QAlgorithm.DYNAMIC, 4, QuerySession.SESSION_1, QueryTarget.TARGET_A, outputPower), false);
+    }
+
+    @Test
+    public void rapidChanges_areSentOnceWithTheLastValue() {
+        assertTrue(mManager.request(power(20), 1000));
+        assertTrue(mManager.request(power(22), 1100));
+        assertTrue(mManager.request(power(25), 1200));
+        assertEquals(1, mScheduled.size());
+        assertEquals(250L, (long)mScheduled.get(0));
+
+        // Not yet quiet for long enough
+        assertFalse(mManager.flush(1250));
+        assertEquals(2, mScheduled.size());
+        assertEquals(200L, (long)mScheduled.get(1));
+
+        assertTrue(mManager.flush(1450));
+        assertEquals(1, mSent.size());
+        assertEquals(power(25), mSent.get(0));
+        assertEquals(power(25), mManager.getApplied());
+        assertEquals(2, mManager.getCoalescedCount());
+        assertFalse(mManager.isFlushScheduled());
+    }
+
+    @Test
+    public void unchangedConfiguration_isNotSent() {
+        mManager.request(power(20), 0);
+        mManager.flush(250);
+        assertFalse(mManager.request(power(20), 1000));
+        assertEquals(1, mScheduled.size());
+
+        // Changed and changed back before the flush
+        mManager.request(power(21), 2000);
+        mManager.request(power(20), 2100);
+        assertFalse(mManager.flush(2350));
+        assertEquals(1, mSent.size());
+        assertEquals(1, mManager.getSentCount());
+        assertEquals(2, mManager.getUnchangedCount());
+        assertEquals(4, mManager.getRequestCount());
+    }
+
+    @Test
+    public void markApplied_dropsThePendingFlush() {
+        mManager.request(power(20), 0);
+        mManager.markApplied(power(20));
+        assertFalse(mManager.flush(250));
+        assertTrue(mSent.isEmpty());
+    }
+
+    @Test
+    public void invalidate_sendsTheNextRequest() {
+        mManager.applyNow(power(20));
+        assertFalse(mManager.applyNow(power(20)));
+        mManager.invalidate();
+        assertNull(mManager.getApplied());
+        assertTrue(mManager.request(power(20), 0));
+        assertTrue(mManager.flush(250));
+        assertEquals(2, mSent.size());
+    }
+
+    @Test
+    public void failedSend_isRetriedByTheNextRequest() {
+        mConnected = false;
+        mManager.request(power(20), 0);
+        assertFalse(mManager.flush(250));
+        assertNull(mManager.getApplied());
+
+        mConnected = true;
+        assertTrue(mManager.request(power(20), 500));
+        assertTrue(mManager.flush(750));
+        assertEquals(power(20), mManager.getApplied());
+    }
+
+    @Test
+    public void flush_withoutRequest_doesNothing() {
+        assertFalse(mManager.flush(0));
+        assertTrue(mScheduled.isEmpty());
+    }
+
+    @Test
+    public void readerConfiguration_comparesTheCommandParameters() {
+        InventoryCommand command = new InventoryCommand();
+        command.setQuerySession(QuerySession.SESSION_2);
+        command.setOutputPower(24);
+        ReaderConfiguration first = ReaderConfiguration.of(command);
+        assertEquals(first, ReaderConfiguration.of(command));
+
+        command.setUsefastId(TriState.YES);
+        ReaderConfiguration fastId = ReaderConfiguration.of(command);
+        assertFalse(first.equals(fastId));
+        assertEquals("Q dynamic  S2  A  24 dBm  FastId", fastId.toString());
+    }
+
+    @Test
+    public void readerConfiguration_includesTheMemoryRead() {
+        DatabankInventoryCommand command = new DatabankInventoryCommand();
+        ReaderConfiguration plain = ReaderConfiguration.of(command);
+        assertNull(plain.getReadBank());
+
+        command.setBank(Databank.USER);
+        command.setOffset(0);
+        command.setLength(4);
+        ReaderConfiguration read = ReaderConfiguration.of(command);
+        assertFalse(plain.equals(read));
+        assertEquals(read, ReaderConfiguration.of(command));
+        assertTrue(read.toString().endsWith("  read usr 4 words @0"));
+
+        command.setLength(2);
+        assertFalse(read.equals(ReaderConfiguration.of(command)));
+    }
+}
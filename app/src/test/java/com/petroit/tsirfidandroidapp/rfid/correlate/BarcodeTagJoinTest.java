@@ -0,0 +1,146 @@
+package com.petroit.tsirfidandroidapp.rfid.correlate;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the barcode to tag join
+ */
+public class BarcodeTagJoinTest {
+
+    private final List<long[]> mPairs = new ArrayList<>();
+
+    private final BarcodeTagJoin.Listener mListener = new BarcodeTagJoin.Listener() {
+        @Override
+        public void onAssociation(int barcodeIndex, int tagOrdinal, long readTime) {
+            mPairs.add(new long[]{barcodeIndex, tagOrdinal, readTime});
+        }
+    };
+
+    private void assertPair(int index, int barcode, int tag, long time) {
+        long[] pair = mPairs.get(index);
+        assertEquals(barcode, pair[0]);
+        assertEquals(tag, pair[1]);
+        assertEquals(time, pair[2]);
+    }
+
+    @Test
+    public void readsBeforeAndAfterTheScan_arePaired() {
+        BarcodeTagJoin join = new BarcodeTagJoin(mListener, 1000, 5000, 64, 4, 64);
+        join.onTagRead(1, 0);
+        join.onTagRead(2, 9500);
+        join.onBarcode(0, 10_000);
+        join.onTagRead(3, 12_000);
+        join.onTagRead(4, 15_000);
+        join.onTagRead(5, 15_001);
+
+        assertEquals(3, mPairs.size());
+        assertPair(0, 0, 2, 9500);
+        assertPair(1, 0, 3, 12_000);
+        assertPair(2, 0, 4, 15_000);
+        assertEquals(3, join.getAssociationCount());
+    }
+
+    @Test
+    public void repeatReads_arePairedOnce() {
+        BarcodeTagJoin join = new BarcodeTagJoin(mListener, 1000, 5000, 64, 4, 64);
+        join.onTagRead(7, 100);
+        join.onTagRead(7, 200);
+        join.onBarcode(0, 300);
+        join.onTagRead(7, 400);
+        join.onTagRead(8, 500);
+        join.onTagRead(8, 600);
+
+        assertEquals(2, mPairs.size());
+        assertPair(0, 0, 7, 100);
+        assertPair(1, 0, 8, 500);
+    }
+
+    @Test
+    public void overlappingWindows_eachPairTheRead() {
+        BarcodeTagJoin join = new BarcodeTagJoin(mListener, 0, 5000, 64, 4, 64);
+        join.onBarcode(0, 0);
+        join.onBarcode(1, 3000);
+        join.onTagRead(9, 4000);
+        join.onTagRead(10, 6000);
+
+        assertEquals(3, mPairs.size());
+        assertPair(0, 0, 9, 4000);
+        assertPair(1, 1, 9, 4000);
+        assertPair(2, 1, 10, 6000);
+    }
+
+    @Test
+    public void expiredReadsAndWindows_areDropped() {
+        BarcodeTagJoin join = new BarcodeTagJoin(mListener, 1000, 1000, 64, 4, 64);
+        for (int i = 0; i < 10; i++) {
+            join.onTagRead(i, i * 100);
+        }
+        join.onBarcode(0, 900);
+        assertEquals(1, join.getOpenWindowCount());
+        join.onTagRead(99, 5000);
+
+        assertEquals(1, join.getHeldReadCount());
+        assertEquals(0, join.getOpenWindowCount());
+        // Reads from 0 to 900 fall in the window, the late read does not
+        assertEquals(10, mPairs.size());
+        assertEquals(0, join.getEvictedReadCount());
+    }
+
+    @Test
+    public void capacities_boundTheMemory() {
+        BarcodeTagJoin join = new BarcodeTagJoin(mListener, 10_000, 10_000, 8, 2, 4);
+        for (int i = 0; i < 20; i++) {
+            join.onTagRead(i, i);
+        }
+        assertEquals(8, join.getHeldReadCount());
+        assertEquals(12, join.getEvictedReadCount());
+
+        // Only four of the eight held reads are paired
+        join.onBarcode(0, 100);
+        assertEquals(4, mPairs.size());
+        assertEquals(4, join.getOverflowCount());
+
+        join.onBarcode(1, 101);
+        join.onBarcode(2, 102);
+        assertEquals(2, join.getOpenWindowCount());
+        assertEquals(1, join.getEvictedWindowCount());
+    }
+
+    @Test
+    public void aLongSession_runsInConstantMemory() {
+        BarcodeTagJoin join = new BarcodeTagJoin(mListener, 1000, 5000, 256, 16, 256);
+        long time = 0;
+        for (int barcode = 0; barcode < 10_000; barcode++) {
+            join.onBarcode(barcode, time);
+            for (int read = 0; read < 100; read++) {
+                join.onTagRead(barcode * 10 + read % 10, time + read * 10);
+            }
+            time += 60_000;
+        }
+        // Each barcode is paired with its own ten tags and no others
+        assertEquals(100_000, mPairs.size());
+        assertEquals(100_000, join.getAssociationCount());
+        assertEquals(0, join.getEvictedReadCount() + join.getEvictedWindowCount() + join.getOverflowCount());
+        assertTrue(join.getHeldReadCount() <= 256);
+        assertEquals(1, join.getOpenWindowCount());
+    }
+
+    @Test
+    public void clear_forgetsTheSession() {
+        BarcodeTagJoin join = new BarcodeTagJoin(mListener, 1000, 5000, 64, 4, 64);
+        join.onTagRead(1, 0);
+        join.onBarcode(0, 10);
+        join.clear();
+        join.onTagRead(2, 20);
+
+        assertEquals(1, mPairs.size());
+        assertEquals(0, join.getAssociationCount());
+        assertEquals(0, join.getOpenWindowCount());
+        assertEquals(1, join.getHeldReadCount());
+    }
+}
@@ -0,0 +1,195 @@
+package com.petroit.tsirfidandroidapp.rfid.export;
+
+import com.petroit.tsirfidandroidapp.rfid.correlate.AssociationLog;
+import com.petroit.tsirfidandroidapp.rfid.gs1.Gs1DecodeCache;
+import com.petroit.tsirfidandroidapp.rfid.tags.BarcodeLog;
+import com.petroit.tsirfidandroidapp.rfid.tags.HexCodec;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEventPool;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagStore;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the session exporter
+ */
+public class SessionExporterTest {
+
+    private final TagEvent mEvent = new TagEventPool(1).obtain();
+
+    private void record(TagStore store, int tag, int rssi, long timestamp) {
+        byte[] epc = new byte[12];
+        epc[0] = 0x30;
+        epc[9] = (byte) (tag >> 16);
+        epc[10] = (byte) (tag >> 8);
+        epc[11] = (byte) tag;
+        mEvent.set(epc, epc.length, rssi, 0x3000, 0, timestamp, 0);
+        mEvent.setTid(null);
+        store.record(mEvent);
+    }
+
+    @Test
+    public void csv_hasOneRowPerTagAndBarcode() throws IOException {
+        TagStore store = new TagStore(16, 16);
+        record(store, 1, -50, 1_700_000_000_000L);
+        record(store, 1, -60, 1_700_000_001_500L);
+        record(store, 2, TagEvent.NOT_PRESENT, 1_700_000_002_000L);
+        BarcodeLog barcodes = new BarcodeLog(4, 4);
+        barcodes.record("5012345678900", 1_700_000_003_000L);
+        barcodes.record("A,\"B\"", 1_700_000_004_000L);
+
+        StringWriter out = new StringWriter();
+        SessionExporter exporter = new SessionExporter(ExportFormat.CSV);
+        exporter.export(store, barcodes, out);
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(5, lines.length);
+        assertTrue(lines[0].startsWith("record,ordinal,epc"));
+        assertEquals("tag,0,300000000000000000000001,,,,,,,2,-60,-60,-55.0,-50,2023-11-14T22:13:20.000Z,2023-11-14T22:13:21.500Z,", lines[1]);
+        assertEquals("tag,1,300000000000000000000002,,,,,,,1,,,,,2023-11-14T22:13:22.000Z,2023-11-14T22:13:22.000Z,", lines[2]);
+        assertTrue(lines[3].startsWith("barcode,0,,,,,,,,,,,,,2023-11-14T22:13:23.000Z"));
+        assertTrue(lines[4].endsWith(",\"A,\"\"B\"\"\""));
+        assertEquals(2, exporter.getTagCount());
+        assertEquals(2, exporter.getBarcodeCount());
+    }
+
+    @Test
+    public void ndjson_hasOneObjectPerLine() throws IOException {
+        TagStore store = new TagStore(16, 16);
+        record(store, 7, -45, 0);
+        BarcodeLog barcodes = new BarcodeLog(4, 4);
+        barcodes.record("line\nbreak", 0);
+
+        StringWriter out = new StringWriter();
+        new SessionExporter(ExportFormat.NDJSON).export(store, barcodes, out);
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("{\"record\":\"tag\",\"ordinal\":0,\"epc\":\"300000000000000000000007\",\"reads\":1,"
+                + "\"rssi_last\":-45,\"rssi_min\":-45,\"rssi_mean\":-45.0,\"rssi_max\":-45,"
+                + "\"first_seen\":\"1970-01-01T00:00:00.000Z\",\"last_seen\":\"1970-01-01T00:00:00.000Z\"}", lines[0]);
+        assertEquals("{\"record\":\"barcode\",\"ordinal\":0,\"barcode\":\"line\\nbreak\",\"seen\":\"1970-01-01T00:00:00.000Z\"}", lines[1]);
+    }
+
+    @Test
+    public void associations_areWrittenAfterTheBarcodes() throws IOException {
+        TagStore store = new TagStore(16, 16);
+        record(store, 1, -50, 1_700_000_000_000L);
+        record(store, 2, -50, 1_700_000_000_000L);
+        BarcodeLog barcodes = new BarcodeLog(4, 4);
+        int carton = barcodes.record("CARTON,1", 1_700_000_003_000L);
+        AssociationLog associations = new AssociationLog(1, 4);
+        associations.onAssociation(carton, 1, 1_700_000_003_500L);
+
+        StringWriter csv = new StringWriter();
+        SessionExporter exporter = new SessionExporter(ExportFormat.CSV);
+        exporter.export(store, barcodes, associations, csv);
+        String[] lines = csv.toString().split("\n");
+        assertEquals(5, lines.length);
+        assertEquals("association,1,300000000000000000000002,,,,,,,,,,,,2023-11-14T22:13:23.500Z,2023-11-14T22:13:23.500Z,\"CARTON,1\"", lines[4]);
+        assertEquals(lines[0].split(",").length, lines[4].split(",").length - 1);
+        assertEquals(1, exporter.getAssociationCount());
+
+        StringWriter json = new StringWriter();
+        new SessionExporter(ExportFormat.NDJSON).export(store, barcodes, associations, json);
+        assertTrue(json.toString().endsWith("{\"record\":\"association\",\"ordinal\":1,\"epc\":\"300000000000000000000002\","
+                + "\"barcode_ordinal\":0,\"barcode\":\"CARTON,1\",\"seen\":\"2023-11-14T22:13:23.500Z\"}\n"));
+    }
+
+    @Test
+    public void gs1Fields_areExportedForDecodedTags() throws IOException {
+        TagStore store = new TagStore(16, 16);
+        store.setGs1Decoder(new Gs1DecodeCache(16));
+        byte[] epc = new byte[12];
+        HexCodec.parse("3074257BF7194E4000001A85", epc);
+        mEvent.set(epc, epc.length, -50, 0x3000, 0, 0, 0);
+        mEvent.setTid(null);
+        store.record(mEvent);
+
+        StringWriter csv = new StringWriter();
+        new SessionExporter(ExportFormat.CSV).export(store, null, csv);
+        String[] lines = csv.toString().split("\n");
+        assertTrue(lines[0].startsWith("record,ordinal,epc,tid,gs1_uri,gs1_key,gs1_company_prefix,gs1_reference,gs1_serial,reads"));
+        assertTrue(lines[1].startsWith("tag,0,3074257BF7194E4000001A85,,urn:epc:id:sgtin:0614141.812345.6789,80614141123458,0614141,812345,6789,1,"));
+
+        StringWriter json = new StringWriter();
+        new SessionExporter(ExportFormat.NDJSON).export(store, null, json);
+        assertTrue(json.toString().contains(",\"gs1\":{\"uri\":\"urn:epc:id:sgtin:0614141.812345.6789\",\"key\":\"80614141123458\","
+                + "\"company_prefix\":\"0614141\",\"reference\":\"812345\",\"serial\":\"6789\",\"filter\":3},\"reads\":1"));
+    }
+
+    @Test
+    public void timestamps_matchTheCalendar() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        StringBuilder sb = new StringBuilder();
+        for (long ms = 0; ms < 5_000_000_000_000L; ms += 7_777_777_777L) {
+            sb.setLength(0);
+            SessionExporter.appendTimestamp(sb, ms);
+            assertEquals(format.format(new Date(ms)), sb.toString());
+        }
+    }
+
+    @Test
+    public void largeSession_isStreamedInChunks() throws IOException {
+        TagStore store = new TagStore(1024, 100_000);
+        for (int tag = 0; tag < 100_000; tag++) {
+            record(store, tag, -50, tag);
+        }
+        final int[] lines = new int[1];
+        Writer counter = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+                for (int i = offset; i < offset + length; i++) {
+                    if (buffer[i] == '\n') lines[0]++;
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        SessionExporter exporter = new SessionExporter(ExportFormat.CSV);
+        exporter.export(store, null, counter);
+        assertEquals(100_000, exporter.getTagCount());
+        assertEquals(100_001, lines[0]);
+    }
+
+    @Test(expected = java.util.ConcurrentModificationException.class)
+    public void clearDuringExport_isReported() throws IOException {
+        final TagStore store = new TagStore(1024, 1024);
+        for (int tag = 0; tag < 1000; tag++) {
+            record(store, tag, -50, tag);
+        }
+        Writer clearing = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+                store.clear();
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        new SessionExporter(ExportFormat.NDJSON).export(store, null, clearing);
+    }
+}
@@ -0,0 +1,87 @@
+package com.petroit.tsirfidandroidapp.rfid.gs1;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the GS1 decode cache
+ */
+public class Gs1DecodeCacheTest {
+
+    // An SGTIN-96 with the given serial
+    private static byte[] sgtin(int serial) {
+        byte[] epc = { 0x30, 0x74, 0x25, 0x7B, (byte) 0xF7, 0x19, 0x4E, 0x40, 0, 0, 0, 0 };
+        epc[9] = (byte) (serial >> 16);
+        epc[10] = (byte) (serial >> 8);
+        epc[11] = (byte) serial;
+        return epc;
+    }
+
+    @Test
+    public void repeatedEpcs_areHits() {
+        Gs1DecodeCache cache = new Gs1DecodeCache(8);
+        Gs1Epc first = cache.decode(sgtin(6789), 12);
+        Gs1Epc second = cache.decode(sgtin(6789), 12);
+        assertEquals("urn:epc:id:sgtin:0614141.812345.6789", first.getUri());
+        assertSame(first, second);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsed_isEvicted() {
+        Gs1DecodeCache cache = new Gs1DecodeCache(3);
+        Gs1Epc one = cache.decode(sgtin(1), 12);
+        cache.decode(sgtin(2), 12);
+        cache.decode(sgtin(3), 12);
+        // 1 becomes the most recent so 2 is evicted
+        assertSame(one, cache.decode(sgtin(1), 12));
+        cache.decode(sgtin(4), 12);
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        long misses = cache.getMissCount();
+        cache.decode(sgtin(1), 12);
+        cache.decode(sgtin(3), 12);
+        cache.decode(sgtin(4), 12);
+        assertEquals(misses, cache.getMissCount());
+        cache.decode(sgtin(2), 12);
+        assertEquals(misses + 1, cache.getMissCount());
+    }
+
+    @Test
+    public void manyEpcs_stayWithinTheCapacity() {
+        Gs1DecodeCache cache = new Gs1DecodeCache(100);
+        for (int serial = 0; serial < 10_000; serial++) {
+            Gs1Epc epc = cache.decode(sgtin(serial), 12);
+            assertEquals(Integer.toString(serial), epc.getSerial());
+        }
+        assertEquals(100, cache.size());
+        assertEquals(9_900, cache.getEvictionCount());
+        for (int serial = 9_900; serial < 10_000; serial++) {
+            assertEquals(Integer.toString(serial), cache.decode(sgtin(serial), 12).getSerial());
+        }
+        assertEquals(100, cache.getHitCount());
+    }
+
+    @Test
+    public void invalidGs1Epcs_areCachedAsMisses() {
+        Gs1DecodeCache cache = new Gs1DecodeCache(4);
+        byte[] reserved = sgtin(1);
+        reserved[1] = 0x7C;
+        assertNull(cache.decode(reserved, 12));
+        assertNull(cache.decode(reserved, 12));
+        assertEquals(1, cache.getHitCount());
+
+        // Not GS1 at all so not looked up
+        byte[] other = { (byte) 0xE2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+        assertNull(cache.decode(other, 12));
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHitCount());
+    }
+}
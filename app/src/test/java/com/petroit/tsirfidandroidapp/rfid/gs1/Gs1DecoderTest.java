@@ -0,0 +1,90 @@
+package com.petroit.tsirfidandroidapp.rfid.gs1;
+
+import com.petroit.tsirfidandroidapp.rfid.tags.HexCodec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the GS1 EPC decoder, the vectors are from the EPC Tag Data Standard examples
+ */
+public class Gs1DecoderTest {
+
+    private static Gs1Epc decode(String hex) {
+        byte[] epc = new byte[hex.length() / 2];
+        HexCodec.parse(hex, epc);
+        return Gs1Decoder.decode(epc, epc.length);
+    }
+
+    @Test
+    public void sgtin96_isDecoded() {
+        Gs1Epc epc = decode("3074257BF7194E4000001A85");
+        assertNotNull(epc);
+        assertEquals(Gs1Scheme.SGTIN_96, epc.getScheme());
+        assertEquals(3, epc.getFilter());
+        assertEquals("0614141", epc.getCompanyPrefix());
+        assertEquals("812345", epc.getReference());
+        assertEquals("6789", epc.getSerial());
+        assertEquals("80614141123458", epc.getKey());
+        assertEquals("urn:epc:id:sgtin:0614141.812345.6789", epc.getUri());
+    }
+
+    @Test
+    public void sscc96_isDecoded() {
+        Gs1Epc epc = decode("3174257BF4499602D2000000");
+        assertNotNull(epc);
+        assertEquals(Gs1Scheme.SSCC_96, epc.getScheme());
+        assertNull(epc.getSerial());
+        assertEquals("106141412345678908", epc.getKey());
+        assertEquals("urn:epc:id:sscc:0614141.1234567890", epc.getUri());
+    }
+
+    @Test
+    public void grai96_isDecoded() {
+        Gs1Epc epc = decode("3374257BF40C0E400000162E");
+        assertNotNull(epc);
+        assertEquals(Gs1Scheme.GRAI_96, epc.getScheme());
+        assertEquals("00614141123452", epc.getKey());
+        assertEquals("urn:epc:id:grai:0614141.12345.5678", epc.getUri());
+    }
+
+    @Test
+    public void giai96_isDecoded() {
+        Gs1Epc epc = decode("3474257BF400000000BC6038");
+        assertNotNull(epc);
+        assertEquals(Gs1Scheme.GIAI_96, epc.getScheme());
+        assertEquals("061414112345400", epc.getKey());
+        assertEquals("urn:epc:id:giai:0614141.12345400", epc.getUri());
+    }
+
+    @Test
+    public void leadingZeros_arePaddedToThePartition() {
+        // Partition 6: 6 digit company prefix 000001, 7 digit item reference 0000002
+        Gs1Epc epc = decode("301800004000008000000003");
+        assertNotNull(epc);
+        assertEquals("urn:epc:id:sgtin:000001.0000002.3", epc.getUri());
+        assertEquals("00000010000021", epc.getKey());
+    }
+
+    @Test
+    public void otherEpcs_areNotDecoded() {
+        // Not a GS1 header
+        assertNull(decode("E2801160600002A4C6E1C0F1"));
+        // A GS1 header but not 96 bits
+        assertNull(decode("3074257BF7194E4000001A"));
+        // Partition 7 is reserved
+        assertNull(decode("301C257BF7194E4000001A85"));
+        // A company prefix that does not fit in its 12 digits
+        assertNull(decode("3003FFFFFFFFFC4000001A85"));
+        // An SSCC with the unallocated bits set
+        assertNull(decode("3174257BF4499602D2000001"));
+        assertNull(Gs1Decoder.decode(null, 0));
+    }
+
+    @Test
+    public void checkDigit_matchesTheGs1Algorithm() {
+        assertEquals("40123455", Gs1Decoder.withCheckDigit("4012345"));
+        assertEquals("5012345678900", Gs1Decoder.withCheckDigit("501234567890"));
+    }
+}
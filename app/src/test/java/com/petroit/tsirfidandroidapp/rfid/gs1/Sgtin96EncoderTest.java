@@ -0,0 +1,69 @@
+package com.petroit.tsirfidandroidapp.rfid.gs1;
+
+import com.petroit.tsirfidandroidapp.rfid.tags.HexCodec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the SGTIN-96 encoder
+ */
+public class Sgtin96EncoderTest {
+
+    private static String encode(String gtin, int companyPrefixDigits, int filter, long serial) {
+        byte[] epc = new byte[Sgtin96Encoder.EPC_BYTES];
+        Sgtin96Encoder.encode(gtin, companyPrefixDigits, filter, serial, epc);
+        StringBuilder sb = new StringBuilder();
+        HexCodec.append(sb, epc, 0, epc.length);
+        return sb.toString();
+    }
+
+    @Test
+    public void standardExample_isEncoded() {
+        assertEquals("3074257BF7194E4000001A85", encode("80614141123458", 7, 3, 6789));
+    }
+
+    @Test
+    public void everyPartition_decodesToTheSameGtin() {
+        String gtin = "10012345678902";
+        for (int digits = 6; digits <= 12; digits++) {
+            byte[] epc = new byte[Sgtin96Encoder.EPC_BYTES];
+            Sgtin96Encoder.encode(gtin, digits, 1, Sgtin96Encoder.MAXIMUM_SERIAL, epc);
+            Gs1Epc decoded = Gs1Decoder.decode(epc, epc.length);
+            assertNotNull(decoded);
+            assertEquals(gtin, decoded.getKey());
+            assertEquals(digits, decoded.getCompanyPrefix().length());
+            assertEquals(Long.toString(Sgtin96Encoder.MAXIMUM_SERIAL), decoded.getSerial());
+        }
+    }
+
+    @Test
+    public void shortGtins_arePadded() {
+        byte[] epc = new byte[Sgtin96Encoder.EPC_BYTES];
+        Sgtin96Encoder.encode("5012345678900", 7, 1, 1, epc);
+        assertEquals("05012345678900", Gs1Decoder.decode(epc, epc.length).getKey());
+        Sgtin96Encoder.encode("96385074", 6, 1, 1, epc);
+        assertEquals("00000096385074", Gs1Decoder.decode(epc, epc.length).getKey());
+    }
+
+    @Test
+    public void gtins_areValidated() {
+        assertTrue(Sgtin96Encoder.isValidGtin("80614141123458"));
+        assertTrue(Sgtin96Encoder.isValidGtin("036000291452"));
+        assertFalse(Sgtin96Encoder.isValidGtin("80614141123459"));
+        assertFalse(Sgtin96Encoder.isValidGtin("8061414112345X"));
+        assertFalse(Sgtin96Encoder.isValidGtin("123456789"));
+        assertFalse(Sgtin96Encoder.isValidGtin(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void serialOutOfRange_isRejected() {
+        encode("80614141123458", 7, 3, Sgtin96Encoder.MAXIMUM_SERIAL + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void companyPrefixOutOfRange_isRejected() {
+        encode("80614141123458", 13, 3, 1);
+    }
+}
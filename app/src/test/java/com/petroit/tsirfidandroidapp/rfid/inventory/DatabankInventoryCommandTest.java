@@ -0,0 +1,43 @@
+package com.petroit.tsirfidandroidapp.rfid.inventory;
+
+import com.uk.tsl.rfid.asciiprotocol.enumerations.Databank;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the inventory that reads memory with each EPC
+ */
+public class DatabankInventoryCommandTest {
+
+    private static String commandLine(DatabankInventoryCommand command) {
+        StringBuilder sb = new StringBuilder();
+        command.buildCommandLine(sb);
+        return sb.toString();
+    }
+
+    @Test
+    public void defaults_matchAPlainInventory() {
+        DatabankInventoryCommand command = new DatabankInventoryCommand();
+        assertFalse(command.readsDatabank());
+        assertFalse(commandLine(command).contains("-d"));
+    }
+
+    @Test
+    public void databank_isAddedToTheCommandLine() {
+        DatabankInventoryCommand command = new DatabankInventoryCommand();
+        command.setBank(Databank.USER);
+        command.setOffset(0x10);
+        command.setLength(4);
+        assertTrue(command.readsDatabank());
+        String line = commandLine(command);
+        assertTrue(line, line.startsWith(".iv"));
+        assertTrue(line, line.endsWith("-dbusr-do0010-dl04"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void data_cannotBeWritten() {
+        new DatabankInventoryCommand().setData(new byte[2]);
+    }
+}
@@ -0,0 +1,84 @@
+package com.petroit.tsirfidandroidapp.rfid.inventory;
+
+import com.petroit.tsirfidandroidapp.rfid.journal.TagJournal;
+import com.petroit.tsirfidandroidapp.rfid.reconcile.ExpectedInventory;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEventPool;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the inventory model's settings and recovery
+ */
+public class InventoryModelTest {
+
+    private static ExpectedInventory manifest(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(String.format("3000000000000000%08X\n", i));
+        }
+        return ExpectedInventory.parse(ByteBuffer.wrap(sb.toString().getBytes(Charset.forName("US-ASCII"))));
+    }
+
+    @Test
+    public void expectedPopulation_outlivesTheExpectedInventory() {
+        InventoryModel model = new InventoryModel();
+        model.setExpectedPopulation(100000);
+        model.setExpectedInventory(manifest(100));
+        assertEquals(100000, model.getTagStore().getPrefilter().getExpectedPopulation());
+
+        model.setExpectedInventory(null);
+        assertEquals(100000, model.getTagStore().getPrefilter().getExpectedPopulation());
+    }
+
+    @Test
+    public void expectedInventory_sizesThePrefilterWhenNoPopulationIsGiven() {
+        InventoryModel model = new InventoryModel();
+        model.setExpectedInventory(manifest(100));
+        assertEquals(125, model.getTagStore().getPrefilter().getExpectedPopulation());
+
+        model.setExpectedInventory(null);
+        assertNull(model.getTagStore().getPrefilter());
+
+        model.setExpectedInventory(manifest(100));
+        model.setExpectedPopulation(0);
+        assertEquals(125, model.getTagStore().getPrefilter().getExpectedPopulation());
+    }
+
+    @Test
+    public void openJournal_restoresTheBarcodesAndPairs() throws Exception {
+        File file = File.createTempFile("tags", ".journal");
+        assertTrue(file.delete());
+        TagJournal journal = TagJournal.open(file, null);
+        TagEvent event = new TagEventPool(1).obtain();
+        byte[] epc = new byte[12];
+        epc[0] = 0x30;
+        event.set(epc, epc.length, -50, 0x3000, 0, 1000, 0);
+        journal.append(event);
+        // The barcode with index 1 was dropped and the pair was journaled before the second tag's read
+        journal.appendBarcode(0, "5012345678900", 1000);
+        journal.appendBarcode(2, "5012345678917", 2000);
+        epc[11] = 1;
+        journal.appendAssociation(2, epc, epc.length, 2001);
+        event.set(epc, epc.length, -50, 0x3000, 0, 2001, 1);
+        journal.append(event);
+        journal.close();
+
+        InventoryModel model = new InventoryModel();
+        assertEquals(2, model.openJournal(file));
+        model.closeJournal();
+        file.delete();
+        assertEquals(2, model.getBarcodeLog().size());
+        assertEquals("5012345678917", model.getBarcodeLog().getData(1));
+        assertEquals(1, model.getAssociationLog().size());
+        assertEquals(1, model.getAssociationLog().getBarcodeIndex(0));
+        assertEquals(1, model.getAssociationLog().getTagOrdinal(0));
+        assertEquals(2001, model.getAssociationLog().getReadTime(0));
+    }
+}
@@ -0,0 +1,208 @@
+package com.petroit.tsirfidandroidapp.rfid.journal;
+
+import com.petroit.tsirfidandroidapp.rfid.ModelEvents;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEventPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the tag journal
+ */
+public class TagJournalTest {
+
+    private File mFile;
+    private final TagEvent mEvent = new TagEventPool(1).obtain();
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("tags", ".journal");
+        assertTrue(mFile.delete());
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    private TagEvent read(int tag) {
+        byte[] epc = new byte[12];
+        epc[0] = 0x30;
+        epc[11] = (byte) tag;
+        mEvent.set(epc, epc.length, -50 - tag, 0x3000, 0x1234, 1_600_000_000_000L + tag, tag);
+        mEvent.setTid(tag % 2 == 0 ? new byte[] { (byte) 0xE2, (byte) tag } : null);
+        return mEvent;
+    }
+
+    private static List<String> replay(File file) throws IOException {
+        final List<String> reads = new ArrayList<>();
+        TagJournal.replay(file, new ModelEvents.TagReadListener() {
+            @Override
+            public void onTagRead(TagEvent event) {
+                reads.add(event.getSequence() + " " + event.getRssi() + " " + event.getTimestamp()
+                        + " " + (event.getTid() == null ? "-" : event.getTid().length) + " " + event.toString().split("\n")[0]);
+            }
+        });
+        return reads;
+    }
+
+    @Test
+    public void appendedReads_areReplayed() throws Exception {
+        TagJournal journal = TagJournal.open(mFile, null);
+        for (int tag = 0; tag < 100; tag++) {
+            assertTrue(journal.append(read(tag)));
+        }
+        journal.flush();
+
+        List<String> reads = replay(mFile);
+        assertEquals(100, reads.size());
+        assertEquals("7 -57 1600000000007 - EPC: 30000000000000000000" + "0007", reads.get(7));
+        assertEquals("8 -58 1600000000008 2 EPC: 30000000000000000000" + "0008", reads.get(8));
+        journal.close();
+    }
+
+    @Test
+    public void tornRecord_isDiscardedOnRecovery() throws Exception {
+        TagJournal journal = TagJournal.open(mFile, null);
+        for (int tag = 0; tag < 10; tag++) {
+            journal.append(read(tag));
+        }
+        journal.close();
+        long intactLength = mFile.length();
+
+        // A crash part way through writing the next record
+        FileOutputStream output = new FileOutputStream(mFile, true);
+        output.write(new byte[] { 0, 40, 1, 0, 0, 0 });
+        output.close();
+
+        final int[] recovered = new int[1];
+        journal = TagJournal.open(mFile, new ModelEvents.TagReadListener() {
+            @Override
+            public void onTagRead(TagEvent event) {
+                recovered[0]++;
+            }
+        });
+        assertEquals(10, recovered[0]);
+        assertEquals(10, journal.getRecoveredCount());
+        assertEquals(intactLength, mFile.length());
+
+        journal.append(read(10));
+        journal.close();
+        assertEquals(11, replay(mFile).size());
+    }
+
+    @Test
+    public void clear_startsAnEmptyJournal() throws Exception {
+        TagJournal journal = TagJournal.open(mFile, null);
+        journal.append(read(1));
+        journal.flush();
+        journal.clear();
+        journal.append(read(2));
+        journal.close();
+
+        List<String> reads = replay(mFile);
+        assertEquals(1, reads.size());
+        assertTrue(reads.get(0).startsWith("2 "));
+    }
+
+    @Test
+    public void fullBuffer_dropsRatherThanBlocks() throws Exception {
+        // Room for a few records and a long commit interval
+        TagJournal journal = TagJournal.open(mFile, null, 60_000, 1024);
+        int appended = 0;
+        for (int tag = 0; tag < 1000; tag++) {
+            if (journal.append(read(tag))) {
+                appended++;
+            }
+        }
+        assertTrue(appended < 1000);
+        assertEquals(1000 - appended, journal.getDroppedCount());
+        journal.close();
+        assertEquals(appended, replay(mFile).size());
+    }
+
+    @Test
+    public void batches_areGroupCommitted() throws Exception {
+        TagJournal journal = TagJournal.open(mFile, null, 50, 64 * 1024);
+        for (int tag = 0; tag < 500; tag++) {
+            journal.append(read(tag));
+        }
+        journal.flush();
+        assertTrue(journal.getCommitCount() < 10);
+        journal.close();
+        assertEquals(500, replay(mFile).size());
+    }
+
+    @Test
+    public void barcodesAndPairs_areReplayed() throws Exception {
+        TagJournal journal = TagJournal.open(mFile, null);
+        journal.append(read(1));
+        assertTrue(journal.appendBarcode(0, "5012345678900", 1_600_000_000_100L));
+        assertTrue(journal.appendAssociation(0, read(1).getEpcBuffer(), 12, 1_600_000_000_101L));
+        journal.close();
+
+        final List<String> records = new ArrayList<>();
+        int reads = TagJournal.replay(mFile, new TagJournal.ReplayListener() {
+            @Override
+            public void onTagRead(TagEvent event) {
+                records.add("read " + event.getSequence());
+            }
+
+            @Override
+            public void onBarcode(int index, String barcode, long timestamp) {
+                records.add("barcode " + index + " " + barcode + " " + timestamp);
+            }
+
+            @Override
+            public void onAssociation(int barcodeIndex, byte[] epc, int epcLength, long readTime) {
+                records.add("pair " + barcodeIndex + " " + epcLength + " " + epc[11] + " " + readTime);
+            }
+        });
+        assertEquals(1, reads);
+        assertEquals("read 1", records.get(0));
+        assertEquals("barcode 0 5012345678900 1600000000100", records.get(1));
+        assertEquals("pair 0 12 1 1600000000101", records.get(2));
+        // A listener for the reads alone only gets the reads
+        assertEquals(1, replay(mFile).size());
+    }
+
+    @Test
+    public void version1Journal_isRecoveredAndUpgraded() throws Exception {
+        TagJournal journal = TagJournal.open(mFile, null);
+        for (int tag = 0; tag < 10; tag++) {
+            journal.append(read(tag));
+        }
+        journal.close();
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        file.writeInt(0x54534A01);
+        file.close();
+
+        journal = TagJournal.open(mFile, null);
+        assertEquals(10, journal.getRecoveredCount());
+        journal.appendBarcode(0, "5012345678900", 0);
+        journal.close();
+        file = new RandomAccessFile(mFile, "r");
+        assertEquals(0x54534A02, file.readInt());
+        file.close();
+        assertEquals(10, replay(mFile).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFile_isRefused() throws Exception {
+        FileOutputStream output = new FileOutputStream(mFile);
+        output.write("not a journal".getBytes("US-ASCII"));
+        output.close();
+        TagJournal.open(mFile, null);
+    }
+}
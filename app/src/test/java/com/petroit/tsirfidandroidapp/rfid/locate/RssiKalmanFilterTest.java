@@ -0,0 +1,72 @@
+package com.petroit.tsirfidandroidapp.rfid.locate;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the signal strength filter
+ */
+public class RssiKalmanFilterTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void firstSample_isTheEstimate() {
+        RssiKalmanFilter filter = new RssiKalmanFilter(400, 64);
+        assertFalse(filter.isInitialised());
+        assertEquals(40.0, filter.update(40, 0), 0.0);
+        assertTrue(filter.isInitialised());
+    }
+
+    @Test
+    public void step_isFollowedWithinAFewSamples() {
+        RssiKalmanFilter filter = new RssiKalmanFilter(400, 64);
+        long now = 0;
+        for (int i = 0; i < 20; i++) {
+            filter.update(20, now += 20 * MS);
+        }
+        int samples = 0;
+        while (filter.getEstimate() < 70) {
+            filter.update(80, now += 20 * MS);
+            samples++;
+        }
+        // Reached within a fifth of a second at 50 samples a second
+        assertTrue("took " + samples, samples <= 10);
+    }
+
+    @Test
+    public void outlier_isDamped() {
+        RssiKalmanFilter filter = new RssiKalmanFilter(400, 64);
+        long now = 0;
+        for (int i = 0; i < 50; i++) {
+            filter.update(50, now += 20 * MS);
+        }
+        // Moved well under half way to a single stray sample
+        double estimate = filter.update(100, now + 20 * MS);
+        assertTrue("moved to " + estimate, estimate < 70);
+    }
+
+    @Test
+    public void gap_trustsTheNextSampleMore() {
+        RssiKalmanFilter steady = new RssiKalmanFilter(400, 64);
+        RssiKalmanFilter gapped = new RssiKalmanFilter(400, 64);
+        long now = 0;
+        for (int i = 0; i < 50; i++) {
+            now += 20 * MS;
+            steady.update(50, now);
+            gapped.update(50, now);
+        }
+        double afterSample = steady.update(90, now + 20 * MS);
+        double afterGap = gapped.update(90, now + 2000 * MS);
+        assertTrue(afterGap > afterSample);
+    }
+
+    @Test
+    public void reset_takesTheNextSampleAsTheEstimate() {
+        RssiKalmanFilter filter = new RssiKalmanFilter(400, 64);
+        filter.update(10, 0);
+        filter.reset();
+        assertEquals(90.0, filter.update(90, 20 * MS), 0.0);
+    }
+}
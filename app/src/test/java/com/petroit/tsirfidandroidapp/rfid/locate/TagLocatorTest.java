@@ -0,0 +1,68 @@
+package com.petroit.tsirfidandroidapp.rfid.locate;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the tag locator
+ */
+public class TagLocatorTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void level_fallsToZeroWhenTheTagIsNotHeard() {
+        TagLocator locator = new TagLocator(400, 64, 750);
+        assertEquals(0, locator.getLevel(0));
+        assertEquals(60, locator.onSignalStrength(60, 100 * MS));
+        assertEquals(60, locator.getLevel(800 * MS));
+        assertEquals(0, locator.getLevel(900 * MS));
+    }
+
+    @Test
+    public void sampleAfterTheTimeout_startsAgain() {
+        TagLocator locator = new TagLocator(400, 64, 750);
+        long now = 0;
+        for (int i = 0; i < 50; i++) {
+            locator.onSignalStrength(90, now += 20 * MS);
+        }
+        // The old estimate does not hold the level up when the tag comes back weaker
+        assertEquals(20, locator.onSignalStrength(20, now + 1000 * MS));
+    }
+
+    @Test
+    public void samples_areClampedToAPercentage() {
+        TagLocator locator = new TagLocator(400, 64, 750);
+        assertEquals(100, locator.onSignalStrength(130, 0));
+        assertEquals(100, locator.getLastSample());
+    }
+
+    @Test
+    public void clickInterval_shortensAsTheLevelRises() {
+        assertEquals(TagLocator.MAXIMUM_CLICK_INTERVAL_MS, TagLocator.clickIntervalMs(0));
+        assertEquals(TagLocator.MINIMUM_CLICK_INTERVAL_MS, TagLocator.clickIntervalMs(100));
+        assertEquals(200, TagLocator.clickIntervalMs(50));
+        for (int level = 1; level <= 100; level++) {
+            assertTrue(TagLocator.clickIntervalMs(level) <= TagLocator.clickIntervalMs(level - 1));
+        }
+    }
+
+    @Test
+    public void latency_isMeasuredAgainstTheTarget() {
+        TagLocator locator = new TagLocator(400, 64, 750);
+        locator.recordFeedbackLatency(5 * MS);
+        locator.recordFeedbackLatency(12 * MS);
+        locator.recordFeedbackLatency(80 * MS);
+        assertEquals(3, locator.getFeedbackLatency().getCount());
+        assertEquals(1, locator.getLateCount());
+
+        StringBuilder sb = new StringBuilder();
+        locator.appendTo(sb, 0);
+        assertTrue(sb.toString(), sb.toString().endsWith("max 80 ms  late 1"));
+
+        locator.reset();
+        assertEquals(0, locator.getFeedbackLatency().getCount());
+        assertEquals(0, locator.getLateCount());
+    }
+}
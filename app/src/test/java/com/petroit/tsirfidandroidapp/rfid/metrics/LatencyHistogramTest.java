@@ -0,0 +1,72 @@
+package com.petroit.tsirfidandroidapp.rfid.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the latency histogram
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValues_areExact() {
+        LatencyHistogram histogram = new LatencyHistogram(1_000_000, 7);
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(1, histogram.getMinimum());
+        assertEquals(100, histogram.getMaximum());
+        assertEquals(50, histogram.getMean());
+        assertEquals(50, histogram.getValueAtPercentile(50.0));
+        assertEquals(99, histogram.getValueAtPercentile(99.0));
+        assertEquals(100, histogram.getValueAtPercentile(100.0));
+    }
+
+    @Test
+    public void largeValues_areWithinThePrecision() {
+        LatencyHistogram histogram = new LatencyHistogram(60_000_000_000L, 7);
+        Random random = new Random(1);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1000 + (long) (random.nextDouble() * 50_000_000L);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[] { 50.0, 90.0, 99.0, 99.9 }) {
+            long expected = values[(int) Math.ceil(percentile / 100.0 * values.length) - 1];
+            long actual = histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + "%", Math.abs(actual - expected) <= expected / 128);
+        }
+        assertEquals(values[values.length - 1], histogram.getMaximum());
+    }
+
+    @Test
+    public void outOfRangeValues_areClamped() {
+        LatencyHistogram histogram = new LatencyHistogram(1000, 7);
+        histogram.record(-5);
+        histogram.record(5000);
+
+        assertEquals(0, histogram.getMinimum());
+        assertEquals(1000, histogram.getMaximum());
+        assertEquals(1, histogram.getClampedCount());
+    }
+
+    @Test
+    public void reset_emptiesTheHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram(1000, 7);
+        histogram.record(10);
+        histogram.reset();
+
+        LatencyHistogram.Percentiles percentiles = histogram.getPercentiles();
+        assertEquals(0, percentiles.getCount());
+        assertEquals(0, percentiles.getP99());
+        assertEquals(0, percentiles.getMaximum());
+    }
+}
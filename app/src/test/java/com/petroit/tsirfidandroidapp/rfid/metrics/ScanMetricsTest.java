@@ -0,0 +1,90 @@
+package com.petroit.tsirfidandroidapp.rfid.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the scan metrics
+ */
+public class ScanMetricsTest {
+
+    private static class FixedCounters implements RuntimeCounters {
+        long mGcCount;
+
+        @Override
+        public long getGcCount() { return mGcCount; }
+
+        @Override
+        public long getGcTimeMs() { return mGcCount * 2; }
+
+        @Override
+        public long getBlockingGcCount() { return -1; }
+
+        @Override
+        public long getBytesAllocated() { return mGcCount * 1024; }
+    }
+
+    @Test
+    public void snapshot_countsReadsAndUniques() throws Exception {
+        ScanMetrics metrics = new ScanMetrics();
+        MetricsSnapshot before = metrics.snapshot();
+        metrics.recordRead(true);
+        metrics.recordRead(false);
+        metrics.recordRead(true);
+        Thread.sleep(20);
+        MetricsSnapshot after = metrics.snapshot();
+
+        assertEquals(3, after.getReadCount());
+        assertEquals(2, after.getUniqueCount());
+        assertTrue(after.getReadsPerSecondSince(before) > 0);
+        assertEquals(after.getReadsPerSecondSince(before) * 2 / 3, after.getUniquesPerSecondSince(before), 1e-6);
+    }
+
+    @Test
+    public void snapshot_summarisesTheRoundsAndLatencies() {
+        ScanMetrics metrics = new ScanMetrics();
+        for (int i = 1; i <= 100; i++) {
+            metrics.recordRound(i * 1_000_000L);
+            metrics.recordDeliveryLatency(i * 100_000L);
+        }
+        metrics.recordGap(5_000_000L);
+        MetricsSnapshot snapshot = metrics.snapshot();
+
+        assertEquals(100, snapshot.getRoundDurations().getCount());
+        assertEquals(100_000_000L, snapshot.getRoundDurations().getMaximum());
+        assertEquals(50_000_000L, snapshot.getRoundDurations().getP50(), 50_000_000L / 128);
+        assertEquals(9_900_000L, snapshot.getDeliveryLatencies().getP99(), 9_900_000L / 128);
+        assertEquals(1, snapshot.getRoundGaps().getCount());
+    }
+
+    @Test
+    public void snapshot_reportsTheGaugesAndCountersSinceReset() {
+        ScanMetrics metrics = new ScanMetrics();
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(-1, snapshot.getHandlerQueueDepth());
+        assertEquals(-1, snapshot.getGcCount());
+
+        FixedCounters counters = new FixedCounters();
+        counters.mGcCount = 10;
+        metrics.setRuntimeCounters(counters);
+        metrics.setHandlerQueue(new QueueDepthGauge() {
+            @Override
+            public int getQueueDepth() { return 3; }
+
+            @Override
+            public int getMaximumQueueDepth() { return 7; }
+        });
+        metrics.reset();
+        counters.mGcCount = 12;
+        snapshot = metrics.snapshot();
+
+        assertEquals(3, snapshot.getHandlerQueueDepth());
+        assertEquals(7, snapshot.getMaximumHandlerQueueDepth());
+        assertEquals(2, snapshot.getGcCount());
+        assertEquals(4, snapshot.getGcTimeMs());
+        assertEquals(-1, snapshot.getBlockingGcCount());
+        assertEquals(2048, snapshot.getBytesAllocated());
+        assertTrue(snapshot.toString().contains("gc 2"));
+    }
+}
@@ -0,0 +1,147 @@
+package com.petroit.tsirfidandroidapp.rfid.multireader;
+
+import com.petroit.tsirfidandroidapp.rfid.tags.IntList;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEventPool;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagSummary;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the merged store of several readers
+ */
+public class StripedTagStoreTest {
+
+    private static TagEvent read(TagEvent event, int value) {
+        byte[] epc = new byte[]{ 0x30, 0x00, 0, 0, 0, 0, 0, 0, (byte)(value >> 24), (byte)(value >> 16), (byte)(value >> 8), (byte)value };
+        event.set(epc, epc.length, -60, 0x3000, 0x1234, 1000 + value, 0);
+        return event;
+    }
+
+    @Test
+    public void record_attributesTagsToReaders() {
+        StripedTagStore store = new StripedTagStore(4, 16, 1000);
+        ReaderStatistics portal1 = store.registerReader("Portal 1");
+        ReaderStatistics portal2 = store.registerReader("Portal 2");
+        TagEvent event = new TagEventPool(1).obtain();
+
+        int id = store.record(0, read(event, 1));
+        assertTrue(id >= 0);
+        assertEquals(-(id + 1), store.record(1, read(event, 1)));
+        assertEquals(-(id + 1), store.record(1, read(event, 1)));
+        assertTrue(store.record(1, read(event, 2)) >= 0);
+
+        assertEquals(2, store.size());
+        assertEquals(4, store.getTotalReads());
+        assertEquals(3L, store.getReaderMask(id));
+        assertEquals(0, store.getFirstReader(id));
+        assertEquals(1, store.getLastReader(id));
+
+        assertEquals(1, portal1.getReadCount());
+        assertEquals(1, portal1.getNewTagCount());
+        assertEquals(1, portal1.getTagCount());
+        assertEquals(3, portal2.getReadCount());
+        assertEquals(1, portal2.getNewTagCount());
+        assertEquals(2, portal2.getTagCount());
+        assertTrue(portal2.toString().startsWith("Portal 2: 3 reads "));
+
+        TagSummary summary = new TagSummary();
+        store.copyTo(id, summary);
+        assertEquals("300000000000000000000001", summary.getEpc());
+        assertEquals(3, summary.getReadCount());
+    }
+
+    @Test
+    public void clear_keepsTheReaders() {
+        StripedTagStore store = new StripedTagStore(2, 16, 1000);
+        ReaderStatistics reader = store.registerReader("Reader");
+        TagEvent event = new TagEventPool(1).obtain();
+        store.record(0, read(event, 7));
+        store.clear();
+
+        assertEquals(0, store.size());
+        assertEquals(0, reader.getReadCount());
+        assertEquals(1, store.getReaderCount());
+        assertFalse(store.contains(event.getEpcBuffer(), event.getEpcLength()));
+        int id = store.record(0, read(event, 7));
+        assertTrue(id >= 0);
+        assertEquals(1L, store.getReaderMask(id));
+    }
+
+    @Test
+    public void registerReader_isLimited() {
+        StripedTagStore store = new StripedTagStore(1, 16, 1000);
+        for( int i = 0; i < StripedTagStore.MAX_READERS; i++ ) {
+            assertEquals(i, store.registerReader("Reader " + i).getIndex());
+        }
+        try {
+            store.registerReader("One too many");
+            fail("The 65th reader was registered");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void concurrentReaders_countEachTagOnce() throws Exception {
+        final int readerCount = 4;
+        final int population = 1 << 14;
+        final StripedTagStore store = new StripedTagStore(8, 1024, 100000);
+        for( int i = 0; i < readerCount; i++ ) {
+            store.registerReader("Reader " + i);
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[readerCount];
+        for( int i = 0; i < readerCount; i++ ) {
+            final int readerIndex = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    TagEvent event = new TagEventPool(1).obtain();
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    // Each reader sees every tag twice, in its own order - odd steps visit them all
+                    for( int pass = 0; pass < 2; pass++ ) {
+                        for( int n = 0; n < population; n++ ) {
+                            store.record(readerIndex, read(event, (n * (2 * readerIndex + 1)) % population));
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for( Thread thread : threads ) {
+            thread.join();
+        }
+
+        assertEquals(population, store.size());
+        assertEquals(2L * readerCount * population, store.getTotalReads());
+        long firstSightings = 0;
+        for( int i = 0; i < readerCount; i++ ) {
+            assertEquals(population, store.getReader(i).getTagCount());
+            firstSightings += store.getReader(i).getNewTagCount();
+        }
+        assertEquals(population, firstSightings);
+
+        IntList ids = new IntList();
+        assertEquals(population, store.copyIds(ids));
+        HashSet<String> epcs = new HashSet<>();
+        TagSummary summary = new TagSummary();
+        for( int i = 0; i < ids.size(); i++ ) {
+            assertEquals((1L << readerCount) - 1, store.getReaderMask(ids.get(i)));
+            store.copyTo(ids.get(i), summary);
+            assertEquals(2 * readerCount, summary.getReadCount());
+            epcs.add(summary.getEpc());
+        }
+        assertEquals(population, epcs.size());
+    }
+}
@@ -0,0 +1,110 @@
+package com.petroit.tsirfidandroidapp.rfid.reconcile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for loading an expected inventory
+ */
+public class ExpectedInventoryTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("expected", ".csv");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    private static ExpectedInventory parse(String text) {
+        return ExpectedInventory.parse(ByteBuffer.wrap(text.getBytes(Charset.forName("US-ASCII"))));
+    }
+
+    private static byte[] epc(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static int indexOf(ExpectedInventory inventory, String hex) {
+        byte[] bytes = epc(hex);
+        return inventory.indexOf(bytes, bytes.length);
+    }
+
+    @Test
+    public void lines_areParsedInManifestOrder() {
+        ExpectedInventory inventory = parse("epc,description\r\n"
+                + "300000000000000000000001,first\r\n"
+                + "\"300000000000000000000002\",\"second\"\r\n"
+                + "\r\n"
+                + "  e2801160600002a4c6e1c0f1\t3\n"
+                + "300000000000000000000001\n"
+                + "not an epc\n"
+                + "3000000000000000000000011234567890ABCDEF\n"
+                + "ABC\n"
+                + "3000");
+        assertEquals(4, inventory.size());
+        assertEquals(4, inventory.getRejectedLineCount());
+        assertEquals(1, inventory.getDuplicateCount());
+        assertEquals(0, indexOf(inventory, "300000000000000000000001"));
+        assertEquals(1, indexOf(inventory, "300000000000000000000002"));
+        assertEquals(2, indexOf(inventory, "E2801160600002A4C6E1C0F1"));
+        assertEquals(3, indexOf(inventory, "3000"));
+        assertEquals(-1, indexOf(inventory, "300000000000000000000003"));
+
+        StringBuilder sb = new StringBuilder();
+        inventory.appendEpc(2, sb);
+        assertEquals("E2801160600002A4C6E1C0F1", sb.toString());
+        byte[] dest = new byte[ExpectedInventory.MAX_EPC_BYTES];
+        assertEquals(2, inventory.getEpc(3, dest));
+    }
+
+    @Test
+    public void epcsOfDifferentLengths_areDistinct() {
+        ExpectedInventory inventory = parse("3000\n300000\n30000000\n");
+        assertEquals(3, inventory.size());
+        assertEquals(0, indexOf(inventory, "3000"));
+        assertEquals(1, indexOf(inventory, "300000"));
+        assertEquals(2, indexOf(inventory, "30000000"));
+        assertEquals(-1, indexOf(inventory, "3000000000"));
+    }
+
+    @Test
+    public void largeManifest_isMemoryMapped() throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(mFile))) {
+            out.write("epc\n".getBytes(Charset.forName("US-ASCII")));
+            for (int i = 0; i < 500_000; i++) {
+                out.write(String.format("3074257BF7194E40%08X\n", i).getBytes(Charset.forName("US-ASCII")));
+            }
+        }
+
+        ExpectedInventory inventory = ExpectedInventory.load(mFile);
+        assertEquals(500_000, inventory.size());
+        assertEquals(1, inventory.getRejectedLineCount());
+        byte[] bytes = epc("3074257BF7194E4000000000");
+        for (int i = 0; i < 500_000; i += 997) {
+            bytes[10] = (byte) (i >> 8);
+            bytes[11] = (byte) i;
+            bytes[9] = (byte) (i >> 16);
+            assertEquals(i, inventory.indexOf(bytes, bytes.length));
+        }
+        assertTrue(inventory.memoryFootprint() < 20_000_000);
+    }
+}
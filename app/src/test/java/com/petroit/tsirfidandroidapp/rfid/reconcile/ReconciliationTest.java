@@ -0,0 +1,80 @@
+package com.petroit.tsirfidandroidapp.rfid.reconcile;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for counting reads against an expected inventory
+ */
+public class ReconciliationTest {
+
+    // Ten expected SGTINs with serials 0 to 9
+    private static Reconciliation tenExpected() {
+        StringBuilder manifest = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            manifest.append(String.format("3074257BF7194E40000000%02X\n", i));
+        }
+        return new Reconciliation(ExpectedInventory.parse(
+                ByteBuffer.wrap(manifest.toString().getBytes(Charset.forName("US-ASCII")))));
+    }
+
+    private static byte[] epc(int serial) {
+        return new byte[] { 0x30, 0x74, 0x25, 0x7B, (byte) 0xF7, 0x19, 0x4E, 0x40, 0, 0, 0, (byte) serial };
+    }
+
+    @Test
+    public void reads_areCountedOncePerTag() {
+        Reconciliation reconciliation = tenExpected();
+        assertEquals(10, reconciliation.getMissingCount());
+
+        assertTrue(reconciliation.recordRead(epc(3), 12, 0));
+        assertTrue(reconciliation.recordRead(epc(3), 12, 0));
+        assertTrue(reconciliation.recordRead(epc(7), 12, 1));
+        assertFalse(reconciliation.recordRead(epc(200), 12, 2));
+        assertFalse(reconciliation.recordRead(epc(200), 12, 2));
+        assertFalse(reconciliation.recordRead(epc(201), 12, 1000));
+        // A tag the caller could not number is not counted as unexpected
+        assertFalse(reconciliation.recordRead(epc(202), 12, -1));
+
+        assertEquals(2, reconciliation.getFoundCount());
+        assertEquals(8, reconciliation.getMissingCount());
+        assertEquals(2, reconciliation.getUnexpectedCount());
+        assertTrue(reconciliation.isFound(3));
+        assertFalse(reconciliation.isFound(4));
+
+        StringBuilder sb = new StringBuilder();
+        reconciliation.appendTo(sb);
+        assertEquals("Found 2/10 (20.0%)  Missing 8  Unexpected 2", sb.toString());
+    }
+
+    @Test
+    public void nextMissing_skipsTheFoundTags() {
+        Reconciliation reconciliation = tenExpected();
+        for (int serial : new int[] { 0, 1, 2, 5, 9 }) {
+            reconciliation.recordRead(epc(serial), 12, serial);
+        }
+        StringBuilder missing = new StringBuilder();
+        for (int index = reconciliation.nextMissing(0); index >= 0; index = reconciliation.nextMissing(index + 1)) {
+            missing.append(index).append(' ');
+        }
+        assertEquals("3 4 6 7 8 ", missing.toString());
+        assertEquals(-1, reconciliation.nextMissing(10));
+    }
+
+    @Test
+    public void reset_forgetsTheReads() {
+        Reconciliation reconciliation = tenExpected();
+        reconciliation.recordRead(epc(1), 12, 0);
+        reconciliation.recordRead(epc(100), 12, 1);
+        reconciliation.reset();
+        assertEquals(0, reconciliation.getFoundCount());
+        assertEquals(0, reconciliation.getUnexpectedCount());
+        assertEquals(10, reconciliation.nextMissing(0) + 10);
+        assertTrue(reconciliation.recordRead(epc(1), 12, 0));
+        assertEquals(1, reconciliation.getFoundCount());
+    }
+}
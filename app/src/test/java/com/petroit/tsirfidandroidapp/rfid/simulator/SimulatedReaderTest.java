@@ -0,0 +1,373 @@
+package com.petroit.tsirfidandroidapp.rfid.simulator;
+
+import com.petroit.tsirfidandroidapp.rfid.ModelEvents;
+import com.petroit.tsirfidandroidapp.rfid.export.ExportFormat;
+import com.petroit.tsirfidandroidapp.rfid.export.SessionExporter;
+import com.petroit.tsirfidandroidapp.rfid.inventory.InventoryModel;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagSummary;
+import com.uk.tsl.rfid.asciiprotocol.commands.BarcodeCommand;
+import com.uk.tsl.rfid.asciiprotocol.commands.InventoryCommand;
+import com.uk.tsl.rfid.asciiprotocol.commands.SwitchActionCommand;
+import com.uk.tsl.rfid.asciiprotocol.commands.SwitchSinglePressCommand;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.SwitchAction;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.TriState;
+import com.uk.tsl.rfid.asciiprotocol.responders.IBarcodeReceivedDelegate;
+import com.uk.tsl.rfid.asciiprotocol.responders.ICommandResponseLifecycleDelegate;
+import com.uk.tsl.rfid.asciiprotocol.responders.ITransponderReceivedDelegate;
+import com.uk.tsl.rfid.asciiprotocol.responders.TransponderData;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the simulated reader
+ */
+public class SimulatedReaderTest {
+
+    private final SimulatedTagPopulation mPopulation = new SimulatedTagPopulation(50, 1);
+    private final SimulatedReader mReader = new SimulatedReader(mPopulation, 2);
+
+    private final List<TransponderData> mTransponders = Collections.synchronizedList(new ArrayList<TransponderData>());
+    private volatile CountDownLatch mResponseEnded = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        mReader.disconnect();
+    }
+
+    private InventoryCommand inventoryResponder() {
+        InventoryCommand responder = new InventoryCommand();
+        responder.setCaptureNonLibraryResponses(true);
+        responder.setTransponderReceivedDelegate(new ITransponderReceivedDelegate() {
+            @Override
+            public void transponderReceived(TransponderData transponder, boolean moreAvailable) {
+                mTransponders.add(transponder);
+            }
+        });
+        responder.setResponseLifecycleDelegate(new ICommandResponseLifecycleDelegate() {
+            @Override
+            public void responseBegan() {
+            }
+
+            @Override
+            public void responseEnded() {
+                mResponseEnded.countDown();
+            }
+        });
+        return responder;
+    }
+
+    private InventoryCommand inventoryCommand() {
+        InventoryCommand command = new InventoryCommand();
+        command.setResetParameters(TriState.YES);
+        command.setIncludeTransponderRssi(TriState.YES);
+        command.setIncludeChecksum(TriState.YES);
+        command.setIncludePC(TriState.YES);
+        command.setIncludeDateTime(TriState.YES);
+        return command;
+    }
+
+    @Test
+    public void population_hasDistinctSgtin96Epcs() {
+        HashSet<String> epcs = new HashSet<>();
+        for (int i = 0; i < mPopulation.size(); i++) {
+            assertEquals(24, mPopulation.getEpc(i).length());
+            assertTrue(mPopulation.getEpc(i).startsWith("30"));
+            epcs.add(mPopulation.getEpc(i));
+        }
+        assertEquals(mPopulation.size(), epcs.size());
+    }
+
+    @Test
+    public void inventory_reportsEveryTagWithTheRequestedFields() throws Exception {
+        mReader.addResponder(inventoryResponder());
+        mReader.connect();
+        mReader.writeLine(inventoryCommand().getCommandLine());
+
+        assertTrue(mResponseEnded.await(5, TimeUnit.SECONDS));
+        assertEquals(50, mTransponders.size());
+        HashSet<String> epcs = new HashSet<>();
+        for (TransponderData transponder : mTransponders) {
+            epcs.add(transponder.getEpc());
+            assertNotNull(transponder.getRssi());
+            assertEquals(0x3000, (int) transponder.getPc());
+            assertNotNull(transponder.getCrc());
+            assertNotNull(transponder.getTimestamp());
+        }
+        assertEquals(50, epcs.size());
+        assertEquals(1, mReader.getRoundCount());
+    }
+
+    @Test
+    public void inventory_omitsFieldsNotRequested() throws Exception {
+        mReader.addResponder(inventoryResponder());
+        mReader.connect();
+        InventoryCommand command = inventoryCommand();
+        command.setIncludeTransponderRssi(TriState.NO);
+        command.setIncludeChecksum(TriState.NO);
+        mReader.writeLine(command.getCommandLine());
+
+        assertTrue(mResponseEnded.await(5, TimeUnit.SECONDS));
+        assertNull(mTransponders.get(0).getRssi());
+        assertNull(mTransponders.get(0).getCrc());
+        assertNotNull(mTransponders.get(0).getPc());
+    }
+
+    @Test
+    public void readRate_pacesTheReads() throws Exception {
+        mReader.addResponder(inventoryResponder());
+        mReader.setReadRate(500);
+        mReader.connect();
+        long start = System.nanoTime();
+        mReader.writeLine(inventoryCommand().getCommandLine());
+
+        assertTrue(mResponseEnded.await(5, TimeUnit.SECONDS));
+        // 50 reads at 500 per second take at least 100ms
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+    }
+
+    @Test
+    public void triggeredBarcode_isReported() throws Exception {
+        final CountDownLatch received = new CountDownLatch(1);
+        final String[] barcode = new String[1];
+        BarcodeCommand responder = new BarcodeCommand();
+        responder.setCaptureNonLibraryResponses(true);
+        responder.setBarcodeReceivedDelegate(new IBarcodeReceivedDelegate() {
+            @Override
+            public void barcodeReceived(String data) {
+                barcode[0] = data;
+                received.countDown();
+            }
+        });
+        mReader.addResponder(responder);
+        mReader.connect();
+        mReader.triggerBarcode("5012345678900");
+
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+        assertEquals("5012345678900", barcode[0]);
+    }
+
+    @Test
+    public void repeatedInventory_drivesTheInventoryModel() throws Exception {
+        InventoryModel model = new InventoryModel();
+        final CountDownLatch cycles = new CountDownLatch(5);
+        model.getEvents().addScanCycleEndedListener(new ModelEvents.ScanCycleEndedListener() {
+            @Override
+            public void onScanCycleEnded(int readCount, long durationNanos) {
+                cycles.countDown();
+            }
+        });
+        model.startConsumers();
+        mReader.addResponder(model.getInventoryResponder());
+        mReader.addResponder(model.getBarcodeResponder());
+        mReader.setRepeatInventory(true);
+        mReader.connect();
+        mReader.writeLine(model.getCommand().getCommandLine());
+
+        assertTrue(cycles.await(5, TimeUnit.SECONDS));
+        mReader.disconnect();
+        assertEquals(50, model.getTagStore().size());
+        assertTrue(model.getTagStore().getTotalReads() >= 250);
+        assertEquals(0, mReader.getResponderErrorCount());
+
+        // Every read reached the consumers on their own threads
+        model.stopConsumers();
+        assertEquals(model.getTagStore().getTotalReads(), model.getMetrics().snapshot().getReadCount());
+        assertEquals(50, model.getMetrics().snapshot().getUniqueCount());
+    }
+
+    @Test
+    public void barcodes_arePairedWhenTheReaderClockIsNotSet() throws Exception {
+        InventoryModel model = new InventoryModel();
+        final CountDownLatch associated = new CountDownLatch(1);
+        model.getEvents().addAssociationListener(new ModelEvents.AssociationListener() {
+            @Override
+            public void onAssociation(int barcodeIndex, int tagOrdinal, long readTime) {
+                associated.countDown();
+            }
+        });
+        model.startConsumers();
+        mReader.addResponder(model.getInventoryResponder());
+        mReader.addResponder(model.getBarcodeResponder());
+        // An hour behind, the tag timestamps fall far outside any barcode's window
+        mReader.setClockOffset(-TimeUnit.HOURS.toMillis(1));
+        mReader.setRepeatInventory(true);
+        mReader.setReadRate(2000);
+        mReader.connect();
+        mReader.writeLine(model.getCommand().getCommandLine());
+        Thread.sleep(50);
+        mReader.triggerBarcode("5012345678900");
+
+        assertTrue(associated.await(5, TimeUnit.SECONDS));
+        mReader.writeLine(".ab");
+        model.stopConsumers();
+        assertEquals(1, model.getBarcodeLog().size());
+        assertEquals(0, model.getBarcodeTagJoin().getEvictedWindowCount());
+        long readTime = model.getAssociationLog().getReadTime(0);
+        assertTrue(Math.abs(System.currentTimeMillis() - readTime) < 5000);
+    }
+
+    @Test
+    public void barcodePairs_surviveARestart() throws Exception {
+        File file = File.createTempFile("tags", ".journal");
+        assertTrue(file.delete());
+        InventoryModel model = new InventoryModel();
+        final CountDownLatch associated = new CountDownLatch(1);
+        model.getEvents().addAssociationListener(new ModelEvents.AssociationListener() {
+            @Override
+            public void onAssociation(int barcodeIndex, int tagOrdinal, long readTime) {
+                associated.countDown();
+            }
+        });
+        model.openJournal(file);
+        model.startConsumers();
+        mReader.addResponder(model.getInventoryResponder());
+        mReader.addResponder(model.getBarcodeResponder());
+        mReader.setRepeatInventory(true);
+        mReader.connect();
+        mReader.writeLine(model.getCommand().getCommandLine());
+        Thread.sleep(50);
+        mReader.triggerBarcode("5012345678900");
+
+        assertTrue(associated.await(5, TimeUnit.SECONDS));
+        mReader.writeLine(".ab");
+        model.stopConsumers();
+        model.closeJournal();
+
+        InventoryModel restored = new InventoryModel();
+        restored.openJournal(file);
+        restored.closeJournal();
+        file.delete();
+        assertEquals(1, restored.getBarcodeLog().size());
+        assertEquals("5012345678900", restored.getBarcodeLog().getData(0));
+        assertEquals(model.getAssociationLog().size(), restored.getAssociationLog().size());
+        byte[] epc = new byte[TagEvent.MAX_EPC_BYTES];
+        byte[] restoredEpc = new byte[TagEvent.MAX_EPC_BYTES];
+        for (int i = 0; i < restored.getAssociationLog().size(); i++) {
+            assertEquals(model.getAssociationLog().getReadTime(i), restored.getAssociationLog().getReadTime(i));
+            int length = model.getTagStore().getEpc(model.getAssociationLog().getTagOrdinal(i), epc);
+            restored.getTagStore().getEpc(restored.getAssociationLog().getTagOrdinal(i), restoredEpc);
+            assertArrayEquals(Arrays.copyOf(epc, length), Arrays.copyOf(restoredEpc, length));
+        }
+    }
+
+    @Test
+    public void tagTimes_comeFromThePhoneClock() throws Exception {
+        InventoryModel model = new InventoryModel();
+        final CountDownLatch cycles = new CountDownLatch(1);
+        model.getEvents().addScanCycleEndedListener(new ModelEvents.ScanCycleEndedListener() {
+            @Override
+            public void onScanCycleEnded(int readCount, long durationNanos) {
+                cycles.countDown();
+            }
+        });
+        mReader.addResponder(model.getInventoryResponder());
+        mReader.setClockOffset(-TimeUnit.HOURS.toMillis(1));
+        mReader.connect();
+        long before = System.currentTimeMillis();
+        mReader.writeLine(model.getCommand().getCommandLine());
+
+        assertTrue(cycles.await(5, TimeUnit.SECONDS));
+        long after = System.currentTimeMillis();
+        TagSummary summary = new TagSummary();
+        model.getTagStore().copyTo(0, summary);
+        assertTrue(summary.getFirstSeen() >= before && summary.getFirstSeen() <= after);
+        assertTrue(summary.getLastSeen() >= before && summary.getLastSeen() <= after);
+    }
+
+    @Test
+    public void export_timesTagsAndBarcodesByOneClock() throws Exception {
+        InventoryModel model = new InventoryModel();
+        final CountDownLatch associated = new CountDownLatch(1);
+        model.getEvents().addAssociationListener(new ModelEvents.AssociationListener() {
+            @Override
+            public void onAssociation(int barcodeIndex, int tagOrdinal, long readTime) {
+                associated.countDown();
+            }
+        });
+        model.startConsumers();
+        mReader.addResponder(model.getInventoryResponder());
+        mReader.addResponder(model.getBarcodeResponder());
+        mReader.setClockOffset(-TimeUnit.HOURS.toMillis(1));
+        mReader.setRepeatInventory(true);
+        mReader.connect();
+        mReader.writeLine(model.getCommand().getCommandLine());
+        Thread.sleep(50);
+        mReader.triggerBarcode("5012345678900");
+
+        assertTrue(associated.await(5, TimeUnit.SECONDS));
+        mReader.writeLine(".ab");
+        model.stopConsumers();
+        StringWriter csv = new StringWriter();
+        new SessionExporter(ExportFormat.CSV).export(model.getTagStore(), model.getBarcodeLog(), model.getAssociationLog(), csv);
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        long barcodeTime = 0;
+        long associationTime = 0;
+        long firstSeen = Long.MAX_VALUE;
+        for (String row : csv.toString().split("\n")) {
+            String[] fields = row.split(",", -1);
+            if (fields[0].equals("barcode")) {
+                barcodeTime = format.parse(fields[14]).getTime();
+            } else if (fields[0].equals("association") && associationTime == 0) {
+                associationTime = format.parse(fields[14]).getTime();
+            } else if (fields[0].equals("tag")) {
+                firstSeen = Math.min(firstSeen, format.parse(fields[14]).getTime());
+            }
+        }
+        // The scan came 50ms into the session
+        assertTrue(Math.abs(barcodeTime - firstSeen) < 5000);
+        assertTrue(Math.abs(barcodeTime - associationTime) < 5000);
+    }
+
+    @Test
+    public void heldSwitch_repeatsInventoryUntilAborted() throws Exception {
+        mResponseEnded = new CountDownLatch(3);
+        mReader.addResponder(inventoryResponder());
+        mReader.connect();
+        mReader.writeLine(inventoryCommand().getCommandLine());
+        SwitchActionCommand action = new SwitchActionCommand();
+        action.setSinglePressAction(SwitchAction.INVENTORY);
+        action.setSinglePressRepeatDelay(SwitchActionCommand.minimumRepeatDelay());
+        mReader.writeLine(action.getCommandLine());
+        SwitchSinglePressCommand press = new SwitchSinglePressCommand();
+        press.setDuration(0);
+        mReader.writeLine(press.getCommandLine());
+
+        assertTrue(mResponseEnded.await(5, TimeUnit.SECONDS));
+        mReader.writeLine(".ab");
+        Thread.sleep(100);
+        long rounds = mReader.getRoundCount();
+        Thread.sleep(100);
+        assertEquals(rounds, mReader.getRoundCount());
+        assertTrue(rounds >= 3);
+    }
+
+    @Test
+    public void linkLatency_delaysTheResponse() throws Exception {
+        mReader.addResponder(inventoryResponder());
+        mReader.setLinkLatency(100);
+        mReader.connect();
+        long start = System.nanoTime();
+        mReader.writeLine(inventoryCommand().getCommandLine());
+
+        assertTrue(mResponseEnded.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+    }
+}
@@ -0,0 +1,80 @@
+package com.petroit.tsirfidandroidapp.rfid.tags;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the EPC Bloom filter and its use as the tag store prefilter
+ */
+public class EpcBloomFilterTest {
+
+    private static byte[] epc(int value) {
+        return new byte[]{ 0x30, 0x74, 0x25, 0x7B, 0, 0, 0, 0, (byte)(value >> 24), (byte)(value >> 16), (byte)(value >> 8), (byte)value };
+    }
+
+    @Test
+    public void addedEpcs_areNeverRuledOut() {
+        EpcBloomFilter filter = new EpcBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add(epc(i), 12);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain(epc(i), 12));
+        }
+        assertEquals(10_000, filter.getAddedCount());
+        assertEquals(7, filter.getHashCount());
+        // About 9.6 bits per EPC for 1%
+        assertTrue(filter.getMemoryBytes() < 10_000 * 10 / 8 + 8);
+    }
+
+    @Test
+    public void falsePositiveRate_isCloseToTheTarget() {
+        EpcBloomFilter filter = new EpcBloomFilter(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            filter.add(epc(i), 12);
+        }
+        int falsePositives = 0;
+        for (int i = 100_000; i < 300_000; i++) {
+            if (filter.mightContain(epc(i), 12)) {
+                falsePositives++;
+            }
+        }
+        double rate = falsePositives / 200_000.0;
+        assertTrue("rate " + rate, rate > 0.005 && rate < 0.015);
+        assertEquals(0.01, filter.getEstimatedFalsePositiveRate(), 0.002);
+
+        filter.clear();
+        assertEquals(0, filter.getAddedCount());
+        assertFalse(filter.mightContain(epc(1), 12));
+    }
+
+    @Test
+    public void prefilteredStore_matchesTheIndexAlone() {
+        TagStore plain = new TagStore(16, 1 << 20);
+        TagStore filtered = new TagStore(16, 1 << 20);
+        filtered.setPrefilter(new EpcBloomFilter(1000, 0.05));
+        TagEvent event = new TagEventPool(1).obtain();
+        for (int i = 0; i < 20_000; i++) {
+            // Each tag is read several times, past the population the filter was sized for
+            int value = (i * 7919) % 2_000;
+            event.set(epc(value), 12, -50, 0x3000, 0, i, 0);
+            assertEquals(plain.record(event), filtered.record(event));
+        }
+        assertEquals(plain.size(), filtered.size());
+        assertTrue(filtered.contains(epc(1), 12));
+        assertFalse(filtered.contains(epc(5_000), 12));
+
+        StringBuilder sb = new StringBuilder();
+        assertTrue(filtered.appendPrefilterTo(sb));
+        assertTrue(sb.toString().startsWith("bloom "));
+        assertFalse(plain.appendPrefilterTo(sb));
+
+        // Tags already held are added when the filter is set
+        plain.setPrefilter(new EpcBloomFilter(2_000, 0.01));
+        event.set(epc(3), 12, -50, 0x3000, 0, 0, 0);
+        assertTrue(plain.record(event) < 0);
+        filtered.clear();
+        assertEquals(0, filtered.record(event));
+    }
+}
@@ -0,0 +1,129 @@
+package com.petroit.tsirfidandroidapp.rfid.tags;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the packed EPC index
+ */
+public class EpcIndexTest {
+
+    private static final int MILLION = 1000000;
+
+    // A 96 bit EPC with a fixed header and the value in the last four bytes
+    private static byte[] epc96(int value) {
+        byte[] epc = new byte[12];
+        epc[0] = 0x30;
+        epc[1] = 0x34;
+        epc[8] = (byte)(value >>> 24);
+        epc[9] = (byte)(value >>> 16);
+        epc[10] = (byte)(value >>> 8);
+        epc[11] = (byte)value;
+        return epc;
+    }
+
+    @Test
+    public void oneMillionEpcs_areAddedFoundAndRejectedAsRepeats() {
+        EpcIndex index = new EpcIndex(1024, 2 * MILLION);
+
+        for (int i = 0; i < MILLION; i++) {
+            byte[] epc = epc96(i * 7919);
+            assertEquals(i, index.add(epc, epc.length, i));
+        }
+        assertEquals(MILLION, index.size());
+
+        for (int i = 0; i < MILLION; i++) {
+            byte[] epc = epc96(i * 7919);
+            assertEquals(i, index.find(epc, epc.length));
+            assertEquals(-(i + 1), index.add(epc, epc.length, MILLION + i));
+        }
+        assertEquals(MILLION, index.size());
+
+        // Values that were never added
+        for (int i = 0; i < 1000; i++) {
+            byte[] epc = epc96(i * 7919 + 1);
+            assertFalse(index.contains(epc, epc.length));
+        }
+
+        assertEquals(2, index.getReadCount(12345));
+        assertEquals(12345, index.getFirstSeen(12345));
+        assertEquals(MILLION + 12345, index.getLastSeen(12345));
+    }
+
+    @Test
+    public void clear_emptiesIndexAndAllowsRefill() {
+        EpcIndex index = new EpcIndex(16, MILLION);
+        for (int i = 0; i < 10000; i++) {
+            byte[] epc = epc96(i);
+            index.add(epc, epc.length, 0);
+        }
+        long footprint = index.memoryFootprint();
+
+        index.clear();
+        assertEquals(0, index.size());
+        byte[] first = epc96(0);
+        assertFalse(index.contains(first, first.length));
+
+        for (int i = 0; i < 10000; i++) {
+            byte[] epc = epc96(10000 - i);
+            assertEquals(i, index.add(epc, epc.length, 0));
+        }
+        // Refilling to the same size does not grow the arrays
+        assertEquals(footprint, index.memoryFootprint());
+    }
+
+    @Test
+    public void epcsOfDifferentLengths_areDistinct() {
+        EpcIndex index = new EpcIndex();
+        Random random = new Random(42);
+        byte[][] epcs = new byte[5000][];
+        for (int i = 0; i < epcs.length; i++) {
+            // 2 to 62 bytes, including lengths that need the overflow area
+            epcs[i] = new byte[2 + (i % 61)];
+            random.nextBytes(epcs[i]);
+            assertTrue(index.add(epcs[i], epcs[i].length, 0) >= 0);
+        }
+
+        // A zero padded prefix of a stored EPC is a different EPC
+        byte[] padded = new byte[]{ epcs[0][0], epcs[0][1], 0, 0 };
+        assertEquals(-1, index.find(padded, padded.length));
+
+        byte[] copy = new byte[TagEvent.MAX_EPC_BYTES];
+        for (int i = 0; i < epcs.length; i++) {
+            assertEquals(i, index.find(epcs[i], epcs[i].length));
+            int length = index.getEpc(i, copy);
+            assertEquals(epcs[i].length, length);
+            for (int b = 0; b < length; b++) {
+                assertEquals(epcs[i][b], copy[b]);
+            }
+        }
+    }
+
+    @Test
+    public void appendEpc_writesHex() {
+        EpcIndex index = new EpcIndex();
+        byte[] epc = new byte[TagEvent.MAX_EPC_BYTES];
+        int length = HexCodec.parse("3034257BF7194E4000001A85E2801160600002", epc);
+        index.add(epc, length, 0);
+
+        StringBuilder sb = new StringBuilder();
+        index.appendEpc(0, sb);
+        assertEquals("3034257BF7194E4000001A85E2801160600002", sb.toString());
+    }
+
+    @Test
+    public void add_returnsFullWhenAtMaximumSize() {
+        EpcIndex index = new EpcIndex(4, 4);
+        for (int i = 0; i < 4; i++) {
+            byte[] epc = epc96(i);
+            assertEquals(i, index.add(epc, epc.length, 0));
+        }
+        byte[] extra = epc96(99);
+        assertEquals(EpcIndex.FULL, index.add(extra, extra.length, 0));
+        byte[] repeat = epc96(3);
+        assertEquals(-4, index.add(repeat, repeat.length, 0));
+    }
+}
@@ -0,0 +1,184 @@
+package com.petroit.tsirfidandroidapp.rfid.tags;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the handoff of reads to consumers
+ */
+public class TagEventRingTest {
+
+    private final TagEvent mEvent = new TagEventPool(1).obtain();
+
+    // The EPC and sequence both carry the value so a torn copy can be detected
+    private TagEvent read(int value) {
+        byte[] epc = new byte[]{ 0x30, 0, 0, 0, 0, 0, 0, 0, (byte)(value >> 24), (byte)(value >> 16), (byte)(value >> 8), (byte)value };
+        mEvent.set(epc, epc.length, -60, 0x3000, 0x1234, value, value);
+        return mEvent;
+    }
+
+    private static int valueOf(TagEvent event) {
+        byte[] epc = event.getEpcBuffer();
+        return (epc[8] & 0xff) << 24 | (epc[9] & 0xff) << 16 | (epc[10] & 0xff) << 8 | (epc[11] & 0xff);
+    }
+
+    private static final class Collector implements TagEventRing.EventHandler {
+        final List<Long> mSequences = new ArrayList<>();
+
+        @Override
+        public void onTagEvent(TagEvent event, long sequence) {
+            assertEquals(sequence, event.getSequence());
+            assertEquals(sequence, valueOf(event));
+            mSequences.add(sequence);
+        }
+    }
+
+    @Test
+    public void consumers_receiveEveryReadInOrder() {
+        TagEventRing ring = new TagEventRing(8, 0);
+        assertEquals(8, ring.capacity());
+        assertFalse(ring.hasConsumers());
+        TagEventRing.Consumer first = ring.addConsumer(TagEventRing.Backpressure.DROP_OLDEST);
+        TagEventRing.Consumer second = ring.addConsumer(TagEventRing.Backpressure.BLOCK);
+        for( int i = 0; i < 5; i++ ) {
+            assertEquals(i, ring.publish(read(i)));
+        }
+        assertEquals(5, first.getBacklog());
+
+        Collector collector = new Collector();
+        assertEquals(3, first.drain(collector, 3));
+        assertEquals(2, first.drain(collector, 10));
+        assertEquals(0, first.drain(collector, 10));
+        assertEquals("[0, 1, 2, 3, 4]", collector.mSequences.toString());
+
+        Collector other = new Collector();
+        assertEquals(5, second.drain(other, 10));
+        assertEquals(5, second.getDeliveredCount());
+    }
+
+    @Test
+    public void dropOldest_losesTheReadsOverwritten() {
+        TagEventRing ring = new TagEventRing(4, 0);
+        TagEventRing.Consumer consumer = ring.addConsumer(TagEventRing.Backpressure.DROP_OLDEST);
+        for( int i = 0; i < 10; i++ ) {
+            ring.publish(read(i));
+        }
+        Collector collector = new Collector();
+        consumer.drain(collector, 100);
+        assertEquals("[6, 7, 8, 9]", collector.mSequences.toString());
+        assertEquals(6, consumer.getDroppedCount());
+    }
+
+    @Test
+    public void sample_deliversTheLatestRead() {
+        TagEventRing ring = new TagEventRing(16, 0);
+        TagEventRing.Consumer consumer = ring.addConsumer(TagEventRing.Backpressure.SAMPLE);
+        for( int i = 0; i < 10; i++ ) {
+            ring.publish(read(i));
+        }
+        Collector collector = new Collector();
+        assertEquals(1, consumer.drain(collector, 100));
+        assertEquals("[9]", collector.mSequences.toString());
+        assertEquals(9, consumer.getSkippedCount());
+        assertEquals(0, consumer.drain(collector, 100));
+    }
+
+    @Test
+    public void block_givesUpAfterTheTimeout() {
+        TagEventRing ring = new TagEventRing(4, TimeUnit.MILLISECONDS.toNanos(5));
+        TagEventRing.Consumer consumer = ring.addConsumer(TagEventRing.Backpressure.BLOCK);
+        for( int i = 0; i < 1000; i++ ) {
+            ring.publish(read(i));
+        }
+        // A consumer that has stopped draining is waited for once, not once per read
+        assertEquals(1, ring.getBlockTimeoutCount());
+        assertTrue(ring.getBlockedNanos() >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertTrue(ring.getBlockedNanos() < TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(consumer.isStalled());
+        assertEquals(996, consumer.getDroppedCount());
+
+        Collector collector = new Collector();
+        assertEquals(4, consumer.drain(collector, 100));
+        assertEquals("[996, 997, 998, 999]", collector.mSequences.toString());
+        assertFalse(consumer.isStalled());
+
+        // Caught up, so it is waited for again
+        for( int i = 1000; i < 1005; i++ ) {
+            ring.publish(read(i));
+        }
+        assertEquals(2, ring.getBlockTimeoutCount());
+    }
+
+    @Test
+    public void addConsumer_startsAtTheNextRead() {
+        TagEventRing ring = new TagEventRing(4, 0);
+        ring.publish(read(0));
+        TagEventRing.Consumer consumer = ring.addConsumer(TagEventRing.Backpressure.DROP_OLDEST);
+        ring.publish(read(1));
+        Collector collector = new Collector();
+        consumer.drain(collector, 10);
+        assertEquals("[1]", collector.mSequences.toString());
+
+        ring.removeConsumer(consumer);
+        assertFalse(ring.hasConsumers());
+    }
+
+    @Test
+    public void concurrentConsumers_neverSeeATornRead() throws Exception {
+        final int total = 200000;
+        final TagEventRing ring = new TagEventRing(64, TimeUnit.SECONDS.toNanos(5));
+        final TagEventRing.Consumer blocking = ring.addConsumer(TagEventRing.Backpressure.BLOCK);
+        final TagEventRing.Consumer dropping = ring.addConsumer(TagEventRing.Backpressure.DROP_OLDEST);
+        final AtomicBoolean failed = new AtomicBoolean();
+        final long[] lastSequence = { -1, -1 };
+        final long[] received = new long[2];
+
+        Thread[] threads = new Thread[2];
+        final TagEventRing.Consumer[] consumers = { blocking, dropping };
+        for( int i = 0; i < 2; i++ ) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    TagEventRing.EventHandler handler = new TagEventRing.EventHandler() {
+                        @Override
+                        public void onTagEvent(TagEvent event, long sequence) {
+                            if( sequence <= lastSequence[index] || event.getSequence() != sequence || valueOf(event) != sequence ) {
+                                failed.set(true);
+                            }
+                            if( index == 0 && sequence != lastSequence[index] + 1 ) {
+                                failed.set(true);
+                            }
+                            lastSequence[index] = sequence;
+                            received[index]++;
+                        }
+                    };
+                    while( lastSequence[index] < total - 1 ) {
+                        if( consumers[index].drain(handler, 16) == 0 ) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for( int i = 0; i < total; i++ ) {
+            ring.publish(read(i));
+        }
+        for( Thread thread : threads ) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+
+        assertFalse(failed.get());
+        assertEquals(total, received[0]);
+        assertEquals(0, blocking.getDroppedCount());
+        assertEquals(0, ring.getBlockTimeoutCount());
+        assertEquals(total, received[1] + dropping.getDroppedCount());
+    }
+}
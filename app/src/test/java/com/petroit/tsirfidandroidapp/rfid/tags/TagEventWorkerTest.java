@@ -0,0 +1,137 @@
+package com.petroit.tsirfidandroidapp.rfid.tags;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for draining the ring on a thread of its own
+ */
+public class TagEventWorkerTest {
+
+    private final TagEvent mEvent = new TagEventPool(1).obtain();
+
+    private TagEvent read(int value) {
+        byte[] epc = new byte[]{ 0x30, 0, 0, 0, 0, 0, 0, 0, (byte)(value >> 24), (byte)(value >> 16), (byte)(value >> 8), (byte)value };
+        mEvent.set(epc, epc.length, -60, 0x3000, 0x1234, value, value);
+        return mEvent;
+    }
+
+    @Test
+    public void worker_drainsEveryReadAndStops() throws Exception {
+        TagEventRing ring = new TagEventRing(64, TimeUnit.SECONDS.toNanos(5));
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong last = new AtomicLong(-1);
+        TagEventWorker worker = new TagEventWorker(ring, TagEventRing.Backpressure.BLOCK, new TagEventRing.EventHandler() {
+            @Override
+            public void onTagEvent(TagEvent event, long sequence) {
+                last.set(sequence);
+                received.incrementAndGet();
+            }
+        }, "test");
+        assertNull(worker.getConsumer());
+        worker.start();
+        assertTrue(worker.isRunning());
+        assertTrue(ring.hasConsumers());
+
+        for( int i = 0; i < 10000; i++ ) {
+            ring.publish(read(i));
+        }
+        // The reads published before the stop are drained before the thread ends
+        worker.stop();
+        assertFalse(worker.isRunning());
+        assertFalse(ring.hasConsumers());
+        assertEquals(10000, received.get());
+        assertEquals(9999, last.get());
+    }
+
+    @Test
+    public void stopAll_waitsForEveryWorkerUntilOneDeadline() throws Exception {
+        TagEventRing ring = new TagEventRing(8, 0);
+        final CountDownLatch stuck = new CountDownLatch(1);
+        TagEventRing.EventHandler handler = new TagEventRing.EventHandler() {
+            @Override
+            public void onTagEvent(TagEvent event, long sequence) {
+                try {
+                    stuck.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        TagEventWorker first = new TagEventWorker(ring, TagEventRing.Backpressure.DROP_OLDEST, handler, "first");
+        TagEventWorker second = new TagEventWorker(ring, TagEventRing.Backpressure.DROP_OLDEST, handler, "second");
+        first.start();
+        second.start();
+        ring.publish(read(0));
+        Thread.sleep(20);
+
+        // Both handlers never return, each waited for in turn would take two seconds
+        long start = System.nanoTime();
+        TagEventWorker.stopAll(first, second);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        stuck.countDown();
+        assertTrue(elapsedMs >= 900);
+        assertTrue(elapsedMs < 1500);
+        assertFalse(first.isRunning());
+        assertFalse(second.isRunning());
+        assertFalse(ring.hasConsumers());
+    }
+
+    @Test
+    public void wake_callsTheCaughtUpListener() throws Exception {
+        TagEventRing ring = new TagEventRing(8, 0);
+        TagEventWorker worker = new TagEventWorker(ring, TagEventRing.Backpressure.DROP_OLDEST, new TagEventRing.EventHandler() {
+            @Override
+            public void onTagEvent(TagEvent event, long sequence) {
+            }
+        }, "test");
+        final CountDownLatch caughtUp = new CountDownLatch(3);
+        worker.setCaughtUpListener(new TagEventWorker.CaughtUpListener() {
+            @Override
+            public void onCaughtUp() {
+                caughtUp.countDown();
+            }
+        });
+        // Once when it first finds the ring empty, then once for each wake
+        worker.start();
+        Thread.sleep(20);
+        worker.wake();
+        Thread.sleep(20);
+        worker.wake();
+        assertTrue(caughtUp.await(5, TimeUnit.SECONDS));
+        worker.stop();
+    }
+
+    @Test
+    public void awaitReads_returnsWhenAReadIsPublished() throws Exception {
+        final TagEventRing ring = new TagEventRing(8, 0);
+        TagEventRing.Consumer consumer = ring.addConsumer(TagEventRing.Backpressure.DROP_OLDEST);
+        assertFalse(consumer.awaitReads(TimeUnit.MILLISECONDS.toNanos(1)));
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ring.publish(read(0));
+            }
+        });
+        producer.start();
+        long start = System.nanoTime();
+        // A park may return early, so wait until the read or the test's limit
+        while( !consumer.awaitReads(TimeUnit.SECONDS.toNanos(10)) && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5) ) {
+            Thread.yield();
+        }
+        assertEquals(1, consumer.getBacklog());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        producer.join();
+    }
+}
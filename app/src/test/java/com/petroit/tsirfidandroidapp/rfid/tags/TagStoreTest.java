@@ -0,0 +1,111 @@
+package com.petroit.tsirfidandroidapp.rfid.tags;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the per-tag aggregation
+ */
+public class TagStoreTest {
+
+    private final TagEventPool mPool = new TagEventPool(4);
+
+    private TagEvent read(int value, int rssi, long timestamp) {
+        byte[] epc = new byte[]{ 0x30, 0x00, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte)value };
+        TagEvent event = mPool.obtain();
+        event.set(epc, epc.length, rssi, 0x3000, 0x1234, timestamp, 0);
+        return event;
+    }
+
+    @Test
+    public void record_aggregatesReadsPerTag() {
+        TagStore store = new TagStore(4, 100);
+        assertEquals(0, store.record(read(1, -60, 1000)));
+        assertEquals(1, store.record(read(2, -70, 1100)));
+        assertEquals(-1, store.record(read(1, -50, 1500)));
+        assertEquals(-1, store.record(read(1, -55, 2000)));
+
+        assertEquals(2, store.size());
+        assertEquals(4, store.getTotalReads());
+
+        TagSummary summary = new TagSummary();
+        store.copyTo(0, summary);
+        assertEquals("300000000000000000000001", summary.getEpc());
+        assertEquals(3, summary.getReadCount());
+        assertEquals(-55, summary.getLastRssi());
+        assertEquals(-60, summary.getRssiMin());
+        assertEquals(-50, summary.getRssiMax());
+        assertEquals(-55.0, summary.getRssiAverage(), 0.001);
+        assertEquals(1000, summary.getFirstSeen());
+        assertEquals(2000, summary.getLastSeen());
+    }
+
+    @Test
+    public void drainChanges_returnsOnlyChangedTags() {
+        TagStore store = new TagStore(4, 100);
+        ArrayList<TagSummary> rows = new ArrayList<>();
+        IntList changed = new IntList();
+
+        for (int i = 0; i < 10; i++) {
+            store.record(read(i, -60, i));
+        }
+        assertEquals(10, store.drainChanges(rows, changed));
+        assertEquals(10, rows.size());
+
+        changed.clear();
+        store.record(read(3, -40, 20));
+        store.record(read(3, -45, 21));
+        store.record(read(7, -41, 22));
+        assertEquals(2, store.drainChanges(rows, changed));
+        assertEquals(3, changed.get(0));
+        assertEquals(7, changed.get(1));
+        assertEquals(3, rows.get(3).getReadCount());
+
+        assertEquals(0, store.drainChanges(rows, null));
+    }
+
+    @Test
+    public void clear_rebuildsSummaries() {
+        TagStore store = new TagStore(4, 100);
+        ArrayList<TagSummary> rows = new ArrayList<>();
+        store.record(read(1, -60, 0));
+        store.record(read(2, -60, 0));
+        store.drainChanges(rows, null);
+
+        store.clear();
+        store.record(read(9, -60, 0));
+        store.drainChanges(rows, null);
+
+        assertEquals(1, rows.size());
+        assertEquals("300000000000000000000009", rows.get(0).getEpc());
+        assertEquals(1, rows.get(0).getReadCount());
+    }
+
+    @Test
+    public void bankData_isAddedToTheTag() {
+        TagStore store = new TagStore(4, 100);
+        store.record(read(1, -60, 0));
+        store.record(read(2, -60, 0));
+        store.drainChanges(new ArrayList<TagSummary>(), null);
+
+        byte[] epc = read(2, -60, 0).getEpcBuffer();
+        int ordinal = store.find(epc, 12);
+        assertEquals(1, ordinal);
+        assertTrue(store.setBankData(ordinal, store.getGeneration(), false, new byte[]{ 0x12, 0x34 }));
+        assertTrue(store.setBankData(ordinal, store.getGeneration(), true, new byte[]{ (byte)0xE2, 0x00 }));
+
+        IntList changed = new IntList();
+        ArrayList<TagSummary> rows = new ArrayList<>();
+        store.drainChanges(rows, changed);
+        assertEquals(1, changed.size());
+        assertTrue(rows.get(1).toString().contains("TID: E200\nDATA: 1234"));
+
+        int generation = store.getGeneration();
+        store.clear();
+        assertEquals(-1, store.find(epc, 12));
+        assertFalse(store.setBankData(0, generation, false, new byte[2]));
+    }
+}
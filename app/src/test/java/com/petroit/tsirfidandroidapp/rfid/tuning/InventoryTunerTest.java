@@ -0,0 +1,139 @@
+package com.petroit.tsirfidandroidapp.rfid.tuning;
+
+import com.uk.tsl.rfid.asciiprotocol.enumerations.QAlgorithm;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.QuerySession;
+import com.uk.tsl.rfid.asciiprotocol.enumerations.QueryTarget;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the inventory parameter tuner
+ */
+public class InventoryTunerTest {
+
+    private static final long sRoundNanos = 100_000_000L;
+
+    private final InventoryTuner mTuner = new InventoryTuner(4, 10, 29, 64);
+
+    // Run a window of rounds with the same counts, returning the settings for the next round
+    private RfSettings window(RfSettings settings, int reads, int newTags) {
+        for (int i = 0; i < 4; i++) {
+            RfSettings next = mTuner.onRound(reads, newTags, sRoundNanos, settings);
+            if (i < 3) {
+                assertSame(settings, next);
+            }
+            settings = next;
+        }
+        return settings;
+    }
+
+    @Test
+    public void fixedQ_followsTheTagsAnswering() {
+        RfSettings settings = new RfSettings(QAlgorithm.FIXED, 2, QuerySession.SESSION_0, QueryTarget.TARGET_A, 29);
+        RfSettings next = window(settings, 40, 10);
+        assertEquals(5, next.getQValue());
+        assertEquals(QAlgorithm.FIXED, next.getQAlgorithm());
+
+        TuningDecision decision = mTuner.getLastDecision();
+        assertEquals(TuningDecision.Action.CHANGED, decision.getAction());
+        assertEquals("q", decision.getParameter());
+        assertEquals(100.0, decision.getNewTagsPerSecond(), 0.001);
+        assertEquals(40.0, decision.getReadsPerRound(), 0.001);
+
+        // The same discovery rate keeps the change
+        RfSettings kept = window(next, 40, 10);
+        assertSame(next, kept);
+        assertEquals(TuningDecision.Action.KEPT, mTuner.getLastDecision().getAction());
+    }
+
+    @Test
+    public void worseDiscovery_revertsTheChange() {
+        RfSettings settings = new RfSettings(QAlgorithm.FIXED, 2, QuerySession.SESSION_0, QueryTarget.TARGET_A, 29);
+        RfSettings changed = window(settings, 40, 10);
+        assertFalse(settings.equals(changed));
+
+        RfSettings reverted = window(changed, 40, 2);
+        assertEquals(settings, reverted);
+        assertEquals(TuningDecision.Action.REVERTED, mTuner.getLastDecision().getAction());
+
+        // Held off for a while before trying again
+        for (int i = 0; i < 4; i++) {
+            assertSame(reverted, window(reverted, 40, 2));
+        }
+        assertFalse(reverted.equals(window(reverted, 40, 2)));
+    }
+
+    @Test
+    public void steadyDynamicQ_isFixed() {
+        RfSettings settings = new RfSettings(QAlgorithm.DYNAMIC, 4, QuerySession.SESSION_1, QueryTarget.TARGET_A, 29);
+        RfSettings next = window(settings, 100, 5);
+        assertSame(settings, next);
+        next = window(next, 110, 5);
+        assertEquals(QAlgorithm.FIXED, next.getQAlgorithm());
+        assertEquals(7, next.getQValue());
+    }
+
+    @Test
+    public void denseSession0_movesToSession2() {
+        RfSettings settings = new RfSettings(QAlgorithm.FIXED, 7, QuerySession.SESSION_0, QueryTarget.TARGET_A, 29);
+        RfSettings next = window(settings, 120, 1);
+        assertEquals(QuerySession.SESSION_2, next.getSession());
+        assertEquals(QueryTarget.TARGET_A, next.getTarget());
+        assertEquals("session", mTuner.getLastDecision().getParameter());
+    }
+
+    @Test
+    public void stalledDiscovery_flipsTheTargetThenRaisesThePower() {
+        RfSettings settings = new RfSettings(QAlgorithm.FIXED, 3, QuerySession.SESSION_2, QueryTarget.TARGET_A, 20);
+        settings = window(settings, 8, 0);
+        assertSame(QueryTarget.TARGET_A, settings.getTarget());
+        settings = window(settings, 8, 0);
+        assertSame(QueryTarget.TARGET_B, settings.getTarget());
+
+        // Kept as the read rate held, then flipped back after another stall
+        settings = window(settings, 8, 0);
+        settings = window(settings, 8, 0);
+        assertSame(QueryTarget.TARGET_A, settings.getTarget());
+        settings = window(settings, 8, 0);
+        settings = window(settings, 8, 0);
+        assertEquals(23, settings.getOutputPower());
+
+        List<TuningDecision> decisions = new ArrayList<>();
+        mTuner.copyDecisions(decisions);
+        StringBuilder parameters = new StringBuilder();
+        for (TuningDecision decision : decisions) {
+            if (decision.getAction() == TuningDecision.Action.CHANGED) {
+                parameters.append(decision.getParameter()).append(' ');
+            }
+        }
+        assertEquals("target target power ", parameters.toString());
+        assertTrue(decisions.get(0).toString().startsWith("#8 changed target: Q fixed 3  S2  A  20 dBm -> Q fixed 3  S2  B  20 dBm, no new tags for 2 windows"));
+    }
+
+    @Test
+    public void power_staysWithinTheMaximum() {
+        mTuner.setStallWindows(1);
+        RfSettings settings = new RfSettings(QAlgorithm.FIXED, 3, QuerySession.SESSION_0, QueryTarget.TARGET_A, 28);
+        settings = window(settings, 8, 0);
+        assertEquals(29, settings.getOutputPower());
+        for (int i = 0; i < 10; i++) {
+            settings = window(settings, 8, 0);
+        }
+        assertEquals(29, settings.getOutputPower());
+    }
+
+    @Test
+    public void log2Round_isTheNearestExponent() {
+        assertEquals(0, InventoryTuner.log2Round(1));
+        assertEquals(1, InventoryTuner.log2Round(2));
+        assertEquals(2, InventoryTuner.log2Round(3));
+        assertEquals(5, InventoryTuner.log2Round(40));
+        assertEquals(6, InventoryTuner.log2Round(46));
+        assertEquals(7, InventoryTuner.log2Round(100));
+    }
+}
@@ -0,0 +1,90 @@
+package com.petroit.tsirfidandroidapp.benchmark;
+
+import com.petroit.tsirfidandroidapp.rfid.tags.EpcBloomFilter;
+import com.petroit.tsirfidandroidapp.rfid.tags.EpcIndex;
+import com.petroit.tsirfidandroidapp.rfid.tags.HexCodec;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEventPool;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagStore;
+import com.uk.tsl.rfid.asciiprotocol.responders.TransponderData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recognising repeat reads of the same tag, one read per operation
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class EpcDedupeBenchmark
+{
+    @Param({"1000", "100000"})
+    public int population;
+
+    private SyntheticTransponderStream mStream;
+    private HashMap<String, TransponderData> mUniqueTransponders;
+    private EpcIndex mIndex;
+    private TagStore mStore;
+    private TagStore mPrefilteredStore;
+    private TagEvent mEvent;
+    private final byte[] mEpc = new byte[TagEvent.MAX_EPC_BYTES];
+
+    @Setup
+    public void setUp()
+    {
+        mStream = new SyntheticTransponderStream(population, population * 4, false, 42);
+        mUniqueTransponders = new HashMap<>();
+        mIndex = new EpcIndex(population, population);
+        mStore = new TagStore(population, population);
+        mPrefilteredStore = new TagStore(population, population);
+        mPrefilteredStore.setPrefilter(new EpcBloomFilter(population, 0.01));
+        mEvent = new TagEventPool(1).obtain();
+    }
+
+    // The original String keyed map of the uniques - the stream's Strings cache their hash after
+    // the first pass whereas each parsed read is a new String, so this flatters the map a little
+    @Benchmark
+    public boolean stringKeyedMap()
+    {
+        TransponderData transponder = mStream.next();
+        if( mUniqueTransponders.containsKey(transponder.getEpc()) ) {
+            return false;
+        }
+        mUniqueTransponders.put(transponder.getEpc(), transponder);
+        return true;
+    }
+
+    @Benchmark
+    public int epcIndex()
+    {
+        TransponderData transponder = mStream.next();
+        int length = HexCodec.parse(transponder.getEpc(), mEpc);
+        return mIndex.add(mEpc, length, 0);
+    }
+
+    // Dedupe plus the per tag statistics, as done for every read by the model
+    @Benchmark
+    public int tagStore()
+    {
+        mEvent.set(mStream.next(), 0);
+        return mStore.record(mEvent);
+    }
+
+    // The same with a Bloom filter ruling out most new tags before the index is searched
+    @Benchmark
+    public int prefilteredTagStore()
+    {
+        mEvent.set(mStream.next(), 0);
+        return mPrefilteredStore.record(mEvent);
+    }
+}
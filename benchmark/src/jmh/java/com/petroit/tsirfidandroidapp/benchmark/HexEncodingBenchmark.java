@@ -0,0 +1,54 @@
+package com.petroit.tsirfidandroidapp.benchmark;
+
+import com.petroit.tsirfidandroidapp.rfid.tags.HexCodec;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.uk.tsl.utils.HexEncoding;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting EPCs and TIDs between hex and bytes, the library's HexEncoding against HexCodec
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class HexEncodingBenchmark
+{
+    private final String mEpcHex = "3074257BF7194E4000001A85";
+    private final byte[] mTid = { (byte)0xE2, (byte)0x80, 0x11, 0x05, 0x20, 0x00, 0x74, (byte)0xC4, 0x3A, 0x2B, 0x01, 0x5F };
+    private final byte[] mEpc = new byte[TagEvent.MAX_EPC_BYTES];
+    private final StringBuilder mText = new StringBuilder(64);
+
+    @Benchmark
+    public byte[] libraryStringToBytes()
+    {
+        return HexEncoding.stringToBytes(mEpcHex);
+    }
+
+    @Benchmark
+    public int hexCodecParse()
+    {
+        return HexCodec.parse(mEpcHex, mEpc);
+    }
+
+    @Benchmark
+    public String libraryBytesToString()
+    {
+        return HexEncoding.bytesToString(mTid);
+    }
+
+    @Benchmark
+    public int hexCodecAppend()
+    {
+        mText.setLength(0);
+        HexCodec.append(mText, mTid, 0, mTid.length);
+        return mText.length();
+    }
+}
@@ -0,0 +1,149 @@
+package com.petroit.tsirfidandroidapp.benchmark;
+
+import com.petroit.tsirfidandroidapp.rfid.ModelEvents;
+import com.petroit.tsirfidandroidapp.rfid.NotificationBatcher;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEventPool;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagStore;
+import com.uk.tsl.rfid.asciiprotocol.responders.TransponderData;
+import com.uk.tsl.utils.HexEncoding;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The transponder delegate path of the InventoryModel, from the responder's TransponderData to
+ * the client receiving it, one read per operation
+ * <p>
+ * Android's Handler is not available on the JVM, the per read Handler message of the original
+ * code is stood in for by a locked queue with a node allocated per read. The consumer collects
+ * what has been queued once per UI batch interval, so the read rate sets how many reads are
+ * delivered to it at a time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class InventoryPipelineBenchmark
+{
+    // The model's default time between batches of tag notifications
+    private static final int sBatchIntervalMs = 33;
+
+    @Param({"1000", "100000"})
+    public int population;
+
+    // Reads per second arriving from the reader
+    @Param({"100", "1000", "10000"})
+    public int readRate;
+
+    /**
+     * The number of times the consumer is woken, per operation this is the wake ups per read
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Wakeups
+    {
+        public long wakeups;
+    }
+
+    private SyntheticTransponderStream mStream;
+    private int mReadsPerDelivery;
+    private int mReadsSinceDelivery;
+    private int mTagsSeen;
+
+    // The original path
+    private Queue<Object> mMessageQueue;
+
+    // The current path
+    private TagEventPool mPool;
+    private TagStore mStore;
+    private ModelEvents mEvents;
+    private NotificationBatcher<TagEvent> mBatcher;
+    private final ArrayList<TagEvent> mBatch = new ArrayList<>();
+    private long mDeliveriesScheduled;
+
+    @Setup
+    public void setUp()
+    {
+        mStream = new SyntheticTransponderStream(population, population * 4, false, 42);
+        mReadsPerDelivery = Math.max(1, readRate * sBatchIntervalMs / 1000);
+
+        mMessageQueue = new LinkedBlockingQueue<>();
+
+        mPool = new TagEventPool(1024);
+        mStore = new TagStore(population, population);
+        mEvents = new ModelEvents();
+        mBatcher = new NotificationBatcher<>(new NotificationBatcher.Scheduler() {
+            @Override
+            public void scheduleDelivery(long delayMs)
+            {
+                mDeliveriesScheduled++;
+            }
+        }, sBatchIntervalMs, 4096);
+    }
+
+    // The message formatting and per read dispatch of the original delegate
+    @Benchmark
+    public int original(Wakeups wakeups)
+    {
+        TransponderData transponder = mStream.next();
+        String tidMessage = transponder.getTidData() == null ? "" : HexEncoding.bytesToString(transponder.getTidData());
+        String infoMsg = String.format(Locale.US, "\nRSSI: %d  PC: %04X  CRC: %04X", transponder.getRssi(), transponder.getPc(), transponder.getCrc());
+        mMessageQueue.offer("EPC: " + transponder.getEpc() + infoMsg + "\nTID: " + tidMessage + "\n# " + mTagsSeen);
+        mTagsSeen++;
+
+        if( ++mReadsSinceDelivery == mReadsPerDelivery ) {
+            mReadsSinceDelivery = 0;
+            // Each message is a separate delivery to the consumer
+            int count = 0;
+            while( mMessageQueue.poll() != null ) {
+                count++;
+            }
+            wakeups.wakeups += count;
+            return count;
+        }
+        return 0;
+    }
+
+    // As InventoryModel's transponder delegate and the fragment's TAG_NOTIFICATION handling
+    @Benchmark
+    public int pipeline(Wakeups wakeups)
+    {
+        TagEvent event = mPool.obtain();
+        if( event.set(mStream.next(), mTagsSeen) ) {
+            mTagsSeen++;
+            mStore.record(event);
+            mEvents.publishTagRead(event);
+            if( !mBatcher.offer(event) ) {
+                mPool.recycle(event);
+            }
+        } else {
+            mPool.recycle(event);
+        }
+
+        if( ++mReadsSinceDelivery == mReadsPerDelivery ) {
+            mReadsSinceDelivery = 0;
+            wakeups.wakeups += mDeliveriesScheduled;
+            mDeliveriesScheduled = 0;
+            int count = mBatcher.drainTo(mBatch);
+            for( int i = 0; i < count; i++ ) {
+                mPool.recycle(mBatch.get(i));
+            }
+            mBatch.clear();
+            return count;
+        }
+        return 0;
+    }
+}
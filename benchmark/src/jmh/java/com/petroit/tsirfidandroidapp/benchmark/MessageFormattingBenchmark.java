@@ -0,0 +1,70 @@
+package com.petroit.tsirfidandroidapp.benchmark;
+
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEventPool;
+import com.uk.tsl.rfid.asciiprotocol.responders.TransponderData;
+import com.uk.tsl.utils.HexEncoding;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producing the text of a read, one read per operation
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class MessageFormattingBenchmark
+{
+    @Param({"false", "true"})
+    public boolean fastId;
+
+    private SyntheticTransponderStream mStream;
+    private TagEvent mEvent;
+    private final StringBuilder mText = new StringBuilder(160);
+    private int mTagsSeen;
+
+    @Setup
+    public void setUp()
+    {
+        mStream = new SyntheticTransponderStream(1000, 4000, fastId, 42);
+        mEvent = new TagEventPool(1).obtain();
+    }
+
+    // The original message built for every read on the responder thread
+    @Benchmark
+    public String stringFormat()
+    {
+        TransponderData transponder = mStream.next();
+        String tidMessage = transponder.getTidData() == null ? "" : HexEncoding.bytesToString(transponder.getTidData());
+        String infoMsg = String.format(Locale.US, "\nRSSI: %d  PC: %04X  CRC: %04X", transponder.getRssi(), transponder.getPc(), transponder.getCrc());
+        return "EPC: " + transponder.getEpc() + infoMsg + "\nTID: " + tidMessage + "\n# " + mTagsSeen++;
+    }
+
+    // The primitive event filled on the responder thread and its text appended when a row is bound
+    @Benchmark
+    public int tagEventAppend()
+    {
+        mEvent.set(mStream.next(), mTagsSeen++);
+        mText.setLength(0);
+        mEvent.appendTo(mText);
+        return mText.length();
+    }
+
+    // Only filling the event, the cost left on the responder thread
+    @Benchmark
+    public int tagEventSet()
+    {
+        mEvent.set(mStream.next(), mTagsSeen++);
+        return mEvent.getEpcLength();
+    }
+}
@@ -0,0 +1,82 @@
+package com.petroit.tsirfidandroidapp.benchmark;
+
+import com.uk.tsl.rfid.asciiprotocol.responders.TransponderData;
+
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A repeatable stream of reads from a population of tags, as the responder would report them
+ * <p>
+ * The EPCs are 96 bit SGTIN style values, every tag is read in turn in a random order each
+ * round (like a reader cycling through a Q round) and the RSSI varies per read.
+ */
+final class SyntheticTransponderStream
+{
+    private final TransponderData[] mReads;
+    private int mNext;
+
+    /**
+     * @param population the number of distinct tags
+     * @param length the number of reads in the stream, the stream repeats when exhausted
+     * @param includeTid true to include a TID as with FastId
+     * @param seed the random seed so runs are comparable
+     */
+    SyntheticTransponderStream(int population, int length, boolean includeTid, long seed)
+    {
+        Random random = new Random(seed);
+        String[] epcs = new String[population];
+        byte[][] tids = new byte[population][];
+        for( int i = 0; i < population; i++ ) {
+            epcs[i] = String.format(Locale.US, "3074257BF7194E40%08X", i);
+            if( includeTid ) {
+                tids[i] = new byte[12];
+                random.nextBytes(tids[i]);
+                tids[i][0] = (byte)0xE2;
+            }
+        }
+
+        int[] order = new int[population];
+        for( int i = 0; i < population; i++ ) {
+            order[i] = i;
+        }
+        mReads = new TransponderData[length];
+        long time = 1_600_000_000_000L;
+        for( int r = 0; r < length; r++ ) {
+            int position = r % population;
+            if( position == 0 ) {
+                shuffle(order, random);
+            }
+            int tag = order[position];
+            int rssi = -40 - random.nextInt(35);
+            int crc = random.nextInt(0x10000);
+            time += 1;
+            // Each read has its own String as when parsed from the reader's response
+            mReads[r] = new TransponderData(crc, new String(epcs[tag]), null, false, false, 0x3000, null, rssi,
+                    new Date(time), null, null, tids[tag], 0);
+        }
+    }
+
+    /**
+     * @return the next read, wrapping to the start of the stream
+     */
+    TransponderData next()
+    {
+        TransponderData read = mReads[mNext];
+        if( ++mNext == mReads.length ) {
+            mNext = 0;
+        }
+        return read;
+    }
+
+    private static void shuffle(int[] values, Random random)
+    {
+        for( int i = values.length - 1; i > 0; i-- ) {
+            int j = random.nextInt(i + 1);
+            int swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+    }
+}
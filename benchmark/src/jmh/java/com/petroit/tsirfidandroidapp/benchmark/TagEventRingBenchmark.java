@@ -0,0 +1,128 @@
+package com.petroit.tsirfidandroidapp.benchmark;
+
+import com.petroit.tsirfidandroidapp.rfid.NotificationBatcher;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEventPool;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEventRing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handing reads from the responder thread to consumers on two other threads
+ * <p>
+ * The producer's score is the reads it can publish per second while the consumers drain, for
+ * the ring and for the locked NotificationBatcher the UI uses. With a BLOCK consumer the
+ * producer is held to the slower consumer's pace, with DROP_OLDEST it never waits.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Group)
+public class TagEventRingBenchmark
+{
+    @Param({"BLOCK", "DROP_OLDEST"})
+    public TagEventRing.Backpressure backpressure;
+
+    private TagEventRing mRing;
+    private TagEventRing.Consumer[] mConsumers;
+    private TagEvent mEvent;
+
+    private NotificationBatcher<TagEvent> mBatcher;
+    private TagEventPool mPool;
+
+    private static final TagEventRing.EventHandler sHandler = new TagEventRing.EventHandler() {
+        @Override
+        public void onTagEvent(TagEvent event, long sequence) {
+        }
+    };
+
+    @State(Scope.Thread)
+    public static class ConsumerIndex
+    {
+        private static int sNext;
+        int index;
+        final ArrayList<TagEvent> batch = new ArrayList<>();
+
+        @Setup
+        public synchronized void setUp()
+        {
+            synchronized( ConsumerIndex.class ) {
+                index = sNext++ % 2;
+            }
+        }
+    }
+
+    @Setup
+    public void setUp()
+    {
+        mRing = new TagEventRing(4096, TimeUnit.MILLISECONDS.toNanos(2));
+        mConsumers = new TagEventRing.Consumer[] {
+                mRing.addConsumer(backpressure), mRing.addConsumer(backpressure)
+        };
+        mPool = new TagEventPool(8192);
+        mEvent = mPool.obtain();
+        byte[] epc = new byte[12];
+        epc[0] = 0x30;
+        mEvent.set(epc, epc.length, -60, 0x3000, 0x1234, 0, 0);
+        mBatcher = new NotificationBatcher<>(new NotificationBatcher.Scheduler() {
+            @Override
+            public void scheduleDelivery(long delayMs) {
+            }
+        }, 0, 4096);
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(1)
+    public long ringPublish()
+    {
+        return mRing.publish(mEvent);
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(2)
+    public int ringDrain(ConsumerIndex consumer)
+    {
+        return mConsumers[consumer.index].drain(sHandler, 256);
+    }
+
+    @Benchmark
+    @Group("batcher")
+    @GroupThreads(1)
+    public boolean batcherOffer()
+    {
+        TagEvent event = mPool.obtain();
+        event.copyFrom(mEvent);
+        if( !mBatcher.offer(event) ) {
+            mPool.recycle(event);
+            return false;
+        }
+        return true;
+    }
+
+    @Benchmark
+    @Group("batcher")
+    @GroupThreads(2)
+    public int batcherDrain(ConsumerIndex consumer)
+    {
+        ArrayList<TagEvent> batch = consumer.batch;
+        int count = mBatcher.drainTo(batch);
+        for( int i = 0; i < batch.size(); i++ ) {
+            mPool.recycle(batch.get(i));
+        }
+        batch.clear();
+        return count;
+    }
+}
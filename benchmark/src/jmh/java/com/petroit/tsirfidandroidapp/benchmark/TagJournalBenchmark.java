@@ -0,0 +1,83 @@
+package com.petroit.tsirfidandroidapp.benchmark;
+
+import com.petroit.tsirfidandroidapp.rfid.journal.TagJournal;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEvent;
+import com.petroit.tsirfidandroidapp.rfid.tags.TagEventPool;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journaling reads on the responder thread while the writer thread commits them to disk
+ * <p>
+ * The operation is one append, so the score is the most reads per second the responder thread
+ * can journal, including reads refused because the writer fell behind - those are counted as
+ * dropped alongside the score, the appended reads are the rate the disk sustains.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class TagJournalBenchmark
+{
+    @Param({"20", "100"})
+    public long commitIntervalMs;
+
+    private SyntheticTransponderStream mStream;
+    private TagEvent mEvent;
+    private File mFile;
+    private TagJournal mJournal;
+
+    /**
+     * The reads taken by the journal and those refused because the writer fell behind
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes
+    {
+        public long appended;
+        public long dropped;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        mStream = new SyntheticTransponderStream(10000, 40000, true, 42);
+        mEvent = new TagEventPool(1).obtain();
+        mFile = File.createTempFile("benchmark", ".journal");
+        mFile.delete();
+        mJournal = TagJournal.open(mFile, null, commitIntervalMs, 256 * 1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        mJournal.close();
+        mFile.delete();
+    }
+
+    @Benchmark
+    public boolean append(Outcomes outcomes)
+    {
+        mEvent.set(mStream.next(), 0);
+        boolean appended = mJournal.append(mEvent);
+        if( appended ) {
+            outcomes.appended++;
+        } else {
+            outcomes.dropped++;
+        }
+        return appended;
+    }
+}